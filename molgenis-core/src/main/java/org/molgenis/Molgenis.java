@@ -15,6 +15,11 @@ import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.dbcp.BasicDataSource;
 import org.apache.commons.io.IOUtils;
@@ -40,6 +45,7 @@ import org.molgenis.fieldtypes.TextField;
 import org.molgenis.fieldtypes.XrefField;
 import org.molgenis.generators.DataTypeGen;
 import org.molgenis.generators.Generator;
+import org.molgenis.generators.GeneratorFingerprints;
 import org.molgenis.generators.R.RApiGen;
 import org.molgenis.generators.R.REntityGen;
 import org.molgenis.generators.R.RMatrixGen;
@@ -526,50 +532,73 @@ public class Molgenis
 		logger.info("\nUsing options:\n" + options.toString());
 
 		File generatedFolder = new File(options.output_dir);
-		if (generatedFolder.exists() && options.delete_generated_folder)
+		File fingerprintsFile = new File(options.output_src, GeneratorFingerprints.FILE_NAME);
+		if (generatedFolder.exists() && options.delete_generated_folder && !options.generate_incremental)
 		{
 			logger.info("removing previous generated folder " + generatedFolder);
 			deleteContentOfDirectory(new File(options.output_src));
 			deleteContentOfDirectory(new File(options.output_sql));
+			// hidden, so not removed with the folder content
+			if (fingerprintsFile.exists() && !fingerprintsFile.delete()) logger.warn("file delete failed: "
+					+ fingerprintsFile);
 		}
 
-		List<Thread> threads = new ArrayList<Thread>();
-		for (final Generator g : generators)
+		GeneratorFingerprints fingerprints = null;
+		if (options.generate_incremental)
 		{
-			Runnable runnable = new Runnable()
-			{
+			fingerprints = new GeneratorFingerprints(model, options, fingerprintsFile);
+			for (Generator g : generators)
+				fingerprints.attach(g);
+		}
+		else
+		{
+			for (Generator g : generators)
+				g.setFingerprints(null);
+		}
 
-				@Override
-				public void run()
+		// run the generators on a bounded pool, templates are shared between
+		// generators of the same class
+		int nrThreads = Math.max(1, Math.min(generators.size(), Runtime.getRuntime().availableProcessors()));
+		ExecutorService executor = Executors.newFixedThreadPool(nrThreads);
+		Exception failure = null;
+		try
+		{
+			List<Future<Void>> futures = new ArrayList<Future<Void>>(generators.size());
+			for (final Generator g : generators)
+			{
+				futures.add(executor.submit(new Callable<Void>()
 				{
-					try
+					@Override
+					public Void call() throws Exception
 					{
 						g.generate(model, options);
+						return null;
 					}
-					catch (Exception e)
-					{
-						e.printStackTrace();
-						throw new RuntimeException(e);
-					}
-				}
-			};
-			// executor.execute(runnable);
-			Thread thread = new Thread(runnable);
-			thread.start();
-			threads.add(thread);
-		}
-
-		// wait for all threads to complete
-		for (Thread thread : threads)
-		{
-			try
-			{
-				thread.join();
+				}));
 			}
-			catch (InterruptedException ignore)
+
+			// wait for all generators to complete
+			for (int i = 0; i < futures.size(); ++i)
 			{
+				try
+				{
+					futures.get(i).get();
+				}
+				catch (ExecutionException e)
+				{
+					logger.error("generator " + generators.get(i).getClass().getName() + " failed", e.getCause());
+					if (failure == null) failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+				}
 			}
 		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+		if (failure != null) throw failure;
+
+		// only store fingerprints if all files were generated
+		if (fingerprints != null) fingerprints.save();
 
 		logger.info("Generation completed at " + new Date());
 	}
@@ -164,6 +164,10 @@ public class MolgenisOptions implements Serializable
 	@Option(name = "mapper_implementation", param = Option.Param.ENUM, type = Option.Type.OPTIONAL_ARGUMENT, usage = "Expert option: Choosing wether multiquery is used instead of prepared statements. Default: MULTIQUERY")
 	public MapperImplementation mapper_implementation = MapperImplementation.MULTIQUERY;
 
+	/** Advanced option: number of rows per JDBC batch */
+	@Option(name = "mapper_batch_size", param = Option.Param.INTEGER, type = Option.Type.OPTIONAL_ARGUMENT, usage = "Expert option: Number of rows that prepared statement mappers send to the database in one JDBC batch. Default: 500")
+	public int mapper_batch_size = 500;
+
 	@Option(name = "generate_persistence", param = Option.Param.STRING, type = Option.Type.OPTIONAL_ARGUMENT, usage = "Expert option: Choosing the JPA persistence unit name from the persistence.xml that is used by molgenis. Default: molgenis")
 	public String jpa_persistenceUnitName = "molgenis";
 
@@ -285,6 +289,9 @@ public class MolgenisOptions implements Serializable
 	// for example molgenis_apps
 	public boolean delete_generated_folder = true;
 
+	@Option(name = "generate_incremental", param = Option.Param.BOOLEAN, type = Option.Type.OPTIONAL_ARGUMENT, usage = "Only regenerate the files of entities of which the model, templates or options changed since the previous run, the generated folder is not deleted. Default: false")
+	public boolean generate_incremental = false;
+
 	@Option(name = "authorizable", param = Option.Param.COLLECTION, type = Option.Type.OPTIONAL_ARGUMENT, usage = "For use in molgenis_apps! Tells the generator on which entities to append an implements='Authorizable'. Default: new ArrayList<String>()")
 	public ArrayList<String> authorizable = new ArrayList<String>();
 
@@ -315,6 +322,18 @@ public class MolgenisOptions implements Serializable
 	@Option(name = "block_webspiders", param = Option.Param.BOOLEAN, type = Option.Type.OPTIONAL_ARGUMENT, usage = "Expert option: Block webcrawler user agents in FrontController")
 	public boolean block_webspiders = false;
 
+	@Option(name = "access_log_sample_rate", param = Option.Param.INTEGER, type = Option.Type.OPTIONAL_ARGUMENT, usage = "Expert option: Log one in every n requests to the access log of the FrontController, failed requests are always logged and 0 logs only those. Default: 1")
+	public int access_log_sample_rate = 1;
+
+	@Option(name = "freemarker_template_cache_size", param = Option.Param.INTEGER, type = Option.Type.OPTIONAL_ARGUMENT, usage = "Expert option: Maximum number of parsed Freemarker templates that are cached by the user interface. Default: 250")
+	public int freemarker_template_cache_size = 250;
+
+	@Option(name = "freemarker_template_update_delay", param = Option.Param.INTEGER, type = Option.Type.OPTIONAL_ARGUMENT, usage = "Expert option: Seconds between checks for changed Freemarker templates of the user interface, use a large value in production. Default: 5")
+	public int freemarker_template_update_delay = 5;
+
+	@Option(name = "freemarker_template_dir", param = Option.Param.DIRPATH, type = Option.Type.OPTIONAL_ARGUMENT, usage = "Expert option: Directory that is searched for Freemarker templates of the user interface before the classpath, e.g. to edit templates without redeploying. Default: '' (classpath only)")
+	public String freemarker_template_dir = "";
+
 	// @Option(name = "force_lowercase_names", param = "force_lowercase_names",
 	// type = Option.Type.REQUIRED_ARGUMENT, usage =
 	// "Expert option. Wether all names should be converted to lowercase. Default: true"
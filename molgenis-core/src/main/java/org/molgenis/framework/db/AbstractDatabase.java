@@ -2,7 +2,6 @@ package org.molgenis.framework.db;
 
 import java.io.File;
 import java.sql.Connection;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
@@ -11,11 +10,12 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.log4j.Logger;
-import org.molgenis.MolgenisFieldTypes;
 import org.molgenis.MolgenisOptions;
 import org.molgenis.framework.db.QueryRule.Operator;
 import org.molgenis.framework.db.jdbc.JDBCQueryGernatorUtil;
+import org.molgenis.framework.db.jdbc.ResultSetTupleReader;
 import org.molgenis.framework.security.Login;
 import org.molgenis.framework.security.SimpleLogin;
 import org.molgenis.io.TupleReader;
@@ -23,10 +23,8 @@ import org.molgenis.io.TupleWriter;
 import org.molgenis.model.elements.Field;
 import org.molgenis.model.elements.Model;
 import org.molgenis.util.Entity;
-import org.molgenis.util.tuple.CaseInsensitiveKeyValueTuple;
 import org.molgenis.util.tuple.EntityTuple;
 import org.molgenis.util.tuple.Tuple;
-import org.molgenis.util.tuple.WritableTuple;
 
 public abstract class AbstractDatabase implements Database
 {
@@ -51,6 +49,12 @@ public abstract class AbstractDatabase implements Database
 	/** The security login used */
 	protected Login login;
 
+	/** Foreign keys resolved by label in the current transaction */
+	private final XrefLabelCache xrefLabelCache = new XrefLabelCache();
+
+	/** Listeners of the current transaction */
+	private final List<TransactionListener> transactionListeners = new ArrayList<TransactionListener>();
+
 	/** Default constructor */
 	public AbstractDatabase()
 	{
@@ -707,85 +711,107 @@ public abstract class AbstractDatabase implements Database
 	@Override
 	public synchronized List<Tuple> sql(String sql, QueryRule... rules) throws DatabaseException
 	{
-		ResultSet rs = null;
-		Statement stmt = null;
+		TupleReader reader = sqlReader(sql, rules);
 		try
 		{
-			String allSql = sql
-					+ (rules.length > 0 ? JDBCQueryGernatorUtil.createWhereSql(null, false, true, rules) : "");
-
-			if (logger.isDebugEnabled()) logger.debug("executeQuery: " + allSql);
-			Connection con = getConnection();
-			stmt = con.createStatement();
-
-			if (stmt == null)
-			{
-				throw new Exception("statement is null???");
-			}
-			rs = stmt.executeQuery(allSql);
-
-			// get field types
-			java.sql.ResultSetMetaData metadata = rs.getMetaData();
-			int colcount = metadata.getColumnCount();
-
-			List<Field> fieldTypes = new ArrayList<Field>();
-			for (int i = 1; i <= colcount; i++)
-			{
-				if (metadata.getColumnName(i) == null)
-				{
-					System.out.println("column name for column " + i + " unknown,sql=" + sql);
-				}
-				Field f = new Field(metadata.getColumnLabel(i));
-				f.setType(MolgenisFieldTypes.getTypeBySqlTypesCode(metadata.getColumnType(i)));
-				fieldTypes.add(f);
-			}
-
-			// transform result set in entity list
+			// transform result set in tuple list
 			List<Tuple> tuples = new ArrayList<Tuple>();
-			if (rs != null)
+			for (Tuple tuple : reader)
 			{
-				while (rs.next())
-				{
-					WritableTuple tuple = new CaseInsensitiveKeyValueTuple();
-					for (int i = 1; i <= colcount; i++)
-					{
-						tuple.set(rs.getMetaData().getColumnLabel(i), rs.getObject(i));
-					}
-					tuples.add(tuple);
-				}
+				tuples.add(tuple);
 			}
-			rs.close();
-			rs = null;
-			stmt.close();
-			stmt = null;
 
-			if (logger.isDebugEnabled()) logger.debug("sql(" + allSql + ")" + tuples.size() + " objects found");
+			if (logger.isDebugEnabled()) logger.debug("sql(" + sql + ")" + tuples.size() + " objects found");
 			return tuples;
 		}
-		catch (Exception e)
+		catch (RuntimeException e)
 		{
 			throw new DatabaseException(e);
 		}
 		finally
 		{
-			if (rs != null) try
-			{
-				rs.close();
-			}
-			catch (SQLException e)
-			{
-				e.printStackTrace();
-			}
-			if (stmt != null) try
+			IOUtils.closeQuietly(reader);
+		}
+	}
+
+	/**
+	 * Only use when really needed!
+	 * 
+	 * Streams the result from a forward-only cursor, so unlike
+	 * {@link #sql(String, QueryRule...)} memory use does not depend on the size
+	 * of the result. Don't forget to close the reader when done.
+	 * 
+	 * @throws DatabaseException
+	 */
+	@Override
+	public TupleReader sqlReader(String sql, QueryRule... rules) throws DatabaseException
+	{
+		String allSql = sql + (rules.length > 0 ? JDBCQueryGernatorUtil.createWhereSql(null, false, true, rules) : "");
+		if (logger.isDebugEnabled()) logger.debug("executeQuery: " + allSql);
+		try
+		{
+			return new ResultSetTupleReader(getConnection(), allSql);
+		}
+		catch (SQLException e)
+		{
+			throw new DatabaseException(e);
+		}
+	}
+
+	@Override
+	public XrefLabelCache getXrefLabelCache()
+	{
+		// outside a transaction resolved labels can not be trusted
+		if (!inTx()) xrefLabelCache.clear();
+		return xrefLabelCache;
+	}
+
+	@Override
+	public void addTransactionListener(TransactionListener listener)
+	{
+		if (!inTx())
+		{
+			listener.afterCommit();
+		}
+		else if (!transactionListeners.contains(listener))
+		{
+			transactionListeners.add(listener);
+		}
+	}
+
+	@Override
+	public <T extends TransactionListener> T getTransactionListener(Class<T> listenerClass)
+	{
+		for (TransactionListener listener : transactionListeners)
+		{
+			if (listenerClass.isInstance(listener)) return listenerClass.cast(listener);
+		}
+		return null;
+	}
+
+	/**
+	 * Notifies the listeners of the transaction that just ended. Must be called
+	 * by implementations after each commit or rollback.
+	 * 
+	 * @param committed
+	 *            whether the changes of the transaction were committed
+	 */
+	protected void transactionEnded(boolean committed)
+	{
+		if (transactionListeners.isEmpty()) return;
+		List<TransactionListener> listeners = new ArrayList<TransactionListener>(transactionListeners);
+		transactionListeners.clear();
+		for (TransactionListener listener : listeners)
+		{
+			try
 			{
-				stmt.close();
+				if (committed) listener.afterCommit();
+				else listener.afterRollback();
 			}
-			catch (SQLException e)
+			catch (RuntimeException e)
 			{
-				e.printStackTrace();
+				logger.error("transaction listener failed: " + e.getMessage(), e);
 			}
-			rs = null;
-			stmt = null;
 		}
 	}
 
@@ -159,11 +159,12 @@ public abstract class AbstractMapper<E extends Entity> implements Mapper<E>
 			// insert this class in batches
 			for (int i = 0; i < entities.size(); i += BATCH_SIZE)
 			{
-				// attempt to resolve foreign keys by label (ie. 'name')
-				this.resolveForeignKeys(entities);
-
 				int endindex = Math.min(i + BATCH_SIZE, entities.size());
 				List<E> sublist = entities.subList(i, endindex);
+
+				// attempt to resolve foreign keys by label (ie. 'name')
+				this.resolveForeignKeys(sublist);
+
 				updatedRows += this.executeAdd(sublist);
 			}
 
@@ -176,6 +177,9 @@ public abstract class AbstractMapper<E extends Entity> implements Mapper<E>
 				this.update(entities);
 			}
 
+			// added entities can be found by label
+			XrefSearchIndex.entitiesChanged(getDatabase(), entities);
+
 			// commit all batches
 			if (privateTx) getDatabase().commitTx();
 
@@ -272,6 +276,10 @@ public abstract class AbstractMapper<E extends Entity> implements Mapper<E>
 				updatedRows += this.executeUpdate(sublist);
 			}
 
+			// labels of updated entities might have changed
+			this.invalidateXrefLabels(entities);
+			XrefSearchIndex.entitiesChanged(getDatabase(), entities);
+
 			this.storeMrefs(entities);
 
 			if (privateTx) getDatabase().commitTx();
@@ -357,6 +365,8 @@ public abstract class AbstractMapper<E extends Entity> implements Mapper<E>
 				updatedRows += this.executeRemove(sublist);
 				getDatabase().flush();
 			}
+			this.invalidateXrefLabels(entities);
+			XrefSearchIndex.entitiesRemoved(getDatabase(), entities);
 			getDatabase().flush();
 			if (privateTx) getDatabase().commitTx();
 
@@ -427,4 +437,19 @@ public abstract class AbstractMapper<E extends Entity> implements Mapper<E>
 		}
 		return entities;
 	}
+
+	/**
+	 * Removes the resolved foreign keys of updated or removed entities from the
+	 * cache shared by all mappers in the transaction
+	 * 
+	 * @param entities
+	 */
+	private void invalidateXrefLabels(List<E> entities)
+	{
+		if (!entities.isEmpty())
+		{
+			XrefLabelCache xrefLabelCache = getDatabase().getXrefLabelCache();
+			if (xrefLabelCache != null) xrefLabelCache.invalidate(entities.get(0).getClass());
+		}
+	}
 }
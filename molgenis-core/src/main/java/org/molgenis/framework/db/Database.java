@@ -120,6 +120,25 @@ public interface Database extends Closeable
 	 */
 	public void rollbackTx() throws DatabaseException;
 
+	/**
+	 * Adds a listener that is notified once when the current transaction ends.
+	 * Outside a transaction changes are committed right away, so the listener
+	 * is notified immediately. Adding a listener twice to the same transaction
+	 * has no effect.
+	 *
+	 * @param listener
+	 */
+	public void addTransactionListener(TransactionListener listener);
+
+	/**
+	 * Get the listener of the given class that was added to the current
+	 * transaction
+	 *
+	 * @param listenerClass
+	 * @return listener or null
+	 */
+	public <T extends TransactionListener> T getTransactionListener(Class<T> listenerClass);
+
 	/**
 	 * Count the entities of type entityClass. Optionally, additional filtering
 	 * rules can be set. The rules are passed via a variable parameter-list,
@@ -491,6 +510,23 @@ public interface Database extends Closeable
 	 */
 	public List<Tuple> sql(String query, QueryRule... queryRules) throws DatabaseException;
 
+	/**
+	 * Executes a query and get back a TupleReader that streams the
+	 * (Molgenis)Tuples from a forward-only cursor instead of loading all rows
+	 * in memory. Don't forget to close the reader when done.
+	 * 
+	 * @return TupleReader
+	 */
+	public TupleReader sqlReader(String query, QueryRule... queryRules) throws DatabaseException;
+
+	/**
+	 * Get the cache of foreign keys that have been resolved by label. The cache
+	 * is shared by all mappers and is cleared when a transaction ends.
+	 * 
+	 * @return XrefLabelCache
+	 */
+	public XrefLabelCache getXrefLabelCache();
+
 	/**
 	 * Generate the find SQL (use with caution!)
 	 */
@@ -2,6 +2,7 @@ package org.molgenis.framework.db;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -11,12 +12,18 @@ public class EntityImportReport
 	private Map<String, String> messages;
 	private String errorItem;
 	private int nrImported;
+	/** number of imported entities per entity name, in import order */
+	private Map<String, Integer> nrImportedPerEntity;
+	/** import time in milliseconds per entity name */
+	private Map<String, Long> importTimes;
 
 	public EntityImportReport()
 	{
 		progressLog = new ArrayList<String>();
 		messages = new HashMap<String, String>();
 		errorItem = "no error found";
+		nrImportedPerEntity = new LinkedHashMap<String, Integer>();
+		importTimes = new LinkedHashMap<String, Long>();
 	}
 
 	public List<String> getProgressLog()
@@ -58,4 +65,38 @@ public class EntityImportReport
 	{
 		this.nrImported += nrImported;
 	}
+
+	/**
+	 * Adds the number of imported entities and the import time of an entity
+	 * (sheet) to this report
+	 */
+	public void addImportMetrics(String entityName, int nrImported, long importTimeMillis)
+	{
+		Integer nrImportedEntity = nrImportedPerEntity.get(entityName);
+		nrImportedPerEntity.put(entityName, nrImportedEntity != null ? nrImportedEntity + nrImported : nrImported);
+		Long importTime = importTimes.get(entityName);
+		importTimes.put(entityName, importTime != null ? importTime + importTimeMillis : importTimeMillis);
+	}
+
+	public Map<String, Integer> getNrImportedPerEntity()
+	{
+		return nrImportedPerEntity;
+	}
+
+	public Map<String, Long> getImportTimes()
+	{
+		return importTimes;
+	}
+
+	/**
+	 * Returns the number of imported entities per second of an entity (sheet)
+	 * or 0 if the entity was not imported
+	 */
+	public double getThroughput(String entityName)
+	{
+		Integer nrImportedEntity = nrImportedPerEntity.get(entityName);
+		Long importTime = importTimes.get(entityName);
+		if (nrImportedEntity == null || importTime == null) return 0;
+		return nrImportedEntity * 1000.0 / Math.max(1, importTime);
+	}
 }
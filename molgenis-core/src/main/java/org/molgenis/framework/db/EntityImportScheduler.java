@@ -0,0 +1,321 @@
+package org.molgenis.framework.db;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.log4j.Logger;
+import org.molgenis.framework.db.Database.DatabaseAction;
+import org.molgenis.io.TupleReader;
+import org.molgenis.io.processor.CellProcessor;
+import org.molgenis.util.tuple.Tuple;
+
+/**
+ * Imports the sheets of a file in the order of their xref dependencies: a sheet
+ * is imported after the sheets of the entities it refers to. Sheets without
+ * dependencies on each other keep the order in which the importers were
+ * registered.
+ * <p>
+ * All sheets are written in the transaction of the given database, so an
+ * import is all-or-nothing and the rows of a sheet can refer to rows imported
+ * from previous sheets. While a chunk of rows is written, the next chunks of
+ * the sheet are parsed by a separate thread, see {@link #DEFAULT_CHUNK_SIZE}.
+ */
+public class EntityImportScheduler
+{
+	private static final Logger logger = Logger.getLogger(EntityImportScheduler.class);
+
+	/** number of rows passed from the parser to the writer at once */
+	public static final int DEFAULT_CHUNK_SIZE = 1000;
+	/** maximum number of parsed chunks waiting to be written */
+	private static final int QUEUE_CAPACITY = 4;
+
+	private final Map<String, EntityImporter> importers;
+	private final Map<String, ? extends Collection<String>> dependencies;
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+	/**
+	 * @param importers
+	 *            lower case entity name to importer, in the default import
+	 *            order
+	 * @param dependencies
+	 *            lower case entity name to the lower case names of the
+	 *            entities it refers to
+	 */
+	public EntityImportScheduler(Map<String, EntityImporter> importers,
+			Map<String, ? extends Collection<String>> dependencies)
+	{
+		if (importers == null) throw new IllegalArgumentException("importers is null");
+		if (dependencies == null) throw new IllegalArgumentException("dependencies is null");
+		this.importers = importers;
+		this.dependencies = dependencies;
+	}
+
+	public void setChunkSize(int chunkSize)
+	{
+		if (chunkSize < 1) throw new IllegalArgumentException("chunkSize must be > 0");
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Returns the import order of the given entities: entities are ordered
+	 * after the entities they refer to. Entities without importer are skipped,
+	 * entities in a reference cycle are imported in the default order.
+	 *
+	 * @param entityNames
+	 *            lower case entity names
+	 */
+	public List<String> schedule(Collection<String> entityNames)
+	{
+		Set<String> remaining = new LinkedHashSet<String>();
+		for (String entityName : importers.keySet())
+			if (entityNames.contains(entityName)) remaining.add(entityName);
+
+		List<String> schedule = new ArrayList<String>(remaining.size());
+		while (!remaining.isEmpty())
+		{
+			// first entity in default order of which all dependencies are
+			// scheduled
+			String next = null;
+			for (String entityName : remaining)
+			{
+				if (isSchedulable(entityName, remaining))
+				{
+					next = entityName;
+					break;
+				}
+			}
+			if (next == null)
+			{
+				next = remaining.iterator().next();
+				logger.warn("cyclic references between " + remaining + ", importing " + next + " first");
+			}
+			remaining.remove(next);
+			schedule.add(next);
+		}
+		return schedule;
+	}
+
+	private boolean isSchedulable(String entityName, Set<String> remaining)
+	{
+		Collection<String> entityDependencies = dependencies.get(entityName);
+		if (entityDependencies == null) return true;
+		for (String dependency : entityDependencies)
+		{
+			// self references are resolved by the importer
+			if (!dependency.equals(entityName) && remaining.contains(dependency)) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Imports the sheets in the current transaction of the database
+	 *
+	 * @param tupleReaders
+	 *            lower case entity name to the reader of its sheet
+	 * @param report
+	 *            report to add the number of imported entities and import
+	 *            times per entity to
+	 */
+	public void importEntities(Map<String, TupleReader> tupleReaders, Database db, DatabaseAction dbAction,
+			EntityImportReport report) throws IOException, DatabaseException
+	{
+		ExecutorService executorService = Executors.newSingleThreadExecutor(new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread thread = new Thread(r, "entity-import-parser");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		try
+		{
+			for (String entityName : schedule(tupleReaders.keySet()))
+			{
+				PrefetchTupleReader tupleReader = new PrefetchTupleReader(tupleReaders.get(entityName),
+						executorService, chunkSize);
+				try
+				{
+					long start = System.currentTimeMillis();
+					int nr = importers.get(entityName).importEntity(tupleReader, db, dbAction);
+					long importTime = System.currentTimeMillis() - start;
+					if (nr > 0)
+					{
+						report.getMessages().put(entityName, "imported " + nr + " " + entityName + " entities");
+						report.addNrImported(nr);
+						report.addImportMetrics(entityName, nr, importTime);
+						logger.info("imported " + nr + " " + entityName + " entities in " + importTime + "ms ("
+								+ Math.round(report.getThroughput(entityName)) + "/s)");
+					}
+				}
+				finally
+				{
+					tupleReader.cancel();
+				}
+			}
+		}
+		finally
+		{
+			executorService.shutdownNow();
+		}
+	}
+
+	/**
+	 * Parses the rows of a reader in a separate thread, so parsing the next
+	 * chunk of rows overlaps with writing the current one
+	 */
+	static class PrefetchTupleReader implements TupleReader
+	{
+		/** marks the end of the rows */
+		private static final List<Tuple> END = Collections.emptyList();
+
+		private final TupleReader tupleReader;
+		private final ExecutorService executorService;
+		private final int chunkSize;
+		private final BlockingQueue<List<Tuple>> queue = new ArrayBlockingQueue<List<Tuple>>(QUEUE_CAPACITY);
+		private volatile Exception parseException;
+		private Future<?> future;
+
+		public PrefetchTupleReader(TupleReader tupleReader, ExecutorService executorService, int chunkSize)
+		{
+			this.tupleReader = tupleReader;
+			this.executorService = executorService;
+			this.chunkSize = chunkSize;
+		}
+
+		@Override
+		public boolean hasColNames()
+		{
+			return tupleReader.hasColNames();
+		}
+
+		@Override
+		public Iterator<String> colNamesIterator() throws IOException
+		{
+			return tupleReader.colNamesIterator();
+		}
+
+		@Override
+		public void addCellProcessor(CellProcessor cellProcessor)
+		{
+			if (future != null) throw new IllegalStateException("cell processors must be added before iterating");
+			tupleReader.addCellProcessor(cellProcessor);
+		}
+
+		@Override
+		public Iterator<Tuple> iterator()
+		{
+			if (future != null) throw new IllegalStateException("rows can only be iterated once");
+			future = executorService.submit(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						List<Tuple> chunk = new ArrayList<Tuple>(chunkSize);
+						for (Tuple tuple : tupleReader)
+						{
+							chunk.add(tuple);
+							if (chunk.size() == chunkSize)
+							{
+								queue.put(chunk);
+								chunk = new ArrayList<Tuple>(chunkSize);
+							}
+						}
+						if (!chunk.isEmpty()) queue.put(chunk);
+						queue.put(END);
+					}
+					catch (InterruptedException e)
+					{
+						// import canceled
+					}
+					catch (Exception e)
+					{
+						parseException = e;
+						try
+						{
+							queue.put(END);
+						}
+						catch (InterruptedException e1)
+						{
+							// import canceled
+						}
+					}
+				}
+			});
+
+			return new Iterator<Tuple>()
+			{
+				private Iterator<Tuple> chunkIterator = Collections.<Tuple> emptyList().iterator();
+				private boolean end = false;
+
+				@Override
+				public boolean hasNext()
+				{
+					while (!chunkIterator.hasNext() && !end)
+					{
+						List<Tuple> chunk;
+						try
+						{
+							chunk = queue.take();
+						}
+						catch (InterruptedException e)
+						{
+							Thread.currentThread().interrupt();
+							throw new RuntimeException(e);
+						}
+						if (chunk == END)
+						{
+							end = true;
+							if (parseException != null) throw new RuntimeException(parseException);
+						}
+						chunkIterator = chunk.iterator();
+					}
+					return chunkIterator.hasNext();
+				}
+
+				@Override
+				public Tuple next()
+				{
+					if (!hasNext()) throw new NoSuchElementException();
+					return chunkIterator.next();
+				}
+
+				@Override
+				public void remove()
+				{
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+
+		/** stops parsing, e.g. because writing failed */
+		void cancel()
+		{
+			if (future != null) future.cancel(true);
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			cancel();
+			tupleReader.close();
+		}
+	}
+}
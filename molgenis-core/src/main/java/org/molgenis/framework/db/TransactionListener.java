@@ -0,0 +1,20 @@
+package org.molgenis.framework.db;
+
+/**
+ * Is notified once when the transaction it was added to ends, see
+ * {@link Database#addTransactionListener(TransactionListener)}. Used to keep
+ * application wide caches in sync with committed changes only.
+ */
+public interface TransactionListener
+{
+	/**
+	 * Called after the changes of the transaction were committed
+	 */
+	public void afterCommit();
+
+	/**
+	 * Called after the changes of the transaction were rolled back or the
+	 * commit failed
+	 */
+	public void afterRollback();
+}
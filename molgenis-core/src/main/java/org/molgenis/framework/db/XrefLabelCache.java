@@ -0,0 +1,127 @@
+package org.molgenis.framework.db;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.molgenis.util.Entity;
+
+/**
+ * Bounded cache of resolved foreign keys: maps the label of an xref entity
+ * (e.g. the value of its 'name' field or a combination of label fields) to its
+ * id. Mappers use the cache to resolve each label only once, even if it is
+ * referred to by many batches or by different entities in one transaction.
+ * <p>
+ * When the cache is full the least recently used label is evicted. The cache
+ * is not thread-safe, like the {@link Database} that owns it.
+ */
+public class XrefLabelCache
+{
+	/** default maximum number of labels in the cache */
+	public static final int DEFAULT_MAX_SIZE = 100000;
+
+	private final Map<Key, Object> cache;
+
+	public XrefLabelCache()
+	{
+		this(DEFAULT_MAX_SIZE);
+	}
+
+	public XrefLabelCache(final int maxSize)
+	{
+		if (maxSize < 1) throw new IllegalArgumentException("max size must be > 0");
+		this.cache = new LinkedHashMap<Key, Object>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest)
+			{
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Returns the id of the xref entity with the given label or null if the
+	 * label was not cached
+	 *
+	 * @param xrefClass
+	 *            referred entity
+	 * @param labelFields
+	 *            names of the label fields, e.g. "name" or "investigation,name"
+	 * @param label
+	 * @return id or null
+	 */
+	public Object get(Class<? extends Entity> xrefClass, String labelFields, Object label)
+	{
+		if (label == null) return null;
+		return cache.get(new Key(xrefClass, labelFields, label));
+	}
+
+	public void put(Class<? extends Entity> xrefClass, String labelFields, Object label, Object id)
+	{
+		if (label == null || id == null) return;
+		cache.put(new Key(xrefClass, labelFields, label), id);
+	}
+
+	/**
+	 * Removes all labels of the given entity, its superclasses and its
+	 * subclasses, labels might have changed or entities removed. Entities
+	 * written as a superclass might be cached under one of their subclasses.
+	 *
+	 * @param entityClass
+	 */
+	public void invalidate(Class<? extends Entity> entityClass)
+	{
+		if (cache.isEmpty()) return;
+		for (Iterator<Key> it = cache.keySet().iterator(); it.hasNext();)
+		{
+			Class<? extends Entity> xrefClass = it.next().xrefClass;
+			if (xrefClass.isAssignableFrom(entityClass) || entityClass.isAssignableFrom(xrefClass)) it.remove();
+		}
+	}
+
+	public void clear()
+	{
+		cache.clear();
+	}
+
+	public int size()
+	{
+		return cache.size();
+	}
+
+	private static final class Key
+	{
+		private final Class<? extends Entity> xrefClass;
+		private final String labelFields;
+		private final Object label;
+
+		public Key(Class<? extends Entity> xrefClass, String labelFields, Object label)
+		{
+			this.xrefClass = xrefClass;
+			this.labelFields = labelFields;
+			this.label = label;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			int result = xrefClass.hashCode();
+			result = 31 * result + labelFields.hashCode();
+			result = 31 * result + label.hashCode();
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj) return true;
+			if (!(obj instanceof Key)) return false;
+			Key other = (Key) obj;
+			return xrefClass.equals(other.xrefClass) && labelFields.equals(other.labelFields)
+					&& label.equals(other.label);
+		}
+	}
+}
@@ -0,0 +1,147 @@
+package org.molgenis.framework.db;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.molgenis.fieldtypes.FieldType;
+import org.molgenis.framework.db.QueryRule.Operator;
+
+/**
+ * Helper methods for the generated mappers to resolve foreign keys that are
+ * given by (a combination of) label fields instead of by id.
+ * <p>
+ * Labels are keyed on tuples instead of concatenated strings, so the
+ * combination "ab","c" does not collide with "a","bc". Labels are queried in
+ * chunks of {@link #IN_CHUNK_SIZE} with one 'IN' rule per label field, null
+ * label values are queried with an 'IS NULL' rule.
+ */
+public final class XrefLabels
+{
+	/** maximum number of labels resolved in one query */
+	public static final int IN_CHUNK_SIZE = 1000;
+
+	private XrefLabels()
+	{
+	}
+
+	/**
+	 * Creates the lookup key for a combination of label values. Values are
+	 * compared by their string representation, because the entity that refers
+	 * to the label might store the value with another type than the referred
+	 * entity.
+	 *
+	 * @param labelValues
+	 * @return key
+	 */
+	public static List<String> key(Object... labelValues)
+	{
+		String[] key = new String[labelValues.length];
+		for (int i = 0; i < labelValues.length; ++i)
+			key[i] = labelValues[i] != null ? labelValues[i].toString() : null;
+		return Collections.unmodifiableList(Arrays.asList(key));
+	}
+
+	/**
+	 * Returns whether all values of a key are null
+	 *
+	 * @param key
+	 * @return
+	 */
+	public static boolean isEmpty(List<String> key)
+	{
+		for (String value : key)
+			if (value != null) return false;
+		return true;
+	}
+
+	/**
+	 * Creates the rules to find the entities for a chunk of label keys: one
+	 * 'IN' rule per label field, or'ed with an 'IS NULL' rule if a key has no
+	 * value for the field. Values are converted to the type of their label
+	 * field. For composite labels the rules select a superset of the requested
+	 * keys, the caller is expected to match the results on their complete key.
+	 *
+	 * @param xrefMapper
+	 *            mapper of the referred entity, provides the label field types
+	 * @param labelFields
+	 *            names of the label fields
+	 * @param keys
+	 *            keys created with {@link #key(Object...)}
+	 * @return rules
+	 */
+	public static QueryRule[] createInRules(Mapper<?> xrefMapper, String[] labelFields,
+			Collection<List<String>> keys)
+	{
+		List<QueryRule> rules = new ArrayList<QueryRule>(labelFields.length);
+		for (int i = 0; i < labelFields.length; ++i)
+		{
+			FieldType fieldType = xrefMapper.getFieldType(labelFields[i]);
+			Set<Object> values = new LinkedHashSet<Object>();
+			boolean hasNull = false;
+			for (List<String> key : keys)
+			{
+				if (key.get(i) != null) values.add(toTypedValue(fieldType, key.get(i)));
+				else hasNull = true;
+			}
+
+			QueryRule isNullRule = new QueryRule(labelFields[i], Operator.EQUALS, (Object) null);
+			if (values.isEmpty())
+			{
+				if (hasNull) rules.add(isNullRule);
+			}
+			else
+			{
+				QueryRule inRule = new QueryRule(labelFields[i], Operator.IN, new ArrayList<Object>(values));
+				if (hasNull) rules.add(new QueryRule(inRule, new QueryRule(Operator.OR), isNullRule));
+				else rules.add(inRule);
+			}
+		}
+		return rules.toArray(new QueryRule[rules.size()]);
+	}
+
+	/**
+	 * Converts a label value to the type of its field. Values that can not be
+	 * converted are kept as string, the database compares them as before.
+	 */
+	private static Object toTypedValue(FieldType fieldType, String value)
+	{
+		if (fieldType == null) return value;
+		try
+		{
+			Object typedValue = fieldType.getTypedValue(value);
+			return typedValue != null ? typedValue : value;
+		}
+		catch (ParseException e)
+		{
+			return value;
+		}
+		catch (RuntimeException e)
+		{
+			// e.g. xref or unknown fields, or a value that is not a number
+			return value;
+		}
+	}
+
+	/**
+	 * Returns a readable representation of a key for error messages
+	 *
+	 * @param key
+	 * @return
+	 */
+	public static String toString(List<String> key)
+	{
+		StringBuilder strBuilder = new StringBuilder();
+		for (int i = 0; i < key.size(); ++i)
+		{
+			if (i > 0) strBuilder.append(',');
+			strBuilder.append(key.get(i));
+		}
+		return strBuilder.toString();
+	}
+}
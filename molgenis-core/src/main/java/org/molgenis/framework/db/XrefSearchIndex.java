@@ -0,0 +1,796 @@
+package org.molgenis.framework.db;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.log4j.Logger;
+import org.molgenis.io.TupleWriter;
+import org.molgenis.io.processor.CellProcessor;
+import org.molgenis.util.Entity;
+import org.molgenis.util.tuple.Tuple;
+
+/**
+ * In-memory n-gram index on the label fields of an entity, used to find xref
+ * entities by (part of) their label without a leading wildcard 'LIKE' query
+ * that scans the whole table.
+ * <p>
+ * Each label is indexed by its trigrams and by the bigram and trigram at its
+ * start, so both substring and prefix searches only have to verify the
+ * entities in the shortest matching posting list. Search results are ranked:
+ * exact matches first, then prefix matches, then substring matches, each in
+ * ascending label order. Matching is case insensitive.
+ * <p>
+ * Indexes are shared by all databases in the application and created lazily
+ * with {@link #getIndex(Database, Class, List)}. The mappers keep them in sync
+ * on add, update and remove: changes are buffered per transaction and only
+ * applied when the transaction commits, so other threads never find labels
+ * that were not committed. Indexes can be used by multiple threads at once.
+ */
+public class XrefSearchIndex
+{
+	private static final Logger logger = Logger.getLogger(XrefSearchIndex.class);
+
+	/** maximum number of indexes, the least recently used index is dropped */
+	public static final int MAX_INDEXES = 16;
+
+	/**
+	 * maximum number of changes buffered per transaction, the indexes changed
+	 * by larger transactions are reloaded after commit instead
+	 */
+	public static final int MAX_PENDING_CHANGES = 100000;
+
+	/** marks the start of a label, so prefixes have their own n-grams */
+	private static final char LABEL_START = '\u0002';
+	private static final int GRAM_SIZE = 3;
+
+	private static final Map<String, XrefSearchIndex> indexes = new LinkedHashMap<String, XrefSearchIndex>(16,
+			0.75f, true)
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, XrefSearchIndex> eldest)
+		{
+			return size() > MAX_INDEXES;
+		}
+	};
+
+	private final Class<? extends Entity> entityClass;
+	private final List<String> labelFields;
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/** id per document, null if the document was removed */
+	private List<Object> ids = new ArrayList<Object>();
+	/** lower case labels per document */
+	private List<String[]> labels = new ArrayList<String[]>();
+	private Map<Object, Integer> documents = new HashMap<Object, Integer>();
+	/** ascending documents per n-gram */
+	private Map<String, IntList> postings = new HashMap<String, IntList>();
+	private int nrRemoved;
+
+	/** held while loading, so an index is loaded once at a time */
+	private final Object loadLock = new Object();
+	/** guarded by this */
+	private boolean loaded;
+	/** incremented on invalidation, guarded by this */
+	private int generation;
+	/** changes received while loading, replayed after loading, guarded by this */
+	private List<Object[]> changesWhileLoading;
+
+	public XrefSearchIndex(Class<? extends Entity> entityClass, List<String> labelFields)
+	{
+		if (entityClass == null) throw new IllegalArgumentException("entity class is null");
+		if (labelFields == null || labelFields.isEmpty()) throw new IllegalArgumentException("no label fields");
+		this.entityClass = entityClass;
+		this.labelFields = Collections.unmodifiableList(new ArrayList<String>(labelFields));
+	}
+
+	/**
+	 * Returns the loaded index of the given entity and label fields, the index
+	 * is loaded from the database on first use.
+	 *
+	 * @param db
+	 * @param entityClass
+	 * @param labelFields
+	 * @return index
+	 * @throws DatabaseException
+	 */
+	public static XrefSearchIndex getIndex(Database db, Class<? extends Entity> entityClass, List<String> labelFields)
+			throws DatabaseException
+	{
+		String key = entityClass.getName() + ':' + labelFields;
+		XrefSearchIndex index;
+		synchronized (indexes)
+		{
+			index = indexes.get(key);
+			if (index == null)
+			{
+				index = new XrefSearchIndex(entityClass, labelFields);
+				indexes.put(key, index);
+			}
+		}
+		if (!index.isLoaded()) index.load(db);
+		return index;
+	}
+
+	/**
+	 * Updates the indexes of the entities after they were added or updated
+	 *
+	 * @param entities
+	 */
+	public static void entitiesChanged(List<? extends Entity> entities)
+	{
+		for (XrefSearchIndex index : getIndexes(entities))
+			index.change(entities, false);
+	}
+
+	/**
+	 * Updates the indexes of the entities after they were removed
+	 *
+	 * @param entities
+	 */
+	public static void entitiesRemoved(List<? extends Entity> entities)
+	{
+		for (XrefSearchIndex index : getIndexes(entities))
+			index.change(entities, true);
+	}
+
+	/**
+	 * Updates the indexes of the entities after they were added or updated in
+	 * the database. Inside a transaction the indexes are updated when the
+	 * transaction commits.
+	 *
+	 * @param db
+	 * @param entities
+	 */
+	public static void entitiesChanged(Database db, List<? extends Entity> entities)
+	{
+		if (entities.isEmpty()) return;
+		if (db.inTx()) getPendingChanges(db).add(entities, false);
+		else entitiesChanged(entities);
+	}
+
+	/**
+	 * Updates the indexes of the entities after they were removed from the
+	 * database. Inside a transaction the indexes are updated when the
+	 * transaction commits.
+	 *
+	 * @param db
+	 * @param entities
+	 */
+	public static void entitiesRemoved(Database db, List<? extends Entity> entities)
+	{
+		if (entities.isEmpty()) return;
+		if (db.inTx()) getPendingChanges(db).add(entities, true);
+		else entitiesRemoved(entities);
+	}
+
+	private static PendingChanges getPendingChanges(Database db)
+	{
+		PendingChanges pendingChanges = db.getTransactionListener(PendingChanges.class);
+		if (pendingChanges == null)
+		{
+			pendingChanges = new PendingChanges();
+			db.addTransactionListener(pendingChanges);
+		}
+		return pendingChanges;
+	}
+
+	/**
+	 * Invalidates all indexes, e.g. because the database was changed outside
+	 * the mappers. Indexes are reloaded on next use.
+	 */
+	public static void invalidateAll()
+	{
+		List<XrefSearchIndex> allIndexes;
+		synchronized (indexes)
+		{
+			if (indexes.isEmpty()) return;
+			allIndexes = new ArrayList<XrefSearchIndex>(indexes.values());
+		}
+		for (XrefSearchIndex index : allIndexes)
+			index.invalidate();
+	}
+
+	/**
+	 * Drops all indexes
+	 */
+	public static void clear()
+	{
+		synchronized (indexes)
+		{
+			indexes.clear();
+		}
+	}
+
+	private static List<XrefSearchIndex> getIndexes(List<? extends Entity> entities)
+	{
+		if (entities.isEmpty()) return Collections.emptyList();
+		return getIndexes(entities.get(0).getClass());
+	}
+
+	private static List<XrefSearchIndex> getIndexes(Class<? extends Entity> changedClass)
+	{
+		synchronized (indexes)
+		{
+			if (indexes.isEmpty()) return Collections.emptyList();
+			List<XrefSearchIndex> result = new ArrayList<XrefSearchIndex>();
+			for (XrefSearchIndex index : indexes.values())
+			{
+				if (index.entityClass.isAssignableFrom(changedClass)
+						|| changedClass.isAssignableFrom(index.entityClass)) result.add(index);
+			}
+			return result;
+		}
+	}
+
+	public Class<? extends Entity> getEntityClass()
+	{
+		return entityClass;
+	}
+
+	public List<String> getLabelFields()
+	{
+		return labelFields;
+	}
+
+	/**
+	 * (Re)loads the index with the labels of all entities in the database
+	 *
+	 * @param db
+	 * @throws DatabaseException
+	 */
+	public void load(Database db) throws DatabaseException
+	{
+		synchronized (loadLock)
+		{
+			// loaded by another thread while waiting
+			if (isLoaded()) return;
+
+			long start = System.currentTimeMillis();
+			final String idField = db.getMapperFor(entityClass).create().getIdField();
+			final XrefSearchIndex loadedIndex = new XrefSearchIndex(entityClass, labelFields);
+			List<String> fields = new ArrayList<String>(labelFields);
+			fields.add(0, idField);
+
+			int loadGeneration;
+			synchronized (this)
+			{
+				loadGeneration = generation;
+				changesWhileLoading = new ArrayList<Object[]>();
+			}
+			try
+			{
+				// stream the entities instead of loading them all in memory
+				db.getMapperFor(entityClass).find(new TupleWriter()
+				{
+					@Override
+					public void writeColNames(Iterable<String> colNames) throws IOException
+					{
+					}
+
+					@Override
+					public void write(Tuple tuple) throws IOException
+					{
+						Object[] labelValues = new Object[labelFields.size()];
+						for (int i = 0; i < labelValues.length; ++i)
+							labelValues[i] = tuple.get(labelFields.get(i));
+						loadedIndex.put(tuple.get(idField), labelValues);
+					}
+
+					@Override
+					public void addCellProcessor(CellProcessor cellProcessor)
+					{
+					}
+
+					@Override
+					public void close() throws IOException
+					{
+					}
+				}, fields, new QueryRule[0]);
+
+				synchronized (this)
+				{
+					replace(loadedIndex);
+					// changes during loading might not have been read, apply them again
+					for (Object[] change : changesWhileLoading)
+						apply(change);
+					loaded = generation == loadGeneration;
+				}
+			}
+			finally
+			{
+				synchronized (this)
+				{
+					changesWhileLoading = null;
+				}
+			}
+			logger.info("loaded xref search index of " + entityClass.getSimpleName() + labelFields + " with "
+					+ size() + " entities in " + (System.currentTimeMillis() - start) + " ms");
+		}
+	}
+
+	/**
+	 * Marks the index as not loaded, it is reloaded on next use
+	 */
+	public synchronized void invalidate()
+	{
+		loaded = false;
+		++generation;
+	}
+
+	public synchronized boolean isLoaded()
+	{
+		return loaded;
+	}
+
+	/**
+	 * Adds an entity to the index or replaces its labels
+	 *
+	 * @param id
+	 * @param labelValues
+	 *            values of the label fields
+	 */
+	public void put(Object id, Object... labelValues)
+	{
+		if (id == null) return;
+		if (labelValues.length != labelFields.size()) throw new IllegalArgumentException("expected "
+				+ labelFields.size() + " label values instead of " + labelValues.length);
+
+		String[] documentLabels = new String[labelValues.length];
+		for (int i = 0; i < labelValues.length; ++i)
+			documentLabels[i] = labelValues[i] != null ? labelValues[i].toString().toLowerCase() : null;
+
+		lock.writeLock().lock();
+		try
+		{
+			removeDocument(id);
+			int document = ids.size();
+			ids.add(id);
+			labels.add(documentLabels);
+			documents.put(id, document);
+			addPostings(document, documentLabels);
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	public void remove(Object id)
+	{
+		lock.writeLock().lock();
+		try
+		{
+			removeDocument(id);
+			// drop removed documents from the postings once they take most space
+			if (nrRemoved > 1000 && nrRemoved > ids.size() / 2) compact();
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return number of entities in the index
+	 */
+	public int size()
+	{
+		lock.readLock().lock();
+		try
+		{
+			return documents.size();
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Finds the ids of the entities with a label that contains the search term
+	 *
+	 * @param term
+	 *            search term, case insensitive
+	 * @param limit
+	 *            maximum number of ids
+	 * @return ids, best matches first
+	 */
+	public List<Object> search(String term, int limit)
+	{
+		if (term == null || term.isEmpty() || limit < 1) return Collections.emptyList();
+		String lowerTerm = term.toLowerCase();
+
+		lock.readLock().lock();
+		try
+		{
+			// worst match on top, so it can be replaced by a better match
+			PriorityQueue<Match> matches = new PriorityQueue<Match>(limit + 1, Collections.reverseOrder());
+
+			// exact and prefix matches
+			IntList candidates = getCandidates(LABEL_START + lowerTerm);
+			for (int i = 0; i < candidates.size; ++i)
+				addMatch(matches, candidates.values[i], lowerTerm, false, limit);
+
+			// substring matches are always worse, only look for them if needed
+			if (matches.size() < limit)
+			{
+				candidates = getCandidates(lowerTerm);
+				if (candidates != null)
+				{
+					for (int i = 0; i < candidates.size; ++i)
+						addMatch(matches, candidates.values[i], lowerTerm, true, limit);
+				}
+				else
+				{
+					// term too short for a trigram
+					for (int document = 0; document < ids.size(); ++document)
+						addMatch(matches, document, lowerTerm, true, limit);
+				}
+			}
+
+			Match[] sortedMatches = matches.toArray(new Match[matches.size()]);
+			Arrays.sort(sortedMatches);
+			List<Object> result = new ArrayList<Object>(sortedMatches.length);
+			for (Match match : sortedMatches)
+				result.add(ids.get(match.document));
+			return result;
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Finds the entities with a label that contains the search term, see
+	 * {@link #search(String, int)}
+	 *
+	 * @param db
+	 * @param term
+	 * @param limit
+	 * @return entities, best matches first
+	 * @throws DatabaseException
+	 */
+	public List<? extends Entity> find(Database db, String term, int limit) throws DatabaseException
+	{
+		List<Object> foundIds = search(term, limit);
+		if (foundIds.isEmpty()) return Collections.emptyList();
+
+		String idField = db.getMapperFor(entityClass).create().getIdField();
+		Map<Object, Entity> entities = new HashMap<Object, Entity>();
+		for (Entity entity : db.query(entityClass).in(idField, foundIds).find())
+			entities.put(entity.getIdValue(), entity);
+
+		// skip entities that changed in a transaction that was not committed
+		String lowerTerm = term.toLowerCase();
+		List<Entity> result = new ArrayList<Entity>(foundIds.size());
+		for (Object id : foundIds)
+		{
+			Entity entity = entities.get(id);
+			if (entity != null && matches(entity, lowerTerm)) result.add(entity);
+		}
+		return result;
+	}
+
+	private boolean matches(Entity entity, String lowerTerm)
+	{
+		for (String labelField : labelFields)
+		{
+			Object label = entity.get(labelField);
+			if (label != null && label.toString().toLowerCase().contains(lowerTerm)) return true;
+		}
+		return false;
+	}
+
+	private void change(List<? extends Entity> entities, boolean removed)
+	{
+		List<Object[]> changes = toChanges(entities, removed);
+		if (changes == null) invalidate();
+		else change(changes);
+	}
+
+	/**
+	 * @return changes of the index, or null if the index has to be reloaded
+	 */
+	private List<Object[]> toChanges(List<? extends Entity> entities, boolean removed)
+	{
+		// entities of a superclass might be of this class or not
+		if (!entityClass.isInstance(entities.get(0)) && !removed) return null;
+
+		List<Object[]> changes = new ArrayList<Object[]>(entities.size());
+		for (Entity entity : entities)
+		{
+			Object[] change = new Object[removed ? 1 : labelFields.size() + 1];
+			change[0] = entity.getIdValue();
+			for (int i = 1; i < change.length; ++i)
+				change[i] = entity.get(labelFields.get(i - 1));
+			changes.add(change);
+		}
+		return changes;
+	}
+
+	private void change(List<Object[]> changes)
+	{
+		synchronized (this)
+		{
+			if (changesWhileLoading != null) changesWhileLoading.addAll(changes);
+			if (!loaded) return;
+		}
+		for (Object[] change : changes)
+			apply(change);
+	}
+
+	/** change is {id} for removed entities or {id, labels...} */
+	private void apply(Object[] change)
+	{
+		if (change.length == 1) remove(change[0]);
+		else put(change[0], Arrays.copyOfRange(change, 1, change.length));
+	}
+
+	private void replace(XrefSearchIndex loadedIndex)
+	{
+		lock.writeLock().lock();
+		try
+		{
+			ids = loadedIndex.ids;
+			labels = loadedIndex.labels;
+			documents = loadedIndex.documents;
+			postings = loadedIndex.postings;
+			nrRemoved = loadedIndex.nrRemoved;
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void removeDocument(Object id)
+	{
+		Integer document = documents.remove(id);
+		if (document != null)
+		{
+			ids.set(document, null);
+			labels.set(document, null);
+			++nrRemoved;
+		}
+	}
+
+	private void addPostings(int document, String[] documentLabels)
+	{
+		for (String label : documentLabels)
+		{
+			if (label == null || label.isEmpty()) continue;
+			String gramLabel = LABEL_START + label;
+			addPosting(gramLabel.substring(0, 2), document);
+			for (int i = 0; i + GRAM_SIZE <= gramLabel.length(); ++i)
+				addPosting(gramLabel.substring(i, i + GRAM_SIZE), document);
+		}
+	}
+
+	private void addPosting(String gram, int document)
+	{
+		IntList posting = postings.get(gram);
+		if (posting == null)
+		{
+			posting = new IntList();
+			postings.put(gram, posting);
+		}
+		// documents are added in ascending order, a gram can occur twice
+		if (posting.size == 0 || posting.values[posting.size - 1] != document) posting.add(document);
+	}
+
+	private void compact()
+	{
+		List<Object> oldIds = ids;
+		List<String[]> oldLabels = labels;
+		ids = new ArrayList<Object>(documents.size());
+		labels = new ArrayList<String[]>(documents.size());
+		documents = new HashMap<Object, Integer>();
+		postings = new HashMap<String, IntList>();
+		nrRemoved = 0;
+		for (int i = 0; i < oldIds.size(); ++i)
+		{
+			Object id = oldIds.get(i);
+			if (id == null) continue;
+			int document = ids.size();
+			ids.add(id);
+			labels.add(oldLabels.get(i));
+			documents.put(id, document);
+			addPostings(document, oldLabels.get(i));
+		}
+	}
+
+	/**
+	 * Returns the shortest posting list of the n-grams of the text, an empty
+	 * list if an n-gram does not occur and null if the text has no n-grams
+	 */
+	private IntList getCandidates(String text)
+	{
+		List<String> grams = new ArrayList<String>();
+		if (text.length() < GRAM_SIZE)
+		{
+			if (text.length() == 2 && text.charAt(0) == LABEL_START) grams.add(text);
+		}
+		else
+		{
+			for (int i = 0; i + GRAM_SIZE <= text.length(); ++i)
+				grams.add(text.substring(i, i + GRAM_SIZE));
+		}
+		if (grams.isEmpty()) return null;
+
+		IntList candidates = null;
+		for (String gram : grams)
+		{
+			IntList posting = postings.get(gram);
+			if (posting == null) return new IntList();
+			if (candidates == null || posting.size < candidates.size) candidates = posting;
+		}
+		return candidates;
+	}
+
+	/**
+	 * Adds the document if it is a prefix match or, when looking for
+	 * substrings, a substring match and it ranks among the best matches
+	 */
+	private void addMatch(PriorityQueue<Match> matches, int document, String lowerTerm, boolean substrings,
+			int limit)
+	{
+		String[] documentLabels = labels.get(document);
+		if (documentLabels == null) return;
+
+		int rank = Match.NO_MATCH;
+		for (String label : documentLabels)
+		{
+			if (label == null) continue;
+			if (label.equals(lowerTerm)) rank = Math.min(rank, Match.EXACT);
+			else if (label.startsWith(lowerTerm)) rank = Math.min(rank, Match.PREFIX);
+			else if (label.contains(lowerTerm)) rank = Math.min(rank, Match.SUBSTRING);
+		}
+		// prefix matches were added before looking for substrings
+		if (substrings ? rank != Match.SUBSTRING : rank > Match.PREFIX) return;
+
+		Match match = new Match(rank, documentLabels, document);
+		if (matches.size() < limit)
+		{
+			matches.add(match);
+		}
+		else if (match.compareTo(matches.peek()) < 0)
+		{
+			matches.poll();
+			matches.add(match);
+		}
+	}
+
+	/**
+	 * Changes of one transaction, applied to the indexes on commit and
+	 * discarded on rollback
+	 */
+	private static final class PendingChanges implements TransactionListener
+	{
+		private final Map<XrefSearchIndex, List<Object[]>> changes = new LinkedHashMap<XrefSearchIndex, List<Object[]>>();
+		/** indexes to reload on commit */
+		private final Set<XrefSearchIndex> invalidated = new HashSet<XrefSearchIndex>();
+		private final Set<Class<? extends Entity>> changedClasses = new HashSet<Class<? extends Entity>>();
+		private int nrChanges;
+
+		void add(List<? extends Entity> entities, boolean removed)
+		{
+			changedClasses.add(entities.get(0).getClass());
+			for (XrefSearchIndex index : getIndexes(entities))
+			{
+				if (invalidated.contains(index)) continue;
+
+				List<Object[]> indexChanges = index.toChanges(entities, removed);
+				if (indexChanges == null || nrChanges + indexChanges.size() > MAX_PENDING_CHANGES)
+				{
+					List<Object[]> dropped = changes.remove(index);
+					if (dropped != null) nrChanges -= dropped.size();
+					invalidated.add(index);
+					continue;
+				}
+
+				List<Object[]> pendingIndexChanges = changes.get(index);
+				if (pendingIndexChanges == null)
+				{
+					pendingIndexChanges = new ArrayList<Object[]>();
+					changes.put(index, pendingIndexChanges);
+				}
+				pendingIndexChanges.addAll(indexChanges);
+				nrChanges += indexChanges.size();
+			}
+		}
+
+		@Override
+		public void afterCommit()
+		{
+			for (Map.Entry<XrefSearchIndex, List<Object[]>> entry : changes.entrySet())
+				entry.getKey().change(entry.getValue());
+			for (XrefSearchIndex index : invalidated)
+				index.invalidate();
+
+			// indexes created during the transaction might have missed its changes
+			for (Class<? extends Entity> changedClass : changedClasses)
+			{
+				for (XrefSearchIndex index : getIndexes(changedClass))
+				{
+					if (!changes.containsKey(index) && !invalidated.contains(index)) index.invalidate();
+				}
+			}
+		}
+
+		@Override
+		public void afterRollback()
+		{
+			// the indexes never saw the changes
+		}
+	}
+
+	private static final class Match implements Comparable<Match>
+	{
+		static final int EXACT = 0;
+		static final int PREFIX = 1;
+		static final int SUBSTRING = 2;
+		static final int NO_MATCH = 3;
+
+		private static final Comparator<String> LABEL_COMPARATOR = new Comparator<String>()
+		{
+			@Override
+			public int compare(String label1, String label2)
+			{
+				if (label1 == null) return label2 == null ? 0 : -1;
+				if (label2 == null) return 1;
+				return label1.compareTo(label2);
+			}
+		};
+
+		final int rank;
+		final String[] labels;
+		final int document;
+
+		Match(int rank, String[] labels, int document)
+		{
+			this.rank = rank;
+			this.labels = labels;
+			this.document = document;
+		}
+
+		@Override
+		public int compareTo(Match other)
+		{
+			if (rank != other.rank) return rank < other.rank ? -1 : 1;
+			for (int i = 0; i < labels.length; ++i)
+			{
+				int compare = LABEL_COMPARATOR.compare(labels[i], other.labels[i]);
+				if (compare != 0) return compare;
+			}
+			return document < other.document ? -1 : (document == other.document ? 0 : 1);
+		}
+	}
+
+	/** growable list of ints */
+	private static final class IntList
+	{
+		int[] values = new int[4];
+		int size;
+
+		void add(int value)
+		{
+			if (size == values.length) values = Arrays.copyOf(values, size * 2);
+			values[size++] = value;
+		}
+	}
+}
@@ -1,12 +1,17 @@
 package org.molgenis.framework.db.jdbc;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringEscapeUtils;
 import org.apache.log4j.Logger;
 import org.molgenis.fieldtypes.DecimalField;
@@ -25,8 +30,10 @@ import org.molgenis.io.TupleWriter;
 import org.molgenis.model.MolgenisModelException;
 import org.molgenis.model.elements.Field;
 import org.molgenis.util.Entity;
+import org.molgenis.util.tuple.ArrayTuple;
 import org.molgenis.util.tuple.EntityTuple;
 import org.molgenis.util.tuple.Tuple;
+import org.molgenis.util.tuple.TupleSchema;
 
 /**
  * Factory for creating SQL statements
@@ -44,38 +51,45 @@ public abstract class AbstractJDBCMapper<E extends Entity> extends AbstractMappe
 		super(database);
 	}
 
+	/**
+	 * Streams the selected entities to the writer in chunks of
+	 * {@link #BATCH_SIZE}: each chunk is read from the cursor, gets its mrefs
+	 * mapped with one query per mref field and is written and released before
+	 * the next chunk is read. Time to first byte and the number of entities in
+	 * memory therefore do not depend on the number of selected entities.
+	 * <p>
+	 * The mref queries run on the connection of the open cursor (a separate
+	 * connection would not see the uncommitted rows of the current
+	 * transaction), so the cursor can't use a driver that allows only one
+	 * active result set per connection. On MySQL this means the rows are only
+	 * fetched in portions with useCursorFetch=true in the database url,
+	 * otherwise Connector/J reads the complete result set into memory before
+	 * the first row is returned. Row by row streaming (fetch size
+	 * Integer.MIN_VALUE) is not supported, the mref queries would fail with
+	 * 'Streaming result set ... is still active'.
+	 */
 	@Override
 	public void find(TupleWriter writer, List<String> fieldsToExport, QueryRule[] rules) throws DatabaseException
 	{
+		EntityCursor cursor = null;
 		try
 		{
 			// streaming result!!!!
-			List<Tuple> rsList = executeSelect(rules);
+			cursor = executeSelect(rules);
 
 			// transform result set in writer
-			E entity = create();
-			if (writer != null) writer.writeColNames(new EntityTuple(entity).getColNames());
-			writer.writeColNames(fieldsToExport);
+			writer.writeColNames(fieldsToExport != null ? fieldsToExport : new EntityTuple(create()).getColNames());
 			int i = 0;
-			List<E> entityBatch = new ArrayList<E>();
-			for (Tuple row : rsList)
+			List<E> entityBatch = createList(BATCH_SIZE);
+			for (E entity = cursor.next(); entity != null; entity = cursor.next())
 			{
-				entity = create();
-				entity.set(row);
 				entityBatch.add(entity);
 				i++;
 
+				if (entityBatch.size() == BATCH_SIZE) writeBatch(writer, entityBatch);
 			}
 			// write remaining
-			// load mrefs
-			logger.debug("*** mapMrefs -> LEFTOVERS"); // program does NOT crash
-														// after this
-			mapMrefs(entityBatch);
-			for (E e : entityBatch)
-			{
-				writer.write(new EntityTuple(e));
-			}
-			entityBatch.clear();
+			writeBatch(writer, entityBatch);
 			writer.close();
 
 			logger.debug("find(" + create().getClass().getSimpleName() + ", TupleWriter, " + Arrays.asList(rules)
@@ -85,6 +99,27 @@ public abstract class AbstractJDBCMapper<E extends Entity> extends AbstractMappe
 		{
 			throw new DatabaseException(e);
 		}
+		finally
+		{
+			IOUtils.closeQuietly(cursor);
+		}
+	}
+
+	/**
+	 * Helper method for find(TupleWriter,...): loads the mrefs of a batch of
+	 * entities, writes the entities and clears the batch.
+	 */
+	private void writeBatch(TupleWriter writer, List<E> entityBatch) throws DatabaseException, IOException
+	{
+		if (entityBatch.isEmpty()) return;
+
+		// load mrefs
+		mapMrefs(entityBatch);
+		for (E e : entityBatch)
+		{
+			writer.write(new EntityTuple(e));
+		}
+		entityBatch.clear();
 	}
 
 	/**
@@ -129,6 +164,25 @@ public abstract class AbstractJDBCMapper<E extends Entity> extends AbstractMappe
 		}
 	}
 
+	/**
+	 * Helper method for executing the batch of a statement.
+	 * 
+	 * @param stmt
+	 * @return number of updated rows
+	 * @throws SQLException
+	 */
+	public static int executeBatch(Statement stmt) throws SQLException
+	{
+		int updatedRows = 0;
+		for (int count : stmt.executeBatch())
+		{
+			// some drivers don't report the row count per statement
+			if (count >= 0) updatedRows += count;
+			else if (count == Statement.SUCCESS_NO_INFO) updatedRows++;
+		}
+		return updatedRows;
+	}
+
 	/**
 	 * maps {@link org.molgenis.framework.db.Database#find(Class, QueryRule[])}
 	 * 
@@ -210,15 +264,14 @@ public abstract class AbstractJDBCMapper<E extends Entity> extends AbstractMappe
 	@Override
 	public List<E> find(QueryRule... rules) throws DatabaseException
 	{
+		EntityCursor cursor = null;
 		try
 		{
-			List<Tuple> rsList = executeSelect(rules);
+			cursor = executeSelect(rules);
 			// transform result set in entity list
 			List<E> entities = createList(10);
-			for (Tuple row : rsList)
+			for (E entity = cursor.next(); entity != null; entity = cursor.next())
 			{
-				E entity = create();
-				entity.set(row);
 				entities.add(entity);
 			}
 
@@ -233,19 +286,66 @@ public abstract class AbstractJDBCMapper<E extends Entity> extends AbstractMappe
 			e.printStackTrace();
 			throw new DatabaseException(e);
 		}
+		finally
+		{
+			IOUtils.closeQuietly(cursor);
+		}
 	}
 
 	/**
-	 * Helper function of various find functions.
+	 * Creates a binder for the rows of a find query of this mapper. Generated
+	 * mappers bind the columns to the entity fields by position, this default
+	 * implementation binds each row via {@link Entity#set(Tuple)}.
+	 * 
+	 * @param metadata
+	 *            metadata of the result set of the find query
+	 * @throws SQLException
+	 */
+	protected RowBinder<E> createRowBinder(ResultSetMetaData metadata) throws SQLException
+	{
+		final int nrCols = metadata.getColumnCount();
+		String[] labels = new String[nrCols];
+		for (int i = 0; i < nrCols; ++i)
+			labels[i] = metadata.getColumnLabel(i + 1);
+		List<String> colNames = new ArrayList<String>(nrCols);
+		final int[] schemaCols = ResultSetTupleReader.toSchemaCols(labels, colNames);
+		final TupleSchema schema = new TupleSchema(colNames);
+
+		return new RowBinder<E>(metadata)
+		{
+			@Override
+			public void bind(ResultSet rs, E entity) throws SQLException
+			{
+				Object[] values = new Object[schema.getNrCols()];
+				for (int i = 0; i < nrCols; ++i)
+					values[schemaCols[i]] = rs.getObject(i + 1);
+				ArrayTuple row = new ArrayTuple(schema, values);
+				try
+				{
+					entity.set(row);
+				}
+				catch (SQLException e)
+				{
+					throw e;
+				}
+				catch (Exception e)
+				{
+					throw new SQLException(e);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Helper function of various find functions. Returns a cursor that binds
+	 * the selected rows to entities, the caller is responsible for closing the
+	 * cursor.
 	 * 
-	 * @param <E>
-	 * @param klazz
 	 * @param rules
 	 * @return
 	 * @throws DatabaseException
-	 * @throws SQLException
 	 */
-	private List<Tuple> executeSelect(QueryRule... rules) throws DatabaseException, SQLException
+	private EntityCursor executeSelect(QueryRule... rules) throws DatabaseException
 	{
 		String sql = createFindSqlInclRules(rules);
 		if (rules != null)
@@ -262,7 +362,73 @@ public abstract class AbstractJDBCMapper<E extends Entity> extends AbstractMappe
 			}
 		}
 		// execute the query
-		return getDatabase().sql(sql);
+		if (logger.isDebugEnabled()) logger.debug("executeQuery: " + sql);
+		try
+		{
+			return new EntityCursor(getDatabase().getConnection(), sql);
+		}
+		catch (SQLException e)
+		{
+			throw new DatabaseException(e);
+		}
+	}
+
+	/**
+	 * Forward-only, read-only cursor over the entities selected by a find
+	 * query. The rows are bound to new entities by the {@link RowBinder} of
+	 * this mapper, so no intermediate tuples are created.
+	 */
+	private class EntityCursor implements Closeable
+	{
+		private Statement stmt;
+		private ResultSet rs;
+		private final RowBinder<E> binder;
+
+		EntityCursor(Connection conn, String sql) throws SQLException
+		{
+			try
+			{
+				this.stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+				this.stmt.setFetchSize(ResultSetTupleReader.DEFAULT_FETCH_SIZE);
+				this.rs = stmt.executeQuery(sql);
+				this.binder = createRowBinder(rs.getMetaData());
+			}
+			catch (SQLException e)
+			{
+				IOUtils.closeQuietly(this);
+				throw e;
+			}
+		}
+
+		/**
+		 * @return the entity of the next row or null if there are no more rows
+		 */
+		E next() throws SQLException
+		{
+			if (rs == null || !rs.next()) return null;
+			E entity = create();
+			binder.bind(rs, entity);
+			return entity;
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			try
+			{
+				if (rs != null) rs.close();
+				if (stmt != null) stmt.close();
+			}
+			catch (SQLException e)
+			{
+				throw new IOException(e);
+			}
+			finally
+			{
+				rs = null;
+				stmt = null;
+			}
+		}
 	}
 
 	/**
@@ -199,6 +199,7 @@ public class JDBCDatabase extends AbstractDatabase
 			}
 			connection.setAutoCommit(false);
 			inTransaction = true;
+			getXrefLabelCache().clear();
 			logger.debug("begin transaction");
 		}
 		catch (SQLException sqle)
@@ -217,10 +218,12 @@ public class JDBCDatabase extends AbstractDatabase
 	@Override
 	public void commitTx() throws DatabaseException
 	{
+		boolean committed = false;
 		try
 		{
 			if (!inTransaction) throw new DatabaseException("commitTx failed: no active transaction");
 			connection.commit();
+			committed = true;
 			connection.setAutoCommit(true);
 			inTransaction = false;
 			// FIXME in case of hsqldb we need to checkpoint
@@ -235,7 +238,9 @@ public class JDBCDatabase extends AbstractDatabase
 		}
 		finally
 		{
+			getXrefLabelCache().clear();
 			closeConnection();
+			transactionEnded(committed);
 		}
 	}
 
@@ -257,7 +262,9 @@ public class JDBCDatabase extends AbstractDatabase
 		}
 		finally
 		{
+			getXrefLabelCache().clear();
 			closeConnection();
+			transactionEnded(false);
 		}
 	}
 
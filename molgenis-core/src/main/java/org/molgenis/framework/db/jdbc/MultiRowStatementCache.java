@@ -0,0 +1,145 @@
+package org.molgenis.framework.db.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Cache of parameterized multi-row statements, e.g. INSERT INTO x (a,b) VALUES
+ * (?,?),(?,?),... Instead of building one SQL string per batch, a statement is
+ * prepared once for each row count bucket (a power of two) and reused for every
+ * batch on the same connection. This avoids escaping and concatenating every
+ * value and allows the database to reuse its plan.
+ * <p>
+ * Statements are bound to the connection they were prepared on; when another
+ * connection is used the cached statements are closed and prepared again.
+ */
+public abstract class MultiRowStatementCache
+{
+	/** maximum number of rows in one statement */
+	public static final int MAX_ROWS = 512;
+
+	/** maximum number of parameters in one statement (MySQL limit) */
+	private static final int MAX_PARAMS = 65535;
+
+	private final int autoGeneratedKeys;
+	private final int maxRows;
+	private final Map<Integer, PreparedStatement> statements = new HashMap<Integer, PreparedStatement>();
+	private Connection connection;
+
+	/**
+	 * @param nrParamsPerRow
+	 *            number of parameters that are bound for each row
+	 * @param autoGeneratedKeys
+	 *            Statement.RETURN_GENERATED_KEYS or
+	 *            Statement.NO_GENERATED_KEYS
+	 */
+	public MultiRowStatementCache(int nrParamsPerRow, int autoGeneratedKeys)
+	{
+		this.autoGeneratedKeys = autoGeneratedKeys;
+		int maxRows = MAX_ROWS;
+		while (maxRows > 1 && maxRows * nrParamsPerRow > MAX_PARAMS)
+			maxRows /= 2;
+		this.maxRows = maxRows;
+	}
+
+	/**
+	 * Create the SQL for a statement that handles the given number of rows
+	 *
+	 * @param nrRows
+	 * @return
+	 */
+	protected abstract String createSql(int nrRows);
+
+	/**
+	 * Returns the number of rows of the largest statement that fits in the
+	 * remaining number of rows. Handling a list of n rows therefore takes at
+	 * most n / MAX_ROWS + log2(MAX_ROWS) statements.
+	 *
+	 * @param nrRemainingRows
+	 * @return
+	 */
+	public int getBucketSize(int nrRemainingRows)
+	{
+		if (nrRemainingRows < 1) throw new IllegalArgumentException("number of rows must be > 0");
+		return Integer.highestOneBit(Math.min(nrRemainingRows, maxRows));
+	}
+
+	/**
+	 * Returns the prepared statement for the given bucket size
+	 *
+	 * @param conn
+	 * @param nrRows
+	 *            bucket size as returned by {@link #getBucketSize(int)}
+	 * @return
+	 * @throws SQLException
+	 */
+	public synchronized PreparedStatement getStatement(Connection conn, int nrRows) throws SQLException
+	{
+		if (conn != connection || conn.isClosed())
+		{
+			close();
+			connection = conn;
+		}
+
+		PreparedStatement pstmt = statements.get(nrRows);
+		if (pstmt == null)
+		{
+			pstmt = conn.prepareStatement(createSql(nrRows), autoGeneratedKeys);
+			statements.put(nrRows, pstmt);
+		}
+		else
+		{
+			pstmt.clearParameters();
+		}
+		return pstmt;
+	}
+
+	/**
+	 * Closes all cached statements
+	 */
+	public synchronized void close()
+	{
+		for (PreparedStatement pstmt : statements.values())
+			JDBCDatabase.closeStatement(pstmt);
+		statements.clear();
+		connection = null;
+	}
+
+	/**
+	 * Helper method to repeat a row of placeholders, e.g. values("(?,?)", 2)
+	 * returns "(?,?),(?,?)"
+	 *
+	 * @param row
+	 * @param nrRows
+	 * @return
+	 */
+	public static String values(String row, int nrRows)
+	{
+		StringBuilder strBuilder = new StringBuilder(nrRows * (row.length() + 1));
+		for (int i = 0; i < nrRows; ++i)
+		{
+			if (i > 0) strBuilder.append(',');
+			strBuilder.append(row);
+		}
+		return strBuilder.toString();
+	}
+
+	/**
+	 * Helper method to bind a value that can be null
+	 *
+	 * @param pstmt
+	 * @param index
+	 * @param value
+	 * @throws SQLException
+	 */
+	public static void setObject(PreparedStatement pstmt, int index, Object value) throws SQLException
+	{
+		if (value == null) pstmt.setNull(index, Types.NULL);
+		else
+			pstmt.setObject(index, value);
+	}
+}
@@ -0,0 +1,240 @@
+package org.molgenis.framework.db.jdbc;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.apache.log4j.Logger;
+import org.molgenis.io.TupleReader;
+import org.molgenis.io.processor.AbstractCellProcessor;
+import org.molgenis.io.processor.CellProcessor;
+import org.molgenis.util.tuple.ArrayTuple;
+import org.molgenis.util.tuple.Tuple;
+import org.molgenis.util.tuple.TupleSchema;
+
+/**
+ * Streams the rows of a SQL query as {@link Tuple}s from a forward-only,
+ * read-only cursor. Column labels are resolved once from the
+ * {@link ResultSetMetaData} into a {@link TupleSchema} that is shared by all
+ * rows, column names are case insensitive. If several columns have the same
+ * label (e.g. the id columns of joined tables) the tuples contain the value of
+ * the last of these columns.
+ * <p>
+ * The statement and result set are released when the last row has been read
+ * or when the reader is closed, whatever comes first. Note that some drivers
+ * only honor the fetch size under certain conditions (e.g. PostgreSQL requires
+ * autocommit to be off, MySQL requires useCursorFetch=true), otherwise the
+ * driver buffers the result client side.
+ */
+public class ResultSetTupleReader implements TupleReader
+{
+	private static final Logger logger = Logger.getLogger(ResultSetTupleReader.class);
+
+	/** number of rows fetched from the database in one round trip */
+	public static final int DEFAULT_FETCH_SIZE = 1000;
+
+	private Statement stmt;
+	private ResultSet rs;
+	/** lower case column labels */
+	private final TupleSchema schema;
+	private final int nrCols;
+	/** schema column of each result set column */
+	private final int[] schemaCols;
+
+	/** process cells after reading */
+	private List<CellProcessor> cellProcessors;
+
+	public ResultSetTupleReader(Connection conn, String sql) throws SQLException
+	{
+		this(conn, sql, DEFAULT_FETCH_SIZE);
+	}
+
+	public ResultSetTupleReader(Connection conn, String sql, int fetchSize) throws SQLException
+	{
+		if (conn == null) throw new IllegalArgumentException("connection is null");
+		if (sql == null) throw new IllegalArgumentException("sql is null");
+
+		try
+		{
+			this.stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			this.stmt.setFetchSize(fetchSize);
+			this.rs = stmt.executeQuery(sql);
+
+			// create column header index once and reuse
+			ResultSetMetaData metadata = rs.getMetaData();
+			this.nrCols = metadata.getColumnCount();
+			String[] labels = new String[nrCols];
+			for (int i = 0; i < nrCols; ++i)
+			{
+				labels[i] = metadata.getColumnLabel(i + 1).toLowerCase();
+			}
+			List<String> colNames = new ArrayList<String>(nrCols);
+			this.schemaCols = toSchemaCols(labels, colNames);
+			this.schema = new TupleSchema(colNames);
+		}
+		catch (SQLException e)
+		{
+			closeQuietly();
+			throw e;
+		}
+	}
+
+	@Override
+	public boolean hasColNames()
+	{
+		return true;
+	}
+
+	@Override
+	public Iterator<String> colNamesIterator() throws IOException
+	{
+		return schema.getColNames().iterator();
+	}
+
+	/**
+	 * Returns an iterator over the remaining rows of the cursor. The cursor is
+	 * forward-only, so rows consumed by a previous iterator are not returned
+	 * again.
+	 */
+	@Override
+	public Iterator<Tuple> iterator()
+	{
+		return new Iterator<Tuple>()
+		{
+			private Tuple next;
+			private boolean getNext = true;
+
+			@Override
+			public boolean hasNext()
+			{
+				return get() != null;
+			}
+
+			@Override
+			public Tuple next()
+			{
+				Tuple tuple = get();
+				if (tuple == null) throw new NoSuchElementException();
+				getNext = true;
+				return tuple;
+			}
+
+			private Tuple get()
+			{
+				if (getNext)
+				{
+					try
+					{
+						if (rs != null && rs.next())
+						{
+							Object[] values = new Object[schema.getNrCols()];
+							for (int i = 0; i < nrCols; ++i)
+							{
+								Object value = rs.getObject(i + 1);
+								if (cellProcessors != null && (value == null || value instanceof String))
+								{
+									value = AbstractCellProcessor.processCell((String) value, false, cellProcessors);
+								}
+								values[schemaCols[i]] = value;
+							}
+							next = new ArrayTuple(schema, values);
+						}
+						else
+						{
+							next = null;
+							closeQuietly();
+						}
+						getNext = false;
+					}
+					catch (SQLException e)
+					{
+						closeQuietly();
+						throw new RuntimeException(e);
+					}
+				}
+				return next;
+			}
+
+			@Override
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	@Override
+	public void addCellProcessor(CellProcessor cellProcessor)
+	{
+		if (cellProcessors == null) cellProcessors = new ArrayList<CellProcessor>();
+		cellProcessors.add(cellProcessor);
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			if (rs != null) rs.close();
+			if (stmt != null) stmt.close();
+		}
+		catch (SQLException e)
+		{
+			throw new IOException(e);
+		}
+		finally
+		{
+			rs = null;
+			stmt = null;
+		}
+	}
+
+	private void closeQuietly()
+	{
+		try
+		{
+			close();
+		}
+		catch (IOException e)
+		{
+			logger.warn("closing result set failed: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Maps the columns of a result set to the columns of a schema without
+	 * duplicate labels. Like in a map the last column with a label wins.
+	 * 
+	 * @param labels
+	 *            column labels of the result set
+	 * @param colNames
+	 *            receives the distinct labels in order of first occurrence
+	 * @return schema column of each result set column
+	 */
+	static int[] toSchemaCols(String[] labels, List<String> colNames)
+	{
+		Map<String, Integer> colIndex = new HashMap<String, Integer>();
+		int[] schemaCols = new int[labels.length];
+		for (int i = 0; i < labels.length; ++i)
+		{
+			Integer col = colIndex.get(labels[i]);
+			if (col == null)
+			{
+				col = colNames.size();
+				colIndex.put(labels[i], col);
+				colNames.add(labels[i]);
+			}
+			schemaCols[i] = col;
+		}
+		return schemaCols;
+	}
+}
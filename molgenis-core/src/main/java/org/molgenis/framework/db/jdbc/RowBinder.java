@@ -0,0 +1,114 @@
+package org.molgenis.framework.db.jdbc;
+
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.molgenis.util.Entity;
+import org.molgenis.util.ListEscapeUtils;
+
+/**
+ * Binds the current row of a {@link ResultSet} to an entity. A binder is
+ * created per query: the column ordinals of the entity fields are resolved
+ * once from the {@link ResultSetMetaData}, after which each row is bound with
+ * typed getters without any lookups on column name. Generated mappers create
+ * binders in {@link AbstractJDBCMapper#createRowBinder(ResultSetMetaData)}.
+ * <p>
+ * The get methods return null for SQL NULL values and convert values the same
+ * way as {@link org.molgenis.util.tuple.Tuple} does.
+ */
+public abstract class RowBinder<E extends Entity>
+{
+	/** lower case column label to column ordinal (one based) */
+	private final Map<String, Integer> ordinals;
+
+	protected RowBinder(ResultSetMetaData metadata) throws SQLException
+	{
+		int nrCols = metadata.getColumnCount();
+		this.ordinals = new HashMap<String, Integer>((int) (nrCols / 0.75) + 1);
+		for (int i = nrCols; i > 0; --i)
+		{
+			// first column wins if labels are duplicated
+			ordinals.put(metadata.getColumnLabel(i).toLowerCase(), i);
+		}
+	}
+
+	/**
+	 * Sets the entity fields from the current row
+	 */
+	public abstract void bind(ResultSet rs, E entity) throws SQLException;
+
+	/**
+	 * @param colNames
+	 *            column names in order of preference, case insensitive
+	 * @return ordinal of the first column name in the result set or 0 if none
+	 *         of the columns is in the result set
+	 */
+	protected int ordinal(String... colNames)
+	{
+		for (String colName : colNames)
+		{
+			Integer ordinal = ordinals.get(colName.toLowerCase());
+			if (ordinal != null) return ordinal;
+		}
+		return 0;
+	}
+
+	protected static String getString(ResultSet rs, int ordinal) throws SQLException
+	{
+		return rs.getString(ordinal);
+	}
+
+	protected static Integer getInt(ResultSet rs, int ordinal) throws SQLException
+	{
+		int value = rs.getInt(ordinal);
+		return rs.wasNull() ? null : value;
+	}
+
+	protected static Long getLong(ResultSet rs, int ordinal) throws SQLException
+	{
+		long value = rs.getLong(ordinal);
+		return rs.wasNull() ? null : value;
+	}
+
+	protected static Double getDouble(ResultSet rs, int ordinal) throws SQLException
+	{
+		double value = rs.getDouble(ordinal);
+		return rs.wasNull() ? null : value;
+	}
+
+	protected static Boolean getBoolean(ResultSet rs, int ordinal) throws SQLException
+	{
+		// booleans are stored as integers or chars by some databases
+		Object value = rs.getObject(ordinal);
+		if (value == null) return null;
+		else if (value instanceof Boolean) return (Boolean) value;
+		else if (value instanceof Number) return ((Number) value).intValue() == 1;
+		else
+		{
+			String str = value.toString();
+			return str.equalsIgnoreCase("true") || str.equalsIgnoreCase("1");
+		}
+	}
+
+	protected static Date getDate(ResultSet rs, int ordinal) throws SQLException
+	{
+		return rs.getDate(ordinal);
+	}
+
+	protected static Timestamp getTimestamp(ResultSet rs, int ordinal) throws SQLException
+	{
+		return rs.getTimestamp(ordinal);
+	}
+
+	protected static List<String> getList(ResultSet rs, int ordinal) throws SQLException
+	{
+		String value = rs.getString(ordinal);
+		return value != null ? ListEscapeUtils.toList(value) : null;
+	}
+}
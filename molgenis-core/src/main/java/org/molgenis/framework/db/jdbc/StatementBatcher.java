@@ -0,0 +1,140 @@
+package org.molgenis.framework.db.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import org.molgenis.util.Entity;
+
+/**
+ * Executes a prepared statement for each entity of a list in JDBC batches of
+ * at most batchSize rows. Generated mappers bind the parameters of an entity
+ * in {@link #bind(PreparedStatement, Entity)} and assign auto increment keys in
+ * {@link #setKey(Entity, int)}.
+ * <p>
+ * Keys are read from {@link Statement#getGeneratedKeys()} after each batch.
+ * HSQLDB 1.8 does not return generated keys: its rows are executed one at a
+ * time and the key of each row is read with CALL IDENTITY(), because the
+ * identities of the rows of one batch are not necessarily consecutive.
+ */
+public abstract class StatementBatcher<E extends Entity>
+{
+	/** how the keys of added rows are retrieved */
+	public enum Keys
+	{
+		/** the statement does not generate keys */
+		NONE,
+		/**
+		 * read from {@link Statement#getGeneratedKeys()}, the statement must be
+		 * prepared with {@link Statement#RETURN_GENERATED_KEYS}
+		 */
+		GENERATED_KEYS,
+		/** read with CALL IDENTITY() after each row (HSQLDB) */
+		IDENTITY
+	}
+
+	private final int batchSize;
+	private final Keys keys;
+
+	protected StatementBatcher(int batchSize, Keys keys)
+	{
+		if (batchSize <= 0) throw new IllegalArgumentException("batchSize must be > 0");
+		if (keys == null) throw new IllegalArgumentException("keys is null");
+		this.batchSize = batchSize;
+		this.keys = keys;
+	}
+
+	/**
+	 * Sets the parameters of the statement to the values of the entity
+	 */
+	public abstract void bind(PreparedStatement pstmt, E entity) throws SQLException;
+
+	/**
+	 * Sets the auto increment key of an added entity, only called if keys are
+	 * retrieved
+	 */
+	protected void setKey(E entity, int key)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * @return number of updated rows
+	 */
+	public int execute(Connection conn, PreparedStatement pstmt, List<? extends E> entities) throws SQLException
+	{
+		if (keys == Keys.IDENTITY) return executeRows(conn, pstmt, entities);
+
+		int updatedRows = 0;
+		int batchStart = 0;
+		for (int i = 0; i < entities.size(); ++i)
+		{
+			bind(pstmt, entities.get(i));
+			pstmt.addBatch();
+
+			// send the batch when full or at the end of the list
+			if (i + 1 - batchStart == batchSize || i + 1 == entities.size())
+			{
+				updatedRows += AbstractJDBCMapper.executeBatch(pstmt);
+				if (keys == Keys.GENERATED_KEYS) setGeneratedKeys(pstmt, entities, batchStart, i + 1);
+				batchStart = i + 1;
+			}
+		}
+		return updatedRows;
+	}
+
+	private int executeRows(Connection conn, PreparedStatement pstmt, List<? extends E> entities)
+			throws SQLException
+	{
+		int updatedRows = 0;
+		Statement keyStmt = conn.createStatement();
+		try
+		{
+			for (E entity : entities)
+			{
+				bind(pstmt, entity);
+				updatedRows += pstmt.executeUpdate();
+
+				ResultSet rs = keyStmt.executeQuery("CALL IDENTITY()");
+				try
+				{
+					if (!rs.next()) throw new SQLException("no identity for added row");
+					setKey(entity, rs.getInt(1));
+				}
+				finally
+				{
+					rs.close();
+				}
+			}
+		}
+		finally
+		{
+			JDBCDatabase.closeStatement(keyStmt);
+		}
+		return updatedRows;
+	}
+
+	private void setGeneratedKeys(Statement stmt, List<? extends E> entities, int fromIndex, int toIndex)
+			throws SQLException
+	{
+		ResultSet rs = stmt.getGeneratedKeys();
+		try
+		{
+			int i = fromIndex;
+			while (rs.next())
+			{
+				if (i == toIndex) throw new SQLException("more generated keys than added rows");
+				setKey(entities.get(i++), rs.getInt(1));
+			}
+			if (i != toIndex) throw new SQLException("generated keys for " + (i - fromIndex) + " of "
+					+ (toIndex - fromIndex) + " added rows");
+		}
+		finally
+		{
+			rs.close();
+		}
+	}
+}
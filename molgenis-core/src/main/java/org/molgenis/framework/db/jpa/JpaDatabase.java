@@ -132,6 +132,7 @@ public class JpaDatabase extends AbstractDatabase
 			if (em.getTransaction() != null && !em.getTransaction().isActive())
 			{
 				em.getTransaction().begin();
+				getXrefLabelCache().clear();
 			}
 		}
 		catch (Exception e)
@@ -149,17 +150,24 @@ public class JpaDatabase extends AbstractDatabase
 	@Override
 	public void commitTx() throws DatabaseException
 	{
+		boolean committed = false;
 		try
 		{
 			if (em.getTransaction() != null && em.getTransaction().isActive())
 			{
 				em.getTransaction().commit();
 			}
+			committed = true;
 		}
 		catch (Exception e)
 		{
 			throw new DatabaseException(e);
 		}
+		finally
+		{
+			getXrefLabelCache().clear();
+			transactionEnded(committed);
+		}
 	}
 
 	@Override
@@ -176,6 +184,11 @@ public class JpaDatabase extends AbstractDatabase
 		{
 			throw new DatabaseException(e);
 		}
+		finally
+		{
+			getXrefLabelCache().clear();
+			transactionEnded(false);
+		}
 	}
 
 	@Override
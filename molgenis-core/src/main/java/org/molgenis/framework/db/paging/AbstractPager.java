@@ -207,6 +207,12 @@ public abstract class AbstractPager<E extends Entity> implements DatabasePager<E
 		if (dirty) this.pagingState = State.REFRESH;
 	}
 
+	@Override
+	public void invalidate()
+	{
+		this.pagingState = State.REFRESH;
+	}
+
 	@Override
 	public void setOffset(int offset)
 	{
@@ -17,7 +17,7 @@ import org.molgenis.util.Entity;
  * safely and efficiently on disk. The DatabasePager takes care of (re)querying
  * the Database.
  * <p>
- * TODO: add a method to go to a certain page.
+ * Use {@link KeysetPager} to page large tables.
  * 
  * @param <E>
  *            the specific entity type to be paged.
@@ -219,4 +219,10 @@ public interface DatabasePager<E extends Entity> extends Serializable
 	 * @param dirty
 	 */
 	void setDirty(boolean dirty);
+
+	/**
+	 * Discard any cached count and positions, e.g. after entities were added or
+	 * removed. Forces reload.
+	 */
+	void invalidate();
 }
\ No newline at end of file
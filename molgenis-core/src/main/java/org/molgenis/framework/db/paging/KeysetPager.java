@@ -0,0 +1,429 @@
+package org.molgenis.framework.db.paging;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.log4j.Logger;
+import org.molgenis.framework.db.Database;
+import org.molgenis.framework.db.DatabaseException;
+import org.molgenis.framework.db.QueryRule;
+import org.molgenis.framework.db.QueryRule.Operator;
+import org.molgenis.model.MolgenisModelException;
+import org.molgenis.model.elements.Field;
+import org.molgenis.model.elements.Model;
+import org.molgenis.util.Entity;
+
+/**
+ * Page a database using keyset (seek) predicates instead of offsets.
+ * <p>
+ * Entities are ordered by (orderByField, primary key). For every page that is
+ * loaded the keys of its first and last entity are remembered as bookmarks. A
+ * page is retrieved by seeking from the nearest bookmark, e.g. 'orderByField >
+ * x OR (orderByField = x AND id >= y)', so paging forward or backward costs the
+ * same for page 10,000 as for page 1 given that the fields are indexed. Jumps
+ * to pages far from any bookmark seek from the nearest bookmark, the first or
+ * the last entity and skip the remaining rows with an offset.
+ * <p>
+ * Seek predicates can not compare null values, so entities ordered by a
+ * nillable field are paged with offsets from the first or the last entity.
+ * <p>
+ * The count is cached until the filters or ordering change,
+ * {@link #invalidate()} or {@link #invalidateCount()} is called or the count
+ * is older than {@link #getCountMaxAge()} milliseconds. Bookmarks are
+ * discarded when a reloaded count differs, because entities added or removed
+ * by others shift the offsets of the bookmarks.
+ *
+ * @param <E>
+ */
+public class KeysetPager<E extends Entity> extends AbstractPager<E>
+{
+	private static final long serialVersionUID = -6014328564683526361L;
+	private static final Logger logger = Logger.getLogger(KeysetPager.class);
+
+	/** default maximum age of a cached count in milliseconds */
+	public static final long DEFAULT_COUNT_MAX_AGE = 60000;
+
+	/** maximum number of remembered bookmarks */
+	private static final int MAX_BOOKMARKS = 1000;
+
+	/** primary key, used to order entities with equal orderByField values */
+	private final String primaryKeyField;
+
+	/** row offset to key (orderByField value, primary key value) */
+	private final TreeMap<Integer, Object[]> bookmarks = new TreeMap<Integer, Object[]>();
+
+	/** filters and ordering the bookmarks and count belong to */
+	private List<Object> bookmarksState;
+
+	/** whether to page entities of subclasses as well */
+	private boolean includeSubclasses = false;
+
+	/** whether the order by field can be null, null if not yet known */
+	private Boolean orderByNillable;
+
+	private boolean countValid = false;
+	private long countTime;
+	private long countMaxAge = DEFAULT_COUNT_MAX_AGE;
+
+	/**
+	 * @param entityClass
+	 *            class of the entity to be paged
+	 * @param defaultOrderByField
+	 *            name of field that will be used to order database entities by.
+	 */
+	public KeysetPager(Class<E> entityClass, String defaultOrderByField)
+	{
+		this(entityClass, defaultOrderByField, newInstance(entityClass).getIdField());
+	}
+
+	/**
+	 * @param entityClass
+	 *            class of the entity to be paged
+	 * @param defaultOrderByField
+	 *            name of field that will be used to order database entities by.
+	 * @param primaryKeyField
+	 *            the primary key of the entity (must be unique and indexed)
+	 */
+	public KeysetPager(Class<E> entityClass, String defaultOrderByField, String primaryKeyField)
+	{
+		super(entityClass, defaultOrderByField);
+		if (primaryKeyField == null) throw new IllegalArgumentException("primaryKeyField is null");
+		this.primaryKeyField = primaryKeyField;
+		// ensure it is loaded on first use
+		this.pagingState = State.REFRESH;
+	}
+
+	/**
+	 * Pager ordered by primary key by default
+	 *
+	 * @param entityClass
+	 *            class of the entity to be paged
+	 */
+	public KeysetPager(Class<E> entityClass)
+	{
+		this(entityClass, newInstance(entityClass).getIdField());
+	}
+
+	public String getPrimaryKeyField()
+	{
+		return primaryKeyField;
+	}
+
+	public boolean isIncludeSubclasses()
+	{
+		return includeSubclasses;
+	}
+
+	/**
+	 * @param includeSubclasses
+	 *            whether to page entities of subclasses as well, default false
+	 */
+	public void setIncludeSubclasses(boolean includeSubclasses)
+	{
+		if (this.includeSubclasses != includeSubclasses)
+		{
+			this.includeSubclasses = includeSubclasses;
+			invalidate();
+		}
+	}
+
+	public long getCountMaxAge()
+	{
+		return countMaxAge;
+	}
+
+	/**
+	 * @param countMaxAge
+	 *            maximum age of a cached count in milliseconds, 0 to count on
+	 *            every refresh
+	 */
+	public void setCountMaxAge(long countMaxAge)
+	{
+		this.countMaxAge = countMaxAge;
+	}
+
+	/**
+	 * Discard the cached count and bookmarks, e.g. after entities were added or
+	 * removed. The page is reloaded on next use.
+	 */
+	@Override
+	public void invalidate()
+	{
+		super.invalidate();
+		countValid = false;
+		bookmarks.clear();
+	}
+
+	/**
+	 * Discard the cached count, the count is reloaded on next use and the
+	 * bookmarks are discarded if the count changed
+	 */
+	public void invalidateCount()
+	{
+		countValid = false;
+	}
+
+	/**
+	 * Returns the number of entities after filtering. Unlike
+	 * {@link #getPage(Database)} this does not load the page.
+	 */
+	@Override
+	public int getCount(Database db) throws DatabaseException
+	{
+		validateState();
+		reloadCountIfNeeded(db);
+		return count;
+	}
+
+	@Override
+	public void refresh(Database db) throws DatabaseException
+	{
+		// filters and ordering can be changed without changing the state
+		if (validateState() && this.pagingState == State.UPTODATE) this.pagingState = State.REFRESH;
+		if (this.pagingState == State.UPTODATE) return;
+
+		reloadCountIfNeeded(db);
+
+		// correct current offset to be in line with limit
+		offset = (offset / limit) * limit;
+
+		// handle state transition
+		switch (pagingState)
+		{
+			case FIRST:
+				offset = 0;
+				break;
+			case NEXT:
+				if (count > limit + offset) offset = limit + offset;
+				break;
+			case PREV:
+				if (offset - limit >= 0) offset = offset - limit;
+				break;
+			case REFRESH:
+				// page prev because of deletes
+				if (count > offset) break;
+			case LAST:
+				offset = count > limit ? ((count - 1) / limit) * limit : 0;
+				break;
+			default:
+				break;
+		}
+		logger.debug("handled " + pagingState + ", offset: " + offset + ", limit: " + limit + ", count: " + count);
+
+		if (count > 0) loadPage(db);
+		else
+			this.setPage(new ArrayList<E>());
+
+		this.pagingState = State.UPTODATE;
+	}
+
+	/**
+	 * Load the entities [offset, offset + limit) by seeking from the anchor
+	 * with the least rows to skip: a bookmark before the page (forward), a
+	 * bookmark after the page (backward), the first or the last entity.
+	 */
+	private void loadPage(Database db) throws DatabaseException
+	{
+		int pageEnd = Math.min(offset + limit, count) - 1;
+		int nrRows = pageEnd - offset + 1;
+
+		// default: seek forward from the first entity
+		boolean backward = false;
+		Object[] anchor = null;
+		int skip = offset;
+
+		// seek backward from the last entity
+		if (count - 1 - pageEnd < skip)
+		{
+			backward = true;
+			skip = count - 1 - pageEnd;
+		}
+
+		// seek from bookmarks, null values of the order by field would be
+		// skipped by the seek predicates
+		boolean seekable = !isOrderByNillable(db);
+		Map.Entry<Integer, Object[]> before = seekable ? bookmarks.floorEntry(offset) : null;
+		if (before != null && offset - before.getKey() < skip)
+		{
+			backward = false;
+			anchor = before.getValue();
+			skip = offset - before.getKey();
+		}
+		Map.Entry<Integer, Object[]> after = seekable ? bookmarks.ceilingEntry(pageEnd) : null;
+		if (after != null && after.getKey() - pageEnd < skip)
+		{
+			backward = true;
+			anchor = after.getValue();
+			skip = after.getKey() - pageEnd;
+		}
+
+		List<QueryRule> rules = new ArrayList<QueryRule>();
+		rules.addAll(Arrays.asList(getFilters()));
+		addTypeFilter(rules);
+		if (anchor != null) rules.add(createSeekRule(anchor, backward));
+
+		boolean ascending = getOrderByOperator().equals(Operator.SORTASC) != backward;
+		Operator sortOperator = ascending ? Operator.SORTASC : Operator.SORTDESC;
+		rules.add(new QueryRule(sortOperator, getOrderByField()));
+		if (!getOrderByField().equals(primaryKeyField)) rules.add(new QueryRule(sortOperator, primaryKeyField));
+		rules.add(new QueryRule(Operator.LIMIT, nrRows));
+		if (skip > 0) rules.add(new QueryRule(Operator.OFFSET, skip));
+
+		logger.debug("seek " + (backward ? "backward" : "forward") + " from "
+				+ (anchor != null ? Arrays.asList(anchor) : (backward ? "last" : "first")) + ", skip " + skip);
+		reloadPage(db, rules.toArray(new QueryRule[rules.size()]));
+
+		if (backward)
+		{
+			List<E> reversedPage = new ArrayList<E>(page);
+			Collections.reverse(reversedPage);
+			setPage(reversedPage);
+		}
+
+		// remember the first and last entity of this page
+		if (seekable && page.size() > 0)
+		{
+			addBookmark(offset, page.get(0));
+			addBookmark(offset + page.size() - 1, page.get(page.size() - 1));
+		}
+	}
+
+	/**
+	 * Creates 'f > x OR (f = x AND pk >= y)' for an ascending forward seek from
+	 * (x, y). The anchor itself is included.
+	 */
+	private QueryRule createSeekRule(Object[] anchor, boolean backward)
+	{
+		boolean greater = getOrderByOperator().equals(Operator.SORTASC) != backward;
+		Operator pkOperator = greater ? Operator.GREATER_EQUAL : Operator.LESS_EQUAL;
+		if (getOrderByField().equals(primaryKeyField))
+		{
+			return new QueryRule(primaryKeyField, pkOperator, anchor[1]);
+		}
+		Operator orderByOperator = greater ? Operator.GREATER : Operator.LESS;
+		return new QueryRule(new QueryRule(getOrderByField(), orderByOperator, anchor[0]), new QueryRule(Operator.OR),
+				new QueryRule(new QueryRule(getOrderByField(), Operator.EQUALS, anchor[0]), new QueryRule(
+						primaryKeyField, pkOperator, anchor[1])));
+	}
+
+	/**
+	 * Returns whether the order by field can be null according to the model of
+	 * the database. Fields that are not in the model, e.g. xref labels, are
+	 * assumed to be nillable.
+	 */
+	private boolean isOrderByNillable(Database db)
+	{
+		if (getOrderByField().equals(primaryKeyField)) return false;
+		if (orderByNillable == null)
+		{
+			boolean nillable = true;
+			try
+			{
+				Model model = db.getMetaData();
+				org.molgenis.model.elements.Entity entity = model != null ? model.getEntity(getEntityClass()
+						.getSimpleName()) : null;
+				Field field = entity != null ? entity.getAllField(getOrderByField()) : null;
+				if (field != null) nillable = field.isNillable();
+			}
+			catch (MolgenisModelException e)
+			{
+				logger.warn("could not determine whether " + getOrderByField() + " is nillable: " + e.getMessage());
+			}
+			catch (DatabaseException e)
+			{
+				logger.warn("could not determine whether " + getOrderByField() + " is nillable: " + e.getMessage());
+			}
+			orderByNillable = nillable;
+		}
+		return orderByNillable;
+	}
+
+	private void addBookmark(int rowOffset, E entity)
+	{
+		Object orderByValue = entity.get(getOrderByField());
+		Object pkValue = entity.get(primaryKeyField);
+		// null values can't be compared in seek predicates
+		if (orderByValue == null || pkValue == null) return;
+
+		bookmarks.put(rowOffset, new Object[]
+		{ orderByValue, pkValue });
+
+		// forget the bookmark furthest away from the current page
+		if (bookmarks.size() > MAX_BOOKMARKS)
+		{
+			if (offset - bookmarks.firstKey() > bookmarks.lastKey() - offset) bookmarks.pollFirstEntry();
+			else
+				bookmarks.pollLastEntry();
+		}
+	}
+
+	/**
+	 * invalidate bookmarks and count when filters or ordering changed
+	 * 
+	 * @return whether filters or ordering changed
+	 */
+	private boolean validateState()
+	{
+		List<Object> state = new ArrayList<Object>();
+		state.addAll(Arrays.asList(getFilters()));
+		state.add(getOrderByField());
+		state.add(getOrderByOperator());
+		if (!state.equals(bookmarksState))
+		{
+			if (bookmarksState != null) logger.debug("filters or ordering changed, invalidating bookmarks and count");
+			bookmarksState = state;
+			countValid = false;
+			orderByNillable = null;
+			bookmarks.clear();
+			return true;
+		}
+		return false;
+	}
+
+	private void reloadCountIfNeeded(Database db) throws DatabaseException
+	{
+		if (countValid && System.currentTimeMillis() - countTime < countMaxAge) return;
+
+		List<QueryRule> rules = new ArrayList<QueryRule>();
+		rules.addAll(Arrays.asList(getFilters()));
+		addTypeFilter(rules);
+		int previousCount = count;
+		reloadCount(db, rules.toArray(new QueryRule[rules.size()]));
+		if (count != previousCount && !bookmarks.isEmpty())
+		{
+			logger.debug("count changed from " + previousCount + " to " + count + ", invalidating bookmarks");
+			bookmarks.clear();
+		}
+		countValid = true;
+		countTime = System.currentTimeMillis();
+	}
+
+	/** only page entities of this type, not of its subclasses */
+	private void addTypeFilter(List<QueryRule> rules)
+	{
+		if (!includeSubclasses && newInstance(getEntityClass()).getFields().contains(Field.TYPE_FIELD))
+		{
+			rules.add(new QueryRule(Field.TYPE_FIELD, Operator.EQUALS, getEntityClass().getSimpleName()));
+		}
+	}
+
+	private static <E extends Entity> E newInstance(Class<E> entityClass)
+	{
+		try
+		{
+			return entityClass.newInstance();
+		}
+		catch (InstantiationException e)
+		{
+			throw new IllegalArgumentException(e);
+		}
+		catch (IllegalAccessException e)
+		{
+			throw new IllegalArgumentException(e);
+		}
+	}
+}
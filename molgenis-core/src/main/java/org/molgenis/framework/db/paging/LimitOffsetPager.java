@@ -21,7 +21,10 @@ import org.molgenis.util.Entity;
  * "thrown away" until the offset of desired data is reached.
  * 
  * @param <E>
+ * @deprecated use {@link KeysetPager}, which does not get slower for pages with
+ *             large offsets
  */
+@Deprecated
 public class LimitOffsetPager<E extends Entity> extends AbstractPager<E>
 {
 	private static final long serialVersionUID = -1859965580920588085L;
@@ -21,6 +21,8 @@ import org.molgenis.util.Entity;
  * WARNING only faster when sorted by indexed fields!!
  * 
  * @param <E>
+ * @deprecated use {@link KeysetPager}, which also pages correctly when the
+ *             order by field is not unique
  */
 @Deprecated
 public class PrimaryKeyPager<E extends Entity> extends AbstractPager<E>
@@ -0,0 +1,287 @@
+package org.molgenis.framework.server;
+
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Access log of the FrontController. Requests are logged as a single line of
+ * key=value pairs by a background thread, so request threads never wait for
+ * log appenders. Only one in every n requests is logged, failed requests are
+ * always logged. When the queue is full entries are dropped and counted
+ * instead of blocking the request.
+ * <p>
+ * The latency of every request, logged or not, is recorded in a histogram per
+ * service. The histograms are logged when the access log is closed.
+ */
+public class AccessLog
+{
+	private static final Logger logger = Logger.getLogger(AccessLog.class);
+	private static final int QUEUE_CAPACITY = 10000;
+
+	private final int sampleRate;
+	private final AtomicLong nrRequests = new AtomicLong();
+	private final AtomicLong nrDropped = new AtomicLong();
+	private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+	private final BlockingQueue<Entry> queue;
+	private final Thread writerThread;
+
+	/**
+	 * @param sampleRate
+	 *            log one in every sampleRate requests, 0 only logs failed
+	 *            requests
+	 */
+	public AccessLog(int sampleRate)
+	{
+		if (sampleRate < 0) throw new IllegalArgumentException("sampleRate must be >= 0");
+		this.sampleRate = sampleRate;
+		this.queue = new ArrayBlockingQueue<Entry>(QUEUE_CAPACITY);
+		this.writerThread = new Thread(new Writer(), "molgenis-access-log");
+		this.writerThread.setDaemon(true);
+		this.writerThread.start();
+	}
+
+	/**
+	 * @param servicePath
+	 *            path the service is mapped on, e.g. "/api/R"
+	 * @param requestPath
+	 *            e.g. "/api/R/source.R"
+	 * @param remoteHost
+	 * @param userName
+	 *            null if not authenticated
+	 * @param startTime
+	 *            in milliseconds
+	 * @param duration
+	 *            in milliseconds
+	 * @param error
+	 *            null if the request succeeded
+	 */
+	public void log(String servicePath, String requestPath, String remoteHost, String userName, long startTime,
+			long duration, Throwable error)
+	{
+		getHistogram(servicePath).record(duration);
+
+		long requestNr = nrRequests.incrementAndGet();
+		if (error == null && (sampleRate == 0 || requestNr % sampleRate != 0)) return;
+		if (!queue.offer(new Entry(servicePath, requestPath, remoteHost, userName, startTime, duration, error))) nrDropped
+				.incrementAndGet();
+	}
+
+	public LatencyHistogram getHistogram(String servicePath)
+	{
+		LatencyHistogram histogram = histograms.get(servicePath);
+		if (histogram == null)
+		{
+			histogram = new LatencyHistogram();
+			LatencyHistogram existingHistogram = histograms.putIfAbsent(servicePath, histogram);
+			if (existingHistogram != null) histogram = existingHistogram;
+		}
+		return histogram;
+	}
+
+	/**
+	 * @return latency histograms sorted on service path
+	 */
+	public Map<String, LatencyHistogram> getHistograms()
+	{
+		return Collections.unmodifiableMap(new TreeMap<String, LatencyHistogram>(histograms));
+	}
+
+	/**
+	 * @return number of entries that were not logged because the queue was
+	 *         full
+	 */
+	public long getNrDropped()
+	{
+		return nrDropped.get();
+	}
+
+	/**
+	 * Writes the queued entries and the latency histograms and stops the
+	 * writer thread
+	 */
+	public void close()
+	{
+		writerThread.interrupt();
+		try
+		{
+			writerThread.join(1000);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		for (Map.Entry<String, LatencyHistogram> entry : getHistograms().entrySet())
+			logger.info("service=" + entry.getKey() + ' ' + entry.getValue());
+		if (nrDropped.get() > 0) logger.warn("dropped=" + nrDropped.get());
+	}
+
+	/** writes queued entries until interrupted, then writes the remaining */
+	private class Writer implements Runnable
+	{
+		// only used by the writer thread
+		private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+
+		@Override
+		public void run()
+		{
+			try
+			{
+				while (true)
+					write(queue.take());
+			}
+			catch (InterruptedException e)
+			{
+				Entry entry;
+				while ((entry = queue.poll()) != null)
+					write(entry);
+			}
+		}
+
+		private void write(Entry entry)
+		{
+			try
+			{
+				StringBuilder strBuilder = new StringBuilder(256);
+				append(strBuilder, "time", dateFormat.format(new Date(entry.startTime)));
+				append(strBuilder, "service", entry.servicePath);
+				append(strBuilder, "path", entry.requestPath);
+				append(strBuilder, "remote", entry.remoteHost);
+				append(strBuilder, "user", entry.userName);
+				append(strBuilder, "duration_ms", String.valueOf(entry.duration));
+				if (entry.error != null)
+				{
+					append(strBuilder, "error", entry.error.getClass().getName());
+					append(strBuilder, "message", entry.error.getMessage());
+					logger.warn(strBuilder.toString());
+				}
+				else logger.info(strBuilder.toString());
+			}
+			catch (RuntimeException e)
+			{
+				// keep the writer thread alive if an appender fails
+				nrDropped.incrementAndGet();
+			}
+		}
+
+		private void append(StringBuilder strBuilder, String key, String value)
+		{
+			if (value == null) return;
+			if (strBuilder.length() > 0) strBuilder.append(' ');
+			strBuilder.append(key).append('=');
+			boolean quote = value.isEmpty() || value.indexOf(' ') != -1 || value.indexOf('"') != -1
+					|| value.indexOf('=') != -1;
+			if (quote) strBuilder.append('"').append(value.replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+			else strBuilder.append(value);
+		}
+	}
+
+	private static class Entry
+	{
+		private final String servicePath;
+		private final String requestPath;
+		private final String remoteHost;
+		private final String userName;
+		private final long startTime;
+		private final long duration;
+		private final Throwable error;
+
+		Entry(String servicePath, String requestPath, String remoteHost, String userName, long startTime,
+				long duration, Throwable error)
+		{
+			this.servicePath = servicePath;
+			this.requestPath = requestPath;
+			this.remoteHost = remoteHost;
+			this.userName = userName;
+			this.startTime = startTime;
+			this.duration = duration;
+			this.error = error;
+		}
+	}
+
+	/**
+	 * Lock-free latency histogram with power of two millisecond buckets:
+	 * bucket 0 counts latencies of 0 ms, bucket b > 0 counts latencies in
+	 * [2^(b-1), 2^b) ms.
+	 */
+	public static class LatencyHistogram
+	{
+		static final int NR_BUCKETS = 32;
+
+		private final AtomicLongArray buckets = new AtomicLongArray(NR_BUCKETS);
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong total = new AtomicLong();
+		private final AtomicLong max = new AtomicLong();
+
+		public void record(long duration)
+		{
+			if (duration < 0) duration = 0;
+			buckets.incrementAndGet(getBucket(duration));
+			count.incrementAndGet();
+			total.addAndGet(duration);
+			long currentMax;
+			while (duration > (currentMax = max.get()))
+				if (max.compareAndSet(currentMax, duration)) break;
+		}
+
+		static int getBucket(long duration)
+		{
+			return Math.min(NR_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(duration));
+		}
+
+		public long getCount()
+		{
+			return count.get();
+		}
+
+		public long getMax()
+		{
+			return max.get();
+		}
+
+		public double getMean()
+		{
+			long n = count.get();
+			return n > 0 ? (double) total.get() / n : 0;
+		}
+
+		/**
+		 * @param percentile
+		 *            between 0 and 100
+		 * @return upper bound in milliseconds of the bucket that contains the
+		 *         percentile
+		 */
+		public long getPercentile(double percentile)
+		{
+			if (percentile < 0 || percentile > 100) throw new IllegalArgumentException(
+					"percentile must be between 0 and 100");
+			long n = count.get();
+			if (n == 0) return 0;
+			long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+			long cumulative = 0;
+			for (int b = 0; b < NR_BUCKETS; ++b)
+			{
+				cumulative += buckets.get(b);
+				if (cumulative >= rank) return Math.min(b == 0 ? 0 : (1L << b) - 1, getMax());
+			}
+			return getMax();
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format("count=%d mean_ms=%.1f p50_ms=%d p95_ms=%d p99_ms=%d max_ms=%d", getCount(),
+					getMean(), getPercentile(50), getPercentile(95), getPercentile(99), getMax());
+		}
+	}
+}
@@ -5,11 +5,7 @@ import java.io.IOException;
 import java.net.URL;
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.text.DateFormat;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Enumeration;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
@@ -35,11 +31,16 @@ public abstract class MolgenisFrontController extends HttpServlet implements Mol
 	// helper vars
 	private static final long serialVersionUID = -2141508157810793106L;
 	protected Logger logger;
-	private DateFormat dateFormat = new SimpleDateFormat("HH:mm:ss 'on' dd MMMM yyyy");
 
 	// map of all services for this app
 	protected Map<String, MolgenisService> services;
 
+	// longest prefix routes to the services, built once from the services
+	private volatile ServiceRouter<MolgenisService> router;
+
+	// sampled request log with latency histograms per service
+	private volatile AccessLog accessLog;
+
 	// list of all connections
 	protected ConcurrentHashMap<UUID, Connection> connections;
 
@@ -67,15 +68,6 @@ public abstract class MolgenisFrontController extends HttpServlet implements Mol
 	{
 		try
 		{
-
-			@SuppressWarnings("rawtypes")
-			Enumeration attributeNames = request.getAttributeNames();
-			while (attributeNames.hasMoreElements())
-			{
-				String nextElement = (String) attributeNames.nextElement();
-				System.out.println(String.format("---> %s: %s", nextElement, request.getAttribute(nextElement)));
-			}
-
 			// wrap request and response
 			MolgenisRequest req = new MolgenisRequest(request, response);
 			// TODO: Bad, but needed for redirection. DISCUSS.
@@ -141,55 +133,124 @@ public abstract class MolgenisFrontController extends HttpServlet implements Mol
 		// turns "http://localhost:8080/xqtl/api/R" into "/api/R"
 		String requestPath = requestURL.substring(requestURL.length() - (requestURI.length() - appName.length()));
 
-		for (String servicePath : services.keySet())
+		ServiceRouter.Route<MolgenisService> route = getRouter().route(requestPath);
+		if (route == null) return;
+		String servicePath = route.getServicePath();
+		MolgenisService service = route.getService();
+
+		long startTime = System.currentTimeMillis();
+		String userName = null;
+		Throwable error = null;
+		try
 		{
-			if (requestPath.startsWith(servicePath))
+			// if mapped to "/", we assume we are serving out a file, and do
+			// not manage security/connections
+			if (servicePath.equals("/"))
+			{
+				service.handleRequest(request, response);
+			}
+			else
 			{
-				long startTime = System.currentTimeMillis();
-				Date date = new Date();
+				UUID connId = getSecuredDatabase(request);
+
+				if (request.getDatabase().getLogin().isAuthenticated()) userName = request.getDatabase().getLogin()
+						.getUserName();
 
-				// if mapped to "/", we assume we are serving out a file, and do
-				// not manage security/connections
-				if (servicePath.equals("/"))
+				// e.g. "http://localhost:8080/xqtl"
+				request.setAppLocation(appLocation);
+
+				// e.g. "/api/R/"
+				request.setServicePath(servicePath);
+
+				// e.g. "/api/R/source.R"
+				request.setRequestPath(requestPath);
+
+				try
 				{
-					System.out.println("> serving file: " + requestPath);
-					services.get(servicePath).handleRequest(request, response);
+					service.handleRequest(request, response);
 				}
-				else
+				finally
 				{
-					System.out.println("> new request \"" + requestPath + "\" from "
-							+ request.getRequest().getRemoteHost() + " at " + dateFormat.format(date) + " handled by "
-							+ services.get(servicePath).getClass().getSimpleName() + " mapped on path " + servicePath);
-					System.out.println("request fields: " + request.toString());
-
-					UUID connId = getSecuredDatabase(request);
-
-					System.out.println("database status: "
-							+ (request.getDatabase().getLogin().isAuthenticated() ? "authenticated as "
-									+ request.getDatabase().getLogin().getUserName() : "not authenticated"));
-
-					// e.g. "http://localhost:8080/xqtl"
-					request.setAppLocation(appLocation);
-
-					// e.g. "/api/R/"
-					request.setServicePath(servicePath);
-
-					// e.g. "/api/R/source.R"
-					request.setRequestPath(requestPath);
-
-					try
-					{
-						services.get(servicePath).handleRequest(request, response);
-					}
-					finally
-					{
-						manageConnection(connId, startTime);
-					}
+					manageConnection(connId, startTime);
 				}
+			}
+		}
+		catch (IOException e)
+		{
+			error = e;
+			throw e;
+		}
+		catch (DatabaseException e)
+		{
+			error = e;
+			throw e;
+		}
+		catch (ParseException e)
+		{
+			error = e;
+			throw e;
+		}
+		catch (RuntimeException e)
+		{
+			error = e;
+			throw e;
+		}
+		finally
+		{
+			getAccessLog().log(servicePath, requestPath, req.getRemoteHost(), userName, startTime,
+					System.currentTimeMillis() - startTime, error);
+		}
+	}
 
-				return;
+	/**
+	 * Sets the services of this app and compiles the routes to them
+	 *
+	 * @param services
+	 *            services mapped on path prefixes
+	 */
+	protected void setServices(Map<String, MolgenisService> services)
+	{
+		this.services = services;
+		this.router = new ServiceRouter<MolgenisService>(services);
+	}
+
+	private ServiceRouter<MolgenisService> getRouter()
+	{
+		// subclasses that assign the services directly get their routes on the
+		// first request
+		ServiceRouter<MolgenisService> router = this.router;
+		if (router == null)
+		{
+			router = new ServiceRouter<MolgenisService>(services);
+			this.router = router;
+		}
+		return router;
+	}
+
+	private AccessLog getAccessLog()
+	{
+		AccessLog accessLog = this.accessLog;
+		if (accessLog == null)
+		{
+			synchronized (this)
+			{
+				accessLog = this.accessLog;
+				if (accessLog == null)
+				{
+					accessLog = new AccessLog(usedOptions != null ? usedOptions.access_log_sample_rate : 1);
+					this.accessLog = accessLog;
+				}
 			}
 		}
+		return accessLog;
+	}
+
+	@Override
+	public void destroy()
+	{
+		AccessLog accessLog = this.accessLog;
+		if (accessLog != null) accessLog.close();
+		super.destroy();
 	}
 
 	protected UUID getSecuredDatabase(MolgenisRequest req) throws DatabaseException
@@ -234,8 +295,9 @@ public abstract class MolgenisFrontController extends HttpServlet implements Mol
 			// remove from list (does not happen if Exception was thrown)
 			connections.remove(connId);
 
-			System.out.println("< request was handled in " + (System.currentTimeMillis() - startTime)
-					+ "ms , active database connections: " + connections.size());
+			if (logger != null && logger.isDebugEnabled()) logger.debug("request was handled in "
+					+ (System.currentTimeMillis() - startTime) + "ms, active database connections: "
+					+ connections.size());
 		}
 	}
 
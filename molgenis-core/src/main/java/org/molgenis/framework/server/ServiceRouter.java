@@ -0,0 +1,126 @@
+package org.molgenis.framework.server;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Routes request paths to the service mapped on the longest matching path
+ * prefix, e.g. "/api/R/source.R" to the service mapped on "/api/R" rather than
+ * the one mapped on "/". The prefixes are compiled into a character trie once,
+ * so routing a request takes time proportional to the length of its path
+ * instead of the number of services.
+ *
+ * @param <S>
+ *            service type
+ */
+public class ServiceRouter<S>
+{
+	private final Node<S> root;
+
+	public ServiceRouter(Map<String, ? extends S> services)
+	{
+		if (services == null) throw new IllegalArgumentException("services is null");
+		BuildNode<S> buildRoot = new BuildNode<S>();
+		for (Map.Entry<String, ? extends S> entry : services.entrySet())
+		{
+			String servicePath = entry.getKey();
+			BuildNode<S> node = buildRoot;
+			for (int i = 0; i < servicePath.length(); ++i)
+			{
+				Character c = servicePath.charAt(i);
+				BuildNode<S> child = node.children.get(c);
+				if (child == null)
+				{
+					child = new BuildNode<S>();
+					node.children.put(c, child);
+				}
+				node = child;
+			}
+			node.route = new Route<S>(servicePath, entry.getValue());
+		}
+		this.root = buildRoot.compile();
+	}
+
+	/**
+	 * @param requestPath
+	 *            e.g. "/api/R/source.R"
+	 * @return the route with the longest service path that is a prefix of the
+	 *         request path or null if no service path matches
+	 */
+	public Route<S> route(String requestPath)
+	{
+		Node<S> node = root;
+		Route<S> match = node.route;
+		for (int i = 0; i < requestPath.length(); ++i)
+		{
+			node = node.getChild(requestPath.charAt(i));
+			if (node == null) break;
+			if (node.route != null) match = node.route;
+		}
+		return match;
+	}
+
+	public static class Route<S>
+	{
+		private final String servicePath;
+		private final S service;
+
+		Route(String servicePath, S service)
+		{
+			this.servicePath = servicePath;
+			this.service = service;
+		}
+
+		public String getServicePath()
+		{
+			return servicePath;
+		}
+
+		public S getService()
+		{
+			return service;
+		}
+	}
+
+	/** immutable trie node with children sorted on character */
+	private static class Node<S>
+	{
+		private final char[] keys;
+		private final Node<S>[] children;
+		private final Route<S> route;
+
+		Node(char[] keys, Node<S>[] children, Route<S> route)
+		{
+			this.keys = keys;
+			this.children = children;
+			this.route = route;
+		}
+
+		Node<S> getChild(char c)
+		{
+			int idx = Arrays.binarySearch(keys, c);
+			return idx >= 0 ? children[idx] : null;
+		}
+	}
+
+	private static class BuildNode<S>
+	{
+		private final TreeMap<Character, BuildNode<S>> children = new TreeMap<Character, BuildNode<S>>();
+		private Route<S> route;
+
+		Node<S> compile()
+		{
+			char[] keys = new char[children.size()];
+			@SuppressWarnings("unchecked")
+			Node<S>[] compiledChildren = new Node[children.size()];
+			int i = 0;
+			for (Map.Entry<Character, BuildNode<S>> entry : children.entrySet())
+			{
+				keys[i] = entry.getKey();
+				compiledChildren[i++] = entry.getValue().compile();
+			}
+			return new Node<S>(keys, compiledChildren, route);
+		}
+	}
+}
@@ -10,6 +10,7 @@ import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 
 import org.apache.log4j.Logger;
+import org.molgenis.MolgenisOptions;
 import org.molgenis.framework.db.Database;
 import org.molgenis.framework.db.DatabaseException;
 import org.molgenis.framework.security.Login;
@@ -19,6 +20,7 @@ import org.molgenis.framework.server.MolgenisResponse;
 import org.molgenis.framework.ui.ApplicationController;
 import org.molgenis.framework.ui.EasyPluginController;
 import org.molgenis.framework.ui.FormModel;
+import org.molgenis.framework.ui.FreemarkerEngine;
 import org.molgenis.framework.ui.ScreenController;
 import org.molgenis.framework.ui.ScreenModel;
 import org.molgenis.framework.ui.ScreenModel.Show;
@@ -34,6 +36,20 @@ public abstract class MolgenisGuiService
 	public MolgenisGuiService(MolgenisContext mc)
 	{
 		this.mc = mc;
+
+		// share one template engine between all sessions and parse the
+		// templates before the first request
+		if (mc != null && mc.getUsedOptions() != null)
+		{
+			MolgenisOptions options = mc.getUsedOptions();
+			File templateDir = null;
+			if (options.freemarker_template_dir != null && !options.freemarker_template_dir.isEmpty())
+			{
+				templateDir = new File(options.freemarker_template_dir);
+			}
+			FreemarkerEngine.configure(options.freemarker_template_cache_size,
+					options.freemarker_template_update_delay, templateDir).precompile(getClass().getClassLoader());
+		}
 	}
 
 	/** keep track of window ids */
@@ -170,7 +186,7 @@ public abstract class MolgenisGuiService
 				}
 				else if (action.startsWith("download_xls_"))
 				{
-					extension = "xls";
+					extension = "xlsx";
 				}
 				else
 				{
@@ -243,18 +259,18 @@ public abstract class MolgenisGuiService
 					appController.getModel().setShow(show);
 					ScreenController<?> target = appController.get(request.getString("__target"));
 					appController.getModel().setTarget(target);
-					writer.write(appController.render());
+					appController.render(writer);
 				}
 				else if ("massupdate".equals(show))
 				{
 					appController.getModel().setShow("show");
-					writer.write(appController.render());
+					appController.render(writer);
 
 				}
 				else
 				{
 					appController.getModel().setShow("root");
-					writer.write(appController.render());
+					appController.render(writer);
 
 					// special: set a different selected screen after rendering
 					// is done
@@ -3,14 +3,18 @@ package org.molgenis.framework.server.services;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
 
 import org.apache.log4j.Logger;
 import org.molgenis.framework.db.Database;
 import org.molgenis.framework.db.DatabaseException;
-import org.molgenis.framework.db.Query;
+import org.molgenis.framework.db.QueryRule;
+import org.molgenis.framework.db.QueryRule.Operator;
+import org.molgenis.framework.db.paging.KeysetPager;
 import org.molgenis.framework.server.MolgenisContext;
 import org.molgenis.framework.server.MolgenisRequest;
 import org.molgenis.framework.server.MolgenisResponse;
@@ -20,11 +24,19 @@ import org.molgenis.util.Entity;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 
-/** Service to serve entities for jqGrid */
+/**
+ * Service to serve entities for jqGrid. Pages are retrieved with a
+ * {@link KeysetPager} per entity that is kept in the session, so browsing
+ * through large tables does not require increasingly large offsets. The count
+ * is reloaded on every request, the pager discards its bookmarks when the
+ * count changed.
+ */
 public class MolgenisJqGridService implements MolgenisService
 {
 	Logger logger = Logger.getLogger(MolgenisJqGridService.class);
 
+	private static final String PAGER_ATTRIBUTE_PREFIX = MolgenisJqGridService.class.getName() + ".pager.";
+
 	public MolgenisJqGridService(MolgenisContext mc)
 	{
 	}
@@ -53,7 +65,7 @@ public class MolgenisJqGridService implements MolgenisService
 			// get how many rows we want to have into the grid - rowNum
 			// parameter in the grid
 			Integer limit = req.getInt("rows");
-			if (limit == null || limit < 0) limit = 10;
+			if (limit == null || limit <= 0) limit = 10;
 
 			// get index row - i.e. user click to sort. At first time sortname
 			// parameter -
@@ -74,18 +86,30 @@ public class MolgenisJqGridService implements MolgenisService
 
 			/****** RETRIEVE DATA ******/
 
-			// create a query on entity
 			Database db = req.getDatabase();
-			Query<?> q = db.query(entityClass);
+			KeysetPager<? extends Entity> pager = getPager(req, entityClass);
 
 			// search?
+			List<QueryRule> filters = new ArrayList<QueryRule>();
 			if (!req.isNull("filter") && !"".equals(req.getString("filter")))
 			{
-				q.search(req.getString("filter").trim());
+				filters.add(new QueryRule(Operator.SEARCH, req.getString("filter").trim()));
 			}
+			pager.resetFilters(filters);
 
-			// filtered count
-			int recordCount = q.count();
+			// sorting
+			if (sortIndex == null || sortIndex.isEmpty()) pager.resetOrderBy();
+			else
+			{
+				pager.setOrderByField(sortIndex);
+				pager.setOrderByOperator(sortAsc ? Operator.SORTASC : Operator.SORTDESC);
+			}
+			pager.setLimit(limit);
+
+			// filtered count, recounted on every request so the bookmarks of the
+			// pager are discarded when other sessions added or removed entities
+			pager.invalidateCount();
+			int recordCount = pager.getCount(db);
 
 			// calculate the total pages for the query
 			int total_pages = 1;
@@ -98,15 +122,8 @@ public class MolgenisJqGridService implements MolgenisService
 			// set the requested page to total page
 			if (page > total_pages) page = total_pages;
 
-			// todo: implement filters
-			q.limit(limit);
-			q.offset(page * limit - limit);
-
-			// sorting
-			if (sortAsc) q.sortASC(sortIndex);
-			else q.sortDESC(sortIndex);
-
-			List<? extends Entity> result = q.find();
+			pager.setOffset(page * limit - limit);
+			List<? extends Entity> result = pager.getPage(db);
 
 			// {
 			// "total": "xxx",
@@ -157,4 +174,21 @@ public class MolgenisJqGridService implements MolgenisService
 			throw new DatabaseException(e);
 		}
 	}
+
+	/** Returns the pager of this entity for the current session */
+	@SuppressWarnings(
+	{ "unchecked", "rawtypes" })
+	private KeysetPager<? extends Entity> getPager(MolgenisRequest req, Class<? extends Entity> entityClass)
+	{
+		HttpSession session = req.getRequest().getSession();
+		String attributeName = PAGER_ATTRIBUTE_PREFIX + entityClass.getName();
+		KeysetPager<? extends Entity> pager = (KeysetPager<? extends Entity>) session.getAttribute(attributeName);
+		if (pager == null)
+		{
+			pager = new KeysetPager(entityClass);
+			pager.setIncludeSubclasses(true);
+			session.setAttribute(attributeName, pager);
+		}
+		return pager;
+	}
 }
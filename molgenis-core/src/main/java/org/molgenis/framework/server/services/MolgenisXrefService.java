@@ -22,6 +22,7 @@ import org.molgenis.framework.db.Database;
 import org.molgenis.framework.db.DatabaseException;
 import org.molgenis.framework.db.Query;
 import org.molgenis.framework.db.QueryRule;
+import org.molgenis.framework.db.XrefSearchIndex;
 import org.molgenis.framework.server.MolgenisContext;
 import org.molgenis.framework.server.MolgenisRequest;
 import org.molgenis.framework.server.MolgenisResponse;
@@ -133,6 +134,9 @@ public class MolgenisXrefService implements MolgenisService
 		}
 	}
 
+	/** maximum number of records returned */
+	static final int MAX_RECORDS = 100;
+
 	static final String JSON_KEY_VALUE = "{\"value\":\"%s\", \"text\":\"%s\"}";
 
 	private static String toJson(final String xrefField, final List<String> xref_labels,
@@ -181,6 +185,24 @@ public class MolgenisXrefService implements MolgenisService
 		{
 			// Login login = molgenis.getApplicationController().getLogin();
 			// db.setLogin(login);
+
+			// use the label index, filters are only supported by the database
+			if (StringUtils.isNotEmpty(searchTerm) && (filters == null || filters.isEmpty()))
+			{
+				try
+				{
+					XrefSearchIndex index = XrefSearchIndex.getIndex(db, xrefEntity, searchFields);
+					result = index.find(db, searchTerm, MAX_RECORDS);
+					return result;
+				}
+				catch (DatabaseException e)
+				{
+					Logger.getLogger(MolgenisXrefService.class).warn(
+							"xref search index of " + xrefEntity.getSimpleName()
+									+ " failed, falling back to database search: " + e.getMessage());
+				}
+			}
+
 			final Query<?> q = db.query(xrefEntity);
 
 			if (filters != null && !filters.isEmpty())
@@ -198,7 +220,7 @@ public class MolgenisXrefService implements MolgenisService
 				q.sortASC(xref_label);
 			}
 
-			q.limit(100);
+			q.limit(MAX_RECORDS);
 			result = q.find();
 		}
 		catch (Exception ex)
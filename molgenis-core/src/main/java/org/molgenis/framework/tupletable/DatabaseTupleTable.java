@@ -7,4 +7,10 @@ public interface DatabaseTupleTable
 	public Database getDb();
 
 	public void setDb(Database db);
+
+	/**
+	 * Discard cached counts and paging positions, e.g. after rows were added
+	 * or removed
+	 */
+	public void invalidate();
 }
@@ -0,0 +1,273 @@
+package org.molgenis.framework.tupletable.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+
+/**
+ * Row offset index of a CSV file: the number of data rows, the end of the
+ * header and the byte offset of every {@link #getInterval()}th data row. With
+ * the index a table can seek to any page instead of parsing all preceding rows.
+ * <p>
+ * Rows are delimited by line breaks that are not enclosed in quotes, using the
+ * quote (") and escape (\) characters of the CSV parser. The index of a file is
+ * persisted next to it ({@link #getIndexFile(File)}) and rebuilt when the file
+ * was modified.
+ */
+final class CsvRowIndex
+{
+	private static final Logger logger = Logger.getLogger(CsvRowIndex.class);
+
+	/** number of rows between indexed offsets */
+	public static final int DEFAULT_INTERVAL = 100;
+
+	private static final String INDEX_FILE_EXTENSION = ".idx";
+	private static final int MAGIC = 0x43535649; // CSVI
+	private static final int VERSION = 1;
+
+	private static final byte QUOTE = '"';
+	private static final byte ESCAPE = '\\';
+
+	private final int interval;
+	private final int rowCount;
+	private final long headerEnd;
+	private final long[] offsets;
+
+	private CsvRowIndex(int interval, int rowCount, long headerEnd, long[] offsets)
+	{
+		this.interval = interval;
+		this.rowCount = rowCount;
+		this.headerEnd = headerEnd;
+		this.offsets = offsets;
+	}
+
+	/** Returns the number of data rows (excluding the header) */
+	public int getRowCount()
+	{
+		return rowCount;
+	}
+
+	/** Returns the byte offset of the first data row */
+	public long getHeaderEnd()
+	{
+		return headerEnd;
+	}
+
+	public int getInterval()
+	{
+		return interval;
+	}
+
+	/**
+	 * Returns the nearest indexed row at or before the given row
+	 *
+	 * @param row
+	 *            zero based data row
+	 */
+	public int getIndexedRow(int row)
+	{
+		if (row < 0) throw new IllegalArgumentException("row must be >= 0");
+		return Math.min(row / interval, offsets.length - 1) * interval;
+	}
+
+	/**
+	 * Returns the byte offset of the nearest indexed row at or before the given
+	 * row, see {@link #getIndexedRow(int)}
+	 */
+	public long getOffset(int row)
+	{
+		if (offsets.length == 0) return headerEnd;
+		return offsets[getIndexedRow(row) / interval];
+	}
+
+	/**
+	 * Returns the file the index of the given csv file is persisted in
+	 */
+	public static File getIndexFile(File csvFile)
+	{
+		return new File(csvFile.getPath() + INDEX_FILE_EXTENSION);
+	}
+
+	/**
+	 * Loads the persisted index of the csv file or creates (and persists) it if
+	 * it does not exist or is out of date
+	 */
+	public static CsvRowIndex get(File csvFile) throws IOException
+	{
+		CsvRowIndex index = load(csvFile);
+		if (index == null)
+		{
+			long start = System.currentTimeMillis();
+			InputStream in = new FileInputStream(csvFile);
+			try
+			{
+				index = create(in, DEFAULT_INTERVAL);
+			}
+			finally
+			{
+				IOUtils.closeQuietly(in);
+			}
+			logger.debug("indexed " + index.getRowCount() + " rows of " + csvFile + " in "
+					+ (System.currentTimeMillis() - start) + "ms");
+
+			try
+			{
+				index.store(csvFile);
+			}
+			catch (IOException e)
+			{
+				// e.g. read-only directory, keep the index in memory
+				logger.warn("failed to store row index of " + csvFile + ": " + e.getMessage());
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Creates the index by scanning the csv stream once
+	 *
+	 * @param in
+	 *            csv (UTF-8 or any other ASCII compatible encoding)
+	 * @param interval
+	 *            number of rows between indexed offsets
+	 */
+	public static CsvRowIndex create(InputStream in, int interval) throws IOException
+	{
+		if (interval < 1) throw new IllegalArgumentException("interval must be > 0");
+
+		byte[] buffer = new byte[65536];
+		long[] offsets = new long[16];
+		int nrOffsets = 0;
+		int rowCount = 0;
+		long headerEnd = -1;
+
+		long pos = 0;
+		boolean inQuotes = false;
+		boolean escaped = false;
+		boolean lineBreak = false;
+		int prev = -1;
+		int nrBytes;
+		while ((nrBytes = in.read(buffer)) != -1)
+		{
+			for (int i = 0; i < nrBytes; ++i)
+			{
+				int b = buffer[i];
+				// a row starts at the first byte after a line break, '\r\n' is one
+				// line break
+				if (lineBreak && !(b == '\n' && prev == '\r'))
+				{
+					lineBreak = false;
+					long rowStart = pos;
+					if (headerEnd == -1) headerEnd = rowStart;
+					if (rowCount % interval == 0)
+					{
+						if (nrOffsets == offsets.length)
+						{
+							long[] newOffsets = new long[offsets.length * 2];
+							System.arraycopy(offsets, 0, newOffsets, 0, nrOffsets);
+							offsets = newOffsets;
+						}
+						offsets[nrOffsets++] = rowStart;
+					}
+					++rowCount;
+				}
+
+				// the escape character only escapes quotes and itself
+				if (escaped && (b == QUOTE || b == ESCAPE)) escaped = false;
+				else
+				{
+					escaped = false;
+					if (b == ESCAPE) escaped = true;
+					else if (b == QUOTE) inQuotes = !inQuotes;
+					else if ((b == '\n' || b == '\r') && !inQuotes) lineBreak = true;
+				}
+				prev = b;
+				++pos;
+			}
+		}
+		// header without line break
+		if (headerEnd == -1) headerEnd = pos;
+
+		long[] trimmedOffsets = new long[nrOffsets];
+		System.arraycopy(offsets, 0, trimmedOffsets, 0, nrOffsets);
+		return new CsvRowIndex(interval, rowCount, headerEnd, trimmedOffsets);
+	}
+
+	/**
+	 * Loads the persisted index, returns null if it does not exist, is out of
+	 * date or can't be read
+	 */
+	static CsvRowIndex load(File csvFile)
+	{
+		File indexFile = getIndexFile(csvFile);
+		if (!indexFile.exists()) return null;
+
+		DataInputStream in = null;
+		try
+		{
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+			if (in.readLong() != csvFile.length() || in.readLong() != csvFile.lastModified()) return null;
+
+			int interval = in.readInt();
+			int rowCount = in.readInt();
+			long headerEnd = in.readLong();
+			long[] offsets = new long[in.readInt()];
+			for (int i = 0; i < offsets.length; ++i)
+				offsets[i] = in.readLong();
+			return new CsvRowIndex(interval, rowCount, headerEnd, offsets);
+		}
+		catch (IOException e)
+		{
+			logger.warn("failed to load row index " + indexFile + ": " + e.getMessage());
+			return null;
+		}
+		finally
+		{
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	/** Persists the index next to the csv file */
+	void store(File csvFile) throws IOException
+	{
+		File indexFile = getIndexFile(csvFile);
+		// write to a temporary file first, so readers never see a partial index
+		File tmpFile = File.createTempFile(indexFile.getName(), ".tmp", indexFile.getAbsoluteFile().getParentFile());
+		DataOutputStream out = null;
+		try
+		{
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(csvFile.length());
+			out.writeLong(csvFile.lastModified());
+			out.writeInt(interval);
+			out.writeInt(rowCount);
+			out.writeLong(headerEnd);
+			out.writeInt(offsets.length);
+			for (long offset : offsets)
+				out.writeLong(offset);
+			out.close();
+			out = null;
+
+			if (indexFile.exists() && !indexFile.delete()) throw new IOException("failed to delete " + indexFile);
+			if (!tmpFile.renameTo(indexFile)) throw new IOException("failed to rename " + tmpFile + " to "
+					+ indexFile);
+		}
+		finally
+		{
+			IOUtils.closeQuietly(out);
+			if (tmpFile.exists()) tmpFile.delete();
+		}
+	}
+}
@@ -3,33 +3,39 @@ package org.molgenis.framework.tupletable.impl;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.LineNumberReader;
-import java.io.StringReader;
+import java.io.SequenceInputStream;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
-import java.util.zip.DataFormatException;
 
 import org.apache.commons.io.IOUtils;
 import org.molgenis.framework.tupletable.AbstractTupleTable;
 import org.molgenis.framework.tupletable.TableException;
 import org.molgenis.io.csv.CsvReader;
 import org.molgenis.model.elements.Field;
-import org.molgenis.util.tuple.KeyValueTuple;
+import org.molgenis.util.tuple.ArrayTuple;
 import org.molgenis.util.tuple.Tuple;
+import org.molgenis.util.tuple.TupleSchema;
 
 /**
  * Wrap a CSV file into a TupleTable
+ * <p>
+ * Pages are read using a {@link CsvRowIndex} of the file: the reader seeks to
+ * the nearest indexed row before the offset, so the count and the pages of a
+ * large file don't require reading all preceding rows. The index is built once
+ * and persisted next to the file.
  */
 public class CsvTable extends AbstractTupleTable
 {
+	private static final Charset CHARSET_UTF8 = Charset.forName("UTF-8");
+
 	private CsvReader csvReader;
-	private InputStream countStream;
+	private CsvRowIndex rowIndex;
 	private List<Field> columns = new ArrayList<Field>();
 
 	File csvFile;
@@ -47,7 +53,6 @@ public class CsvTable extends AbstractTupleTable
 		if (!csvFile.exists()) throw new IllegalArgumentException("Creation of CsvTable failed: csvFile does not exist");
 
 		this.csvFile = csvFile;
-		this.resetStreams();
 		loadColumns();
 	}
 
@@ -64,7 +69,6 @@ public class CsvTable extends AbstractTupleTable
 		this.csvString = csvString;
 		try
 		{
-			resetStreams();
 			loadColumns();
 		}
 		catch (Exception e)
@@ -73,39 +77,35 @@ public class CsvTable extends AbstractTupleTable
 		}
 	}
 
-	int rowCount = -1;
-
 	/**
 	 * Count rows (not including header of csv file)
 	 */
 	@Override
 	public int getCount() throws TableException
 	{
-		if (rowCount == -1)
+		try
 		{
-			LineNumberReader lineReader = new LineNumberReader(new InputStreamReader(countStream,
-					Charset.forName("UTF-8")));
-			try
-			{
-				String line = null;
-				while ((line = lineReader.readLine()) != null)
-				{
-					line = line.trim();
-				}
+			return getRowIndex().getRowCount();
+		}
+		catch (IOException e)
+		{
+			throw new TableException(e);
+		}
+	}
 
-				// substract 1 because of header
-				rowCount = lineReader.getLineNumber() - 1;
-			}
-			catch (Exception e)
-			{
-				throw new TableException(e);
-			}
-			finally
-			{
-				IOUtils.closeQuietly(lineReader);
-			}
+	/**
+	 * Returns the row index, which is loaded or created on first use
+	 */
+	private CsvRowIndex getRowIndex() throws IOException
+	{
+		if (rowIndex == null)
+		{
+			if (csvFile != null) rowIndex = CsvRowIndex.get(csvFile);
+			else
+				rowIndex = CsvRowIndex.create(new ByteArrayInputStream(csvString.getBytes(CHARSET_UTF8)),
+						CsvRowIndex.DEFAULT_INTERVAL);
 		}
-		return rowCount;
+		return rowIndex;
 	}
 
 	/**
@@ -115,10 +115,18 @@ public class CsvTable extends AbstractTupleTable
 	 */
 	private void loadColumns() throws Exception
 	{
-		for (Iterator<String> it = csvReader.colNamesIterator(); it.hasNext();)
+		CsvReader headerReader = new CsvReader(new InputStreamReader(openStream(), CHARSET_UTF8));
+		try
 		{
-			Field f = new Field(it.next());
-			columns.add(f);
+			for (Iterator<String> it = headerReader.colNamesIterator(); it.hasNext();)
+			{
+				Field f = new Field(it.next());
+				columns.add(f);
+			}
+		}
+		finally
+		{
+			IOUtils.closeQuietly(headerReader);
 		}
 	}
 
@@ -143,44 +151,80 @@ public class CsvTable extends AbstractTupleTable
 	@Override
 	public Iterator<Tuple> iterator()
 	{
-
+		IOUtils.closeQuietly(csvReader);
+		csvReader = null;
 		try
 		{
-			this.resetStreams();
-		}
-		catch (Exception e)
-		{
-			// should not happen as this is second load
-			e.printStackTrace();
-		}
+			// seek to the nearest indexed row before the offset
+			int offset = getOffset();
+			if (offset > 0)
+			{
+				CsvRowIndex index = getRowIndex();
+				if (offset >= index.getRowCount())
+				{
+					return Collections.<Tuple> emptyList().iterator();
+				}
+				csvReader = new CsvReader(new InputStreamReader(openStream(index, offset), CHARSET_UTF8));
+				offset -= index.getIndexedRow(offset);
+			}
+			else
+			{
+				csvReader = new CsvReader(new InputStreamReader(openStream(), CHARSET_UTF8));
+			}
 
-		if (getLimit() > 0 || getOffset() > 0 || getColOffset() > 0 || getColLimit() > 0)
+			if (getLimit() > 0 || offset > 0 || getColOffset() > 0 || getColLimit() > 0)
+			{
+				return new TupleIterator(csvReader.iterator(), getLimit(), offset, getColLimit(), getColOffset());
+			}
+			return csvReader.iterator();
+		}
+		catch (IOException e)
 		{
-			// offset + 1 to skip the header
-			return new TupleIterator(csvReader.iterator(), getLimit(), getOffset(), getColLimit(), getColOffset());
+			throw new RuntimeException(e);
 		}
-		return csvReader.iterator();
 	}
 
 	@Override
 	public void close() throws TableException
 	{
 		IOUtils.closeQuietly(csvReader);
-		IOUtils.closeQuietly(countStream);
 	}
 
-	private void resetStreams() throws FileNotFoundException, IOException, DataFormatException
+	/** opens the csv from the start */
+	private InputStream openStream() throws IOException
 	{
-		IOUtils.closeQuietly(csvReader);
-		if (csvFile != null)
+		if (csvFile != null) return new FileInputStream(csvFile);
+		return new ByteArrayInputStream(csvString.getBytes(CHARSET_UTF8));
+	}
+
+	/**
+	 * opens the csv as the header followed by the data from the nearest indexed
+	 * row before the given row
+	 */
+	private InputStream openStream(CsvRowIndex index, int row) throws IOException
+	{
+		long headerEnd = index.getHeaderEnd();
+		long offset = index.getOffset(row);
+
+		InputStream in = openStream();
+		try
 		{
-			csvReader = new CsvReader(csvFile);
-			countStream = new FileInputStream(csvFile);
+			byte[] header = new byte[(int) headerEnd];
+			IOUtils.readFully(in, header);
+			if (in instanceof FileInputStream)
+			{
+				((FileInputStream) in).getChannel().position(offset);
+			}
+			else
+			{
+				IOUtils.skipFully(in, offset - headerEnd);
+			}
+			return new SequenceInputStream(new ByteArrayInputStream(header), in);
 		}
-		else
+		catch (IOException e)
 		{
-			csvReader = new CsvReader(new StringReader(csvString));
-			countStream = new ByteArrayInputStream(csvString.getBytes(Charset.forName("UTF-8")));
+			IOUtils.closeQuietly(in);
+			throw e;
 		}
 	}
 
@@ -195,6 +239,8 @@ public class CsvTable extends AbstractTupleTable
 
 		int colLimit = 0;
 		int colOffset = 0;
+		/** selected columns, created from the first row */
+		TupleSchema schema;
 
 		public TupleIterator(Iterator<Tuple> it, int limit, int offset, int colLimit, int colOffset)
 		{
@@ -220,20 +266,28 @@ public class CsvTable extends AbstractTupleTable
 				next = it.next();
 				if (next != null)
 				{
-					KeyValueTuple tuple = new KeyValueTuple();
-					int colIndex = 1;
-					int colCount = 0;
-					for (String f : next.getColNames())
+					// all rows have the same columns, select them once
+					if (schema == null)
 					{
-						if (colOffset == 0 || colIndex > colOffset)
+						List<String> colNames = new ArrayList<String>();
+						int colIndex = 1;
+						int colCount = 0;
+						for (String f : next.getColNames())
 						{
-							tuple.set(f, next.get(f));
-							colCount++;
-							if (colLimit != 0 && colCount > colLimit) break;
+							if (colOffset == 0 || colIndex > colOffset)
+							{
+								colNames.add(f);
+								colCount++;
+								if (colLimit != 0 && colCount > colLimit) break;
+							}
+							colIndex++;
 						}
-						colIndex++;
+						schema = new TupleSchema(colNames);
 					}
-					next = tuple;
+					Object[] values = new Object[schema.getNrCols()];
+					for (int i = 0; i < values.length; ++i)
+						values[i] = next.get(schema.getColName(i));
+					next = new ArrayTuple(schema, values);
 				}
 			}
 			else
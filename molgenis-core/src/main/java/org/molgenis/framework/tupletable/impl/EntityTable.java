@@ -8,7 +8,10 @@ import org.molgenis.framework.db.Database;
 import org.molgenis.framework.db.DatabaseException;
 import org.molgenis.framework.db.Query;
 import org.molgenis.framework.db.QueryRule;
+import org.molgenis.framework.db.QueryRule.Operator;
+import org.molgenis.framework.db.paging.KeysetPager;
 import org.molgenis.framework.tupletable.AbstractFilterableTupleTable;
+import org.molgenis.framework.tupletable.DatabaseTupleTable;
 import org.molgenis.framework.tupletable.TableException;
 import org.molgenis.model.elements.Field;
 import org.molgenis.util.Entity;
@@ -18,7 +21,7 @@ import org.molgenis.util.tuple.Tuple;
 /**
  * Wrap an Entity (that is stored in a database) into a TupleTable
  */
-public class EntityTable extends AbstractFilterableTupleTable
+public class EntityTable extends AbstractFilterableTupleTable implements DatabaseTupleTable
 {
 	// class to query
 	private Class<? extends Entity> entityClass;
@@ -26,6 +29,10 @@ public class EntityTable extends AbstractFilterableTupleTable
 	// copy of the fields from meta database
 	private List<Field> columns;
 
+	// pages the entities within limit/offset, keeps its positions between
+	// requests
+	private KeysetPager<? extends Entity> pager;
+
 	/**
 	 * Constructor
 	 * 
@@ -69,15 +76,19 @@ public class EntityTable extends AbstractFilterableTupleTable
 	{
 		try
 		{
-			Query<? extends Entity> q = getDb().query(entityClass);
 			if (this.getLimit() > 0)
 			{
-				q.limit(this.getLimit());
-			}
-			if (this.getOffset() > 0)
-			{
-				q.offset(this.getOffset());
+				List<? extends Entity> entities = getPager().getPage(getDb());
+
+				List<Tuple> result = new ArrayList<Tuple>(entities.size());
+				for (Entity entity : entities)
+				{
+					result.add(new EntityTuple(entity));
+				}
+				return result;
 			}
+
+			Query<? extends Entity> q = getDb().query(entityClass);
 			if (getFilters().size() > 0)
 			{
 				q.addRules(getFilters().toArray(new QueryRule[getFilters().size()]));
@@ -114,10 +125,7 @@ public class EntityTable extends AbstractFilterableTupleTable
 	{
 		try
 		{
-			if (getFilters().size() > 0) return getDb().count(entityClass,
-					getFilters().toArray(new QueryRule[getFilters().size()]));
-			else
-				return getDb().count(entityClass);
+			return getPager().getCount(getDb());
 		}
 		catch (DatabaseException e)
 		{
@@ -125,6 +133,55 @@ public class EntityTable extends AbstractFilterableTupleTable
 		}
 	}
 
+	@Override
+	public void invalidate()
+	{
+		if (pager != null) pager.invalidate();
+	}
+
+	/**
+	 * Returns the pager, updated with the current filters, sorting, limit and
+	 * offset of this table
+	 */
+	private KeysetPager<? extends Entity> getPager() throws DatabaseException
+	{
+		if (pager == null)
+		{
+			pager = createPager(entityClass);
+			pager.setIncludeSubclasses(true);
+		}
+
+		List<QueryRule> filters = new ArrayList<QueryRule>();
+		QueryRule sortRule = null;
+		for (QueryRule rule : getFilters())
+		{
+			if (rule.getOperator() == Operator.SORTASC || rule.getOperator() == Operator.SORTDESC) sortRule = rule;
+			else
+				filters.add(rule);
+		}
+		pager.resetFilters(filters);
+		if (sortRule != null)
+		{
+			pager.setOrderByField(sortRule.getValue().toString());
+			pager.setOrderByOperator(sortRule.getOperator());
+		}
+		else
+		{
+			pager.resetOrderBy();
+		}
+		if (getLimit() > 0)
+		{
+			pager.setLimit(getLimit());
+			pager.setOffset(getOffset());
+		}
+		return pager;
+	}
+
+	private static <E extends Entity> KeysetPager<E> createPager(Class<E> entityClass)
+	{
+		return new KeysetPager<E>(entityClass);
+	}
+
 	/**
 	 * very bad: bypasses all security and connection management
 	 */
@@ -1,25 +1,38 @@
 package org.molgenis.framework.tupletable.impl;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.molgenis.framework.db.Database;
 import org.molgenis.framework.db.QueryRule;
+import org.molgenis.framework.db.QueryRule.Operator;
 import org.molgenis.framework.tupletable.AbstractFilterableTupleTable;
 import org.molgenis.framework.tupletable.TableException;
+import org.molgenis.io.TupleReader;
 import org.molgenis.model.elements.Field;
 import org.molgenis.util.tuple.Tuple;
 
+/**
+ * TupleTable on top of a custom SQL query. The query is wrapped as derived
+ * table, so filters, sorting, limit, offset and the column window are executed
+ * by the database: 'SELECT [columns] FROM ([query]) tupletable WHERE [filters]
+ * ORDER BY [sort] LIMIT [limit] OFFSET [offset]'. The alias has no AS, which
+ * Oracle does not allow before a table alias. Rows are streamed, so a page of
+ * a large result costs only the rows of the page.
+ */
 public class JdbcTable extends AbstractFilterableTupleTable
 {
+	private static final String TABLE_ALIAS = "tupletable";
+
 	private Database db;
-	private List<Tuple> rs;
 	private List<Field> columns;
 	private final String query;
-	private final String countQuery;
-	private boolean loaded = false;
+	/** readers opened by iterator(), released on close() */
+	private final List<TupleReader> readers = new ArrayList<TupleReader>();
 
 	public JdbcTable(Database db, String query, List<QueryRule> rules) throws TableException
 	{
@@ -27,9 +40,6 @@ public class JdbcTable extends AbstractFilterableTupleTable
 		this.db = db;
 		this.query = query;
 		this.setFilters(rules);
-
-		final String fromExpression = StringUtils.substringBetween(query, "SELECT", "FROM");
-		this.countQuery = StringUtils.replace(query, fromExpression, " COUNT(*) ");
 	}
 
 	public JdbcTable(Database db, String query) throws TableException
@@ -37,53 +47,125 @@ public class JdbcTable extends AbstractFilterableTupleTable
 		this(db, query, new ArrayList<QueryRule>());
 	}
 
-	private void load() throws TableException
+	/** wraps the query as derived table, e.g. to filter on column aliases */
+	private String getDerivedTable()
+	{
+		// a trailing ';' is not allowed in a subquery
+		String subQuery = StringUtils.stripEnd(query.trim(), ";").trim();
+		return " FROM (" + subQuery + ") " + TABLE_ALIAS;
+	}
+
+	/** Returns the columns to select: only the column window, if any */
+	private String getSelectList() throws TableException
 	{
-		if (!loaded)
+		if (getColLimit() == 0 && getColOffset() == 0) return "*";
+
+		StringBuilder strBuilder = new StringBuilder();
+		for (Field column : getColumns())
 		{
-			loaded = true;
-			try
-			{
-				rs = db.sql(query, getFilters().toArray(new QueryRule[0]));
-				columns = loadColumns();
-			}
-			catch (Exception e)
-			{
-				throw new TableException(e);
-			}
+			if (strBuilder.length() > 0) strBuilder.append(", ");
+			strBuilder.append(column.getName());
+		}
+		return strBuilder.length() > 0 ? strBuilder.toString() : "*";
+	}
+
+	private TupleReader openReader(String sql, QueryRule... rules) throws TableException
+	{
+		try
+		{
+			TupleReader reader = db.sqlReader(sql, rules);
+			readers.add(reader);
+			return reader;
+		}
+		catch (Exception e)
+		{
+			throw new TableException(e);
 		}
 	}
 
+	/** filters and sort rules of this table plus the current limit and offset */
+	private QueryRule[] getPageRules()
+	{
+		List<QueryRule> rules = new ArrayList<QueryRule>(getFilters());
+		if (getLimit() > 0)
+		{
+			rules.add(new QueryRule(Operator.LIMIT, getLimit()));
+		}
+		else if (getOffset() > 0)
+		{
+			// most databases don't support an offset without limit
+			rules.add(new QueryRule(Operator.LIMIT, Integer.MAX_VALUE));
+		}
+		if (getOffset() > 0) rules.add(new QueryRule(Operator.OFFSET, getOffset()));
+		return rules.toArray(new QueryRule[rules.size()]);
+	}
+
+	/** filters of this table without sort rules */
+	private QueryRule[] getWhereRules()
+	{
+		List<QueryRule> rules = new ArrayList<QueryRule>();
+		for (QueryRule rule : getFilters())
+		{
+			if (rule.getOperator() != Operator.SORTASC && rule.getOperator() != Operator.SORTDESC) rules.add(rule);
+		}
+		return rules.toArray(new QueryRule[rules.size()]);
+	}
+
+	/** Returns the SQL to count the rows of the query */
+	private String getCountQuery()
+	{
+		return "SELECT COUNT(*)" + getDerivedTable();
+	}
+
 	@Override
 	public List<Field> getAllColumns() throws TableException
 	{
-		load();
+		if (columns == null)
+		{
+			// retrieve the column names without retrieving rows
+			TupleReader reader = openReader("SELECT *" + getDerivedTable() + " WHERE 1 = 0");
+			try
+			{
+				columns = loadColumns(reader);
+			}
+			finally
+			{
+				readers.remove(reader);
+				IOUtils.closeQuietly(reader);
+			}
+		}
 		return columns;
 	}
 
-	private List<Field> loadColumns() throws TableException
+	private List<Field> loadColumns(TupleReader reader) throws TableException
 	{
-		load();
-		if (rs.size() > 0)
+		try
 		{
 			List<Field> columns = new ArrayList<Field>();
-			for (String colName : rs.get(0).getColNames())
-				columns.add(new Field(colName));
+			Iterator<String> it = reader.colNamesIterator();
+			if (it != null)
+			{
+				while (it.hasNext())
+					columns.add(new Field(it.next()));
+			}
 			return columns;
 		}
-		return new ArrayList<Field>();
+		catch (IOException e)
+		{
+			throw new TableException(e);
+		}
 	}
 
 	/**
-	 * Don't forget to call close after done with Iterator
+	 * Streams the rows of the current page and column window from the
+	 * database. Don't forget to call close after done with Iterator
 	 */
 	@Override
 	public Iterator<Tuple> iterator()
 	{
 		try
 		{
-			load();
-			return rs.iterator();
+			return openReader("SELECT " + getSelectList() + getDerivedTable(), getPageRules()).iterator();
 		}
 		catch (Exception e)
 		{
@@ -94,6 +176,9 @@ public class JdbcTable extends AbstractFilterableTupleTable
 	@Override
 	public void close() throws TableException
 	{
+		for (TupleReader reader : readers)
+			IOUtils.closeQuietly(reader);
+		readers.clear();
 	}
 
 	@Override
@@ -101,7 +186,7 @@ public class JdbcTable extends AbstractFilterableTupleTable
 	{
 		try
 		{
-			final List<Tuple> countSet = db.sql(countQuery, getFilters().toArray(new QueryRule[0]));
+			final List<Tuple> countSet = db.sql(getCountQuery(), getWhereRules());
 			int rowCount = 0;
 			if (countSet.size() > 0)
 			{
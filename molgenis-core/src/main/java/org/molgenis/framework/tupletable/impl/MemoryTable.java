@@ -8,9 +8,9 @@ import org.molgenis.fieldtypes.StringField;
 import org.molgenis.framework.tupletable.AbstractTupleTable;
 import org.molgenis.framework.tupletable.TableException;
 import org.molgenis.model.elements.Field;
-import org.molgenis.util.tuple.KeyValueTuple;
+import org.molgenis.util.tuple.ArrayTuple;
 import org.molgenis.util.tuple.Tuple;
-import org.molgenis.util.tuple.WritableTuple;
+import org.molgenis.util.tuple.TupleSchema;
 
 /**
  * Wrap a List<Tuple> into a TupleTable
@@ -54,6 +54,7 @@ public class MemoryTable extends AbstractTupleTable
 		List<String> columns = new ArrayList<String>();
 		for (Field f : getColumns())
 			columns.add(f.getName());
+		TupleSchema schema = new TupleSchema(columns);
 
 		List<Tuple> result = new ArrayList<Tuple>();
 		if (getLimit() > 0 || getOffset() > 0)
@@ -64,10 +65,7 @@ public class MemoryTable extends AbstractTupleTable
 			{
 				if (index > getOffset())
 				{
-					KeyValueTuple tuple = new KeyValueTuple();
-					for (String col : columns)
-						tuple.set(col, row.get(col));
-					result.add(tuple);
+					result.add(selectColumns(row, columns, schema));
 
 					count++;
 					if (count >= getLimit()) break;
@@ -79,15 +77,20 @@ public class MemoryTable extends AbstractTupleTable
 		{
 			for (Tuple row : this.rows)
 			{
-				WritableTuple tuple = new KeyValueTuple();
-				for (String col : columns)
-					tuple.set(col, row.get(col));
-				result.add(tuple);
+				result.add(selectColumns(row, columns, schema));
 			}
 		}
 		return result;
 	}
 
+	private static Tuple selectColumns(Tuple row, List<String> columns, TupleSchema schema)
+	{
+		Object[] values = new Object[columns.size()];
+		for (int i = 0; i < values.length; ++i)
+			values[i] = row.get(columns.get(i));
+		return new ArrayTuple(schema, values);
+	}
+
 	@Override
 	public Iterator<Tuple> iterator()
 	{
@@ -228,6 +228,20 @@ public class JQGridView extends HtmlWidget
 						rules.addAll(filterRules);
 					}
 
+					if (StringUtils.isNotEmpty(postData.getSidx()))
+					{
+						final Operator sortOperator = StringUtils.equals(postData.getSord(), "asc") ? QueryRule.Operator.SORTASC : QueryRule.Operator.SORTDESC;
+						rules.add(new QueryRule(sortOperator, postData.getSidx()));
+					}
+
+					// apply filters before counting, so the count matches
+					// the rows
+					if ((tupleTable instanceof FilterableTupleTable) && !request.isNull("_search")
+							&& request.getBoolean("_search"))
+					{
+						((FilterableTupleTable) tupleTable).setFilters(rules);
+					}
+
 					int residue = 0;
 					final int rowCount = tupleTable.getCount();
 					if (rowCount % postData.getRows() != 0)
@@ -249,18 +263,6 @@ public class JQGridView extends HtmlWidget
 						tupleTable.setOffset(offset);
 					}
 
-					if (StringUtils.isNotEmpty(postData.getSidx()))
-					{
-						final Operator sortOperator = StringUtils.equals(postData.getSord(), "asc") ? QueryRule.Operator.SORTASC : QueryRule.Operator.SORTDESC;
-						rules.add(new QueryRule(sortOperator, postData.getSidx()));
-					}
-
-					if ((tupleTable instanceof FilterableTupleTable) && !request.isNull("_search")
-							&& request.getBoolean("_search"))
-					{
-						((FilterableTupleTable) tupleTable).setFilters(rules);
-					}
-
 					renderData(request, postData, totalPages, tupleTable);
 					break;
 
@@ -278,6 +280,7 @@ public class JQGridView extends HtmlWidget
 					try
 					{
 						((EditableTupleTable) tupleTable).update(request);
+						if (tupleTable instanceof DatabaseTupleTable) ((DatabaseTupleTable) tupleTable).invalidate();
 
 						result.addProperty("message", "Record updated");
 						result.addProperty("success", true);
@@ -305,6 +308,7 @@ public class JQGridView extends HtmlWidget
 					try
 					{
 						((EditableTupleTable) tupleTable).add(request);
+						if (tupleTable instanceof DatabaseTupleTable) ((DatabaseTupleTable) tupleTable).invalidate();
 						result.addProperty("message", "Record added");
 						result.addProperty("success", true);
 					}
@@ -331,6 +335,7 @@ public class JQGridView extends HtmlWidget
 					try
 					{
 						((EditableTupleTable) tupleTable).remove(request);
+						if (tupleTable instanceof DatabaseTupleTable) ((DatabaseTupleTable) tupleTable).invalidate();
 
 						result.addProperty("message", "Record deleted");
 						result.addProperty("success", true);
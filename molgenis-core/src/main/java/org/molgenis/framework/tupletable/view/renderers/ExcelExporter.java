@@ -11,6 +11,7 @@ import org.molgenis.framework.tupletable.TableException;
 import org.molgenis.framework.tupletable.TupleTable;
 import org.molgenis.io.TupleWriter;
 import org.molgenis.io.excel.ExcelWriter;
+import org.molgenis.io.excel.ExcelWriter.FileFormat;
 import org.molgenis.model.elements.Field;
 import org.molgenis.util.tuple.Tuple;
 
@@ -30,7 +31,7 @@ public class ExcelExporter extends AbstractExporter
 	@Override
 	public void export(OutputStream os) throws TableException
 	{
-		ExcelWriter excelWriter = new ExcelWriter(os);
+		ExcelWriter excelWriter = new ExcelWriter(os, FileFormat.XLSX);
 		try
 		{
 			// save table state
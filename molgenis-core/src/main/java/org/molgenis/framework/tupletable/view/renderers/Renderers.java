@@ -78,7 +78,8 @@ public class Renderers
 		public void export(MolgenisRequest request, String fileName, TupleTable tupleTable, int totalPages,
 				int currentPage) throws TableException, IOException
 		{
-			HeaderHelper.setHeader(request.getResponse(), "application/ms-excel", fileName + ".xlsx");
+			HeaderHelper.setHeader(request.getResponse(),
+					"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet", fileName + ".xlsx");
 			final ExcelExporter excelExport = new ExcelExporter(tupleTable);
 			excelExport.export(request.getResponse().getOutputStream());
 		}
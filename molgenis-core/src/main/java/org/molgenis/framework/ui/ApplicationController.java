@@ -3,6 +3,7 @@ package org.molgenis.framework.ui;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.Writer;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -14,6 +15,7 @@ import org.molgenis.framework.server.MolgenisContext;
 import org.molgenis.framework.server.MolgenisRequest;
 import org.molgenis.framework.ui.ScreenModel.Show;
 import org.molgenis.framework.ui.html.FreemarkerInput;
+import org.molgenis.framework.ui.html.HtmlInputException;
 import org.molgenis.framework.ui.html.HtmlSettings;
 import org.molgenis.framework.ui.html.RichtextInput;
 import org.molgenis.framework.ui.html.render.RenderDecorator;
@@ -332,6 +334,17 @@ public class ApplicationController extends SimpleScreenController<ApplicationMod
 		return new FreemarkerView("ApplicationView.ftl", this.getModel());
 	}
 
+	/**
+	 * Renders the user interface directly into the writer of the response
+	 * instead of building the whole page as a String first
+	 */
+	public void render(Writer out) throws IOException, HtmlInputException
+	{
+		ScreenView view = getView();
+		if (view instanceof FreemarkerView) ((FreemarkerView) view).render(out);
+		else out.write(render());
+	}
+
 	/**
 	 * Store values in a map, much like session attributes. The reaason to do
 	 * this is because session variables are not always reachable inside plugin
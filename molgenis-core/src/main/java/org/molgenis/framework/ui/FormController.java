@@ -27,7 +27,7 @@ import org.molgenis.framework.db.DatabaseException;
 import org.molgenis.framework.db.QueryRule;
 import org.molgenis.framework.db.QueryRule.Operator;
 import org.molgenis.framework.db.paging.DatabasePager;
-import org.molgenis.framework.db.paging.LimitOffsetPager;
+import org.molgenis.framework.db.paging.KeysetPager;
 import org.molgenis.framework.server.MolgenisRequest;
 import org.molgenis.framework.ui.FormModel.Mode;
 import org.molgenis.framework.ui.ScreenModel.Show;
@@ -73,7 +73,8 @@ public abstract class FormController<E extends Entity> extends SimpleScreenContr
 		// FIXME: this assumes first column is sortable...
 		try
 		{
-			this.pager = new LimitOffsetPager<E>(getEntityClass(), model.create().getFields().firstElement());
+			this.pager = new KeysetPager<E>(getEntityClass(), model.create().getFields().firstElement(), model.create()
+					.getIdField());
 
 			// copy default sort from view
 			pager.setOrderByField(model.getSort());
@@ -482,6 +483,7 @@ public abstract class FormController<E extends Entity> extends SimpleScreenContr
 			msg = new ScreenMessage("ADD SUCCESS: affected " + updatedRows, null, true);
 			result = true;
 			// navigate to newly added record
+			pager.invalidate();
 			pager.last(db);
 
 		}
@@ -523,7 +525,7 @@ public abstract class FormController<E extends Entity> extends SimpleScreenContr
 		getModel().getMessages().add(msg);
 		if (msg.isSuccess())
 		{
-			pager.setDirty(true);
+			pager.invalidate();
 			// resetChildren();
 		}
 	}
@@ -549,6 +551,7 @@ public abstract class FormController<E extends Entity> extends SimpleScreenContr
 		// **make sure the user sees a record**/
 		if (msg.isSuccess())
 		{
+			pager.invalidate();
 			pager.prev(db);
 			// resetChildren();
 		}
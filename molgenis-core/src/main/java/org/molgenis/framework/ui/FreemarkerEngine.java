@@ -0,0 +1,347 @@
+package org.molgenis.framework.ui;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.apache.log4j.Logger;
+import org.molgenis.framework.ui.html.WidgetFactory;
+
+import freemarker.cache.ClassTemplateLoader;
+import freemarker.cache.FileTemplateLoader;
+import freemarker.cache.MruCacheStorage;
+import freemarker.cache.MultiTemplateLoader;
+import freemarker.cache.TemplateLoader;
+import freemarker.template.Configuration;
+import freemarker.template.ObjectWrapper;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateExceptionHandler;
+
+/**
+ * Application wide Freemarker configuration shared by all views. Templates are
+ * parsed once and kept in a bounded most-recently-used cache, the template
+ * loaders are checked for changes at most once per update delay. Templates are
+ * rendered directly into the writer that is passed in.
+ * <p>
+ * Template names are resolved against the optional template directory, the
+ * MOLGENIS ui package and the root of the classpath. Names that can only be
+ * found relative to the package of a context class (e.g. the model of a view)
+ * are rewritten to their classpath name, so that one cached template serves
+ * all views. Plugin templates are looked up relative to the plugin first, see
+ * {@link #processClassTemplate(String, Map, Writer, ObjectWrapper, Class...)}.
+ */
+public class FreemarkerEngine
+{
+	private static final Logger logger = Logger.getLogger(FreemarkerEngine.class);
+
+	/** maximum number of parsed templates kept in the cache */
+	public static final int DEFAULT_CACHE_SIZE = 250;
+	/** seconds between checks for changed templates, the Freemarker default */
+	public static final int DEFAULT_UPDATE_DELAY = 5;
+
+	/** classpath locations that are searched for templates by precompile */
+	private static final String[] TEMPLATE_ROOTS =
+	{ "org/molgenis/", "templates/" };
+	/** code generator templates are never rendered by the user interface */
+	private static final String GENERATOR_TEMPLATES = "org/molgenis/generators/";
+	/** templates in this package are loaded by their simple name */
+	private static final String UI_PACKAGE = MolgenisOriginalStyle.class.getPackage().getName().replace('.', '/')
+			+ '/';
+
+	private static volatile FreemarkerEngine instance;
+
+	private final Configuration conf;
+	private final TemplateLoader templateLoader;
+	/** resolved template names per context and template name */
+	private final Map<String, String> templateNames = new ConcurrentHashMap<String, String>();
+
+	/**
+	 * @return the shared engine, created with default settings and without
+	 *         template directory if it was not configured
+	 */
+	public static FreemarkerEngine getInstance()
+	{
+		FreemarkerEngine engine = instance;
+		if (engine == null)
+		{
+			synchronized (FreemarkerEngine.class)
+			{
+				engine = instance;
+				if (engine == null)
+				{
+					engine = new FreemarkerEngine(DEFAULT_CACHE_SIZE, DEFAULT_UPDATE_DELAY, null);
+					instance = engine;
+				}
+			}
+		}
+		return engine;
+	}
+
+	/**
+	 * Replaces the shared engine, typically called once on startup
+	 *
+	 * @param cacheSize
+	 *            maximum number of parsed templates kept in the cache
+	 * @param updateDelay
+	 *            seconds between checks for changed templates
+	 * @param templateDir
+	 *            directory that is searched for templates before the
+	 *            classpath, or null to only load templates from the classpath
+	 * @return the new shared engine
+	 */
+	public static synchronized FreemarkerEngine configure(int cacheSize, int updateDelay, File templateDir)
+	{
+		instance = new FreemarkerEngine(cacheSize, updateDelay, templateDir);
+		return instance;
+	}
+
+	@SuppressWarnings("deprecation")
+	FreemarkerEngine(int cacheSize, int updateDelay, File templateDir)
+	{
+		if (cacheSize <= 0) throw new IllegalArgumentException("cache size must be > 0");
+		if (updateDelay < 0) throw new IllegalArgumentException("update delay must be >= 0");
+
+		List<TemplateLoader> loaders = new ArrayList<TemplateLoader>();
+		// load templates from the configured directory, never from the whole
+		// file system because template names may come from requests
+		if (templateDir != null)
+		{
+			try
+			{
+				loaders.add(new FileTemplateLoader(templateDir));
+			}
+			catch (IOException e)
+			{
+				throw new IllegalArgumentException("invalid template directory " + templateDir, e);
+			}
+		}
+		// load templates from MOLGENIS
+		loaders.add(new ClassTemplateLoader(MolgenisOriginalStyle.class, ""));
+		// load templates from plugins, can be anywhere
+		loaders.add(new ClassTemplateLoader());
+		this.templateLoader = new MultiTemplateLoader(loaders.toArray(new TemplateLoader[loaders.size()]));
+
+		conf = new Configuration();
+		conf.setTemplateExceptionHandler(TemplateExceptionHandler.RETHROW_HANDLER);
+		conf.setTemplateLoader(templateLoader);
+		conf.setCacheStorage(new MruCacheStorage(cacheSize, cacheSize));
+		conf.setTemplateUpdateDelay(updateDelay);
+		conf.addAutoInclude("ScreenViewHelper.ftl");
+		WidgetFactory.configure(conf);
+	}
+
+	public Configuration getConfiguration()
+	{
+		return conf;
+	}
+
+	/**
+	 * @param templatePath
+	 *            template name
+	 * @param contextClasses
+	 *            classes whose package is searched if the template is not
+	 *            found by name
+	 * @return parsed template
+	 * @throws IOException
+	 *             if the template does not exist or cannot be parsed
+	 */
+	public Template getTemplate(String templatePath, Class<?>... contextClasses) throws IOException
+	{
+		return conf.getTemplate(resolveTemplateName(templatePath, contextClasses));
+	}
+
+	/**
+	 * Renders a template into a writer using the default object wrapper
+	 */
+	public void process(String templatePath, Map<String, Object> templateArgs, Writer out, Class<?>... contextClasses)
+			throws IOException, TemplateException
+	{
+		getTemplate(templatePath, contextClasses).process(templateArgs, out);
+	}
+
+	/**
+	 * Renders a template into a writer using the given object wrapper
+	 */
+	public void process(String templatePath, Map<String, Object> templateArgs, Writer out, ObjectWrapper wrapper,
+			Class<?>... contextClasses) throws IOException, TemplateException
+	{
+		getTemplate(templatePath, contextClasses).process(templateArgs, out, wrapper);
+	}
+
+	/**
+	 * Renders a template that is looked up in the packages of the context
+	 * classes before the template directory and the classpath, so that a
+	 * plugin template is not shadowed by a template with the same name
+	 * elsewhere. Like all templates it auto-includes ScreenViewHelper.ftl and
+	 * can use the widget macros.
+	 */
+	public void processClassTemplate(String templatePath, Map<String, Object> templateArgs, Writer out,
+			ObjectWrapper wrapper, Class<?>... contextClasses) throws IOException, TemplateException
+	{
+		conf.getTemplate(resolveTemplateName(templatePath, true, contextClasses)).process(templateArgs, out, wrapper);
+	}
+
+	String resolveTemplateName(String templatePath, Class<?>... contextClasses) throws IOException
+	{
+		return resolveTemplateName(templatePath, false, contextClasses);
+	}
+
+	String resolveTemplateName(String templatePath, boolean classTemplate, Class<?>... contextClasses)
+			throws IOException
+	{
+		if (contextClasses.length == 0) return templatePath;
+
+		StringBuilder keyBuilder = new StringBuilder(templatePath);
+		keyBuilder.append(classTemplate ? "\nclass" : "\nshared");
+		for (Class<?> contextClass : contextClasses)
+			if (contextClass != null) keyBuilder.append('\n').append(contextClass.getName());
+		String key = keyBuilder.toString();
+
+		String templateName = templateNames.get(key);
+		if (templateName == null)
+		{
+			templateName = classTemplate ? null : findTemplateName(templatePath);
+			for (int i = 0; templateName == null && i < contextClasses.length; ++i)
+			{
+				templateName = getClassTemplateName(templatePath, contextClasses[i]);
+			}
+			if (templateName == null) templateName = templatePath;
+			templateNames.put(key, templateName);
+		}
+		return templateName;
+	}
+
+	/**
+	 * @return the template name if the template loader can find it, otherwise
+	 *         null
+	 */
+	private String findTemplateName(String templatePath) throws IOException
+	{
+		Object templateSource = templateLoader.findTemplateSource(templatePath);
+		if (templateSource == null) return null;
+		templateLoader.closeTemplateSource(templateSource);
+		return templatePath;
+	}
+
+	/**
+	 * @return classpath name of a template relative to the package of the
+	 *         context class, or null if it is not there
+	 */
+	private static String getClassTemplateName(String templatePath, Class<?> contextClass)
+	{
+		if (contextClass == null || contextClass.getResource(templatePath) == null) return null;
+		String className = contextClass.getName();
+		int idx = className.lastIndexOf('.');
+		return idx != -1 ? className.substring(0, idx).replace('.', '/') + '/' + templatePath : templatePath;
+	}
+
+	/**
+	 * Parses all user interface templates on the classpath of the class
+	 * loader, so the first requests do not have to wait for templates to be
+	 * parsed. Templates that fail to parse are logged and skipped.
+	 *
+	 * @return names of the parsed templates
+	 */
+	public List<String> precompile(ClassLoader classLoader)
+	{
+		long startTime = System.currentTimeMillis();
+		TreeSet<String> templatePaths = new TreeSet<String>();
+		for (String root : TEMPLATE_ROOTS)
+		{
+			try
+			{
+				Enumeration<URL> urls = classLoader.getResources(root);
+				while (urls.hasMoreElements())
+					findTemplates(urls.nextElement(), root, templatePaths);
+			}
+			catch (IOException e)
+			{
+				logger.warn("failed to list templates in " + root + ": " + e.getMessage());
+			}
+		}
+
+		List<String> templateNames = new ArrayList<String>(templatePaths.size());
+		for (String templatePath : templatePaths)
+		{
+			if (templatePath.startsWith(GENERATOR_TEMPLATES)) continue;
+
+			// use the name the views use so they hit the cache
+			String templateName = templatePath;
+			if (templatePath.startsWith(UI_PACKAGE) && templatePath.indexOf('/', UI_PACKAGE.length()) == -1)
+			{
+				templateName = templatePath.substring(UI_PACKAGE.length());
+			}
+			try
+			{
+				conf.getTemplate(templateName);
+				templateNames.add(templateName);
+			}
+			catch (IOException e)
+			{
+				logger.warn("failed to precompile template " + templateName + ": " + e.getMessage());
+			}
+		}
+		logger.info("precompiled " + templateNames.size() + " templates in "
+				+ (System.currentTimeMillis() - startTime) + " ms");
+		return templateNames;
+	}
+
+	private static void findTemplates(URL url, String root, TreeSet<String> templatePaths) throws IOException
+	{
+		if ("file".equals(url.getProtocol()))
+		{
+			try
+			{
+				findTemplates(new File(url.toURI()), root, templatePaths);
+			}
+			catch (URISyntaxException e)
+			{
+				throw new IOException(e);
+			}
+		}
+		else if ("jar".equals(url.getProtocol()))
+		{
+			URLConnection connection = url.openConnection();
+			if (!(connection instanceof JarURLConnection)) return;
+			connection.setUseCaches(false);
+			JarFile jarFile = ((JarURLConnection) connection).getJarFile();
+			try
+			{
+				Enumeration<JarEntry> entries = jarFile.entries();
+				while (entries.hasMoreElements())
+				{
+					String name = entries.nextElement().getName();
+					if (name.startsWith(root) && name.endsWith(".ftl")) templatePaths.add(name);
+				}
+			}
+			finally
+			{
+				jarFile.close();
+			}
+		}
+	}
+
+	private static void findTemplates(File dir, String path, TreeSet<String> templatePaths)
+	{
+		File[] files = dir.listFiles();
+		if (files == null) return;
+		for (File file : files)
+		{
+			if (file.isDirectory()) findTemplates(file, path + file.getName() + '/', templatePaths);
+			else if (file.getName().endsWith(".ftl")) templatePaths.add(path + file.getName());
+		}
+	}
+}
@@ -1,26 +1,19 @@
 package org.molgenis.framework.ui;
 
-import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.util.ArrayList;
+import java.io.Writer;
 import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 
 import org.apache.log4j.Logger;
 import org.molgenis.framework.ui.html.WidgetFactory;
 import org.molgenis.model.elements.Field;
 
-import freemarker.cache.ClassTemplateLoader;
-import freemarker.cache.FileTemplateLoader;
-import freemarker.cache.MultiTemplateLoader;
-import freemarker.cache.TemplateLoader;
-import freemarker.template.Template;
+import freemarker.core.ParseException;
 import freemarker.template.TemplateException;
-import freemarker.template.TemplateExceptionHandler;
 
 /**
  * FreemarkerView uses a Freemarker template to render the user interface. The
@@ -39,8 +32,6 @@ import freemarker.template.TemplateExceptionHandler;
 public class FreemarkerView extends SimpleScreenView<ScreenModel>
 {
 
-	// wrapper of this template
-	private freemarker.template.Configuration conf = null;
 	private String templatePath;
 	private static final Logger logger = Logger.getLogger(FreemarkerView.class);
 	private Map<String, Object> arguments = new LinkedHashMap<String, Object>();
@@ -75,106 +66,88 @@ public class FreemarkerView extends SimpleScreenView<ScreenModel>
 		super(null);
 	}
 
-	@SuppressWarnings("deprecation")
-	public String render(String templatePath, Map<String, Object> templateArgs)// ,
-																				// boolean
-																				// usePublicFields)
+	public String render(String templatePath, Map<String, Object> templateArgs)
 	{
-		logger.debug("trying to render " + templatePath);
+		StringWriter writer = new StringWriter();
 		try
 		{
-			// keep configuration in session so we can reuse it
-			if (conf == null)
-			{
-				logger.debug("create freemarker config");
-				// create configuration
-				conf = new freemarker.template.Configuration();
-				conf.setTemplateExceptionHandler(TemplateExceptionHandler.RETHROW_HANDLER);
-
-				List<TemplateLoader> loaders = new ArrayList<TemplateLoader>();
-
-				// create template loader
-				// load templates from MOLGENIS
-				loaders.add(new ClassTemplateLoader(MolgenisOriginalStyle.class, ""));
-				// load templates from plugins, can be anywere
-				// (nb this method is deprecated but I can't see why)
-				loaders.add(new ClassTemplateLoader());
-
-				for (Entry<String, Object> entry : templateArgs.entrySet())
-				{
-					Object value = entry.getValue();
-					if (entry.getKey() != null && entry.getKey().equals("model") && value != null)
-					{
-						loaders.add(new ClassTemplateLoader(value.getClass()));
-
-						// also add superclass because of generated code
-						loaders.add(new ClassTemplateLoader(value.getClass().getSuperclass()));
-					}
-				}
-				loaders.add(new FileTemplateLoader());
-				loaders.add(new FileTemplateLoader(new File("/")));
-
-				// ClassTemplateLoader loader1 = new ClassTemplateLoader(
-				// Object.class, "");
-				// ClassTemplateLoader loader2 = new ClassTemplateLoader(
-				// getClass().getSuperclass(), "");
-				MultiTemplateLoader mLoader = new MultiTemplateLoader(
-						loaders.toArray(new TemplateLoader[loaders.size()]));
-				conf.setTemplateLoader(mLoader);
-				logger.debug("created freemarker config");
-			}
-
-			// merge template
-			conf.addAutoInclude("ScreenViewHelper.ftl");
-
-			WidgetFactory.configure(conf);
-
-			Template template = conf.getTemplate(templatePath);
-			StringWriter writer = new StringWriter();
-
-			template.process(templateArgs, writer);
-			writer.close();
-
-			return writer.toString();
-
+			render(templatePath, templateArgs, writer);
 		}
-		catch (TemplateException e)
+		catch (IOException e)
 		{
-			logger.error("rendering of template " + templatePath + " failed:");
-			e.printStackTrace();
+			// StringWriter does not throw, so the template could not be read
+			logger.error("rendering of template " + templatePath + " failed:", e);
+			return toHtml(e);
+		}
+		return writer.toString();
+	}
 
-			StringWriter sw = new StringWriter();
-			PrintWriter pw = new PrintWriter(sw, true);
-			e.printStackTrace(pw);
-			pw.flush();
-			sw.flush();
+	/**
+	 * Renders the template directly into the writer using the shared
+	 * {@link FreemarkerEngine}. Templates that cannot be found relative to the
+	 * MOLGENIS ui package or the classpath are looked up in the package of the
+	 * model argument and its superclass. If rendering fails the stack trace is
+	 * written instead.
+	 * 
+	 * @throws IOException
+	 *             if writing to the writer fails
+	 */
+	public void render(String templatePath, Map<String, Object> templateArgs, Writer out) throws IOException
+	{
+		logger.debug("trying to render " + templatePath);
 
-			return sw.toString().replace("\n", "<br/>");
+		Class<?>[] contextClasses;
+		Object model = templateArgs.get("model");
+		if (model != null) contextClasses = new Class<?>[]
+		{ model.getClass(), model.getClass().getSuperclass() };
+		else contextClasses = new Class<?>[0];
 
+		try
+		{
+			FreemarkerEngine.getInstance().process(templatePath, templateArgs, out, contextClasses);
 		}
-		catch (IOException e)
+		catch (TemplateException e)
 		{
-			logger.error("rendering of template " + templatePath + " failed:");
-			e.printStackTrace();
-
-			StringWriter sw = new StringWriter();
-			PrintWriter pw = new PrintWriter(sw, true);
-			e.printStackTrace(pw);
-			pw.flush();
-			sw.flush();
-
-			return sw.toString().replace("\n", "<br/>");
-
+			logger.error("rendering of template " + templatePath + " failed:", e);
+			out.write(toHtml(e));
+		}
+		catch (FileNotFoundException e)
+		{
+			logger.error("rendering of template " + templatePath + " failed:", e);
+			out.write(toHtml(e));
+		}
+		catch (ParseException e)
+		{
+			logger.error("rendering of template " + templatePath + " failed:", e);
+			out.write(toHtml(e));
 		}
 	}
 
+	private static String toHtml(Exception e)
+	{
+		StringWriter sw = new StringWriter();
+		PrintWriter pw = new PrintWriter(sw, true);
+		e.printStackTrace(pw);
+		pw.flush();
+		return sw.toString().replace("\n", "<br/>");
+	}
+
 	@Override
 	public String render()
 	{
-		// get the database for this application
-		// Database db =
-		// this.getModel().getController().getApplicationController().getDatabase();
+		return this.render(templatePath, getTemplateArgs());
+	}
+
+	/**
+	 * Streams the view into the writer instead of building a String
+	 */
+	public void render(Writer out) throws IOException
+	{
+		this.render(templatePath, getTemplateArgs(), out);
+	}
 
+	private Map<String, Object> getTemplateArgs()
+	{
 		// create template parameters
 		Map<String, Object> templateArgs = new LinkedHashMap<String, Object>(this.arguments);
 		if (model != null)
@@ -186,8 +159,7 @@ public class FreemarkerView extends SimpleScreenView<ScreenModel>
 		templateArgs.put("model", model);
 		templateArgs.put("widgetfactory", new WidgetFactory());
 		templateArgs.put("typefield", Field.TYPE_FIELD);
-
-		return this.render(templatePath, templateArgs);
+		return templateArgs;
 	}
 
 	@Override
@@ -17,19 +17,20 @@ import org.molgenis.framework.db.DatabaseException;
 import org.molgenis.framework.server.MolgenisRequest;
 import org.molgenis.util.Entity;
 
-import freemarker.cache.ClassTemplateLoader;
-import freemarker.cache.MultiTemplateLoader;
-import freemarker.cache.TemplateLoader;
 import freemarker.ext.beans.BeansWrapper;
-import freemarker.template.Template;
 
 @Deprecated
 public class GenericPlugin extends PluginModel<Entity>
 {
 	// serialization id
 	private static final long serialVersionUID = 1L;
-	// wrapper of this template
-	private freemarker.template.Configuration cfg = null;
+	// wrapper of the template arguments
+	private static final BeansWrapper WRAPPER;
+	static
+	{
+		WRAPPER = new BeansWrapper();
+		WRAPPER.setExposeFields(true);
+	}
 	// should this Plugin generate a form or not
 	public boolean isForm = true;
 
@@ -95,35 +96,15 @@ public class GenericPlugin extends PluginModel<Entity>
 		logger.debug("trying to render " + templatePath);
 		try
 		{
-			// keep configuration in session so we can reuse it
-			if (cfg == null)
-			{
-				logger.debug("create freemarker config");
-				// create configuration
-				cfg = new freemarker.template.Configuration();
-				BeansWrapper wrapper = new BeansWrapper();
-				wrapper.setExposeFields(true);
-				cfg.setObjectWrapper(wrapper);
-
-				// create template loader
-				ClassTemplateLoader loader1 = new ClassTemplateLoader(getClass(), "");
-				ClassTemplateLoader loader2 = new ClassTemplateLoader(getClass().getSuperclass(), "");
-				TemplateLoader[] loaders = new TemplateLoader[]
-				{ loader1, loader2 };
-				MultiTemplateLoader mLoader = new MultiTemplateLoader(loaders);
-				cfg.setTemplateLoader(mLoader);
-				logger.debug("created freemarker config");
-			}
-
 			// create template parameters
 			Map<String, Object> templateArgs = new TreeMap<String, Object>();
 			templateArgs.put("screen", this);
 
-			// merge template
-			Template template = cfg.getTemplate(templatePath);
+			// merge template, the template is looked up relative to this plugin
+			// before the shared template loaders
 			StringWriter writer = new StringWriter();
-			template.process(templateArgs, writer);
-			writer.close();
+			FreemarkerEngine.getInstance().processClassTemplate(templatePath, templateArgs, writer, WRAPPER,
+					getClass(), getClass().getSuperclass());
 
 			return writer.toString();
 		}
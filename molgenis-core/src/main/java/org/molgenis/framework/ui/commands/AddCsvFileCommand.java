@@ -108,6 +108,7 @@ public class AddCsvFileCommand<E extends Entity> extends SimpleCommand
 						true);
 				logger.debug("CSV UPLOAD SUCCESS: added " + importReport.getNrImported() + " rows");
 				getFormScreen().getPager().resetFilters();
+				getFormScreen().getPager().invalidate();
 				getFormScreen().getPager().last(db);
 			}
 			catch (Exception e)
@@ -14,6 +14,7 @@ import org.molgenis.framework.ui.ScreenModel;
 import org.molgenis.framework.ui.html.ActionInput;
 import org.molgenis.framework.ui.html.HtmlInput;
 import org.molgenis.io.excel.ExcelWriter;
+import org.molgenis.io.excel.ExcelWriter.FileFormat;
 import org.molgenis.util.Entity;
 
 public class DownloadAllXlsCommand<E extends Entity> extends SimpleCommand
@@ -24,7 +25,7 @@ public class DownloadAllXlsCommand<E extends Entity> extends SimpleCommand
 	public DownloadAllXlsCommand(String name, FormController<E> parentScreen)
 	{
 		super(name, parentScreen);
-		this.setLabel("Download all (.xls)");
+		this.setLabel("Download all (.xlsx)");
 		this.setIcon("img/download.png");
 		this.setDownload(true);
 		this.setMenu("File");
@@ -42,7 +43,7 @@ public class DownloadAllXlsCommand<E extends Entity> extends SimpleCommand
 		List<String> fieldsToExport = controller.getVisibleColumnNames();
 
 		QueryRule[] rules = model.getRulesExclLimitOffset();
-		ExcelWriter excelWriter = new ExcelWriter(xlsDownload);
+		ExcelWriter excelWriter = new ExcelWriter(xlsDownload, FileFormat.XLSX);
 		try
 		{
 			Class<? extends Entity> entityClass = model.getController().getEntityClass();
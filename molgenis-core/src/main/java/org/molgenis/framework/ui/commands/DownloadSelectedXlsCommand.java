@@ -20,6 +20,7 @@ import org.molgenis.framework.ui.ScreenModel;
 import org.molgenis.framework.ui.html.ActionInput;
 import org.molgenis.framework.ui.html.HtmlInput;
 import org.molgenis.io.excel.ExcelWriter;
+import org.molgenis.io.excel.ExcelWriter.FileFormat;
 import org.molgenis.util.Entity;
 
 /**
@@ -35,7 +36,7 @@ public class DownloadSelectedXlsCommand<E extends Entity> extends SimpleCommand
 	public DownloadSelectedXlsCommand(String name, ScreenController<?> parentScreen)
 	{
 		super(name, parentScreen);
-		this.setLabel("Download selected (.xls)");
+		this.setLabel("Download selected (.xlsx)");
 		this.setIcon("img/download.png");
 		this.setDownload(true);
 		this.setMenu("File");
@@ -64,7 +65,7 @@ public class DownloadSelectedXlsCommand<E extends Entity> extends SimpleCommand
 
 		List<String> fieldsToExport = ((FormController<?>) this.getController()).getVisibleColumnNames();
 
-		ExcelWriter excelWriter = new ExcelWriter(xlsDownload);
+		ExcelWriter excelWriter = new ExcelWriter(xlsDownload, FileFormat.XLSX);
 		try
 		{
 			Class<? extends Entity> entityClass = model.getController().getEntityClass();
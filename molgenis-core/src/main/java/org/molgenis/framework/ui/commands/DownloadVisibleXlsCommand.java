@@ -18,6 +18,7 @@ import org.molgenis.framework.ui.html.ActionInput;
 import org.molgenis.framework.ui.html.HtmlInput;
 import org.molgenis.io.TupleWriter;
 import org.molgenis.io.excel.ExcelWriter;
+import org.molgenis.io.excel.ExcelWriter.FileFormat;
 import org.molgenis.util.Entity;
 import org.molgenis.util.tuple.EntityTuple;
 
@@ -36,7 +37,7 @@ public class DownloadVisibleXlsCommand extends SimpleCommand
 	{
 		super(name, parentScreen);
 		this.setDownload(true);
-		this.setLabel("Download visible (.xls)");
+		this.setLabel("Download visible (.xlsx)");
 		this.setIcon("img/download.png");
 		this.setMenu("File");
 	}
@@ -47,7 +48,7 @@ public class DownloadVisibleXlsCommand extends SimpleCommand
 	{
 		FormModel<?> view = this.getFormScreen();
 		List<String> fieldsToExport = ((FormController<?>) this.getController()).getVisibleColumnNames();
-		ExcelWriter excelWriter = new ExcelWriter(xlsDownload);
+		ExcelWriter excelWriter = new ExcelWriter(xlsDownload, FileFormat.XLSX);
 		TupleWriter sheetWriter = excelWriter.createTupleWriter("Entity");
 
 		try
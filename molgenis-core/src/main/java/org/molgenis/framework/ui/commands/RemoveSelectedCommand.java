@@ -77,6 +77,7 @@ public class RemoveSelectedCommand extends SimpleCommand
 		// **make sure the user sees a record**/
 		if (msg.isSuccess())
 		{
+			view.getPager().invalidate();
 			view.getPager().prev(db);
 			// resetChildren();
 		}
@@ -1,11 +1,7 @@
 package org.molgenis.generators;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.nio.charset.Charset;
 import java.util.Map;
 
 import org.apache.log4j.Logger;
@@ -50,6 +46,8 @@ public abstract class ForEachEntityGenerator extends Generator
 	{
 		Template template = this.createTemplate(this.getClass().getSimpleName() + getExtension() + ".ftl");
 		Map<String, Object> templateArgs = createTemplateArguments(options);
+		GeneratorFingerprints fingerprints = getFingerprints();
+		String templateFingerprint = fingerprints != null ? getTemplateFingerprint(template) : null;
 
 		// apply generator to each entity
 		for (Entity entity : model.getEntities())
@@ -65,7 +63,13 @@ public abstract class ForEachEntityGenerator extends Generator
 			{
 				File targetFile = new File(targetDir + "/" + GeneratorHelper.getJavaName(entity.getName()) + getType()
 						+ getExtension());
-				if (!handwritten || !targetFile.exists())
+				if (!handwritten && fingerprints != null
+						&& fingerprints.isUpToDate(this, targetFile,
+								fingerprints.getFingerprint(entity, templateFingerprint)))
+				{
+					logger.debug("up to date " + targetFile);
+				}
+				else if (!handwritten || !targetFile.exists())
 				{
 					boolean created = targetDir.mkdirs();
 					if (!created && !targetDir.exists())
@@ -83,14 +87,11 @@ public abstract class ForEachEntityGenerator extends Generator
 					templateArgs.put("package", packageName);
 
 					templateArgs.put("databaseImp", options.mapper_implementation);
+					templateArgs.put("mapper_batch_size", options.mapper_batch_size);
 					templateArgs.put("jpa_use_sequence", options.jpa_use_sequence);
 
-					OutputStream targetOut = new FileOutputStream(targetFile);
-
-					template.process(templateArgs, new OutputStreamWriter(targetOut, Charset.forName("UTF-8")));
-					targetOut.close();
-
-					logger.info("generated " + targetFile);
+					if (applyTemplate(template, templateArgs, targetFile)) logger.info("generated " + targetFile);
+					else logger.debug("unchanged " + targetFile);
 				}
 			}
 		}
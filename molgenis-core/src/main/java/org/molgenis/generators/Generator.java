@@ -1,12 +1,32 @@
 package org.molgenis.generators;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 
 import org.molgenis.MolgenisOptions;
 import org.molgenis.Version;
@@ -15,12 +35,27 @@ import org.molgenis.model.elements.Model;
 import freemarker.cache.ClassTemplateLoader;
 import freemarker.cache.MultiTemplateLoader;
 import freemarker.cache.TemplateLoader;
+import freemarker.template.Configuration;
 import freemarker.template.Template;
+import freemarker.template.TemplateException;
 
 public abstract class Generator
 {
 	protected final String APP_DIR = "app";
 
+	/** templates included or imported by name */
+	private static final Pattern INCLUDE_PATTERN = Pattern.compile("<#(?:include|import)\\s+\"([^\"]+)\"");
+	/** configurations with parsed templates per generator class */
+	private static final ConcurrentMap<Class<?>, Configuration> configurations = new ConcurrentHashMap<Class<?>, Configuration>(
+			64);
+	/** date as formatted by {@link #createTemplateArguments(MolgenisOptions)} */
+	private static final String DATE_REGEX = "(?:January|February|March|April|May|June|July|August|September"
+			+ "|October|November|December) \\d{1,2}, \\d{4}";
+	/** datetime as formatted by {@link #createTemplateArguments(MolgenisOptions)} */
+	private static final String DATETIME_REGEX = DATE_REGEX + ", \\d{2}:\\d{2}:\\d{2}";
+
+	private GeneratorFingerprints fingerprints;
+
 	public abstract void generate(Model model, MolgenisOptions options) throws Exception;
 
 	// TODO make abstract (not practical to do at the moment) 
@@ -30,28 +65,156 @@ public abstract class Generator
 	}
 
 	/**
-	 * Create a template for the generators to use.
+	 * Create a template for the generators to use. Parsed templates are shared
+	 * by all instances of a generator class.
 	 * 
 	 * @param path
 	 * @throws Exception
 	 */
 	public Template createTemplate(String path) throws Exception
 	{
-		freemarker.template.Configuration cfg = new freemarker.template.Configuration();
-		cfg.setObjectWrapper(new freemarker.template.DefaultObjectWrapper());
-
-		ClassTemplateLoader loader1 = new ClassTemplateLoader(getClass(), "");
-		ClassTemplateLoader loader2 = new ClassTemplateLoader(GeneratorHelper.class, "");
-		TemplateLoader[] loaders = new TemplateLoader[]
-		{ loader1, loader2 };
-		MultiTemplateLoader mLoader = new MultiTemplateLoader(loaders);
-		// cfg.setClassForTemplateLoading( this.getClass(), "" ); // NOTE:
-		// without
-		cfg.setTemplateLoader(mLoader);
-
-		// the '/' on
-		// either end
-		return cfg.getTemplate(path);
+		return getConfiguration().getTemplate(path);
+	}
+
+	/**
+	 * Freemarker configuration that loads templates relative to this generator
+	 * and the GeneratorHelper
+	 */
+	protected Configuration getConfiguration()
+	{
+		Configuration cfg = configurations.get(getClass());
+		if (cfg == null)
+		{
+			cfg = new Configuration();
+			cfg.setObjectWrapper(new freemarker.template.DefaultObjectWrapper());
+
+			ClassTemplateLoader loader1 = new ClassTemplateLoader(getClass(), "");
+			ClassTemplateLoader loader2 = new ClassTemplateLoader(GeneratorHelper.class, "");
+			TemplateLoader[] loaders = new TemplateLoader[]
+			{ loader1, loader2 };
+			MultiTemplateLoader mLoader = new MultiTemplateLoader(loaders);
+			cfg.setTemplateLoader(mLoader);
+
+			Configuration existingCfg = configurations.putIfAbsent(getClass(), cfg);
+			if (existingCfg != null) cfg = existingCfg;
+		}
+		return cfg;
+	}
+
+	/**
+	 * Hash of the source of the template and the templates it includes or
+	 * imports by name, used to detect changed templates when generating
+	 * incrementally. The templates are read on each call, so call this once per
+	 * generate().
+	 */
+	public String getTemplateFingerprint(Template template) throws IOException
+	{
+		TemplateLoader loader = getConfiguration().getTemplateLoader();
+		StringBuilder strBuilder = new StringBuilder(getClass().getName());
+		Set<String> templateNames = new LinkedHashSet<String>();
+		templateNames.add(template.getName());
+		List<String> unprocessed = new ArrayList<String>(templateNames);
+		while (!unprocessed.isEmpty())
+		{
+			String templateName = unprocessed.remove(unprocessed.size() - 1);
+			Object templateSource = loader.findTemplateSource(templateName);
+			if (templateSource == null) continue;
+			String source;
+			try
+			{
+				source = IOUtils.toString(loader.getReader(templateSource, "UTF-8"));
+			}
+			finally
+			{
+				loader.closeTemplateSource(templateSource);
+			}
+			strBuilder.append('\n').append(templateName).append('\n').append(source);
+
+			Matcher matcher = INCLUDE_PATTERN.matcher(source);
+			while (matcher.find())
+				if (templateNames.add(matcher.group(1))) unprocessed.add(matcher.group(1));
+		}
+		return GeneratorFingerprints.hash(strBuilder.toString());
+	}
+
+	/**
+	 * Applies the template and writes the result to the target file, unless
+	 * the file already has exactly this content. Unchanged files keep their
+	 * modification time, so they are not compiled again. When generating
+	 * incrementally a file of which only the generation date differs is kept
+	 * as well.
+	 * 
+	 * @return true if the file was written
+	 */
+	public boolean applyTemplate(Template template, Map<String, Object> templateArgs, File target)
+			throws IOException, TemplateException
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		Writer writer = new OutputStreamWriter(bos, Charset.forName("UTF-8"));
+		template.process(templateArgs, writer);
+		writer.flush();
+		byte[] content = bos.toByteArray();
+
+		if (target.length() == content.length && target.isFile()
+				&& Arrays.equals(content, FileUtils.readFileToByteArray(target))) return false;
+		if (fingerprints != null && target.isFile() && equalsIgnoreDates(content, templateArgs, target)) return false;
+
+		OutputStream targetOut = new FileOutputStream(target);
+		try
+		{
+			targetOut.write(content);
+		}
+		finally
+		{
+			targetOut.close();
+		}
+		return true;
+	}
+
+	/**
+	 * Compares the content with the target file, where the date and datetime
+	 * arguments of the template may be any other date in the target. Other
+	 * dates in the content, e.g. in the model, must be equal.
+	 */
+	static boolean equalsIgnoreDates(byte[] content, Map<String, Object> templateArgs, File target)
+			throws IOException
+	{
+		Object datetime = templateArgs.get("datetime");
+		Object date = templateArgs.get("date");
+		if (!(datetime instanceof String) || !(date instanceof String)) return false;
+
+		// the datetime starts with the date, so try it first
+		String str = new String(content, "UTF-8");
+		Matcher matcher = Pattern.compile(Pattern.quote((String) datetime) + "|" + Pattern.quote((String) date))
+				.matcher(str);
+		StringBuilder regex = new StringBuilder();
+		int end = 0;
+		while (matcher.find())
+		{
+			regex.append(Pattern.quote(str.substring(end, matcher.start())));
+			regex.append(matcher.group().equals(datetime) ? DATETIME_REGEX : DATE_REGEX);
+			end = matcher.end();
+		}
+		if (end == 0) return false;
+		regex.append(Pattern.quote(str.substring(end)));
+
+		String targetStr = FileUtils.readFileToString(target, "UTF-8");
+		return Pattern.compile(regex.toString()).matcher(targetStr).matches();
+	}
+
+	public GeneratorFingerprints getFingerprints()
+	{
+		return fingerprints;
+	}
+
+	/**
+	 * @param fingerprints
+	 *            fingerprints of the previous run to generate incrementally,
+	 *            or null to generate all files
+	 */
+	public void setFingerprints(GeneratorFingerprints fingerprints)
+	{
+		this.fingerprints = fingerprints;
 	}
 
 	/**
@@ -0,0 +1,364 @@
+package org.molgenis.generators;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Modifier;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.log4j.Logger;
+import org.molgenis.MolgenisOptions;
+import org.molgenis.Version;
+import org.molgenis.fieldtypes.FieldType;
+import org.molgenis.model.MolgenisModelException;
+import org.molgenis.model.elements.Entity;
+import org.molgenis.model.elements.Field;
+import org.molgenis.model.elements.Index;
+import org.molgenis.model.elements.Model;
+import org.molgenis.model.elements.Unique;
+import org.molgenis.util.SimpleTree;
+
+/**
+ * Fingerprints of the files generated by the previous run, used to generate
+ * incrementally. The fingerprint of a generated file is a hash of everything
+ * the file is generated from: the generator templates, the options and the
+ * part of the model the entity depends on. A file is up to date if it exists
+ * and its fingerprint did not change.
+ * <p>
+ * The part of the model an entity depends on consists of the entity, its
+ * ancestors, descendants and interfaces, the entities these refer to and the
+ * entities that refer to these, and the number of references to each of them.
+ */
+public class GeneratorFingerprints
+{
+	private static final Logger logger = Logger.getLogger(GeneratorFingerprints.class);
+
+	/** name of the file, in the generated source folder, that stores the fingerprints */
+	public static final String FILE_NAME = ".generator-fingerprints";
+
+	private final File file;
+	private final Model model;
+	private final String optionsFingerprint;
+	/** fingerprints of the previous run per generated file */
+	private final Properties previousFingerprints = new Properties();
+	/** fingerprints of this run per generated file */
+	private final ConcurrentMap<String, String> fingerprints = new ConcurrentHashMap<String, String>();
+	/** generators of this run, only their stale files are removed */
+	private final Set<String> generatorNames = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private final ConcurrentMap<String, String> entityFingerprints = new ConcurrentHashMap<String, String>();
+	/** entity name to the entities with an xref or mref field to it, per field */
+	private final Map<String, List<Entity>> referringEntities;
+
+	public GeneratorFingerprints(Model model, MolgenisOptions options, File file) throws IOException,
+			MolgenisModelException
+	{
+		this.file = file;
+		this.model = model;
+		this.optionsFingerprint = hash(Version.convertToString() + '\n' + options.toString());
+		this.referringEntities = getReferringEntities(model);
+		if (file.exists())
+		{
+			InputStream in = new FileInputStream(file);
+			try
+			{
+				previousFingerprints.load(in);
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+	}
+
+	/**
+	 * Lets the generator generate incrementally using these fingerprints
+	 */
+	public void attach(Generator generator)
+	{
+		generatorNames.add(generator.getClass().getName());
+		generator.setFingerprints(this);
+	}
+
+	/**
+	 * Records the fingerprint of a generated file for this run
+	 *
+	 * @return true if the file exists and was generated by the same generator
+	 *         from the same fingerprint by the previous run
+	 */
+	public boolean isUpToDate(Generator generator, File target, String fingerprint)
+	{
+		String key = target.getPath();
+		String value = generator.getClass().getName() + ' ' + fingerprint;
+		fingerprints.put(key, value);
+		return target.exists() && value.equals(previousFingerprints.getProperty(key));
+	}
+
+	/**
+	 * @param templateFingerprint
+	 *            fingerprint of the templates of the generator, see
+	 *            {@link Generator#getTemplateFingerprint(freemarker.template.Template)}
+	 * @return fingerprint of the files generated for the entity
+	 */
+	public String getFingerprint(Entity entity, String templateFingerprint) throws MolgenisModelException
+	{
+		return hash(templateFingerprint + optionsFingerprint + getEntityFingerprint(entity));
+	}
+
+	String getEntityFingerprint(Entity entity) throws MolgenisModelException
+	{
+		String fingerprint = entityFingerprints.get(entity.getName());
+		if (fingerprint == null)
+		{
+			// sort on name so the fingerprint does not depend on model order
+			Map<String, Entity> dependencies = new TreeMap<String, Entity>();
+			for (Entity related : getRelatedEntities(entity))
+			{
+				dependencies.put(related.getName(), related);
+				for (Entity referredEntity : getReferredEntities(related))
+					dependencies.put(referredEntity.getName(), referredEntity);
+				List<Entity> referring = referringEntities.get(related.getName());
+				if (referring != null) for (Entity referringEntity : referring)
+					dependencies.put(referringEntity.getName(), referringEntity);
+			}
+
+			StringBuilder strBuilder = new StringBuilder(model.getName()).append('\n');
+			for (Entity dependency : dependencies.values())
+			{
+				List<Entity> referring = referringEntities.get(dependency.getName());
+				strBuilder.append(referring != null ? referring.size() : 0).append(' ');
+				describe(dependency, strBuilder, true);
+				strBuilder.append('\n');
+			}
+			fingerprint = hash(strBuilder.toString());
+			entityFingerprints.put(entity.getName(), fingerprint);
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * Writes the fingerprints of this run. Files that were generated by the
+	 * previous run but not by this run, e.g. for an entity that was removed
+	 * from the model, are deleted if their generator was part of this run.
+	 */
+	public void save() throws IOException
+	{
+		for (String key : previousFingerprints.stringPropertyNames())
+		{
+			String generatorName = getGeneratorName(previousFingerprints.getProperty(key));
+			if (!fingerprints.containsKey(key) && generatorNames.contains(generatorName))
+			{
+				File staleFile = new File(key);
+				if (staleFile.exists())
+				{
+					if (staleFile.delete()) logger.info("removed " + staleFile);
+					else logger.warn("file delete failed: " + staleFile);
+				}
+			}
+		}
+
+		// keep the files of generators that were not part of this run
+		Properties properties = new Properties();
+		for (String key : previousFingerprints.stringPropertyNames())
+		{
+			String value = previousFingerprints.getProperty(key);
+			if (!generatorNames.contains(getGeneratorName(value))) properties.setProperty(key, value);
+		}
+		properties.putAll(fingerprints);
+		File parent = file.getParentFile();
+		if (parent != null && !parent.exists() && !parent.mkdirs()) throw new IOException("could not create " + parent);
+		OutputStream out = new FileOutputStream(file);
+		try
+		{
+			properties.store(out, "fingerprints of generated files, delete to regenerate all files");
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	private static String getGeneratorName(String value)
+	{
+		int idx = value.indexOf(' ');
+		return idx != -1 ? value.substring(0, idx) : value;
+	}
+
+	/** the entity, its ancestors, descendants and interfaces */
+	private static Set<Entity> getRelatedEntities(Entity entity) throws MolgenisModelException
+	{
+		Set<Entity> entities = new HashSet<Entity>();
+		entities.add(entity);
+		entities.addAll(entity.getAllAncestors());
+		entities.addAll(entity.getAllDescendants());
+		entities.addAll(entity.getAllImplements());
+		return entities;
+	}
+
+	private List<Entity> getReferredEntities(Entity entity) throws MolgenisModelException
+	{
+		List<Entity> entities = new ArrayList<Entity>();
+		for (Field field : entity.getImplementedFields())
+		{
+			if (field.isXRef() || field.isMRef())
+			{
+				Entity xrefEntity = model.getEntity(field.getXrefEntityName());
+				if (xrefEntity != null)
+				{
+					entities.add(xrefEntity);
+					entities.addAll(xrefEntity.getAllAncestors());
+				}
+			}
+		}
+		return entities;
+	}
+
+	private static Map<String, List<Entity>> getReferringEntities(Model model) throws MolgenisModelException
+	{
+		Map<String, List<Entity>> referringEntities = new HashMap<String, List<Entity>>();
+		for (Entity entity : model.getEntities())
+		{
+			for (Field field : entity.getImplementedFields())
+			{
+				if (field.isXRef() || field.isMRef())
+				{
+					String xrefEntityName = field.getXrefEntityName();
+					List<Entity> entities = referringEntities.get(xrefEntityName);
+					if (entities == null)
+					{
+						entities = new ArrayList<Entity>();
+						referringEntities.put(xrefEntityName, entities);
+					}
+					entities.add(entity);
+				}
+			}
+		}
+		return referringEntities;
+	}
+
+	/**
+	 * Appends the properties of a model element, found by reflection so that
+	 * new properties are part of the fingerprint without changes here. Other
+	 * entities are described by name, the tree structure of the model is left
+	 * out.
+	 */
+	private static void describe(Object obj, StringBuilder strBuilder, boolean root)
+	{
+		if (obj == null)
+		{
+			strBuilder.append("null");
+		}
+		else if (obj instanceof String || obj instanceof Number || obj instanceof Boolean
+				|| obj instanceof Character || obj instanceof Enum<?>)
+		{
+			strBuilder.append(obj);
+		}
+		else if (obj instanceof FieldType)
+		{
+			strBuilder.append(obj.getClass().getName());
+		}
+		else if (obj instanceof Entity && !root)
+		{
+			strBuilder.append(((Entity) obj).getName());
+		}
+		else if (obj instanceof Collection<?>)
+		{
+			strBuilder.append('[');
+			for (Object element : (Collection<?>) obj)
+			{
+				describe(element, strBuilder, false);
+				strBuilder.append(',');
+			}
+			strBuilder.append(']');
+		}
+		else if (obj instanceof Entity || obj instanceof Field || obj instanceof Unique || obj instanceof Index)
+		{
+			strBuilder.append(obj.getClass().getSimpleName()).append('(');
+			for (Class<?> clazz = obj.getClass(); clazz != null && clazz != Object.class; clazz = clazz
+					.getSuperclass())
+			{
+				for (java.lang.reflect.Field field : clazz.getDeclaredFields())
+				{
+					if (Modifier.isStatic(field.getModifiers())) continue;
+					// the tree elements contain the whole model
+					if (clazz == SimpleTree.class && !field.getName().equals("name")
+							&& !field.getName().equals("parentName")) continue;
+					// model elements are not thread safe, but are not
+					// modified while generating
+					field.setAccessible(true);
+					Object value;
+					try
+					{
+						value = field.get(obj);
+					}
+					catch (IllegalAccessException e)
+					{
+						throw new RuntimeException(e);
+					}
+					strBuilder.append(field.getName()).append('=');
+					describe(value, strBuilder, false);
+					strBuilder.append(';');
+				}
+			}
+			strBuilder.append(')');
+		}
+		else
+		{
+			// other objects, e.g. modules or user data, do not have a stable
+			// string representation
+			strBuilder.append(obj.getClass().getName());
+		}
+	}
+
+	/**
+	 * @return SHA-1 hash of the string as a hexadecimal string
+	 */
+	public static String hash(String str)
+	{
+		try
+		{
+			return hash(str.getBytes("UTF-8"));
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * @return SHA-1 hash of the bytes as a hexadecimal string
+	 */
+	public static String hash(byte[] bytes)
+	{
+		MessageDigest digest;
+		try
+		{
+			digest = MessageDigest.getInstance("SHA-1");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new RuntimeException(e);
+		}
+		byte[] hash = digest.digest(bytes);
+		StringBuilder strBuilder = new StringBuilder(hash.length * 2);
+		for (byte b : hash)
+			strBuilder.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		return strBuilder.toString();
+	}
+}
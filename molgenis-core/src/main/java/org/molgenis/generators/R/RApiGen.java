@@ -1,11 +1,7 @@
 package org.molgenis.generators.R;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.nio.charset.Charset;
 import java.util.Map;
 
 import org.apache.log4j.Logger;
@@ -75,10 +71,7 @@ public class RApiGen extends Generator
 		templateArgs.put("file", targetFile.toString());
 		templateArgs.put("findAPIlocation", findAPIlocation);
 		templateArgs.put("addAPIlocation", addAPIlocation);
-		OutputStream targetOut = new FileOutputStream(targetFile);
-		template.process(templateArgs, new OutputStreamWriter(targetOut, Charset.forName("UTF-8")));
-		targetOut.close();
-
-		logger.info("generated " + targetFile);
+		if (applyTemplate(template, templateArgs, targetFile)) logger.info("generated " + targetFile);
+		else logger.debug("unchanged " + targetFile);
 	}
 }
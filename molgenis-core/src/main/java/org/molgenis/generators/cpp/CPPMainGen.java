@@ -1,11 +1,7 @@
 package org.molgenis.generators.cpp;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.nio.charset.Charset;
 import java.util.List;
 import java.util.Map;
 
@@ -46,10 +42,8 @@ public class CPPMainGen extends ForEachEntityGenerator
 		templateArgs.put("model", model);
 		templateArgs.put("entities", entityList);
 		templateArgs.put("UserHome", System.getProperty("user.dir").replace("\\", "/").toString());
-		OutputStream targetOut = new FileOutputStream(target);
-		template.process(templateArgs, new OutputStreamWriter(targetOut, Charset.forName("UTF-8")));
-		targetOut.close();
-		logger.info("generated " + target);
+		if (applyTemplate(template, templateArgs, target)) logger.info("generated " + target);
+		else logger.debug("unchanged " + target);
 	}
 
 	@Override
@@ -1,11 +1,7 @@
 package org.molgenis.generators.cpp;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.nio.charset.Charset;
 import java.util.List;
 import java.util.Map;
 
@@ -49,9 +45,7 @@ public class MakeFileGen extends MySqlCreateClassPerTableGen
 		templateArgs.put("UserHome", System.getProperty("user.dir").replace("\\", "/").toString());
 		templateArgs.put("EXECNAME", "${EXECNAME}".toString());
 		templateArgs.put("EXECUTABLE", "${EXECUTABLE}".toString());
-		OutputStream targetOut = new FileOutputStream(target);
-		template.process(templateArgs, new OutputStreamWriter(targetOut, Charset.forName("UTF-8")));
-		targetOut.close();
-		logger.info("generated " + target);
+		if (applyTemplate(template, templateArgs, target)) logger.info("generated " + target);
+		else logger.debug("unchanged " + target);
 	}
 }
@@ -1,11 +1,7 @@
 package org.molgenis.generators.csv;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.nio.charset.Charset;
 import java.util.List;
 import java.util.Map;
 
@@ -50,11 +46,8 @@ public class CsvEntityImporterGen extends MySqlCreateClassPerTableGen // TODO
 		templateArgs.put("model", model);
 		templateArgs.put("entities", entityList);
 		templateArgs.put("package", APP_DIR);
-		OutputStream targetOut = new FileOutputStream(target);
-		template.process(templateArgs, new OutputStreamWriter(targetOut, Charset.forName("UTF-8")));
-		targetOut.close();
-
-		logger.info("generated " + target);
+		if (applyTemplate(template, templateArgs, target)) logger.info("generated " + target);
+		else logger.debug("unchanged " + target);
 	}
 
 	@Override
@@ -77,10 +70,7 @@ public class CsvEntityImporterGen extends MySqlCreateClassPerTableGen // TODO
 		templateArgs.put("model", model);
 		templateArgs.put("entities", entityList);
 		templateArgs.put("package", this.getClass().getPackage().getName());
-		OutputStream targetOut = new FileOutputStream(target);
-		template.process(templateArgs, new OutputStreamWriter(targetOut, Charset.forName("UTF-8")));
-		targetOut.close();
-
-		logger.info("generated " + target);
+		if (applyTemplate(template, templateArgs, generatedJavaFile)) logger.info("generated " + generatedJavaFile);
+		else logger.debug("unchanged " + generatedJavaFile);
 	}
 }
@@ -1,11 +1,7 @@
 package org.molgenis.generators.db;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.nio.charset.Charset;
 import java.util.Map;
 
 import org.apache.log4j.Logger;
@@ -44,11 +40,8 @@ public class DatabaseFactoryGen extends Generator
 		templateArgs.put("auth_loginclass", options.auth_loginclass);
 		templateArgs.put("auth_redirect", options.auth_redirect);
 
-		OutputStream targetOut = new FileOutputStream(target);
-		template.process(templateArgs, new OutputStreamWriter(targetOut, Charset.forName("UTF-8")));
-		targetOut.close();
-
-		logger.info("generated " + target);
+		if (applyTemplate(template, templateArgs, target)) logger.info("generated " + target);
+		else logger.debug("unchanged " + target);
 	}
 
 }
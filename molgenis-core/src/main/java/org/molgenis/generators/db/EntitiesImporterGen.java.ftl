@@ -17,6 +17,7 @@ package ${package};
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -29,6 +30,7 @@ import org.molgenis.framework.db.Database.DatabaseAction;
 import org.molgenis.framework.db.DatabaseException;
 import org.molgenis.framework.db.EntitiesImporter;
 import org.molgenis.framework.db.EntityImportReport;
+import org.molgenis.framework.db.EntityImportScheduler;
 import org.molgenis.framework.db.EntityImporter;
 import org.molgenis.io.TableReader;
 import org.molgenis.io.TableReaderFactory;
@@ -55,6 +57,18 @@ public class EntitiesImporterImpl implements EntitiesImporter
 	</#list>
 	}
 	
+	/** names (lowercase) of the entities referred to by each importable entity */
+	private static final Map<String, List<String>> ENTITY_DEPENDENCIES;
+	
+	static {
+		ENTITY_DEPENDENCIES = new HashMap<String, List<String>>();
+	<#list entities as entity>
+		<#if !entity.abstract && !entity.system>
+		ENTITY_DEPENDENCIES.put("${entity.name?lower_case}", Arrays.<String> asList(<#assign first = true><#list allFields(entity) as f><#if f.type == "xref" || f.type == "mref"><#if !first>, </#if>"${f.xrefEntity.name?lower_case}"<#assign first = false><#list f.xrefEntity.allDescendants as descendant>, "${descendant.name?lower_case}"</#list></#if></#list>));
+		</#if>
+	</#list>
+	}
+	
 	private Database db;
 	
 	@Deprecated
@@ -130,21 +144,10 @@ public class EntitiesImporterImpl implements EntitiesImporter
 
 			if (doTx) db.beginTx();
 
-			// import entities in order defined by entities map
-			for (Map.Entry<String, EntityImporter> entry : ENTITIES_IMPORTABLE.entrySet())
-			{
-				String entityName = entry.getKey();
-				TupleReader tupleReader = tupleReaderMap.get(entityName);
-				if (tupleReader != null)
-				{
-					EntityImporter entityImporter = entry.getValue();
-					int nr = entityImporter.importEntity(tupleReader, db, dbAction);
-					if (nr > 0) {
-						importReport.getMessages().put(entry.getKey(), "imported " + nr + " " + entityName + " entities");
-						importReport.addNrImported(nr);
-					}
-				}
-			}
+			// import entities after the entities they refer to, in one transaction
+			new EntityImportScheduler(ENTITIES_IMPORTABLE, ENTITY_DEPENDENCIES).importEntities(tupleReaderMap, db,
+					dbAction, importReport);
+			
 			if (doTx) db.commitTx();
 		}
 		catch (IOException e)
@@ -1,11 +1,7 @@
 package org.molgenis.generators.db;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.nio.charset.Charset;
 import java.util.List;
 import java.util.Map;
 
@@ -50,11 +46,8 @@ public class FillMetadataGen extends Generator
 		templateArgs.put("metaData", !options.auth_loginclass.endsWith("SimpleLogin"));
 		templateArgs.put("databaseImpl", options.mapper_implementation);
 
-		OutputStream targetOut = new FileOutputStream(target);
-		template.process(templateArgs, new OutputStreamWriter(targetOut, Charset.forName("UTF-8")));
-		targetOut.close();
-		
-		logger.info("generated " + target);
+		if (applyTemplate(template, templateArgs, target)) logger.info("generated " + target);
+		else logger.debug("unchanged " + target);
 	}
 
 }
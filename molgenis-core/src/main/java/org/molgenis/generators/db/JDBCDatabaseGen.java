@@ -1,11 +1,7 @@
 package org.molgenis.generators.db;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.nio.charset.Charset;
 import java.util.List;
 import java.util.Map;
 
@@ -65,11 +61,8 @@ public class JDBCDatabaseGen extends Generator
 		templateArgs.put("auth_loginclass", options.auth_loginclass);
 		templateArgs.put("decorator_overriders", options.decorator_overriders);
 		templateArgs.put("disable_decorators", options.disable_decorators);
-		OutputStream targetOut = new FileOutputStream(target);
-		template.process(templateArgs, new OutputStreamWriter(targetOut, Charset.forName("UTF-8")));
-		targetOut.close();
-
-		logger.info("generated " + target);
+		if (applyTemplate(template, templateArgs, target)) logger.info("generated " + target);
+		else logger.debug("unchanged " + target);
 	}
 
 }
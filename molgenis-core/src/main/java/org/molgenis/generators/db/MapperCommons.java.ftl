@@ -22,108 +22,76 @@
 	{
 <#assign has_xrefs=false>	
 <#list allFields(entity) as f>
-  	<#if (f.type == 'xref' || f.type == 'mref') &&   f.xrefLabelNames[0] != f.xrefFieldName>
-  		<#assign has_xrefs=true>	
-		//create foreign key map for field '${name(f)}' to ${name(f.xrefEntity)}.${name(f.xrefField)} using ${csv(f.xrefLabelNames)})	
-		//we will use a hash of the values to ensure that entities are only queried once	
-		final java.util.Map<String, org.molgenis.framework.db.QueryRule> ${name(f)}Rules = new java.util.LinkedHashMap<String, org.molgenis.framework.db.QueryRule>();
+	<#if (f.type == 'xref' || f.type == 'mref') && f.xrefLabelNames[0] != f.xrefFieldName>
+		<#assign has_xrefs=true>
 	</#if>
-</#list>	
-<#if has_xrefs>		
-		//create all query rules	
-		for(${entity.namespace}.${JavaName(entity)} object: entities)
-		{
+</#list>
+<#if has_xrefs>
+		//labels resolved by earlier batches or other mappers in this transaction
+		final org.molgenis.framework.db.XrefLabelCache xrefLabelCache = getDatabase().getXrefLabelCache();
+</#if>
 <#list allFields(entity) as f>
 	<#if (f.type == 'xref' || f.type == 'mref') && f.xrefLabelNames[0] != f.xrefFieldName>
-		<#if f.xrefLabelNames?size &gt; 1>
-			//create xref/mref rule filtering ${f.xrefEntityName} on the combination of labels ${csv(f.xrefLabelNames)} if xref(id)==null and xref(name) exists
-			<#if f.type == 'xref'>
-			if(object.get${JavaName(f)}_${JavaName(f.xrefField)}() == null && object.get${JavaName(f)}_${JavaName(f.xrefLabelNames[0])}() != null)
-			<#else>
-			if(object.get${JavaName(f)}_${JavaName(f.xrefField)}().size() == 0 && object.get${JavaName(f)}_${JavaName(f.xrefLabelNames[0])}().size() > 0)
-			</#if>
-			{
-				java.util.List<org.molgenis.framework.db.QueryRule> rules = new java.util.ArrayList<org.molgenis.framework.db.QueryRule>();
-				String key = "";
+		<#assign xrefClass = f.xrefEntity.namespace + "." + JavaName(f.xrefEntity)>
 
-				<#if f.type == 'xref'>
-				Object label = object.get${JavaName(f)}_${JavaName(f.xrefLabelNames[0])}();
-				<#else>
-				for(String label: object.get${JavaName(f)}_${JavaName(f.xrefLabelNames[0])}())
-				</#if>
+		//resolve foreign key field '${name(f)}' to ${name(f.xrefEntity)}.${name(f.xrefField)} using ${csv(f.xrefLabelNames)}
+		final java.util.Map<java.util.List<String>, ${JavaType(f.xrefField)}> ${name(f)}_Labels_to_IdMap = new java.util.HashMap<java.util.List<String>, ${JavaType(f.xrefField)}>();
+		{
+			//collect the distinct labels that are not cached
+			java.util.Set<java.util.List<String>> unresolvedKeys = new java.util.LinkedHashSet<java.util.List<String>>();
+			for(${entity.namespace}.${JavaName(entity)} object: entities)
+			{
+		<#if f.type == 'xref'>
+				if(object.get${JavaName(f)}_${JavaName(f.xrefField)}() == null)
 				{
-					<#list f.xrefLabelNames as label>
-					rules.add(new org.molgenis.framework.db.QueryRule("${label}", org.molgenis.framework.db.QueryRule.Operator.EQUALS, label));	
-					key += 	label;
-					</#list>			
-					org.molgenis.framework.db.QueryRule complexRule = new org.molgenis.framework.db.QueryRule(rules);
-					if(!${name(f)}Rules.containsKey(key))
+					java.util.List<String> key = org.molgenis.framework.db.XrefLabels.key(<#list f.xrefLabelNames as label>object.get${JavaName(f)}_${JavaName(label)}()<#if label_has_next>, </#if></#list>);
+		<#else>
+				if(object.get${JavaName(f)}_${JavaName(f.xrefField)}().size() == 0)
+				for(int j = 0; j < object.get${JavaName(f)}_${JavaName(f.xrefLabelNames[0])}().size(); j++)
+				{
+					java.util.List<String> key = org.molgenis.framework.db.XrefLabels.key(<#list f.xrefLabelNames as label>object.get${JavaName(f)}_${JavaName(label)}().get(j)<#if label_has_next>, </#if></#list>);
+		</#if>
+					if(!org.molgenis.framework.db.XrefLabels.isEmpty(key) && !${name(f)}_Labels_to_IdMap.containsKey(key) && !unresolvedKeys.contains(key))
 					{
-						${name(f)}Rules.put(key, complexRule);
-						${name(f)}Rules.put(key+"_OR_", new org.molgenis.framework.db.QueryRule(org.molgenis.framework.db.QueryRule.Operator.OR));
+						${JavaType(f.xrefField)} cachedId = (${JavaType(f.xrefField)}) xrefLabelCache.get(${xrefClass}.class, "${csv(f.xrefLabelNames)}", key);
+						if(cachedId != null) ${name(f)}_Labels_to_IdMap.put(key, cachedId);
+						else unresolvedKeys.add(key);
 					}
 				}
 			}
-		<#else>
-			//create xref/mref rule filtering ${f.xrefEntityName} on the label ${csv(f.xrefLabelNames)}
-			<#if f.type == 'xref'>
-			if(object.get${JavaName(f)}_${JavaName(f.xrefField)}() == null && object.get${JavaName(f)}_${JavaName(f.xrefLabelNames[0])}() != null)
-			<#else>
-			if(object.get${JavaName(f)}_${JavaName(f.xrefField)}().size() == 0 && object.get${JavaName(f)}_${JavaName(f.xrefLabelNames[0])}().size() > 0)
-			</#if>
+
+			//query the labels in chunks using one 'IN' rule per label field
+			java.util.List<java.util.List<String>> keys = new java.util.ArrayList<java.util.List<String>>(unresolvedKeys);
+			for(int i = 0; i < keys.size(); i += org.molgenis.framework.db.XrefLabels.IN_CHUNK_SIZE)
 			{
-				<#if f.type == 'xref'>
-				Object label = object.get${JavaName(f)}_${JavaName(f.xrefLabelNames[0])}();
-				<#else>
-				for(String label: object.get${JavaName(f)}_${JavaName(f.xrefLabelNames[0])}())
-				</#if>
+				java.util.List<java.util.List<String>> chunk = keys.subList(i, Math.min(i + org.molgenis.framework.db.XrefLabels.IN_CHUNK_SIZE, keys.size()));
+				java.util.List<${xrefClass}> xrefs = null;
+				try
 				{
-					org.molgenis.framework.db.QueryRule xrefFilter = new org.molgenis.framework.db.QueryRule("${f.xrefLabelNames[0]}", org.molgenis.framework.db.QueryRule.Operator.EQUALS, label);
-					
-					if(label != null && !${name(f)}Rules.containsKey(label))
+					xrefs = getDatabase().find(${xrefClass}.class, org.molgenis.framework.db.XrefLabels.createInRules(getDatabase().getMapperFor(${xrefClass}.class), new String[]{${csvQuoted(f.xrefLabelNames)}}, chunk));
+				}
+				catch(Exception e)
+				{
+					// something went wrong while querying for this entities' label fields
+					// we assume it has no such field, which should have been checked earlier ofcourse
+					throw new org.molgenis.framework.db.DatabaseException(e);
+				}
+
+				for(${xrefClass} xref: xrefs)
+				{
+					java.util.List<String> key = org.molgenis.framework.db.XrefLabels.key(<#list f.xrefLabelNames as label>xref.get${JavaName(label)}()<#if label_has_next>, </#if></#list>);
+					//composite labels are queried per field, so only keep the requested combinations
+					if(unresolvedKeys.contains(key))
 					{
-						${name(f)}Rules.put(""+label, xrefFilter);
-						${name(f)}Rules.put(""+label+"_OR_", new org.molgenis.framework.db.QueryRule(org.molgenis.framework.db.QueryRule.Operator.OR));
+						${name(f)}_Labels_to_IdMap.put(key, xref.get${JavaName(f.xrefField)}());
+						xrefLabelCache.put(${xrefClass}.class, "${csv(f.xrefLabelNames)}", key, xref.get${JavaName(f.xrefField)}());
 					}
 				}
-			}		
-		</#if>	
-	</#if>
-</#list>
-		}
-
-<#list allFields(entity) as f>
-<#if (f.type == 'xref' || f.type == 'mref') && f.xrefLabelNames[0] != f.xrefFieldName>
-		//resolve foreign key field '${name(f)}' to ${name(f.xrefEntity)}.${name(f.xrefField)} using ${csv(f.xrefLabelNames)})
-		final java.util.Map<String,${JavaType(f.xrefField)}> ${name(f)}_Labels_to_IdMap = new java.util.TreeMap<String,${JavaType(f.xrefField)}>();
-		if(${name(f)}Rules.size() > 0)
-		{		
-		
-			java.util.List<${f.xrefEntity.namespace}.${JavaName(f.xrefEntity)}> ${name(f)}List = null;
-			try
-			{
-				${name(f)}List = getDatabase().find(${f.xrefEntity.namespace}.${JavaName(f.xrefEntity)}.class, ${name(f)}Rules.values().toArray(new org.molgenis.framework.db.QueryRule[${name(f)}Rules.values().size()]));
-			}
-			catch(Exception e)
-			{
-				// something went wrong while querying for this entities' name field
-				// we assume it has no such field, which should have been checked earlier ofcourse
-				// regardless, just quit the function now
-				throw new org.molgenis.framework.db.DatabaseException(e);
-			}
-		
-			for(${f.xrefEntity.namespace}.${JavaName(f.xrefEntity)} xref :  ${name(f)}List)
-			{
-				String key = "";
-				<#list f.xrefLabelNames as label>
-				key += 	xref.get${JavaName(label)}();
-				</#list>	
-				
-				${name(f)}_Labels_to_IdMap.put(key, xref.get${JavaName(f.xrefField)}());
 			}
 		}
-</#if>
+	</#if>
 </#list>
+<#if has_xrefs>
 
 		//update objects with the keys
 		for(int i = 0; i < entities.size(); i++)
@@ -135,19 +103,16 @@
 			if(object.get${JavaName(f)}_${JavaName(f.xrefField)}() == null <#if f.type == 'mref'>|| object.get${JavaName(f)}_${JavaName(f.xrefField)}().size() == 0</#if>)
 			{
 				<#if f.type == 'mref'>
-				java.util.List<Integer> idList = new java.util.ArrayList<Integer>();
+				java.util.List<${JavaType(f.xrefField)}> idList = new java.util.ArrayList<${JavaType(f.xrefField)}>();
 				for(int j = 0; j < object.get${JavaName(f)}_${JavaName(f.xrefLabelNames[0])}().size(); j++)
 				{
+					java.util.List<String> key = org.molgenis.framework.db.XrefLabels.key(<#list f.xrefLabelNames as label>object.get${JavaName(f)}_${JavaName(label)}().get(j)<#if label_has_next>, </#if></#list>);
+				<#else>
+					java.util.List<String> key = org.molgenis.framework.db.XrefLabels.key(<#list f.xrefLabelNames as label>object.get${JavaName(f)}_${JavaName(label)}()<#if label_has_next>, </#if></#list>);
 				</#if>
-					String key = "";
-					<#list f.xrefLabelNames as label>
-					if(object.get${JavaName(f)}_${JavaName(label)}()<#if f.type=='mref'>.get(j)</#if> != null)
-						key += 	object.get${JavaName(f)}_${JavaName(label)}()<#if f.type=='mref'>.get(j)</#if>;
-					</#list>
-					
-					if(!"".equals(key) && ${name(f)}_Labels_to_IdMap.get(key) == null) 
+					if(!org.molgenis.framework.db.XrefLabels.isEmpty(key) && ${name(f)}_Labels_to_IdMap.get(key) == null) 
 					{
-						throw new org.molgenis.framework.db.DatabaseException("<#list f.xrefLabelNames as label>${f.name}_${label}<#if label_has_next>,</#if></#list> cannot be resolved: unknown xref='"+key+"'");
+						throw new org.molgenis.framework.db.DatabaseException("<#list f.xrefLabelNames as label>${f.name}_${label}<#if label_has_next>,</#if></#list> cannot be resolved: unknown xref='"+org.molgenis.framework.db.XrefLabels.toString(key)+"'");
 					}
 					else
 					{
@@ -1,11 +1,7 @@
 package org.molgenis.generators.db;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.nio.charset.Charset;
 import java.util.Map;
 
 import org.molgenis.MolgenisOptions;
@@ -77,14 +73,8 @@ public class MapperDecoratorGen extends ForEachEntityGenerator
 					templateArgs.put("databaseImp", options.mapper_implementation
 							.equals(MolgenisOptions.MapperImplementation.JPA) ? "jpa" : "jdbc");
 
-					OutputStream targetOut = new FileOutputStream(targetFile);
-
-					template.process(templateArgs, new OutputStreamWriter(targetOut, Charset.forName("UTF-8")));
-					targetOut.close();
-
-					// logger.info("generated " +
-					// targetFile.getAbsolutePath());
-					logger.info("generated " + targetFile);
+					if (applyTemplate(template, templateArgs, targetFile)) logger.info("generated " + targetFile);
+					else logger.debug("unchanged " + targetFile);
 				}
 			}
 		}
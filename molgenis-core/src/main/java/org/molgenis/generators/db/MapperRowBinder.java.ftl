@@ -0,0 +1,36 @@
+<#--
+Binds the rows of find queries to entities by column position.
+-->
+	/**
+	 * Binds the rows of a find query to ${JavaName(entity)} objects. The column of each field is looked up once
+	 * per query, using the same column names as ${JavaName(entity)}.set(Tuple), and read with a typed getter.
+	 * Mrefs are not part of the find query, they are loaded by mapMrefs.
+	 */
+	@Override
+	protected org.molgenis.framework.db.jdbc.RowBinder<${JavaName(entity)}> createRowBinder(java.sql.ResultSetMetaData metadata) throws SQLException
+	{
+		return new org.molgenis.framework.db.jdbc.RowBinder<${JavaName(entity)}>(metadata)
+		{
+<#list allFields(entity) as f><#if f.type != "mref">
+	<#if f.type == "xref">
+			private final int ${name(f)}Col = ordinal("${entity.name}_${f.name}", "${f.name}", "${entity.name}_${f.name}_${f.xrefField.name}", "${f.name}_${f.xrefField.name}");
+	<#else>
+			private final int ${name(f)}Col = ordinal("${entity.name}_${f.name}", "${f.name}");
+	</#if>
+	<#if f.type == "xref" && f.xrefLabelNames[0] != f.xrefFieldName><#list f.xrefLabelNames as label>
+			private final int ${name(f)}_${label}Col = ordinal("${entity.name}_${f.name}_${label}", "${f.name}_${label}");
+	</#list></#if>
+</#if></#list>
+
+			@Override
+			public void bind(java.sql.ResultSet rs, ${JavaName(entity)} entity) throws SQLException
+			{
+<#list allFields(entity) as f><#if f.type != "mref">
+				if(${name(f)}Col != 0) entity.set${JavaName(f)}(get${settertype(f)}(rs, ${name(f)}Col));
+	<#if f.type == "xref" && f.xrefLabelNames[0] != f.xrefFieldName><#list f.xrefLabelNames as label>
+				if(${name(f)}_${label}Col != 0) entity.set${JavaName(f)}_${JavaName(label)}(get${settertype(f.xrefLabels[label_index])}(rs, ${name(f)}_${label}Col));
+	</#list></#if>
+</#if></#list>
+			}
+		};
+	}
@@ -1,4 +1,18 @@
 <#include "GeneratorHelper.ftl">
+<#function jdbcValue field>
+	<#if field.type = "date">
+		<#return "e.get"+JavaName(field)+"() != null ? new java.sql.Date(e.get"+JavaName(field)+"().getTime()) : null">
+	<#elseif field.type = "datetime">
+		<#return "e.get"+JavaName(field)+"() != null ? new java.sql.Timestamp(e.get"+JavaName(field)+"().getTime()) : null">
+	<#elseif field.type = "xref" || field.type = "mref">
+		<#return "e.get"+JavaName(field)+"_"+JavaName(field.xrefField)+"()">
+	<#else>
+		<#return "e.get"+JavaName(field)+"()">
+	</#if>
+</#function>
+<#function isReadOnlyPlaceholder field>
+	<#return field.isReadOnly() && !isPrimaryKey(field,entity) && field.type != "file" && field.type != "image">
+</#function>
 <#--#####################################################################-->
 <#--                                                                   ##-->
 <#--         START OF THE OUTPUT                                       ##-->
@@ -20,12 +34,11 @@ package ${package};
 import java.io.File;
 import java.io.IOException;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.*;
-import java.text.DateFormat;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 
 import org.apache.log4j.Logger;
 
@@ -34,6 +47,7 @@ import org.molgenis.framework.db.QueryRule;
 import org.molgenis.framework.db.QueryRule.Operator;
 import org.molgenis.framework.db.DatabaseException;
 import org.molgenis.framework.db.jdbc.AbstractJDBCMapper;
+import org.molgenis.framework.db.jdbc.MultiRowStatementCache;
 import org.molgenis.MolgenisFieldTypes;
 import org.molgenis.fieldtypes.*;
 
@@ -67,6 +81,41 @@ import ${mref_entity.getNamespace()}.${JavaName(mref_entity)};
 public class ${JavaName(entity)}Mapper extends AbstractJDBCMapper<${JavaName(entity)}>
 {	
 	Logger logger = Logger.getLogger(this.getClass());
+
+	/** INSERT INTO ... VALUES (?,..),(?,..),.. statements per number of rows */
+	private final MultiRowStatementCache insertStatements = new MultiRowStatementCache(${addFields(entity)?size?c}, Statement.RETURN_GENERATED_KEYS)
+	{
+		@Override
+		protected String createSql(int nrRows)
+		{
+			return "INSERT INTO ${SqlName(entity)} (<#list addFields(entity) as f>${SqlName(f)}<#if f_has_next>,</#if></#list>) VALUES "
+					+ values("(<#list addFields(entity) as f>?<#if f_has_next>,</#if></#list>)", nrRows);
+		}
+	};
+
+	/** INSERT INTO ... VALUES (?,..),(?,..),.. ON DUPLICATE KEY UPDATE statements per number of rows */
+	private final MultiRowStatementCache updateStatements = new MultiRowStatementCache(${addFieldsIncKey(entity)?size?c}, Statement.NO_GENERATED_KEYS)
+	{
+		@Override
+		protected String createSql(int nrRows)
+		{
+			<#-- readonly fields get a constant placeholder in the insert clause to prohibit not "null" errors, they are ignored in the update clause -->
+			return "INSERT INTO ${SqlName(entity)} (<#list addFieldsIncKey(entity) as f>${SqlName(f)}<#if f_has_next>,</#if></#list>) VALUES "
+					+ values("(<#list addFieldsIncKey(entity) as f><#if isReadOnlyPlaceholder(f) && f.type == "enum">'${f.getEnumOptions()?first}'<#elseif isReadOnlyPlaceholder(f) && f.type != "date" && f.type != "datetime">0<#else>?</#if><#if f_has_next>,</#if></#list>)", nrRows)
+					+ " ON DUPLICATE KEY UPDATE <#list updateFields(entity) as f>${SqlName(f)}=<#if f.type = "int" && f.isAuto()>LAST_INSERT_ID<#else>VALUES</#if>(${SqlName(f)})<#if f_has_next>,</#if></#list>";
+		}
+	};
+
+	/** DELETE FROM ... WHERE key IN (?,..) statements per number of rows */
+	private final MultiRowStatementCache removeStatements = new MultiRowStatementCache(${keyFields(entity)?size?c}, Statement.NO_GENERATED_KEYS)
+	{
+		@Override
+		protected String createSql(int nrRows)
+		{
+			<#--alert, might not work for complex key-->
+			return "DELETE FROM ${SqlName(entity)} WHERE <#list keyFields(entity) as f>${SqlName(f)} IN (" + values("?", nrRows) + ")<#if f_has_next> AND </#if></#list>";
+		}
+	};
 	
 	@Override
 	public int executeAdd(List<? extends ${JavaName(entity)}> entities) throws DatabaseException
@@ -77,66 +126,30 @@ public class ${JavaName(entity)}Mapper extends AbstractJDBCMapper<${JavaName(ent
 		</#if>
 	
 		Connection conn = getDatabase().getConnection();
-		//create big mysql query
-		StringBuffer sql = new StringBuffer("INSERT INTO ${SqlName(entity)} (<#list addFields(entity) as f>${SqlName(f)}<#if f_has_next>,</#if></#list>) VALUES ");
+		int updatedRows = 0;
+		try
 		{
-		
-			boolean first = true;
-			for(${JavaName(entity)} e: entities)
+			for(int i = 0; i < entities.size();)
 			{
-				// put the ,
-				if(first)
-					first = false;
-				else
-					sql.append(",");
-					
-				sql.append("(");			
+				int nrRows = insertStatements.getBucketSize(entities.size() - i);
+				PreparedStatement pstmt = insertStatements.getStatement(conn, nrRows);
+				int param = 1;
+				for(${JavaName(entity)} e: entities.subList(i, i + nrRows))
+				{
 <#list addFields(entity) as f>
-				//${name(f)}
-				<#if f.type == "xref" || f.type == "mref">
-				if(e.get${JavaName(f)}_${JavaName(f.xrefField)}() != null){
-				<#else>
-				if(e.get${JavaName(f)}() != null){
-				</#if>
-								
-				<#if f.type == "datetime">
-					DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-					String mysqlDateTime = dateFormat.format(e.get${JavaName(f)}());
-					sql.append("'"+this.escapeSql(mysqlDateTime)+"'"
-				<#elseif f.type == "date">
-					sql.append("'"+new java.sql.Date(e.get${JavaName(f)}().getTime()).toString()+"'"
-				<#elseif f.type == "bool">
-					sql.append(e.get${JavaName(f)}()
-				<#elseif f.type == "xref" || f.type == "mref">					
-					sql.append("'"+this.escapeSql(e.get${JavaName(f)}_${JavaName(f.xrefField)}().toString())+"'"
-				<#else>
-					sql.append("'"+this.escapeSql(e.get${JavaName(f)}().toString())+"'"
-				</#if>
-				<#if f_has_next>+","</#if>);
-				}
-				else{
-					sql.append("null<#if f_has_next>,</#if>");
-				}
+					//${name(f)}
+					MultiRowStatementCache.setObject(pstmt, param++, ${jdbcValue(f)});
 </#list>
-				sql.append(")");
+				}
+				updatedRows += pstmt.executeUpdate();
+				getGeneratedKeys(entities, pstmt, i);
+				i += nrRows;
 			}
-		}		
-		
-		//execute sql
-		Statement stmt = null; 		
-		try
-		{			
-			stmt = conn.createStatement();
-			//logger.debug("created statement: "+sql.toString());
-			int updatedRows = stmt.executeUpdate(sql.toString(), Statement.RETURN_GENERATED_KEYS);
-			getGeneratedKeys(entities, stmt, 0);
 			return updatedRows;			
-		} catch (SQLException sqlEx) {
-                    throw new DatabaseException(sqlEx);
-                }
-		finally
+		} 
+		catch (SQLException sqlEx) 
 		{
-			JDBCDatabase.closeStatement(stmt);
+			throw new DatabaseException(sqlEx);
 		}
 	}
 
@@ -148,86 +161,33 @@ public class ${JavaName(entity)}Mapper extends AbstractJDBCMapper<${JavaName(ent
 		this.getDatabase().getMapperFor(${entity.ancestor.namespace}.${JavaName(entity.ancestor)}.class).executeUpdate(entities);
 </#if>			
 		Connection conn = getDatabase().getConnection();
-		
-		//create sql string
-		StringBuffer sql = new StringBuffer("INSERT INTO ${SqlName(entity)} (<#list addFieldsIncKey(entity) as f>${SqlName(f)}<#if f_has_next>,</#if></#list>) VALUES ");		
-		boolean first = true;
-		for(${JavaName(entity)} e: entities)
+		int updatedRows = 0;
+		try
 		{
-			// put the ,
-			if(first)
-				first = false;
-			else
-				sql.append(",");
-
-			sql.append("(");
-			
+			for(int i = 0; i < entities.size();)
+			{
+				int nrRows = updateStatements.getBucketSize(entities.size() - i);
+				PreparedStatement pstmt = updateStatements.getStatement(conn, nrRows);
+				int param = 1;
+				for(${JavaName(entity)} e: entities.subList(i, i + nrRows))
+				{
 <#list addFieldsIncKey(entity) as f>
-			//${name(f)}
-		<#if f.isReadOnly() && !isPrimaryKey(f,entity) && f.type != "file" && f.type != "image">
-			//readonly placeholder for insert-clause to prohibit not "null" errors: will be ignored in update
-			sql.append("<@compress single_line=true>
-				<#if f.type == "enum">
-					'${f.getEnumOptions()?first}'
-				<#elseif f.type == "date">
-					'"+new java.sql.Date(e.get${JavaName(f)}().getTime()).toString()+"'" +"
-				<#elseif f.type == "datetime">
-					'"+new java.sql.Timestamp(e.get${JavaName(f)}().getTime()).toString()+"'" +"
-				<#else>
-					0
-				</#if>
-				<#if f_has_next>, </#if>
-			</@compress>");	
-		<#else>
-
-
-			<#if f.type == "xref" || f.type == "mref">
-			if(e.get${JavaName(f)}_${JavaName(f.xrefField)}() != null){
-			<#else>
-			if(e.get${JavaName(f)}() != null){
-			</#if>
-                sql.append(<@compress single_line=true>
-				<#if f.type == "enum">
-					<#-->"'${f.getEnumOptions()?first}'" causes fail -->
-					"'"+this.escapeSql(e.get${JavaName(f)}())+"'"
-				<#elseif f.type == "date">
-					"'"+new java.sql.Date(e.get${JavaName(f)}().getTime()).toString()+"'"
-				<#elseif f.type == "datetime">
-					"'"+new java.sql.Timestamp(e.get${JavaName(f)}().getTime()).toString()+"'"
-				<#elseif f.type == "bool">
-					e.get${JavaName(f)}()
-                <#elseif f.type == "xref" || f.type == "mref">					
-					"'"+this.escapeSql(e.get${JavaName(f)}_${JavaName(f.xrefField)}()).toString()+"'"
-				<#else>
-					"'"+this.escapeSql(e.get${JavaName(f)}()).toString()+"'"
-				</#if>
-                <#if f_has_next>+","</#if></@compress>);
-			} else {
-				sql.append("null<#if f_has_next>,</#if>");
-            }
-		</#if>
-		
-</#list>				
-			sql.append(")");
+	<#if !isReadOnlyPlaceholder(f) || f.type == "date" || f.type == "datetime">
+					//${name(f)}
+					MultiRowStatementCache.setObject(pstmt, param++, ${jdbcValue(f)});
+	</#if>
+</#list>
+				}
+				// on duplicate key update counts each updated row twice
+				updatedRows += pstmt.executeUpdate() / 2;
+				i += nrRows;
+			}
+			return updatedRows;
 		}
-		<#-- old: <#list updateFields(entity) as f>-->
-		sql.append(" ON DUPLICATE KEY UPDATE <#list updateFields(entity) as f>${SqlName(f)}=<#if f.type = "int" && f.isAuto()>LAST_INSERT_ID<#else>VALUES</#if>(${SqlName(f)})<#if f_has_next>,</#if></#list>");
-
-		//execute sql
-		Statement stmt = null;	
-		try
+		catch(SQLException sqlEx)
 		{
-			stmt = conn.createStatement();
-			return stmt.executeUpdate(sql.toString())/2;	
-		}
-		catch(SQLException sqlEx){
-                    logger.debug("Query that caused exception:" + sql.toString());                    
-                    throw new DatabaseException(sqlEx);
+			throw new DatabaseException(sqlEx);
 		}
-		finally
-		{
-			JDBCDatabase.closeStatement(stmt);
-		}		
 	}
 
 	@Override
@@ -235,44 +195,28 @@ public class ${JavaName(entity)}Mapper extends AbstractJDBCMapper<${JavaName(ent
 	{
 		Connection conn = getDatabase().getConnection();
 		int rowsAffected = 0;
-		
-		//create sql
-		StringBuffer sql = new StringBuffer("DELETE FROM ${SqlName(entity)} WHERE ");
-		
-		<#--alert, might not work for complex key-->
-<#list keyFields(entity) as f>
-		//key $f_index: ${name(f)}
+		try
 		{
-			sql.append("${SqlName(f)} in (");
-			boolean first = true;
-			for(${JavaName(entity)} e: entities)
+			for(int i = 0; i < entities.size();)
 			{
-				// put the ,
-				if(first)
-					first = false;
-				else
-					sql.append(",");			
-				sql.append("'"+this.escapeSql(e.get${JavaName(f)}().toString())+"'");
-			}				
-			sql.append(") <#if f_has_next> AND </#if>");
-		}
-</#list>		
-	
-		//execute sql
-		Statement stmt = null;
-		try
-		{	
-			stmt = conn.createStatement();
-			rowsAffected = stmt.executeUpdate(sql.toString());	
+				int nrRows = removeStatements.getBucketSize(entities.size() - i);
+				PreparedStatement pstmt = removeStatements.getStatement(conn, nrRows);
+<#list keyFields(entity) as f>
+				//key $f_index: ${name(f)}
+				for(int j = 0; j < nrRows; ++j)
+				{
+					${JavaName(entity)} e = entities.get(i + j);
+					MultiRowStatementCache.setObject(pstmt, ${f_index?c} * nrRows + j + 1, ${jdbcValue(f)});
+				}
+</#list>
+				rowsAffected += pstmt.executeUpdate();
+				i += nrRows;
+			}
 		} 
 		catch (SQLException sqlEx) 
 		{
 			throw new DatabaseException(sqlEx);
 		}
-		finally
-		{
-			JDBCDatabase.closeStatement(stmt);
-		}		
 <#if entity.hasAncestor()>		
 		//remove superclass after
 		this.getDatabase().getMapperFor(${entity.ancestor.namespace}.${JavaName(entity.ancestor)}.class).executeRemove(entities);
@@ -289,4 +233,7 @@ public class ${JavaName(entity)}Mapper extends AbstractJDBCMapper<${JavaName(ent
 //Generated by MapperMrefs.java.ftl
 <#include "MapperMrefs.java.ftl"/>
 
+//Generated by MapperRowBinder.java.ftl
+<#include "MapperRowBinder.java.ftl"/>
+
 }
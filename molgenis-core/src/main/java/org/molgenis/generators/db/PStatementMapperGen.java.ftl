@@ -62,6 +62,7 @@ import org.molgenis.framework.db.QueryRule;
 import org.molgenis.framework.db.QueryRule.Operator;
 import org.molgenis.framework.db.jdbc.JDBCDatabase;
 import org.molgenis.framework.db.jdbc.AbstractJDBCMapper;
+import org.molgenis.framework.db.jdbc.StatementBatcher;
 import org.molgenis.fieldtypes.*;
 
 <#list allFields(entity) as f><#if f.type == "file">
@@ -91,6 +92,9 @@ import ${mref_entity.getNamespace()}.${JavaName(mref_entity)};
 </#list>
 public class ${JavaName(entity)}Mapper extends AbstractJDBCMapper<${JavaName(entity)}>
 {	
+	/** number of rows that are sent to the database in one JDBC batch */
+	private static final int JDBC_BATCH_SIZE = ${mapper_batch_size?c};
+
 <#if db_driver?contains("postgresql") && allFields(entity,"enum")?size &gt; 0>
 	//postgresql specific issue with enums: they are special objects.
 	private static class EnumObject extends org.postgresql.util.PGobject
@@ -124,33 +128,34 @@ public class ${JavaName(entity)}Mapper extends AbstractJDBCMapper<${JavaName(ent
 		PreparedStatement pstmt = null;
 		try
 		{
+<#assign autoKey = false><#list dbFields(entity) as f><#if f.auto && f.type="int"><#assign autoKey = true></#if></#list>
+<#if autoKey && db_driver != "org.hsqldb.jdbcDriver">
+			pstmt = conn.prepareStatement("INSERT INTO ${name(entity)} (<#list addFields(entity) as f>${name(f)}<#if f_has_next>,</#if></#list>) VALUES (<#list addFields(entity) as f>?<#if f_has_next>,</#if></#list>)", Statement.RETURN_GENERATED_KEYS);
+<#else>
 			pstmt = conn.prepareStatement("INSERT INTO ${name(entity)} (<#list addFields(entity) as f>${name(f)}<#if f_has_next>,</#if></#list>) VALUES (<#list addFields(entity) as f>?<#if f_has_next>,</#if></#list>)");
-			int updatedRows = 0;
-			
-			for( ${JavaName(entity)} e : entities )	
-			{	
+</#if>
+			//autogenerated keys are retrieved per batch, on hsqldb per row
+			int updatedRows = new StatementBatcher<${JavaName(entity)}>(JDBC_BATCH_SIZE, StatementBatcher.Keys.<#if !autoKey>NONE<#elseif db_driver == "org.hsqldb.jdbcDriver">IDENTITY<#else>GENERATED_KEYS</#if>)
+			{
+				@Override
+				public void bind(PreparedStatement pstmt, ${JavaName(entity)} e) throws SQLException
+				{
 <#list addFields(entity) as f>	
-				//${f}
-				//if(e.get${JavaName(f)}() == null) pstmt.setNull(${f_index + 1},Types.${SqlType(model,f)});	
-				if(e.get${JavaName(f)}<#if f.type="xref" || f.type="mref">_${JavaName(f.xrefField)}</#if>() == null) pstmt.setNull(${f_index + 1},Types.OTHER);
-				else pstmt.${pstmtSetter(f)}(${f_index + 1},${convertToJdbc(f)});
+					//${f}
+					//if(e.get${JavaName(f)}() == null) pstmt.setNull(${f_index + 1},Types.${SqlType(model,f)});	
+					if(e.get${JavaName(f)}<#if f.type="xref" || f.type="mref">_${JavaName(f.xrefField)}</#if>() == null) pstmt.setNull(${f_index + 1},Types.OTHER);
+					else pstmt.${pstmtSetter(f)}(${f_index + 1},${convertToJdbc(f)});
 </#list>
-	
-				updatedRows += pstmt.executeUpdate();
-				
-				//retrieve autogenerated keys
+				}
 <#list dbFields(entity) as f><#if f.auto && f.type="int">
-<#if db_driver == "org.hsqldb.jdbcDriver">
-				Statement keyStmt = conn.createStatement();
-				ResultSet rs = keyStmt.executeQuery("CALL IDENTITY()");
-				rs.next();
-				e.set${JavaName(f)}(rs.getInt(1));
-				rs.close();
-				JDBCDatabase.closeStatement(keyStmt);
-<#else>
-				getGeneratedKeys(entities, pstmt, 0);
-</#if></#if></#list>						
-			}					
+
+				@Override
+				protected void setKey(${JavaName(entity)} e, int key)
+				{
+					e.set${JavaName(f)}(key);
+				}
+</#if></#list>
+			}.execute(conn, pstmt, entities);
 		
 			return updatedRows;
 		} catch (SQLException sqlEx) {
@@ -175,27 +180,28 @@ public class ${JavaName(entity)}Mapper extends AbstractJDBCMapper<${JavaName(ent
 		try
 		{
 			pstmt = conn.prepareStatement("UPDATE ${name(entity)} SET <#list updateFields(entity) as f>${name(f)}=?<#if f_has_next>,</#if></#list> WHERE <#list keyFields(entity) as f>${f.name}=?<#if f_has_next> AND </#if></#list>");
-			int updatedRows = 0;	
-			
-			for( ${JavaName(entity)} e : entities )	
-			{	
+			int updatedRows = new StatementBatcher<${JavaName(entity)}>(JDBC_BATCH_SIZE, StatementBatcher.Keys.NONE)
+			{
+				@Override
+				public void bind(PreparedStatement pstmt, ${JavaName(entity)} e) throws SQLException
+				{
 <#assign index = 1>		
 <#list updateFields(entity) as f>	
-				//${f}
-				//if(e.get${JavaName(f)}() == null) pstmt.setNull(${index},Types.${SqlType(model,f)}); 
-				if(e.get${JavaName(f)}<#if f.type="xref" || f.type="mref">_${JavaName(f.xrefField)}</#if>() == null) pstmt.setNull(${index},Types.OTHER);
-				else pstmt.${pstmtSetter(f)}(${index},${convertToJdbc(f)});
+					//${f}
+					//if(e.get${JavaName(f)}() == null) pstmt.setNull(${index},Types.${SqlType(model,f)}); 
+					if(e.get${JavaName(f)}<#if f.type="xref" || f.type="mref">_${JavaName(f.xrefField)}</#if>() == null) pstmt.setNull(${index},Types.OTHER);
+					else pstmt.${pstmtSetter(f)}(${index},${convertToJdbc(f)});
 <#assign index = index+1>				
 </#list>
 <#list keyFields(entity) as f>
-				//where ${f}
-				//if(e.get${JavaName(f)}() == null) pstmt.setNull(${index},Types.${SqlType(model,f)});
-				if(e.get${JavaName(f)}<#if f.type="xref" || f.type="mref">_${JavaName(f.xrefField)}</#if>() == null) pstmt.setNull(${index},Types.OTHER);
-				else pstmt.${pstmtSetter(f)}(${index},${convertToJdbc(f)});			
+					//where ${f}
+					//if(e.get${JavaName(f)}() == null) pstmt.setNull(${index},Types.${SqlType(model,f)});
+					if(e.get${JavaName(f)}<#if f.type="xref" || f.type="mref">_${JavaName(f.xrefField)}</#if>() == null) pstmt.setNull(${index},Types.OTHER);
+					else pstmt.${pstmtSetter(f)}(${index},${convertToJdbc(f)});			
 <#assign index = index+1>				
 </#list>	
-				updatedRows += pstmt.executeUpdate();
-			}					
+				}
+			}.execute(conn, pstmt, entities);
 	
 			return updatedRows;
 		} catch (SQLException sqlEx) {
@@ -216,17 +222,19 @@ public class ${JavaName(entity)}Mapper extends AbstractJDBCMapper<${JavaName(ent
 		try
 		{
 			pstmt = conn.prepareStatement("DELETE FROM ${name(entity)} WHERE <#list keyFields(entity) as f>${name(f)}=?<#if f_has_next> AND </#if></#list>");
-					
-			for( ${JavaName(entity)} e : entities )	
-			{	
+			updatedRows = new StatementBatcher<${JavaName(entity)}>(JDBC_BATCH_SIZE, StatementBatcher.Keys.NONE)
+			{
+				@Override
+				public void bind(PreparedStatement pstmt, ${JavaName(entity)} e) throws SQLException
+				{
 <#list keyFields(entity) as f>
-				//${f}
-				//if(e.get${JavaName(f)}() == null) pstmt.setNull(${f_index + 1},Types.${SqlType(model,f)}); 
-				if(e.get${JavaName(f)}<#if f.type="xref" || f.type="mref">_${JavaName(f.xrefField)}</#if>() == null) pstmt.setNull(${f_index + 1},Types.OTHER);
-				else pstmt.${pstmtSetter(f)}(${f_index + 1},${convertToJdbc(f)});
+					//${f}
+					//if(e.get${JavaName(f)}() == null) pstmt.setNull(${f_index + 1},Types.${SqlType(model,f)}); 
+					if(e.get${JavaName(f)}<#if f.type="xref" || f.type="mref">_${JavaName(f.xrefField)}</#if>() == null) pstmt.setNull(${f_index + 1},Types.OTHER);
+					else pstmt.${pstmtSetter(f)}(${f_index + 1},${convertToJdbc(f)});
 </#list>	
-				updatedRows += pstmt.executeUpdate();
-			}
+				}
+			}.execute(conn, pstmt, entities);
 		} 
 		catch (SQLException sqlEx) 
 		{
@@ -248,4 +256,5 @@ public class ${JavaName(entity)}Mapper extends AbstractJDBCMapper<${JavaName(ent
 
 <#include "MapperFileAttachments.java.ftl">
 <#include "MapperMrefs.java.ftl"/>
+<#include "MapperRowBinder.java.ftl"/>
 }
\ No newline at end of file
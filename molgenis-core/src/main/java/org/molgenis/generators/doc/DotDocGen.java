@@ -1,11 +1,7 @@
 package org.molgenis.generators.doc;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.nio.charset.Charset;
 import java.util.List;
 import java.util.Map;
 
@@ -83,9 +79,7 @@ public class DotDocGen extends Generator
 			TemplateException
 	{
 
-		OutputStream targetOut = new FileOutputStream(target);
-		template.process(templateArgs, new OutputStreamWriter(targetOut, Charset.forName("UTF-8")));
-		targetOut.close();
+		applyTemplate(template, templateArgs, target);
 	}
 
 	private void executeDot(File dotFile, String type, boolean wait)
@@ -84,7 +84,7 @@ public class FrontController extends MolgenisFrontController
 			System.exit(0);
 		}
 		
-		this.services = services;
+		setServices(services);
 	}
 	
 	@Override
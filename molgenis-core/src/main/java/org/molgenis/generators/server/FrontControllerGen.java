@@ -1,11 +1,7 @@
 package org.molgenis.generators.server;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.nio.charset.Charset;
 import java.text.CharacterIterator;
 import java.text.StringCharacterIterator;
 import java.util.Map;
@@ -65,11 +61,8 @@ public class FrontControllerGen extends Generator
 		templateArgs.put("linkout_overlay", options.render_decorator);
 		templateArgs.put("generate_soap", options.generate_soap);
 
-		OutputStream targetOut = new FileOutputStream(target);
-		template.process(templateArgs, new OutputStreamWriter(targetOut, Charset.forName("UTF-8")));
-		targetOut.close();
-
-		logger.info("generated " + target);
+		if (applyTemplate(template, templateArgs, target)) logger.info("generated " + target);
+		else logger.debug("unchanged " + target);
 	}
 
 	public static String backlashReplace(String myStr)
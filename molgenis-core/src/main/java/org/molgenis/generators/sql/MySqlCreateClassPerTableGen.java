@@ -1,11 +1,7 @@
 package org.molgenis.generators.sql;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.nio.charset.Charset;
 import java.util.List;
 import java.util.Map;
 
@@ -47,11 +43,8 @@ public class MySqlCreateClassPerTableGen extends Generator
 
 		templateArgs.put("model", model);
 		templateArgs.put("entities", entityList);
-		OutputStream targetOut = new FileOutputStream(target);
-		template.process(templateArgs, new OutputStreamWriter(targetOut, Charset.forName("UTF-8")));
-		targetOut.close();
-
-		logger.info("generated " + target);
+		if (applyTemplate(template, templateArgs, target)) logger.info("generated " + target);
+		else logger.debug("unchanged " + target);
 	}
 
 	// public void sortEntitiesByXref(List<Entity> entityList, Model model)
@@ -1,11 +1,7 @@
 package org.molgenis.generators.ui;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.nio.charset.Charset;
 import java.util.Map;
 
 import org.apache.log4j.Logger;
@@ -94,12 +90,12 @@ public class EasyPluginModelGen extends Generator
 					templateArgs.put("templatePath", targetFtl.toString().replace("\\", "/"));
 					templateArgs.put("package", packageName);
 
-					OutputStream targetOut = new FileOutputStream(targetFile);
-					template.process(templateArgs, new OutputStreamWriter(targetOut, Charset.forName("UTF-8")));
-					targetOut.close();
-
-					logger.info("generated "
-							+ targetFile.getAbsolutePath().substring(this.getHandWrittenPath(options).length()));
+					if (applyTemplate(template, templateArgs, targetFile))
+					{
+						logger.info("generated "
+								+ targetFile.getAbsolutePath().substring(this.getHandWrittenPath(options).length()));
+					}
+					else logger.debug("unchanged " + targetFile);
 				}
 				else
 				{
@@ -1,11 +1,7 @@
 package org.molgenis.generators.ui;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.nio.charset.Charset;
 import java.util.Map;
 
 import org.apache.log4j.Logger;
@@ -64,12 +60,11 @@ public class PluginControllerGen extends Generator
 
 				File targetFile = new File(targetDir + "/" + GeneratorHelper.getJavaName(screen.getClassName())
 						+ "Plugin.java");
-				OutputStream targetOut = new FileOutputStream(targetFile);
-
-				template.process(templateArgs, new OutputStreamWriter(targetOut, Charset.forName("UTF-8")));
-				targetOut.close();
-
-				logger.info("generated " + targetFile.getAbsolutePath().substring(options.output_src.length()));
+				if (applyTemplate(template, templateArgs, targetFile))
+				{
+					logger.info("generated " + targetFile.getAbsolutePath().substring(options.output_src.length()));
+				}
+				else logger.debug("unchanged " + targetFile);
 			}
 
 			// get children
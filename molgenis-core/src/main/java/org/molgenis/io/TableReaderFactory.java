@@ -14,9 +14,16 @@ import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
 import org.molgenis.io.csv.CsvReader;
 import org.molgenis.io.excel.ExcelReader;
+import org.molgenis.io.excel.XlsxReader;
 
 public class TableReaderFactory
 {
+	/**
+	 * .xlsx files larger than this are streamed instead of loaded in memory,
+	 * see {@link XlsxReader}
+	 */
+	public static final long XLSX_STREAMING_THRESHOLD = 1024 * 1024;
+
 	private TableReaderFactory()
 	{
 	}
@@ -54,6 +61,10 @@ public class TableReaderFactory
 			String tableName = FilenameUtils.getBaseName(name);
 			return new SingleTableReader(new CsvReader(file, '\t'), tableName);
 		}
+		else if (name.endsWith(".xlsx") && file.length() > XLSX_STREAMING_THRESHOLD)
+		{
+			return new XlsxReader(file);
+		}
 		else if (name.endsWith(".xls") || name.endsWith(".xlsx"))
 		{
 			return new ExcelReader(file);
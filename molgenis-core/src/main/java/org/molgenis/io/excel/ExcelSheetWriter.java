@@ -5,26 +5,50 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Workbook;
 import org.molgenis.io.TupleWriter;
 import org.molgenis.io.processor.AbstractCellProcessor;
 import org.molgenis.io.processor.CellProcessor;
 import org.molgenis.util.ListEscapeUtils;
 import org.molgenis.util.tuple.Tuple;
 
+/**
+ * Writes tuples to a sheet. Rows that do not fit on the sheet are continued on
+ * a new sheet named after the first one, e.g. 'data (2)', that starts with the
+ * same header.
+ */
 public class ExcelSheetWriter implements TupleWriter
 {
-	private final org.apache.poi.ss.usermodel.Sheet sheet;
+	/** maximum length of a sheet name */
+	private static final int MAX_SHEET_NAME_LENGTH = 31;
+
+	private final Workbook workbook;
+	private final String sheetName;
+	private final int maxRows;
+	private org.apache.poi.ss.usermodel.Sheet sheet;
+	private int sheetNr;
 	private int row;
 
 	/** process cells after reading */
 	private List<CellProcessor> cellProcessors;
 
 	private List<String> cachedColNames;
+	private List<String> cachedHeader;
 
-	ExcelSheetWriter(org.apache.poi.ss.usermodel.Sheet sheet, List<CellProcessor> cellProcessors)
+	/**
+	 * @param maxRows
+	 *            maximum number of rows per sheet, including the header
+	 */
+	ExcelSheetWriter(Workbook workbook, String sheetName, int maxRows, List<CellProcessor> cellProcessors)
 	{
-		if (sheet == null) throw new IllegalArgumentException("sheet is null");
-		this.sheet = sheet;
+		if (workbook == null) throw new IllegalArgumentException("workbook is null");
+		if (sheetName == null) throw new IllegalArgumentException("sheet name is null");
+		if (maxRows < 2) throw new IllegalArgumentException("max rows must be > 1");
+		this.workbook = workbook;
+		this.sheetName = sheetName;
+		this.maxRows = maxRows;
+		this.sheet = workbook.createSheet(sheetName);
+		this.sheetNr = 1;
 		this.cellProcessors = cellProcessors;
 		this.row = 0;
 	}
@@ -34,27 +58,26 @@ public class ExcelSheetWriter implements TupleWriter
 	{
 		if (cachedColNames == null)
 		{
-			org.apache.poi.ss.usermodel.Row poiRow = sheet.createRow(row++);
-
-			// write header
-			int i = 0;
+			// process column names
 			List<String> processedColNames = new ArrayList<String>();
+			List<String> header = new ArrayList<String>();
 			for (String colName : colNames)
 			{
-				// process column name
-				Cell cell = poiRow.createCell(i++, Cell.CELL_TYPE_STRING);
-				cell.setCellValue(AbstractCellProcessor.processCell(colName, true, this.cellProcessors));
+				header.add(AbstractCellProcessor.processCell(colName, true, this.cellProcessors));
 				processedColNames.add(colName);
 			}
 
 			// store header
 			this.cachedColNames = processedColNames;
+			this.cachedHeader = header;
+			writeHeader();
 		}
 	}
 
 	@Override
 	public void write(Tuple tuple) throws IOException
 	{
+		if (row == maxRows) nextSheet();
 		org.apache.poi.ss.usermodel.Row poiRow = sheet.createRow(row++);
 
 		if (cachedColNames != null)
@@ -92,6 +115,36 @@ public class ExcelSheetWriter implements TupleWriter
 		// noop
 	}
 
+	private void writeHeader()
+	{
+		org.apache.poi.ss.usermodel.Row poiRow = sheet.createRow(row++);
+		int i = 0;
+		for (String value : cachedHeader)
+		{
+			Cell cell = poiRow.createCell(i++, Cell.CELL_TYPE_STRING);
+			cell.setCellValue(value);
+		}
+	}
+
+	/**
+	 * Continues on a new sheet, the header is repeated
+	 */
+	private void nextSheet()
+	{
+		String name;
+		do
+		{
+			String suffix = " (" + (++sheetNr) + ')';
+			int maxLength = MAX_SHEET_NAME_LENGTH - suffix.length();
+			name = (sheetName.length() > maxLength ? sheetName.substring(0, maxLength) : sheetName) + suffix;
+		}
+		while (workbook.getSheet(name) != null);
+
+		sheet = workbook.createSheet(name);
+		row = 0;
+		if (cachedHeader != null) writeHeader();
+	}
+
 	private String toValue(Object obj)
 	{
 		String value;
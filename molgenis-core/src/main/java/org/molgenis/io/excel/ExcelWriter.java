@@ -9,15 +9,26 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.SpreadsheetVersion;
 import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.molgenis.io.TableWriter;
 import org.molgenis.io.TupleWriter;
 import org.molgenis.io.processor.CellProcessor;
 
+/**
+ * Writes tables to the sheets of an Excel workbook. Xlsx workbooks are
+ * streamed: only a window of the most recent rows of each sheet is kept in
+ * memory, older rows are flushed to compressed temporary files that are removed
+ * on close. Tables that do not fit on one sheet are continued on the next.
+ */
 public class ExcelWriter implements TableWriter
 {
+	/** number of rows per sheet kept in memory when writing xlsx */
+	static final int ROW_ACCESS_WINDOW_SIZE = 100;
+
 	private final Workbook workbook;
+	private final int maxRows;
 	private final OutputStream os;
 
 	/** process cells after reading */
@@ -38,7 +49,18 @@ public class ExcelWriter implements TableWriter
 		if (os == null) throw new IllegalArgumentException("output stream is null");
 		if (format == null) throw new IllegalArgumentException("format is null");
 		this.os = os;
-		this.workbook = format == FileFormat.XLS ? new HSSFWorkbook() : new XSSFWorkbook();
+		if (format == FileFormat.XLS)
+		{
+			this.workbook = new HSSFWorkbook();
+			this.maxRows = SpreadsheetVersion.EXCEL97.getMaxRows();
+		}
+		else
+		{
+			SXSSFWorkbook streamingWorkbook = new SXSSFWorkbook(ROW_ACCESS_WINDOW_SIZE);
+			streamingWorkbook.setCompressTempFiles(true);
+			this.workbook = streamingWorkbook;
+			this.maxRows = SpreadsheetVersion.EXCEL2007.getMaxRows();
+		}
 	}
 
 	public ExcelWriter(File file) throws FileNotFoundException
@@ -54,8 +76,7 @@ public class ExcelWriter implements TableWriter
 	@Override
 	public TupleWriter createTupleWriter(String tableName) throws IOException
 	{
-		org.apache.poi.ss.usermodel.Sheet poiSheet = this.workbook.createSheet(tableName);
-		return new ExcelSheetWriter(poiSheet, cellProcessors);
+		return new ExcelSheetWriter(workbook, tableName, maxRows, cellProcessors);
 	}
 
 	public void addCellProcessor(CellProcessor cellProcessor)
@@ -73,7 +94,15 @@ public class ExcelWriter implements TableWriter
 		}
 		finally
 		{
-			this.os.close();
+			try
+			{
+				// remove temporary files
+				if (workbook instanceof SXSSFWorkbook) ((SXSSFWorkbook) workbook).dispose();
+			}
+			finally
+			{
+				this.os.close();
+			}
 		}
 	}
 }
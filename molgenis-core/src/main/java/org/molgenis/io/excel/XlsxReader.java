@@ -0,0 +1,192 @@
+package org.molgenis.io.excel;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.molgenis.io.TableReader;
+import org.molgenis.io.TupleReader;
+import org.molgenis.io.processor.CellProcessor;
+import org.xml.sax.SAXException;
+
+/**
+ * Streaming reader for Excel 2007 (.xlsx) workbooks. In contrast to
+ * {@link ExcelReader} the workbook is not loaded in memory: the sheets are
+ * parsed row by row while iterating, so memory usage does not depend on the
+ * number of rows. Only the shared strings and cell styles of the workbook are
+ * kept in memory.
+ * <p>
+ * Formulas are not evaluated, the values calculated by Excel when the workbook
+ * was saved are read instead.
+ */
+public class XlsxReader implements TableReader, Closeable
+{
+	private final OPCPackage opcPackage;
+	private final XSSFReader xssfReader;
+	private final ReadOnlySharedStringsTable sharedStrings;
+	private final StylesTable styles;
+	private final boolean hasHeader;
+	private final List<String> sheetNames;
+
+	/** process cells after reading */
+	private List<CellProcessor> cellProcessors;
+
+	public XlsxReader(File file) throws IOException
+	{
+		this(file, true);
+	}
+
+	public XlsxReader(File file, boolean hasHeader) throws IOException
+	{
+		if (file == null) throw new IllegalArgumentException("file is null");
+		this.hasHeader = hasHeader;
+		try
+		{
+			this.opcPackage = OPCPackage.open(file, PackageAccess.READ);
+		}
+		catch (OpenXML4JException e)
+		{
+			throw new IOException(e);
+		}
+		try
+		{
+			this.xssfReader = new XSSFReader(opcPackage);
+			this.sharedStrings = new ReadOnlySharedStringsTable(opcPackage);
+			this.styles = xssfReader.getStylesTable();
+
+			List<String> sheetNames = new ArrayList<String>();
+			XSSFReader.SheetIterator it = (XSSFReader.SheetIterator) xssfReader.getSheetsData();
+			while (it.hasNext())
+			{
+				IOUtils.closeQuietly(it.next());
+				sheetNames.add(it.getSheetName());
+			}
+			this.sheetNames = Collections.unmodifiableList(sheetNames);
+		}
+		catch (OpenXML4JException e)
+		{
+			opcPackage.revert();
+			throw new IOException(e);
+		}
+		catch (SAXException e)
+		{
+			opcPackage.revert();
+			throw new IOException(e);
+		}
+	}
+
+	public int getNumberOfSheets()
+	{
+		return sheetNames.size();
+	}
+
+	public String getSheetName(int i)
+	{
+		return sheetNames.get(i);
+	}
+
+	public XlsxSheetReader getSheet(int i)
+	{
+		return new XlsxSheetReader(this, i, hasHeader, cellProcessors);
+	}
+
+	public XlsxSheetReader getSheet(String sheetName)
+	{
+		int i = sheetNames.indexOf(sheetName);
+		return i != -1 ? getSheet(i) : null;
+	}
+
+	@Override
+	public Iterator<TupleReader> iterator()
+	{
+		return new Iterator<TupleReader>()
+		{
+			private int i = 0;
+
+			@Override
+			public boolean hasNext()
+			{
+				return i < getNumberOfSheets();
+			}
+
+			@Override
+			public TupleReader next()
+			{
+				return getSheet(i++);
+			}
+
+			@Override
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	public void addCellProcessor(CellProcessor cellProcessor)
+	{
+		if (cellProcessors == null) cellProcessors = new ArrayList<CellProcessor>();
+		cellProcessors.add(cellProcessor);
+	}
+
+	@Override
+	public TupleReader getTupleReader(String tableName) throws IOException
+	{
+		return getSheet(tableName);
+	}
+
+	@Override
+	public Iterable<String> getTableNames() throws IOException
+	{
+		return sheetNames;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		// read-only package, discard instead of save
+		opcPackage.revert();
+	}
+
+	/** Opens the xml of a sheet */
+	InputStream openSheet(int i) throws IOException
+	{
+		try
+		{
+			Iterator<InputStream> it = xssfReader.getSheetsData();
+			for (int j = 0; it.hasNext(); ++j)
+			{
+				InputStream is = it.next();
+				if (j == i) return is;
+				IOUtils.closeQuietly(is);
+			}
+			throw new IOException("sheet " + i + " does not exist");
+		}
+		catch (OpenXML4JException e)
+		{
+			throw new IOException(e);
+		}
+	}
+
+	ReadOnlySharedStringsTable getSharedStrings()
+	{
+		return sharedStrings;
+	}
+
+	StylesTable getStyles()
+	{
+		return styles;
+	}
+}
@@ -0,0 +1,366 @@
+package org.molgenis.io.excel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.poi.ss.usermodel.BuiltinFormats;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.xssf.model.StylesTable;
+import org.molgenis.io.TupleReader;
+import org.molgenis.io.processor.AbstractCellProcessor;
+import org.molgenis.io.processor.CellProcessor;
+import org.molgenis.util.tuple.Tuple;
+import org.molgenis.util.tuple.ValueIndexTuple;
+import org.molgenis.util.tuple.ValueTuple;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTXf;
+
+/**
+ * Reads the rows of a sheet of a {@link XlsxReader} with a pull parser, only
+ * the current row is kept in memory. Cell values are converted like
+ * {@link ExcelSheetReader} does.
+ */
+public class XlsxSheetReader implements TupleReader
+{
+	private static final XMLInputFactory XML_INPUT_FACTORY = createXMLInputFactory();
+
+	private final XlsxReader xlsxReader;
+	private final int sheetIndex;
+	private final boolean hasHeader;
+
+	/** process cells after reading */
+	private List<CellProcessor> cellProcessors;
+	/** column names index */
+	private Map<String, Integer> colNamesMap;
+	/** open row iterators, closed on close() */
+	private final List<RowIterator> rowIterators = new ArrayList<RowIterator>();
+
+	XlsxSheetReader(XlsxReader xlsxReader, int sheetIndex, boolean hasHeader, List<CellProcessor> cellProcessors)
+	{
+		if (xlsxReader == null) throw new IllegalArgumentException("xlsxReader is null");
+		this.xlsxReader = xlsxReader;
+		this.sheetIndex = sheetIndex;
+		this.hasHeader = hasHeader;
+		this.cellProcessors = cellProcessors != null ? new ArrayList<CellProcessor>(cellProcessors) : null;
+	}
+
+	/**
+	 * Sheets are uploaded by users: DTDs are not supported so entities can't
+	 * read local files or urls (XXE)
+	 */
+	private static XMLInputFactory createXMLInputFactory()
+	{
+		XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+		xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		return xmlInputFactory;
+	}
+
+	public String getName()
+	{
+		return xlsxReader.getSheetName(sheetIndex);
+	}
+
+	@Override
+	public boolean hasColNames()
+	{
+		return hasHeader;
+	}
+
+	@Override
+	public Iterator<String> colNamesIterator() throws IOException
+	{
+		if (!hasHeader) return null;
+		if (colNamesMap == null)
+		{
+			RowIterator it = new RowIterator();
+			try
+			{
+				if (!it.hasNext()) return null;
+				colNamesMap = toColNamesMap(it.next());
+			}
+			finally
+			{
+				it.close();
+			}
+		}
+		return colNamesMap.keySet().iterator();
+	}
+
+	@Override
+	public Iterator<Tuple> iterator()
+	{
+		final RowIterator it;
+		try
+		{
+			it = new RowIterator();
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+		rowIterators.add(it);
+		if (!it.hasNext()) return Collections.<Tuple> emptyList().iterator();
+
+		// create column header index once and reuse
+		final Map<String, Integer> colNamesMap;
+		if (hasHeader)
+		{
+			List<String> headerRow = it.next();
+			if (this.colNamesMap == null) this.colNamesMap = toColNamesMap(headerRow);
+			colNamesMap = this.colNamesMap;
+		}
+		else colNamesMap = null;
+
+		return new Iterator<Tuple>()
+		{
+			@Override
+			public boolean hasNext()
+			{
+				return it.hasNext();
+			}
+
+			@Override
+			public Tuple next()
+			{
+				List<String> values = it.next();
+				for (int i = 0; i < values.size(); ++i)
+					values.set(i, AbstractCellProcessor.processCell(values.get(i), false, cellProcessors));
+				if (colNamesMap == null) return new ValueTuple(values);
+
+				// missing cells at the end of the row are empty
+				int nrCols = colNamesMap.size();
+				while (values.size() < nrCols)
+					values.add(null);
+				return new ValueIndexTuple(colNamesMap, values);
+			}
+
+			@Override
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	@Override
+	public void addCellProcessor(CellProcessor cellProcessor)
+	{
+		if (cellProcessors == null) cellProcessors = new ArrayList<CellProcessor>();
+		cellProcessors.add(cellProcessor);
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		for (RowIterator it : rowIterators)
+			it.close();
+		rowIterators.clear();
+	}
+
+	private Map<String, Integer> toColNamesMap(List<String> headerRow)
+	{
+		Map<String, Integer> columnIdx = new LinkedHashMap<String, Integer>();
+		for (int i = 0; i < headerRow.size(); ++i)
+		{
+			String header = headerRow.get(i);
+			if (header != null) columnIdx.put(AbstractCellProcessor.processCell(header, true, cellProcessors), i);
+		}
+		return columnIdx;
+	}
+
+	/**
+	 * Returns the zero based column index of a cell reference, e.g. 'AB12' ->
+	 * 27
+	 */
+	static int toColumnIndex(String cellReference)
+	{
+		int col = 0;
+		for (int i = 0; i < cellReference.length(); ++i)
+		{
+			char c = cellReference.charAt(i);
+			if (c < 'A' || c > 'Z') break;
+			col = col * 26 + (c - 'A' + 1);
+		}
+		return col - 1;
+	}
+
+	/**
+	 * Iterates over the rows of the sheet xml, a row is a list of raw cell
+	 * values indexed by column
+	 */
+	private class RowIterator implements Iterator<List<String>>
+	{
+		private final InputStream is;
+		private final XMLStreamReader reader;
+		private List<String> row;
+		private boolean end;
+
+		public RowIterator() throws IOException
+		{
+			is = xlsxReader.openSheet(sheetIndex);
+			try
+			{
+				reader = XML_INPUT_FACTORY.createXMLStreamReader(is);
+			}
+			catch (XMLStreamException e)
+			{
+				IOUtils.closeQuietly(is);
+				throw new IOException(e);
+			}
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			if (row == null && !end)
+			{
+				try
+				{
+					row = readRow();
+				}
+				catch (XMLStreamException e)
+				{
+					close();
+					throw new RuntimeException(e);
+				}
+				if (row == null) close();
+			}
+			return row != null;
+		}
+
+		@Override
+		public List<String> next()
+		{
+			if (!hasNext()) throw new NoSuchElementException();
+			List<String> next = row;
+			row = null;
+			return next;
+		}
+
+		@Override
+		public void remove()
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		public void close()
+		{
+			end = true;
+			try
+			{
+				reader.close();
+			}
+			catch (XMLStreamException e)
+			{
+				// noop
+			}
+			IOUtils.closeQuietly(is);
+		}
+
+		/** reads the next row, null at the end of the sheet */
+		private List<String> readRow() throws XMLStreamException
+		{
+			while (reader.hasNext())
+			{
+				if (reader.next() == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals("row"))
+				{
+					List<String> values = new ArrayList<String>();
+					while (reader.hasNext())
+					{
+						int event = reader.next();
+						if (event == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals("c"))
+						{
+							String cellReference = reader.getAttributeValue(null, "r");
+							int col = cellReference != null ? toColumnIndex(cellReference) : values.size();
+							String value = readCell();
+							while (values.size() <= col)
+								values.add(null);
+							values.set(col, value);
+						}
+						else if (event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals("row"))
+						{
+							break;
+						}
+					}
+					return values;
+				}
+			}
+			return null;
+		}
+
+		/** reads the value of the current cell element */
+		private String readCell() throws XMLStreamException
+		{
+			String type = reader.getAttributeValue(null, "t");
+			String style = reader.getAttributeValue(null, "s");
+
+			String rawValue = null;
+			StringBuilder inlineValue = null;
+			while (reader.hasNext())
+			{
+				int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT)
+				{
+					String name = reader.getLocalName();
+					if (name.equals("v")) rawValue = reader.getElementText();
+					else if (name.equals("t"))
+					{
+						// inline string, possibly rich text
+						if (inlineValue == null) inlineValue = new StringBuilder();
+						inlineValue.append(reader.getElementText());
+					}
+				}
+				else if (event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals("c"))
+				{
+					break;
+				}
+			}
+
+			if ("inlineStr".equals(type)) return inlineValue != null ? inlineValue.toString() : null;
+			if (rawValue == null || rawValue.isEmpty()) return null;
+			if ("s".equals(type)) return xlsxReader.getSharedStrings().getEntryAt(Integer.parseInt(rawValue));
+			if ("str".equals(type)) return rawValue;
+			if ("b".equals(type)) return String.valueOf(rawValue.equals("1"));
+			if ("e".equals(type)) throw new RuntimeException("error in cell: " + rawValue);
+			return toNumericValue(Double.parseDouble(rawValue), style);
+		}
+
+		private String toNumericValue(double x, String style)
+		{
+			if (style != null && isDateFormatted(Integer.parseInt(style)))
+			{
+				return DateUtil.getJavaDate(x).toString();
+			}
+			// excel stores integer values as double values
+			// read an integer if the double value equals the
+			// integer value
+			if (x == Math.rint(x) && !Double.isNaN(x) && !Double.isInfinite(x)) return String.valueOf((int) x);
+			else return String.valueOf(x);
+		}
+
+		private boolean isDateFormatted(int styleIndex)
+		{
+			StylesTable styles = xlsxReader.getStyles();
+			if (styles == null) return false;
+			CTXf xf = styles.getCellXfAt(styleIndex);
+			if (xf == null) return false;
+			int formatIndex = (int) xf.getNumFmtId();
+			String formatString = styles.getNumberFormatAt(formatIndex);
+			if (formatString == null) formatString = BuiltinFormats.getBuiltinFormat(formatIndex);
+			return formatString != null && DateUtil.isADateFormat(formatIndex, formatString);
+		}
+	}
+}
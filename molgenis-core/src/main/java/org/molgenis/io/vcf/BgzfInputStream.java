@@ -0,0 +1,379 @@
+package org.molgenis.io.vcf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a BGZF (blocked gzip, e.g. created with bgzip) compressed file.
+ * <p>
+ * A BGZF file is a series of gzip members of at most 64KB, so a position in
+ * the uncompressed data can be addressed with a virtual offset: the file
+ * offset of the compressed block shifted 16 bits to the left combined with the
+ * offset in the uncompressed block. Virtual offsets are used by tabix indexes,
+ * see {@link #seek(long)}.
+ * <p>
+ * Blocks are read sequentially. With more than one thread, blocks ahead of the
+ * current block are decompressed in parallel, which speeds up full scans of
+ * large files.
+ *
+ * @see <a href="http://samtools.github.io/hts-specs/SAMv1.pdf">SAM/BAM
+ *      specification, section 4.1</a>
+ */
+public class BgzfInputStream extends InputStream
+{
+	private static final Charset CHARSET_UTF8 = Charset.forName("UTF-8");
+
+	private static final int BLOCK_HEADER_LENGTH = 18;
+	private static final int MAX_BLOCK_SIZE = 65536;
+
+	private final RandomAccessFile file;
+	private final ExecutorService executorService;
+	/** maximum number of blocks that are decompressed ahead */
+	private final int nrBlocksAhead;
+	/** blocks ahead of the current block, in file order */
+	private final LinkedList<Future<Block>> blocksAhead = new LinkedList<Future<Block>>();
+	/** file offset of the next block to read */
+	private long nextReadAddress = 0;
+
+	private Block block;
+	private int blockPos;
+
+	public BgzfInputStream(File file) throws IOException
+	{
+		this(file, 1);
+	}
+
+	/**
+	 * @param file
+	 *            BGZF file
+	 * @param nrThreads
+	 *            number of threads that decompress blocks
+	 * @throws IOException
+	 */
+	public BgzfInputStream(File file, int nrThreads) throws IOException
+	{
+		if (file == null) throw new IllegalArgumentException("file is null");
+		if (nrThreads < 1) throw new IllegalArgumentException("nrThreads must be > 0");
+		this.file = new RandomAccessFile(file, "r");
+		if (nrThreads > 1)
+		{
+			this.executorService = Executors.newFixedThreadPool(nrThreads, new ThreadFactory()
+			{
+				@Override
+				public Thread newThread(Runnable r)
+				{
+					Thread thread = new Thread(r, "bgzf-inflater");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			this.nrBlocksAhead = nrThreads * 2;
+		}
+		else
+		{
+			this.executorService = null;
+			this.nrBlocksAhead = 0;
+		}
+	}
+
+	/**
+	 * Returns whether a file is BGZF compressed
+	 */
+	public static boolean isBgzf(File file) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			if (raf.length() < BLOCK_HEADER_LENGTH) return false;
+			byte[] header = new byte[BLOCK_HEADER_LENGTH];
+			raf.readFully(header);
+			return isBlockHeader(header);
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	/**
+	 * Returns the virtual offset of the next byte to read
+	 */
+	public long getVirtualOffset() throws IOException
+	{
+		if (block == null) return nextReadAddress << 16;
+		if (blockPos == block.data.length) return block.nextAddress << 16;
+		return (block.address << 16) | blockPos;
+	}
+
+	/**
+	 * Positions the stream at a virtual offset
+	 *
+	 * @param virtualOffset
+	 *            file offset of a block << 16 | offset in the uncompressed
+	 *            block
+	 */
+	public void seek(long virtualOffset) throws IOException
+	{
+		long address = virtualOffset >>> 16;
+		int offset = (int) (virtualOffset & 0xFFFF);
+
+		if (block == null || block.address != address)
+		{
+			clearBlocksAhead();
+			nextReadAddress = address;
+			block = null;
+			if (!nextBlock() && offset > 0) throw new EOFException("no block at " + address);
+		}
+		if (block != null && offset > block.data.length) throw new IOException("invalid virtual offset "
+				+ virtualOffset);
+		blockPos = offset;
+	}
+
+	@Override
+	public int read() throws IOException
+	{
+		if (!ensureData()) return -1;
+		return block.data[blockPos++] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException
+	{
+		if (len == 0) return 0;
+		if (!ensureData()) return -1;
+		int n = Math.min(len, block.data.length - blockPos);
+		System.arraycopy(block.data, blockPos, b, off, n);
+		blockPos += n;
+		return n;
+	}
+
+	/**
+	 * Reads a line of UTF-8 text terminated by '\n' (an optional preceding '\r'
+	 * is removed)
+	 *
+	 * @return line or null at the end of the stream
+	 */
+	public String readLine() throws IOException
+	{
+		ByteArrayOutputStream bos = null;
+		while (ensureData())
+		{
+			byte[] data = block.data;
+			int start = blockPos;
+			int end = start;
+			while (end < data.length && data[end] != '\n')
+				++end;
+
+			if (end < data.length)
+			{
+				blockPos = end + 1;
+				if (bos == null) return toLine(data, start, end - start);
+				bos.write(data, start, end - start);
+				return toLine(bos.toByteArray(), 0, bos.size());
+			}
+
+			// line continues in the next block
+			if (bos == null) bos = new ByteArrayOutputStream(256);
+			bos.write(data, start, end - start);
+			blockPos = end;
+		}
+		return bos != null ? toLine(bos.toByteArray(), 0, bos.size()) : null;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		clearBlocksAhead();
+		if (executorService != null) executorService.shutdownNow();
+		file.close();
+	}
+
+	private static String toLine(byte[] data, int offset, int length)
+	{
+		if (length > 0 && data[offset + length - 1] == '\r') --length;
+		return new String(data, offset, length, CHARSET_UTF8);
+	}
+
+	/** moves to the next block if the current block was read completely */
+	private boolean ensureData() throws IOException
+	{
+		while (block == null || blockPos == block.data.length)
+		{
+			if (!nextBlock()) return false;
+		}
+		return true;
+	}
+
+	private boolean nextBlock() throws IOException
+	{
+		Block nextBlock;
+		if (executorService == null)
+		{
+			CompressedBlock compressedBlock = readCompressedBlock();
+			nextBlock = compressedBlock != null ? compressedBlock.inflate() : null;
+		}
+		else
+		{
+			// keep the decompression threads busy
+			while (blocksAhead.size() < nrBlocksAhead)
+			{
+				final CompressedBlock compressedBlock = readCompressedBlock();
+				if (compressedBlock == null) break;
+				blocksAhead.add(executorService.submit(new Callable<Block>()
+				{
+					@Override
+					public Block call() throws IOException
+					{
+						return compressedBlock.inflate();
+					}
+				}));
+			}
+			nextBlock = blocksAhead.isEmpty() ? null : getBlock(blocksAhead.removeFirst());
+		}
+
+		if (nextBlock == null) return false;
+		block = nextBlock;
+		blockPos = 0;
+		return true;
+	}
+
+	private Block getBlock(Future<Block> future) throws IOException
+	{
+		try
+		{
+			return future.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private void clearBlocksAhead()
+	{
+		for (Future<Block> future : blocksAhead)
+			future.cancel(false);
+		blocksAhead.clear();
+	}
+
+	/** reads the compressed block at nextReadAddress, null at end of file */
+	private CompressedBlock readCompressedBlock() throws IOException
+	{
+		long address = nextReadAddress;
+		if (address >= file.length()) return null;
+
+		byte[] header = new byte[BLOCK_HEADER_LENGTH];
+		file.seek(address);
+		file.readFully(header);
+		if (!isBlockHeader(header)) throw new IOException("invalid BGZF block at " + address);
+
+		int blockSize = ((header[16] & 0xFF) | ((header[17] & 0xFF) << 8)) + 1;
+		byte[] data = new byte[blockSize];
+		System.arraycopy(header, 0, data, 0, BLOCK_HEADER_LENGTH);
+		file.readFully(data, BLOCK_HEADER_LENGTH, blockSize - BLOCK_HEADER_LENGTH);
+
+		nextReadAddress = address + blockSize;
+		return new CompressedBlock(address, nextReadAddress, data);
+	}
+
+	/** gzip header with a single 'BC' extra subfield that holds the block size */
+	private static boolean isBlockHeader(byte[] header)
+	{
+		return (header[0] & 0xFF) == 31 && (header[1] & 0xFF) == 139 && header[2] == 8 && (header[3] & 4) != 0
+				&& header[10] == 6 && header[11] == 0 && header[12] == 'B' && header[13] == 'C' && header[14] == 2
+				&& header[15] == 0;
+	}
+
+	private static class CompressedBlock
+	{
+		private final long address;
+		private final long nextAddress;
+		private final byte[] data;
+
+		public CompressedBlock(long address, long nextAddress, byte[] data)
+		{
+			this.address = address;
+			this.nextAddress = nextAddress;
+			this.data = data;
+		}
+
+		public Block inflate() throws IOException
+		{
+			int n = data.length;
+			int crc = readInt(data, n - 8);
+			int uncompressedSize = readInt(data, n - 4);
+			if (uncompressedSize < 0 || uncompressedSize > MAX_BLOCK_SIZE) throw new IOException(
+					"invalid BGZF block size at " + address);
+
+			byte[] uncompressed = new byte[uncompressedSize];
+			Inflater inflater = new Inflater(true);
+			try
+			{
+				inflater.setInput(data, BLOCK_HEADER_LENGTH, n - BLOCK_HEADER_LENGTH - 8);
+				int length = 0;
+				while (length < uncompressedSize && !inflater.finished())
+				{
+					int count = inflater.inflate(uncompressed, length, uncompressedSize - length);
+					if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+					length += count;
+				}
+				if (length != uncompressedSize) throw new IOException("truncated BGZF block at " + address);
+			}
+			catch (DataFormatException e)
+			{
+				throw new IOException("invalid BGZF block at " + address, e);
+			}
+			finally
+			{
+				inflater.end();
+			}
+
+			CRC32 crc32 = new CRC32();
+			crc32.update(uncompressed);
+			if ((int) crc32.getValue() != crc) throw new IOException("CRC mismatch in BGZF block at " + address);
+
+			return new Block(address, nextAddress, uncompressed);
+		}
+
+		private static int readInt(byte[] b, int offset)
+		{
+			return (b[offset] & 0xFF) | ((b[offset + 1] & 0xFF) << 8) | ((b[offset + 2] & 0xFF) << 16)
+					| ((b[offset + 3] & 0xFF) << 24);
+		}
+	}
+
+	private static class Block
+	{
+		private final long address;
+		private final long nextAddress;
+		private final byte[] data;
+
+		public Block(long address, long nextAddress, byte[] data)
+		{
+			this.address = address;
+			this.nextAddress = nextAddress;
+			this.data = data;
+		}
+	}
+}
@@ -0,0 +1,320 @@
+package org.molgenis.io.vcf;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tabix index (.tbi) of a BGZF compressed, position sorted file, as created by
+ * 'tabix -p vcf file.vcf.gz'. The index maps a region to the chunks of the
+ * file (virtual offset ranges, see {@link BgzfInputStream}) that contain the
+ * records overlapping the region, so a region can be read without scanning
+ * the file.
+ *
+ * @see <a href="http://samtools.github.io/hts-specs/tabix.pdf">Tabix
+ *      specification</a>
+ */
+public class TabixIndex
+{
+	private static final Charset CHARSET_UTF8 = Charset.forName("UTF-8");
+
+	private static final int MAGIC = 0x01494254; // TBI\1
+	/** pseudo bin containing meta data instead of chunks */
+	private static final int META_BIN = 37450;
+	/** size of the linear index windows: 16kb */
+	private static final int LINEAR_INDEX_SHIFT = 14;
+
+	private final int format;
+	private final int colSeq;
+	private final int colBeg;
+	private final int colEnd;
+	private final char meta;
+	private final int skip;
+	private final Map<String, ReferenceIndex> referenceIndices;
+
+	private TabixIndex(int format, int colSeq, int colBeg, int colEnd, char meta, int skip,
+			Map<String, ReferenceIndex> referenceIndices)
+	{
+		this.format = format;
+		this.colSeq = colSeq;
+		this.colBeg = colBeg;
+		this.colEnd = colEnd;
+		this.meta = meta;
+		this.skip = skip;
+		this.referenceIndices = referenceIndices;
+	}
+
+	/**
+	 * Returns the index file of a BGZF compressed file (file name + '.tbi')
+	 */
+	public static File getIndexFile(File file)
+	{
+		return new File(file.getPath() + ".tbi");
+	}
+
+	/**
+	 * Reads a tabix index
+	 *
+	 * @param indexFile
+	 *            .tbi file
+	 */
+	public static TabixIndex read(File indexFile) throws IOException
+	{
+		InputStream in = new BgzfInputStream(indexFile);
+		try
+		{
+			if (readInt(in) != MAGIC) throw new IOException(indexFile + " is not a tabix index");
+			int nrReferences = readInt(in);
+			int format = readInt(in);
+			int colSeq = readInt(in);
+			int colBeg = readInt(in);
+			int colEnd = readInt(in);
+			char meta = (char) readInt(in);
+			int skip = readInt(in);
+
+			// NUL terminated sequence names
+			byte[] names = new byte[readInt(in)];
+			readFully(in, names);
+			List<String> sequenceNames = new ArrayList<String>(nrReferences);
+			int start = 0;
+			for (int i = 0; i < names.length; ++i)
+			{
+				if (names[i] == 0)
+				{
+					sequenceNames.add(new String(names, start, i - start, CHARSET_UTF8));
+					start = i + 1;
+				}
+			}
+			if (sequenceNames.size() != nrReferences) throw new IOException("invalid sequence names in " + indexFile);
+
+			Map<String, ReferenceIndex> referenceIndices = new LinkedHashMap<String, ReferenceIndex>();
+			for (String sequenceName : sequenceNames)
+			{
+				int nrBins = readInt(in);
+				Map<Integer, long[]> bins = new HashMap<Integer, long[]>(nrBins * 2);
+				for (int i = 0; i < nrBins; ++i)
+				{
+					int bin = readInt(in);
+					long[] chunks = new long[readInt(in) * 2];
+					for (int j = 0; j < chunks.length; ++j)
+						chunks[j] = readLong(in);
+					if (bin != META_BIN) bins.put(bin, chunks);
+				}
+				long[] linearIndex = new long[readInt(in)];
+				for (int i = 0; i < linearIndex.length; ++i)
+					linearIndex[i] = readLong(in);
+				referenceIndices.put(sequenceName, new ReferenceIndex(bins, linearIndex));
+			}
+			return new TabixIndex(format, colSeq, colBeg, colEnd, meta, skip, referenceIndices);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/** Returns the names of the sequences (chromosomes) in the index */
+	public List<String> getSequenceNames()
+	{
+		return Collections.unmodifiableList(new ArrayList<String>(referenceIndices.keySet()));
+	}
+
+	/** Returns the format of the indexed file: 0 generic, 1 SAM, 2 VCF */
+	public int getFormat()
+	{
+		return format;
+	}
+
+	/** Returns the one based column of the sequence name */
+	public int getColSeq()
+	{
+		return colSeq;
+	}
+
+	/** Returns the one based column of the region start */
+	public int getColBeg()
+	{
+		return colBeg;
+	}
+
+	/** Returns the one based column of the region end, 0 if none */
+	public int getColEnd()
+	{
+		return colEnd;
+	}
+
+	/** Returns the character that starts a header line */
+	public char getMeta()
+	{
+		return meta;
+	}
+
+	/** Returns the number of header lines that don't start with the meta char */
+	public int getSkip()
+	{
+		return skip;
+	}
+
+	/**
+	 * Returns the chunks that contain the records that overlap a region, sorted
+	 * and merged
+	 *
+	 * @param sequenceName
+	 *            e.g. chromosome '1'
+	 * @param beg
+	 *            zero based start of the region
+	 * @param end
+	 *            zero based end of the region (exclusive)
+	 * @return chunks [begin virtual offset, end virtual offset), empty if the
+	 *         sequence is not indexed
+	 */
+	public List<Chunk> getChunks(String sequenceName, int beg, int end)
+	{
+		ReferenceIndex referenceIndex = referenceIndices.get(sequenceName);
+		if (referenceIndex == null || beg >= end) return Collections.emptyList();
+		if (beg < 0) beg = 0;
+
+		// records that start before this offset can't overlap the region
+		long minOffset = 0;
+		long[] linearIndex = referenceIndex.linearIndex;
+		if (linearIndex.length > 0)
+		{
+			minOffset = linearIndex[Math.min(beg >> LINEAR_INDEX_SHIFT, linearIndex.length - 1)];
+		}
+
+		List<Chunk> chunks = new ArrayList<Chunk>();
+		for (int bin : reg2bins(beg, end))
+		{
+			long[] binChunks = referenceIndex.bins.get(bin);
+			if (binChunks == null) continue;
+			for (int i = 0; i < binChunks.length; i += 2)
+			{
+				if (compareVirtualOffsets(binChunks[i + 1], minOffset) > 0)
+				{
+					chunks.add(new Chunk(binChunks[i], binChunks[i + 1]));
+				}
+			}
+		}
+		if (chunks.isEmpty()) return chunks;
+
+		// merge overlapping and adjacent chunks
+		Collections.sort(chunks, new Comparator<Chunk>()
+		{
+			@Override
+			public int compare(Chunk o1, Chunk o2)
+			{
+				return compareVirtualOffsets(o1.getBegin(), o2.getBegin());
+			}
+		});
+		List<Chunk> mergedChunks = new ArrayList<Chunk>(chunks.size());
+		Chunk chunk = chunks.get(0);
+		for (int i = 1; i < chunks.size(); ++i)
+		{
+			Chunk nextChunk = chunks.get(i);
+			if (compareVirtualOffsets(nextChunk.getBegin(), chunk.getEnd()) <= 0)
+			{
+				if (compareVirtualOffsets(nextChunk.getEnd(), chunk.getEnd()) > 0) chunk = new Chunk(chunk.getBegin(),
+						nextChunk.getEnd());
+			}
+			else
+			{
+				mergedChunks.add(chunk);
+				chunk = nextChunk;
+			}
+		}
+		mergedChunks.add(chunk);
+		return mergedChunks;
+	}
+
+	/** virtual offsets are unsigned 64 bit values */
+	static int compareVirtualOffsets(long offset1, long offset2)
+	{
+		return offset1 == offset2 ? 0 : ((offset1 < offset2) ^ (offset1 < 0) ^ (offset2 < 0) ? -1 : 1);
+	}
+
+	/** bins that may contain records overlapping [beg, end) */
+	static List<Integer> reg2bins(int beg, int end)
+	{
+		List<Integer> bins = new ArrayList<Integer>();
+		--end;
+		bins.add(0);
+		for (int k = 1 + (beg >> 26); k <= 1 + (end >> 26); ++k)
+			bins.add(k);
+		for (int k = 9 + (beg >> 23); k <= 9 + (end >> 23); ++k)
+			bins.add(k);
+		for (int k = 73 + (beg >> 20); k <= 73 + (end >> 20); ++k)
+			bins.add(k);
+		for (int k = 585 + (beg >> 17); k <= 585 + (end >> 17); ++k)
+			bins.add(k);
+		for (int k = 4681 + (beg >> 14); k <= 4681 + (end >> 14); ++k)
+			bins.add(k);
+		return bins;
+	}
+
+	private static int readInt(InputStream in) throws IOException
+	{
+		byte[] b = new byte[4];
+		readFully(in, b);
+		return (b[0] & 0xFF) | ((b[1] & 0xFF) << 8) | ((b[2] & 0xFF) << 16) | ((b[3] & 0xFF) << 24);
+	}
+
+	private static long readLong(InputStream in) throws IOException
+	{
+		return (readInt(in) & 0xFFFFFFFFL) | ((long) readInt(in) << 32);
+	}
+
+	private static void readFully(InputStream in, byte[] b) throws IOException
+	{
+		int offset = 0;
+		while (offset < b.length)
+		{
+			int count = in.read(b, offset, b.length - offset);
+			if (count == -1) throw new EOFException();
+			offset += count;
+		}
+	}
+
+	/** range of virtual offsets [begin, end) */
+	public static class Chunk
+	{
+		private final long begin;
+		private final long end;
+
+		public Chunk(long begin, long end)
+		{
+			this.begin = begin;
+			this.end = end;
+		}
+
+		public long getBegin()
+		{
+			return begin;
+		}
+
+		public long getEnd()
+		{
+			return end;
+		}
+	}
+
+	private static class ReferenceIndex
+	{
+		private final Map<Integer, long[]> bins;
+		private final long[] linearIndex;
+
+		public ReferenceIndex(Map<Integer, long[]> bins, long[] linearIndex)
+		{
+			this.bins = bins;
+			this.linearIndex = linearIndex;
+		}
+	}
+}
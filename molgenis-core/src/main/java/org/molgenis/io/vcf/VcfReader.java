@@ -1,48 +1,174 @@
 package org.molgenis.io.vcf;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.PushbackReader;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.zip.GZIPInputStream;
 
 import org.molgenis.io.TupleReader;
 import org.molgenis.io.csv.CsvReader;
+import org.molgenis.io.processor.AbstractCellProcessor;
 import org.molgenis.io.processor.CellProcessor;
 import org.molgenis.util.tuple.Tuple;
+import org.molgenis.util.tuple.ValueIndexTuple;
 
 import com.google.common.collect.Lists;
 
+/**
+ * Reads VCF files, plain text or (BGZF) gzip compressed.
+ * <p>
+ * A BGZF compressed file (e.g. created with bgzip) that is read with
+ * {@link #VcfReader(File)} is decompressed by multiple threads. If a tabix
+ * index exists next to the file (file name + '.tbi', e.g. created with 'tabix
+ * -p vcf') regions can be read without scanning the file, see
+ * {@link #query(String, int, int)}.
+ */
 public class VcfReader implements TupleReader
 {
 	private static final Charset CHARSET_UTF8 = Charset.forName("UTF-8");
 	private static final List<String> NORMAL_COL_NAMES = Arrays.asList(new String[]
 	{ "#CHROM", "POS", "ID", "REF", "ALT", "QUAL", "FILTER", "INFO", "FORMAT", "" });
+	private static final char SEPARATOR = '\t';
+
+	/** default number of threads that decompress a BGZF file */
+	public static final int DEFAULT_NR_THREADS = Math.min(Runtime.getRuntime().availableProcessors(), 4);
 
 	private List<String> headers = new ArrayList<String>();
 	private final CsvReader csvReader;
 
+	/** BGZF compressed file and its index, null if not indexed */
+	private File bgzfFile;
+	private TabixIndex tabixIndex;
+	/** process cells of records that are read by query */
+	private List<CellProcessor> cellProcessors;
+
+	/**
+	 * Reads a plain text or gzip compressed VCF stream
+	 */
 	public VcfReader(InputStream vcfInputStream) throws IOException
 	{
-		BufferedReader br = new BufferedReader(new InputStreamReader(vcfInputStream, CHARSET_UTF8));
+		InputStream in = new BufferedInputStream(vcfInputStream);
+		// detect gzip (and BGZF) compression by the magic number
+		in.mark(2);
+		int magic = in.read() | (in.read() << 8);
+		in.reset();
+		if (magic == GZIPInputStream.GZIP_MAGIC) in = new GZIPInputStream(in);
+
+		csvReader = createCsvReader(in);
+	}
 
-		// First read the headers (starts with '##')
-		br.mark(vcfInputStream.available());
-		headers = readHeaders(br);
-		br.reset();
+	/**
+	 * Reads a plain text, gzip or BGZF compressed VCF file
+	 */
+	public VcfReader(File vcfFile) throws IOException
+	{
+		this(vcfFile, DEFAULT_NR_THREADS);
+	}
 
-		// Create CsvReader, skip the headers starting with '##'
-		for (int i = 0; i < headers.size(); i++)
+	/**
+	 * Reads a plain text, gzip or BGZF compressed VCF file
+	 *
+	 * @param vcfFile
+	 * @param nrThreads
+	 *            number of threads that decompress a BGZF file
+	 * @throws IOException
+	 */
+	public VcfReader(File vcfFile, int nrThreads) throws IOException
+	{
+		if (BgzfInputStream.isBgzf(vcfFile))
 		{
-			br.readLine();
+			csvReader = createCsvReader(new BgzfInputStream(vcfFile, nrThreads));
+
+			bgzfFile = vcfFile;
+			File indexFile = TabixIndex.getIndexFile(vcfFile);
+			if (indexFile.exists())
+			{
+				tabixIndex = TabixIndex.read(indexFile);
+			}
 		}
+		else
+		{
+			InputStream in = new FileInputStream(vcfFile);
+			try
+			{
+				csvReader = createCsvReader(vcfFile.getName().endsWith(".gz") ? new GZIPInputStream(in) : in);
+			}
+			catch (IOException e)
+			{
+				in.close();
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Reads the '##' headers and creates the reader of the column header line
+	 * and the records
+	 */
+	private CsvReader createCsvReader(InputStream in) throws IOException
+	{
+		BufferedReader br = new BufferedReader(new InputStreamReader(in, CHARSET_UTF8));
+
+		// First read the headers (starts with '##')
+		String line = br.readLine();
+		while ((line != null) && line.startsWith("##"))
+		{
+			headers.add(line);
+			line = br.readLine();
+		}
+
+		// Create CsvReader starting at the column header line
+		PushbackReader reader = new PushbackReader(br, line != null ? line.length() + 1 : 1);
+		if (line != null) reader.unread((line + '\n').toCharArray());
+		return new CsvReader(reader, SEPARATOR, true);
+	}
 
-		csvReader = new CsvReader(br, '	', true);
+	/**
+	 * Returns whether this reader can read regions, see
+	 * {@link #query(String, int, int)}
+	 */
+	public boolean isIndexed()
+	{
+		return tabixIndex != null;
+	}
+
+	/**
+	 * Returns the records that overlap a region, using the tabix index of the
+	 * file. The records are read independently of {@link #iterator()}.
+	 *
+	 * @param chrom
+	 *            chromosome, e.g. '1'
+	 * @param start
+	 *            one based start position (inclusive)
+	 * @param end
+	 *            one based end position (inclusive)
+	 * @return records sorted by position
+	 * @throws IOException
+	 */
+	public Iterator<VcfRecord> query(String chrom, int start, int end) throws IOException
+	{
+		if (tabixIndex == null) throw new IllegalStateException("no tabix index available for this reader");
+		List<TabixIndex.Chunk> chunks = tabixIndex.getChunks(chrom, start - 1, end);
+		if (chunks.isEmpty()) return Collections.<VcfRecord> emptyList().iterator();
+
+		Map<String, Integer> colNamesMap = new LinkedHashMap<String, Integer>();
+		for (String colName : getColNames())
+			colNamesMap.put(colName, colNamesMap.size());
+		return new RegionIterator(new BgzfInputStream(bgzfFile), chunks, chrom, start, end, colNamesMap);
 	}
 
 	public List<String> getSampleNames() throws IOException
@@ -183,20 +309,112 @@ public class VcfReader implements TupleReader
 	public void addCellProcessor(CellProcessor cellProcessor)
 	{
 		csvReader.addCellProcessor(cellProcessor);
+		if (cellProcessors == null) cellProcessors = new ArrayList<CellProcessor>();
+		cellProcessors.add(cellProcessor);
 	}
 
-	private List<String> readHeaders(BufferedReader br) throws IOException
+	/**
+	 * Reads the records of the chunks that overlap the region. The stream is
+	 * closed when all records were read.
+	 */
+	private class RegionIterator implements Iterator<VcfRecord>
 	{
-		List<String> headers = new ArrayList<String>();
+		private final BgzfInputStream in;
+		private final List<TabixIndex.Chunk> chunks;
+		private final String chrom;
+		private final int start;
+		private final int end;
+		private final Map<String, Integer> colNamesMap;
+
+		private int chunkIndex = -1;
+		private VcfRecord next;
+
+		public RegionIterator(BgzfInputStream in, List<TabixIndex.Chunk> chunks, String chrom, int start, int end,
+				Map<String, Integer> colNamesMap)
+		{
+			this.in = in;
+			this.chunks = chunks;
+			this.chrom = chrom;
+			this.start = start;
+			this.end = end;
+			this.colNamesMap = colNamesMap;
+		}
 
-		String header = br.readLine();
-		while ((header != null) && header.startsWith("##"))
+		@Override
+		public boolean hasNext()
 		{
-			headers.add(header);
-			header = br.readLine();
+			if (next == null)
+			{
+				try
+				{
+					next = readNext();
+					if (next == null) in.close();
+				}
+				catch (IOException e)
+				{
+					try
+					{
+						in.close();
+					}
+					catch (IOException e1)
+					{
+						// noop
+					}
+					throw new RuntimeException(e);
+				}
+			}
+			return next != null;
 		}
 
-		return headers;
+		@Override
+		public VcfRecord next()
+		{
+			if (!hasNext()) throw new NoSuchElementException();
+			VcfRecord record = next;
+			next = null;
+			return record;
+		}
+
+		private VcfRecord readNext() throws IOException
+		{
+			while (chunkIndex < chunks.size())
+			{
+				if (chunkIndex == -1
+						|| TabixIndex.compareVirtualOffsets(in.getVirtualOffset(), chunks.get(chunkIndex).getEnd()) >= 0)
+				{
+					if (++chunkIndex == chunks.size()) break;
+					in.seek(chunks.get(chunkIndex).getBegin());
+				}
+
+				String line = in.readLine();
+				if (line == null) break;
+				if (line.isEmpty() || line.charAt(0) == '#') continue;
+
+				String[] values = line.split(String.valueOf(SEPARATOR), -1);
+				if (!chrom.equals(values[0])) continue;
+				int pos = Integer.parseInt(values[1]);
+				// records are sorted by position
+				if (pos > end) break;
+				// a deletion starting before the region may overlap the region
+				int recordEnd = pos + values[3].length() - 1;
+				if (recordEnd < start) continue;
+
+				List<String> cells = new ArrayList<String>(values.length);
+				for (String value : values)
+				{
+					cells.add(AbstractCellProcessor.processCell(value.isEmpty() ? null : value, false, cellProcessors));
+				}
+				return new VcfRecord(new ValueIndexTuple(colNamesMap, cells));
+			}
+			chunkIndex = chunks.size();
+			return null;
+		}
+
+		@Override
+		public void remove()
+		{
+			throw new UnsupportedOperationException();
+		}
 	}
 
 	private static class VcfRecordIterator implements Iterator<VcfRecord>
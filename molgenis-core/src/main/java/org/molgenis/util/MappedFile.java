@@ -0,0 +1,144 @@
+package org.molgenis.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * Read-only memory mapping of a file. Files larger than a single mapping can
+ * address are mapped in consecutive regions. All reads use absolute positions,
+ * so a mapped file can be read by multiple threads at once.
+ */
+public class MappedFile
+{
+	/** maximum size of a mapped region */
+	public static final int REGION_SIZE = 1 << 30;
+	/** bytes per page touched by {@link #prefetch(long, long)} */
+	private static final int PAGE_SIZE = 4096;
+
+	private final long length;
+	private final int regionSize;
+	private final MappedByteBuffer[] regions;
+	/** prevents the reads of prefetch from being optimized away */
+	@SuppressWarnings("unused")
+	private volatile int prefetchChecksum;
+
+	public MappedFile(File file) throws IOException
+	{
+		this(file, REGION_SIZE);
+	}
+
+	public MappedFile(File file, int regionSize) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			// the mapping stays valid after the channel is closed
+			this.regionSize = regionSize;
+			this.length = raf.length();
+			this.regions = map(raf.getChannel(), length, regionSize);
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	/**
+	 * Maps the file of an open channel, closing the channel is left to the
+	 * caller
+	 */
+	public MappedFile(FileChannel channel) throws IOException
+	{
+		this.regionSize = REGION_SIZE;
+		this.length = channel.size();
+		this.regions = map(channel, length, regionSize);
+	}
+
+	private static MappedByteBuffer[] map(FileChannel channel, long length, int regionSize) throws IOException
+	{
+		int nrRegions = (int) ((length + regionSize - 1) / regionSize);
+		MappedByteBuffer[] regions = new MappedByteBuffer[nrRegions];
+		for (int i = 0; i < nrRegions; ++i)
+		{
+			long position = (long) i * regionSize;
+			regions[i] = channel.map(MapMode.READ_ONLY, position, Math.min(regionSize, length - position));
+		}
+		return regions;
+	}
+
+	public long length()
+	{
+		return length;
+	}
+
+	public byte get(long position)
+	{
+		checkRange(position, 1);
+		return regions[(int) (position / regionSize)].get((int) (position % regionSize));
+	}
+
+	/**
+	 * Copies len bytes starting at position into dest
+	 */
+	public void get(long position, byte[] dest, int offset, int len)
+	{
+		checkRange(position, len);
+		for (ByteBuffer buffer : slice(position, len))
+		{
+			int remaining = buffer.remaining();
+			buffer.get(dest, offset, remaining);
+			offset += remaining;
+		}
+	}
+
+	/**
+	 * Returns read-only views on len bytes starting at position without copying
+	 * them, one view per mapped region the range spans.
+	 */
+	public ByteBuffer[] slice(long position, long len)
+	{
+		checkRange(position, len);
+		if (len == 0) return new ByteBuffer[0];
+		int first = (int) (position / regionSize);
+		int last = (int) ((position + len - 1) / regionSize);
+		ByteBuffer[] slices = new ByteBuffer[last - first + 1];
+		for (int i = first; i <= last; ++i)
+		{
+			long regionStart = (long) i * regionSize;
+			int from = (int) (Math.max(position, regionStart) - regionStart);
+			int to = (int) (Math.min(position + len, regionStart + regions[i].capacity()) - regionStart);
+			ByteBuffer slice = regions[i].asReadOnlyBuffer();
+			slice.limit(to);
+			slice.position(from);
+			slices[i - first] = slice.slice();
+		}
+		return slices;
+	}
+
+	/**
+	 * Touches the pages of a range so they are read from disk before they are
+	 * needed, e.g. by a background thread during a sequential scan
+	 */
+	public void prefetch(long position, long len)
+	{
+		long end = Math.min(length, position + len);
+		if (position < 0 || position >= end) return;
+		int checksum = 0;
+		for (long pos = position; pos < end; pos += PAGE_SIZE)
+			checksum += regions[(int) (pos / regionSize)].get((int) (pos % regionSize));
+		// touch the last page of unaligned ranges
+		checksum += get(end - 1);
+		prefetchChecksum = checksum;
+	}
+
+	private void checkRange(long position, long len)
+	{
+		if (position < 0 || len < 0 || position + len > length) throw new IndexOutOfBoundsException("range ["
+				+ position + "," + (position + len) + ") out of bounds for file of length " + length);
+	}
+}
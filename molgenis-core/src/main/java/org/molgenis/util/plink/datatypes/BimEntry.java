@@ -1,11 +1,12 @@
 package org.molgenis.util.plink.datatypes;
 
-import org.molgenis.util.tuple.KeyValueTuple;
+import org.molgenis.util.tuple.ArrayTuple;
 import org.molgenis.util.tuple.Tuple;
-import org.molgenis.util.tuple.WritableTuple;
+import org.molgenis.util.tuple.TupleSchema;
 
 public class BimEntry extends MapEntry
 {
+	private static final TupleSchema SCHEMA = new TupleSchema(bimHeader());
 
 	private Biallele biallele;
 
@@ -28,13 +29,8 @@ public class BimEntry extends MapEntry
 
 	public static Tuple bimToTuple(BimEntry bim)
 	{
-		WritableTuple tuple = new KeyValueTuple();
-		tuple.set("chr", bim.getChromosome());
-		tuple.set("snp", bim.getSNP());
-		tuple.set("cm", bim.getcM());
-		tuple.set("bp", bim.getBpPos());
-		tuple.set("al1", bim.getBiallele().getAllele1());
-		tuple.set("al2", bim.getBiallele().getAllele2());
-		return tuple;
+		return new ArrayTuple(SCHEMA, new Object[]
+		{ bim.getChromosome(), bim.getSNP(), bim.getcM(),
+				bim.getBpPos(), bim.getBiallele().getAllele1(), bim.getBiallele().getAllele2() });
 	}
 }
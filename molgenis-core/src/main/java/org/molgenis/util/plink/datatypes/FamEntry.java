@@ -1,11 +1,13 @@
 package org.molgenis.util.plink.datatypes;
 
-import org.molgenis.util.tuple.KeyValueTuple;
+import org.molgenis.util.tuple.ArrayTuple;
 import org.molgenis.util.tuple.Tuple;
-import org.molgenis.util.tuple.WritableTuple;
+import org.molgenis.util.tuple.TupleSchema;
 
 public class FamEntry
 {
+	private static final TupleSchema SCHEMA = new TupleSchema(famHeader());
+
 	// see: http://pngu.mgh.harvard.edu/~purcell/plink/data.shtml
 	String family;
 	String individual;
@@ -33,14 +35,9 @@ public class FamEntry
 
 	public static Tuple famToTuple(FamEntry fam)
 	{
-		WritableTuple tuple = new KeyValueTuple();
-		tuple.set("fam", fam.getFamily());
-		tuple.set("ind", fam.getIndividual());
-		tuple.set("fa", fam.getFather());
-		tuple.set("mo", fam.getMother());
-		tuple.set("sex", fam.getSex());
-		tuple.set("phen", fam.getPhenotype());
-		return tuple;
+		return new ArrayTuple(SCHEMA, new Object[]
+		{ fam.getFamily(), fam.getIndividual(), fam.getFather(),
+				fam.getMother(), fam.getSex(), fam.getPhenotype() });
 	}
 
 	public String getFamily()
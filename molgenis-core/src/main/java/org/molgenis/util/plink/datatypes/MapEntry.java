@@ -1,8 +1,8 @@
 package org.molgenis.util.plink.datatypes;
 
-import org.molgenis.util.tuple.KeyValueTuple;
+import org.molgenis.util.tuple.ArrayTuple;
 import org.molgenis.util.tuple.Tuple;
-import org.molgenis.util.tuple.WritableTuple;
+import org.molgenis.util.tuple.TupleSchema;
 
 /**
  * See: http://pngu.mgh.harvard.edu/~purcell/plink/data.shtml#map
@@ -10,6 +10,8 @@ import org.molgenis.util.tuple.WritableTuple;
  */
 public class MapEntry
 {
+	private static final TupleSchema SCHEMA = new TupleSchema(mapHeader());
+
 	private String chromosome;
 	private String SNP;
 	private double cM;
@@ -31,12 +33,8 @@ public class MapEntry
 
 	public static Tuple mapToTuple(MapEntry map)
 	{
-		WritableTuple tuple = new KeyValueTuple();
-		tuple.set("chr", map.getChromosome());
-		tuple.set("snp", map.getSNP());
-		tuple.set("cm", map.getcM());
-		tuple.set("bp", map.getBpPos());
-		return tuple;
+		return new ArrayTuple(SCHEMA, new Object[]
+		{ map.getChromosome(), map.getSNP(), map.getcM(), map.getBpPos() });
 	}
 
 	public String getChromosome()
@@ -2,12 +2,13 @@ package org.molgenis.util.plink.datatypes;
 
 import java.util.List;
 
-import org.molgenis.util.tuple.KeyValueTuple;
+import org.molgenis.util.tuple.ArrayTuple;
 import org.molgenis.util.tuple.Tuple;
-import org.molgenis.util.tuple.WritableTuple;
+import org.molgenis.util.tuple.TupleSchema;
 
 public class PedEntry extends FamEntry
 {
+	private static final TupleSchema SCHEMA = new TupleSchema(pedHeader());
 
 	// list iterates SNP's, so 1 list per individual
 	List<Biallele> bialleles;
@@ -32,14 +33,8 @@ public class PedEntry extends FamEntry
 
 	public static Tuple pedToTuple(PedEntry ped)
 	{
-		WritableTuple tuple = new KeyValueTuple();
-		tuple.set("fam", ped.getFamily());
-		tuple.set("ind", ped.getIndividual());
-		tuple.set("fa", ped.getFather());
-		tuple.set("mo", ped.getMother());
-		tuple.set("sex", ped.getSex());
-		tuple.set("phen", ped.getPhenotype());
-		tuple.set("bial", ped.getBialleles());
-		return tuple;
+		return new ArrayTuple(SCHEMA, new Object[]
+		{ ped.getFamily(), ped.getIndividual(), ped.getFather(), ped.getMother(),
+				ped.getSex(), ped.getPhenotype(), ped.getBialleles() });
 	}
 }
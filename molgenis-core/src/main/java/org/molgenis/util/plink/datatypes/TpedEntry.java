@@ -2,12 +2,13 @@ package org.molgenis.util.plink.datatypes;
 
 import java.util.List;
 
-import org.molgenis.util.tuple.KeyValueTuple;
+import org.molgenis.util.tuple.ArrayTuple;
 import org.molgenis.util.tuple.Tuple;
-import org.molgenis.util.tuple.WritableTuple;
+import org.molgenis.util.tuple.TupleSchema;
 
 public class TpedEntry extends MapEntry
 {
+	private static final TupleSchema SCHEMA = new TupleSchema(tpedHeader());
 
 	// list iterates individuals, so 1 list per SNP
 	// NOTE: this is the inverse of PED format!
@@ -27,13 +28,8 @@ public class TpedEntry extends MapEntry
 
 	public static Tuple tpedToTuple(TpedEntry tped)
 	{
-		WritableTuple tuple = new KeyValueTuple();
-		tuple.set("chr", tped.getChromosome());
-		tuple.set("snp", tped.getSNP());
-		tuple.set("cm", tped.getcM());
-		tuple.set("bp", tped.getBpPos());
-		tuple.set("bial", tped.getBialleles());
-		return tuple;
+		return new ArrayTuple(SCHEMA, new Object[]
+		{ tped.getChromosome(), tped.getSNP(), tped.getcM(), tped.getBpPos(), tped.getBialleles() });
 	}
 
 	public List<Biallele> getBialleles()
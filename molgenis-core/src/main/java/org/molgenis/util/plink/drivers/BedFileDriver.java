@@ -2,17 +2,25 @@ package org.molgenis.util.plink.drivers;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+
+import org.molgenis.util.MappedFile;
 
 /**
  * Driver to query BED (binary Plink genotype) files. See:
  * http://pngu.mgh.harvard.edu/~purcell/plink/binary.shtml
+ * <p>
+ * Genotypes are returned as bit strings, use {@link #getGenotypeMatrix(int, int)}
+ * to read large files.
  */
 public class BedFileDriver
 {
+	/** bit strings per 2-bit code, lowest bit first */
+	private static final String[] CODES =
+	{ "00", "10", "01", "11" };
+
 	private int mode;
 	private long nrOfElements;
-	private File bedFile;
+	private MappedFile bedFile;
 
 	/**
 	 * Get the mode: mode 1 = SNP-major, mode 0 = individual-major
@@ -44,45 +52,25 @@ public class BedFileDriver
 	 */
 	public BedFileDriver(File bedFile) throws Exception
 	{
-		RandomAccessFile raf = new RandomAccessFile(bedFile, "r");
-		try
-		{
-			this.bedFile = bedFile;
-
-			byte mn1 = raf.readByte();
-			byte mn2 = raf.readByte();
-
-			if (mn1 == 108 && mn2 == 27) // tested, bit code 01101100 00011011
-			{
-				// System.out.println("Plink magic number valid");
-			}
-			else
-			{
-				throw new Exception("Invalid Plink magic number");
-			}
-
-			byte bmode = raf.readByte();
-
-			if (bmode == 1) // tested, bit code 00000001
-			{
-				// System.out.println("mode 1: SNP-major");
-			}
-			else if (bmode == 0) // assumed... bit code 00000000
-			{
-				// System.out.println("mode 0: individual-major");
-			}
-			else
-			{
-				throw new Exception("Mode not recognized: " + bmode);
-			}
+		this.bedFile = new MappedFile(bedFile);
+		this.mode = BedGenotypeMatrix.readMode(this.bedFile);
+		this.nrOfElements = (this.bedFile.length() - BedGenotypeMatrix.HEADER_SIZE) * 4;
+	}
 
-			this.mode = bmode;
-			this.nrOfElements = (raf.length() - 3) * 4;
-		}
-		finally
-		{
-			raf.close();
-		}
+	/**
+	 * Get the genotype matrix of this file, which decodes genotypes to dosages
+	 * instead of bit strings.
+	 * 
+	 * @param nrOfSnps
+	 *            number of SNPs in the corresponding BIM file
+	 * @param nrOfIndividuals
+	 *            number of individuals in the corresponding FAM file
+	 * @return
+	 * @throws IOException
+	 */
+	public BedGenotypeMatrix getGenotypeMatrix(int nrOfSnps, int nrOfIndividuals) throws IOException
+	{
+		return new BedGenotypeMatrix(bedFile, nrOfSnps, nrOfIndividuals);
 	}
 
 	/**
@@ -139,13 +127,8 @@ public class BedFileDriver
 	 */
 	public String getElement(long index) throws Exception
 	{
-		// throw new Exception("fixme!");
-		RandomAccessFile raf = new RandomAccessFile(bedFile, "r");
-		raf.seek((index / 4) + 3);
-		String byteString = reverse(bits(raf.readByte()));
-		raf.close();
-		int bitpair = (int) (index % 4) * 2;
-		return byteString.substring(bitpair, bitpair + 2);
+		byte b = bedFile.get((index / 4) + BedGenotypeMatrix.HEADER_SIZE);
+		return CODES[(b >>> ((index % 4) * 2)) & 3];
 	}
 
 	/**
@@ -171,67 +154,29 @@ public class BedFileDriver
 		int res_index = 0;
 		String[] result = new String[(int) (to - from)]; // to - from = nr. of
 															// individuals
-
-		RandomAccessFile raf = new RandomAccessFile(bedFile, "r");
-		raf.seek(start);
-		raf.read(res);
-		raf.close();
+		bedFile.get(start, res, 0, res.length);
 
 		for (int i = 0; i < res.length; i++)
 		{
 			byte b = res[i];
-			String byteString = reverse(bits(b));
 
-			int toBit = 8; // normally we take the whole byte
+			int nrOfPairs = 4; // normally we take the whole byte
 			if (i == res.length - 1) // except at the end, when we correct for
 										// padding 0's
 			{
-				// At the end, the string is padded with 0's -> check
-				for (int j = paddingBitpairs * 2; j < 8; j++)
+				nrOfPairs -= paddingBitpairs;
+				// At the end, the byte is padded with 0's -> check
+				if ((b & 0xff) >>> (nrOfPairs * 2) != 0)
 				{
-					if (byteString.charAt(j) != '0')
-					{
-						throw new IOException("Fatal error: padding 0's not present where expected!");
-					}
+					throw new IOException("Fatal error: padding 0's not present where expected!");
 				}
-				toBit -= (paddingBitpairs * 2);
 			}
 
-			for (int pair = 0; pair < toBit; pair += 2)
+			for (int pair = 0; pair < nrOfPairs; pair++)
 			{
-				// System.out.print(res_index + " ");
-				result[res_index++] = byteString.substring(pair, pair + 2);
+				result[res_index++] = CODES[(b >>> (pair * 2)) & 3];
 			}
 		}
-		// System.out.println("");
 		return result;
 	}
-
-	/**
-	 * Helper function to get the bit values
-	 * 
-	 * @param b
-	 * @return
-	 */
-	private String bits(byte b)
-	{
-		StringBuilder bitsBuilder = new StringBuilder();
-		for (int bit = 7; bit >= 0; --bit)
-		{
-			bitsBuilder.append(((b >>> bit) & 1));
-		}
-		return bitsBuilder.toString();
-	}
-
-	/**
-	 * Helper function to reverse a string
-	 * 
-	 * @param string
-	 * @return
-	 */
-	private String reverse(String string)
-	{
-		return new StringBuffer(string).reverse().toString();
-	}
-
 }
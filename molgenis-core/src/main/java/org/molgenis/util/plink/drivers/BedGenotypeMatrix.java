@@ -0,0 +1,343 @@
+package org.molgenis.util.plink.drivers;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.molgenis.util.MappedFile;
+
+/**
+ * Genotype matrix of a BED (binary Plink genotype) file. The file is memory
+ * mapped and genotypes are decoded from their 2-bit packed representation
+ * with a lookup table, no strings are created. See:
+ * http://pngu.mgh.harvard.edu/~purcell/plink/binary.shtml
+ * <p>
+ * Genotypes are returned as dosages, the number of copies of allele 2:
+ * {@link #HOM1}, {@link #HET}, {@link #HOM2} or {@link #MISSING}. Both SNP-major
+ * and individual-major files can be read per SNP and per individual, reading
+ * along the major axis of the file is fastest. A matrix can be read by
+ * multiple threads at once.
+ */
+public class BedGenotypeMatrix
+{
+	public static final byte HOM1 = 0;
+	public static final byte HET = 1;
+	public static final byte HOM2 = 2;
+	public static final byte MISSING = -1;
+
+	/** BED files start with two magic bytes and a mode byte */
+	static final int HEADER_SIZE = 3;
+
+	/** dosage per 2-bit code: 00 = hom1, 01 = missing, 10 = het, 11 = hom2 */
+	private static final byte[] CODE_DOSAGES =
+	{ HOM1, MISSING, HET, HOM2 };
+	/** dosages of the four genotypes packed in a byte, lowest bits first */
+	private static final byte[][] BYTE_DOSAGES = new byte[256][4];
+	static
+	{
+		for (int b = 0; b < 256; ++b)
+			for (int i = 0; i < 4; ++i)
+				BYTE_DOSAGES[b][i] = CODE_DOSAGES[(b >>> (2 * i)) & 3];
+	}
+
+	private final MappedFile file;
+	private final boolean snpMajor;
+	private final int nrOfSnps;
+	private final int nrOfIndividuals;
+	/** number of packed bytes per SNP (SNP-major) or individual */
+	private final int bytesPerRow;
+
+	/**
+	 * @param bedFile
+	 * @param nrOfSnps
+	 *            number of SNPs in the corresponding BIM file
+	 * @param nrOfIndividuals
+	 *            number of individuals in the corresponding FAM file
+	 */
+	public BedGenotypeMatrix(File bedFile, int nrOfSnps, int nrOfIndividuals) throws IOException
+	{
+		this(new MappedFile(bedFile), nrOfSnps, nrOfIndividuals);
+	}
+
+	BedGenotypeMatrix(MappedFile file, int nrOfSnps, int nrOfIndividuals) throws IOException
+	{
+		if (nrOfSnps < 0) throw new IllegalArgumentException("nrOfSnps is negative");
+		if (nrOfIndividuals < 0) throw new IllegalArgumentException("nrOfIndividuals is negative");
+		this.file = file;
+		this.snpMajor = readMode(file) == 1;
+		this.nrOfSnps = nrOfSnps;
+		this.nrOfIndividuals = nrOfIndividuals;
+		this.bytesPerRow = ((snpMajor ? nrOfIndividuals : nrOfSnps) + 3) / 4;
+
+		long expectedLength = HEADER_SIZE + (long) getNrOfRows() * bytesPerRow;
+		if (file.length() != expectedLength) throw new IOException("BED file length " + file.length()
+				+ " does not match " + nrOfSnps + " SNPs and " + nrOfIndividuals + " individuals, expected "
+				+ expectedLength);
+	}
+
+	/**
+	 * Validates the magic number and returns the mode: 1 = SNP-major, 0 =
+	 * individual-major
+	 */
+	static int readMode(MappedFile file) throws IOException
+	{
+		if (file.length() < HEADER_SIZE || file.get(0) != 108 || file.get(1) != 27) throw new IOException(
+				"Invalid Plink magic number");
+		byte mode = file.get(2);
+		if (mode != 0 && mode != 1) throw new IOException("Mode not recognized: " + mode);
+		return mode;
+	}
+
+	public boolean isSnpMajor()
+	{
+		return snpMajor;
+	}
+
+	public int getNrOfSnps()
+	{
+		return nrOfSnps;
+	}
+
+	public int getNrOfIndividuals()
+	{
+		return nrOfIndividuals;
+	}
+
+	public byte getDosage(int snp, int individual)
+	{
+		checkIndex(snp, nrOfSnps, "snp");
+		checkIndex(individual, nrOfIndividuals, "individual");
+		return snpMajor ? getDosageAt(snp, individual) : getDosageAt(individual, snp);
+	}
+
+	public byte[] getSnp(int snp)
+	{
+		return getSnp(snp, new byte[nrOfIndividuals]);
+	}
+
+	/**
+	 * Writes the dosages of all individuals for a SNP to dest
+	 *
+	 * @return dest
+	 */
+	public byte[] getSnp(int snp, byte[] dest)
+	{
+		checkIndex(snp, nrOfSnps, "snp");
+		if (snpMajor) readRows(snp, snp + 1, dest);
+		else readColumn(snp, dest);
+		return dest;
+	}
+
+	public byte[] getIndividual(int individual)
+	{
+		return getIndividual(individual, new byte[nrOfSnps]);
+	}
+
+	/**
+	 * Writes the dosages of all SNPs for an individual to dest
+	 *
+	 * @return dest
+	 */
+	public byte[] getIndividual(int individual, byte[] dest)
+	{
+		checkIndex(individual, nrOfIndividuals, "individual");
+		if (snpMajor) readColumn(individual, dest);
+		else readRows(individual, individual + 1, dest);
+		return dest;
+	}
+
+	/**
+	 * Writes the dosages of a range of SNPs to dest, SNP after SNP: the dosage
+	 * of individual i for SNP fromSnp + s is written at s * nrOfIndividuals + i
+	 *
+	 * @param fromSnp
+	 *            inclusive
+	 * @param toSnp
+	 *            exclusive
+	 * @return dest
+	 */
+	public byte[] getSnps(int fromSnp, int toSnp, byte[] dest)
+	{
+		checkRange(fromSnp, toSnp, nrOfSnps);
+		if (snpMajor)
+		{
+			readRows(fromSnp, toSnp, dest);
+		}
+		else
+		{
+			byte[] snpDosages = new byte[nrOfIndividuals];
+			for (int snp = fromSnp; snp < toSnp; ++snp)
+			{
+				readColumn(snp, snpDosages);
+				System.arraycopy(snpDosages, 0, dest, (snp - fromSnp) * nrOfIndividuals, nrOfIndividuals);
+			}
+		}
+		return dest;
+	}
+
+	/**
+	 * Returns the packed genotypes of a range of SNPs (SNP-major) or
+	 * individuals (individual-major) as stored in the file without copying
+	 * them, e.g. to write a subset of the matrix to a new BED file with
+	 * {@link java.nio.channels.GatheringByteChannel#write(ByteBuffer[])}.
+	 *
+	 * @param from
+	 *            inclusive
+	 * @param to
+	 *            exclusive
+	 */
+	public ByteBuffer[] slice(int from, int to)
+	{
+		checkRange(from, to, getNrOfRows());
+		return file.slice(getRowPosition(from), (long) (to - from) * bytesPerRow);
+	}
+
+	/**
+	 * Calls the visitor for each SNP in the range in order
+	 *
+	 * @param fromSnp
+	 *            inclusive
+	 * @param toSnp
+	 *            exclusive
+	 */
+	public void scan(int fromSnp, int toSnp, SnpVisitor visitor)
+	{
+		checkRange(fromSnp, toSnp, nrOfSnps);
+		byte[] dosages = new byte[nrOfIndividuals];
+		for (int snp = fromSnp; snp < toSnp; ++snp)
+			visitor.visit(snp, getSnp(snp, dosages));
+	}
+
+	/**
+	 * Scans SNP ranges, e.g. the chromosomes of the BIM file, in parallel. The
+	 * SNPs within a range are visited in order by a single thread, different
+	 * ranges are visited concurrently so the visitor must be thread-safe.
+	 *
+	 * @param snpRanges
+	 *            SNP ranges as {from (inclusive), to (exclusive)}
+	 * @param nrThreads
+	 *            maximum number of ranges scanned at once
+	 */
+	public void scanParallel(List<int[]> snpRanges, final SnpVisitor visitor, int nrThreads)
+	{
+		if (nrThreads < 1) throw new IllegalArgumentException("nrThreads must be > 0");
+		for (int[] snpRange : snpRanges)
+			checkRange(snpRange[0], snpRange[1], nrOfSnps);
+
+		ExecutorService executorService = Executors.newFixedThreadPool(Math.min(nrThreads,
+				Math.max(1, snpRanges.size())));
+		try
+		{
+			List<Future<Void>> futures = new ArrayList<Future<Void>>(snpRanges.size());
+			for (final int[] snpRange : snpRanges)
+			{
+				futures.add(executorService.submit(new Callable<Void>()
+				{
+					@Override
+					public Void call()
+					{
+						scan(snpRange[0], snpRange[1], visitor);
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> future : futures)
+				future.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			throw new RuntimeException(e.getCause());
+		}
+		finally
+		{
+			executorService.shutdownNow();
+		}
+	}
+
+	/**
+	 * Receives the dosages of a SNP while scanning. The dosages array is reused
+	 * for the next SNP, copy it to keep the values.
+	 */
+	public interface SnpVisitor
+	{
+		void visit(int snp, byte[] dosages);
+	}
+
+	/** SNPs in SNP-major files, individuals in individual-major files */
+	private int getNrOfRows()
+	{
+		return snpMajor ? nrOfSnps : nrOfIndividuals;
+	}
+
+	private int getNrOfColumns()
+	{
+		return snpMajor ? nrOfIndividuals : nrOfSnps;
+	}
+
+	private long getRowPosition(int row)
+	{
+		return HEADER_SIZE + (long) row * bytesPerRow;
+	}
+
+	private byte getDosageAt(int row, int column)
+	{
+		byte b = file.get(getRowPosition(row) + column / 4);
+		return BYTE_DOSAGES[b & 0xff][column % 4];
+	}
+
+	/** decodes consecutive rows with a single bulk read */
+	private void readRows(int fromRow, int toRow, byte[] dest)
+	{
+		int nrOfColumns = getNrOfColumns();
+		byte[] packed = new byte[(toRow - fromRow) * bytesPerRow];
+		file.get(getRowPosition(fromRow), packed, 0, packed.length);
+
+		int pos = 0;
+		for (int row = 0; row < toRow - fromRow; ++row)
+		{
+			int offset = row * bytesPerRow;
+			int column = 0;
+			for (int i = 0; i < bytesPerRow; ++i)
+			{
+				byte[] dosages = BYTE_DOSAGES[packed[offset + i] & 0xff];
+				int n = Math.min(4, nrOfColumns - column);
+				System.arraycopy(dosages, 0, dest, pos, n);
+				pos += n;
+				column += n;
+			}
+		}
+	}
+
+	/** decodes a column, one byte per row */
+	private void readColumn(int column, byte[] dest)
+	{
+		int nrOfRows = getNrOfRows();
+		for (int row = 0; row < nrOfRows; ++row)
+			dest[row] = getDosageAt(row, column);
+	}
+
+	private static void checkIndex(int index, int size, String name)
+	{
+		if (index < 0 || index >= size) throw new IndexOutOfBoundsException(name + " " + index
+				+ " out of bounds, size " + size);
+	}
+
+	private static void checkRange(int from, int to, int size)
+	{
+		if (from < 0 || to > size || from > to) throw new IndexOutOfBoundsException("range [" + from + "," + to
+				+ ") out of bounds, size " + size);
+	}
+}
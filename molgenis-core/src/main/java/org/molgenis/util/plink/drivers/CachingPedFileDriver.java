@@ -2,17 +2,18 @@ package org.molgenis.util.plink.drivers;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.List;
 
 import org.molgenis.framework.db.QueryRule;
-import org.molgenis.framework.db.QueryRule.Operator;
 import org.molgenis.util.plink.datatypes.PedEntry;
 
+/**
+ * PED file driver that remembers the lines matching its filters, so paging
+ * through the filtered entries only reads the requested lines.
+ */
 public class CachingPedFileDriver extends PedFileDriver
 {
-	private List<PedEntry> entries;
-	private List<PedEntry> filteredEntries;
+	private List<Integer> filteredLines;
 
 	public CachingPedFileDriver(File pedFile)
 	{
@@ -24,95 +25,37 @@ public class CachingPedFileDriver extends PedFileDriver
 		super(pedFile, separator);
 	}
 
+	/**
+	 * Filter the entries on key fields or SNPs
+	 * 
+	 * @param rules
+	 * @param snpNames
+	 *            names of the SNPs in the order of the file
+	 * @throws IOException
+	 */
 	public void setFilters(List<QueryRule> rules, List<String> snpNames) throws IOException
 	{
-		// lazy initialization
-		if (entries == null) entries = super.getAllEntries();
-		this.filteredEntries = new ArrayList<PedEntry>(entries);
-
-		for (QueryRule rule : rules)
-		{
-			filteredEntries = filter(filteredEntries, rule, snpNames);
-		}
+		this.filteredLines = findLines(rules, snpNames);
 	}
 
 	@Override
 	public List<PedEntry> getAllEntries() throws IOException
 	{
-		if (filteredEntries != null) return filteredEntries;
-		else
-		{
-			if (entries == null) entries = super.getAllEntries();
-			return entries;
-		}
+		if (filteredLines != null) return getEntries(filteredLines);
+		else return super.getAllEntries();
 	}
 
 	@Override
 	public List<PedEntry> getEntries(long from, long to) throws IOException
 	{
-		return getAllEntries().subList((int) from, (int) to);
+		if (filteredLines != null) return getEntries(filteredLines.subList((int) from, (int) to));
+		else return super.getEntries(from, to);
 	}
 
 	@Override
 	public long getNrOfElements() throws IOException
 	{
-		return getAllEntries().size();
-	}
-
-	private List<PedEntry> filter(List<PedEntry> entries, QueryRule filter, List<String> snpNames)
-	{
-		List<PedEntry> filtered = new ArrayList<PedEntry>();
-
-		for (PedEntry entry : entries)
-		{
-			// TODO do not hardcode columnnames
-			// TODO implement more then just 'equals'
-			if (filter.getOperator() == Operator.EQUALS)
-			{
-				if (filter.getField().equals("IndividualID") && entry.getIndividual().equals(filter.getValue()))
-				{
-					filtered.add(entry);
-				}
-				else if (filter.getField().equals("FamilyID") && entry.getFamily().equals(filter.getValue()))
-				{
-					filtered.add(entry);
-				}
-				else if (filter.getField().equals("FatherID") && entry.getFather().equals(filter.getValue()))
-				{
-					filtered.add(entry);
-				}
-				else if (filter.getField().equals("MotherID") && entry.getMother().equals(filter.getValue()))
-				{
-					filtered.add(entry);
-				}
-				else if (filter.getField().equals("Sex")
-						&& Byte.valueOf(entry.getSex()).toString().equals(filter.getValue()))
-				{
-					filtered.add(entry);
-				}
-				else if (filter.getField().equals("Phenotype")
-						&& Double.valueOf(entry.getPhenotype()).toString().equals(filter.getValue()))
-				{
-					filtered.add(entry);
-				}
-				else
-				{
-					boolean found = false;
-					int size = snpNames.size();
-					for (int i = 0; i < size && !found; i++)
-					{
-						if (snpNames.get(i).equals(filter.getField())
-								&& entry.getBialleles().get(i).toString().equals(filter.getValue()))
-						{
-							filtered.add(entry);
-							found = true;
-						}
-					}
-				}
-
-			}
-		}
-
-		return filtered;
+		if (filteredLines != null) return filteredLines.size();
+		else return super.getNrOfElements();
 	}
 }
@@ -0,0 +1,337 @@
+package org.molgenis.util.plink.drivers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
+import org.molgenis.framework.db.QueryRule;
+import org.molgenis.util.plink.PlinkFileParser;
+
+/**
+ * Base class of drivers for Plink text files with one entry per line that
+ * starts with a fixed number of key fields, followed by genotype fields.
+ * Entries are read and filtered with a {@link PlinkLineIndex}: query rules on
+ * key fields are evaluated on the index, the genotypes of a line are only
+ * parsed if the line matches the rules or if a rule filters on a genotype.
+ *
+ * @param <E>
+ *            entry type
+ */
+public abstract class IndexedPlinkFileDriver<E> implements PlinkFileParser
+{
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final File file;
+	private final char separator;
+	private final int nrKeyFields;
+	/** key field name or alias to key field index */
+	private final Map<String, Integer> keyFieldIndexes = new LinkedHashMap<String, Integer>();
+	/** indexes of the key fields that are compared as numbers */
+	private final Set<Integer> numericKeyFieldIndexes = new HashSet<Integer>();
+
+	private BufferedReader reader;
+	private PlinkLineIndex index;
+
+	/**
+	 * @param keyFieldNames
+	 *            names of the key fields that start each line, used in query
+	 *            rules
+	 */
+	protected IndexedPlinkFileDriver(File file, char separator, String... keyFieldNames)
+	{
+		if (file == null) throw new IllegalArgumentException("file is null");
+		this.file = file;
+		this.separator = separator;
+		this.nrKeyFields = keyFieldNames.length;
+		for (int i = 0; i < keyFieldNames.length; ++i)
+			keyFieldIndexes.put(keyFieldNames[i], i);
+	}
+
+	/**
+	 * Adds another name for a key field
+	 */
+	protected void addKeyFieldAlias(String alias, String keyFieldName)
+	{
+		Integer keyFieldIndex = keyFieldIndexes.get(keyFieldName);
+		if (keyFieldIndex == null) throw new IllegalArgumentException("unknown key field " + keyFieldName);
+		keyFieldIndexes.put(alias, keyFieldIndex);
+	}
+
+	/**
+	 * Marks key fields as numeric, query rules compare their values as numbers
+	 * instead of strings
+	 */
+	protected void setNumericKeyFields(String... keyFieldNames)
+	{
+		for (String keyFieldName : keyFieldNames)
+		{
+			Integer keyFieldIndex = keyFieldIndexes.get(keyFieldName);
+			if (keyFieldIndex == null) throw new IllegalArgumentException("unknown key field " + keyFieldName);
+			numericKeyFieldIndexes.add(keyFieldIndex);
+		}
+	}
+
+	protected char getSeparator()
+	{
+		return separator;
+	}
+
+	protected abstract E parseEntry(String line) throws IOException;
+
+	/**
+	 * Returns the value of a genotype field of an entry as used in query rules
+	 *
+	 * @param genotypeIndex
+	 *            index of the genotype after the key fields
+	 */
+	protected abstract String getGenotypeValue(E entry, int genotypeIndex);
+
+	/**
+	 * Get all file entries
+	 *
+	 * @return
+	 * @throws IOException
+	 */
+	public List<E> getAllEntries() throws IOException
+	{
+		reset();
+
+		List<E> entryList = new ArrayList<E>();
+		String line;
+		while ((line = reader.readLine()) != null)
+			if (!line.isEmpty()) entryList.add(parseEntry(line));
+
+		return entryList;
+	}
+
+	/**
+	 * Get a specific set of file entries, empty lines are not counted
+	 *
+	 * @param from
+	 *            = inclusive
+	 * @param to
+	 *            = exclusive
+	 * @return
+	 * @throws IOException
+	 */
+	public List<E> getEntries(final long from, final long to) throws IOException
+	{
+		PlinkLineIndex index = getIndex();
+		int fromLine = (int) Math.max(0, from);
+		int toLine = (int) Math.min(index.size(), to);
+
+		List<E> entryList = new ArrayList<E>(Math.max(0, toLine - fromLine));
+		LineReader lineReader = new LineReader(index);
+		try
+		{
+			for (int i = fromLine; i < toLine; ++i)
+				entryList.add(parseEntry(lineReader.readLine(i)));
+		}
+		finally
+		{
+			lineReader.close();
+		}
+		return entryList;
+	}
+
+	/**
+	 * Get the entries that match the query rules
+	 *
+	 * @param rules
+	 *            rules on key fields or genotype fields
+	 * @param genotypeNames
+	 *            names of the genotype fields in the order of the file
+	 * @return
+	 * @throws IOException
+	 */
+	public List<E> getEntries(List<QueryRule> rules, List<String> genotypeNames) throws IOException
+	{
+		return getEntries(findLines(rules, genotypeNames));
+	}
+
+	/**
+	 * Get the entries on the given lines, empty lines are not counted
+	 *
+	 * @param lines
+	 *            line numbers, preferably in ascending order
+	 * @return
+	 * @throws IOException
+	 */
+	public List<E> getEntries(List<Integer> lines) throws IOException
+	{
+		List<E> entryList = new ArrayList<E>(lines.size());
+		LineReader lineReader = new LineReader(getIndex());
+		try
+		{
+			for (Integer line : lines)
+				entryList.add(parseEntry(lineReader.readLine(line)));
+		}
+		finally
+		{
+			lineReader.close();
+		}
+		return entryList;
+	}
+
+	/**
+	 * Get the numbers of the lines that match the query rules while streaming
+	 * through the file, in ascending order. Lines are only parsed if a rule
+	 * filters on a genotype field.
+	 *
+	 * @param rules
+	 *            rules on key fields or genotype fields
+	 * @param genotypeNames
+	 *            names of the genotype fields in the order of the file
+	 * @return
+	 * @throws IOException
+	 */
+	public List<Integer> findLines(List<QueryRule> rules, List<String> genotypeNames) throws IOException
+	{
+		PlinkQueryRuleMatcher matcher = new PlinkQueryRuleMatcher(rules);
+		final Map<String, Integer> genotypeIndexes = new HashMap<String, Integer>();
+		if (genotypeNames != null)
+		{
+			for (int i = 0; i < genotypeNames.size(); ++i)
+				genotypeIndexes.put(genotypeNames.get(i), i);
+		}
+
+		final PlinkLineIndex index = getIndex();
+		final LineReader lineReader = new LineReader(index);
+		try
+		{
+			List<Integer> lines = new ArrayList<Integer>();
+			int nrMatches = 0;
+			for (int i = 0; i < index.size() && lines.size() < matcher.getLimit(); ++i)
+			{
+				final int line = i;
+				boolean matches = matcher.matches(new PlinkQueryRuleMatcher.FieldResolver()
+				{
+					private E entry;
+
+					@Override
+					public String getValue(String field) throws IOException
+					{
+						Integer keyFieldIndex = keyFieldIndexes.get(field);
+						if (keyFieldIndex != null) return index.getKeyField(line, keyFieldIndex);
+
+						Integer genotypeIndex = genotypeIndexes.get(field);
+						if (genotypeIndex == null) throw new IllegalArgumentException("unknown field " + field);
+						// only parse the line if a rule filters on genotypes
+						if (entry == null) entry = parseEntry(lineReader.readLine(line));
+						return getGenotypeValue(entry, genotypeIndex);
+					}
+
+					@Override
+					public boolean isNumeric(String field)
+					{
+						Integer keyFieldIndex = keyFieldIndexes.get(field);
+						return keyFieldIndex != null && numericKeyFieldIndexes.contains(keyFieldIndex);
+					}
+
+					@Override
+					public Iterable<String> getSearchValues()
+					{
+						String[] values = new String[nrKeyFields];
+						for (int j = 0; j < nrKeyFields; ++j)
+							values[j] = index.getKeyField(line, j);
+						return Arrays.asList(values);
+					}
+				});
+				if (matches && nrMatches++ >= matcher.getOffset()) lines.add(line);
+			}
+			return lines;
+		}
+		finally
+		{
+			lineReader.close();
+		}
+	}
+
+	/**
+	 * Get the names of the key fields, without aliases
+	 */
+	public List<String> getKeyFieldNames()
+	{
+		List<String> keyFieldNames = new ArrayList<String>(nrKeyFields);
+		for (String name : keyFieldIndexes.keySet())
+			if (keyFieldNames.size() < nrKeyFields) keyFieldNames.add(name);
+		return Collections.unmodifiableList(keyFieldNames);
+	}
+
+	public long getNrOfElements() throws IOException
+	{
+		return getIndex().size();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		if (this.reader != null) this.reader.close();
+	}
+
+	public void reset() throws IOException
+	{
+		if (this.reader != null) close();
+		this.reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), FILE_ENCODING));
+	}
+
+	private synchronized PlinkLineIndex getIndex() throws IOException
+	{
+		if (index == null) index = PlinkLineIndex.load(file, separator, nrKeyFields);
+		return index;
+	}
+
+	/**
+	 * Reads indexed lines, reading forward skips the lines in between without
+	 * seeking
+	 */
+	private class LineReader
+	{
+		private final PlinkLineIndex index;
+		private InputStream is;
+		private long position;
+
+		public LineReader(PlinkLineIndex index)
+		{
+			this.index = index;
+		}
+
+		public String readLine(int line) throws IOException
+		{
+			long offset = index.getOffset(line);
+			if (is == null || offset < position)
+			{
+				close();
+				FileInputStream fis = new FileInputStream(file);
+				fis.getChannel().position(offset);
+				is = new BufferedInputStream(fis, BUFFER_SIZE);
+				position = offset;
+			}
+			IOUtils.skipFully(is, offset - position);
+			byte[] bytes = new byte[index.getLength(line)];
+			IOUtils.readFully(is, bytes);
+			position = offset + bytes.length;
+			return new String(bytes, FILE_ENCODING);
+		}
+
+		public void close()
+		{
+			IOUtils.closeQuietly(is);
+			is = null;
+		}
+	}
+}
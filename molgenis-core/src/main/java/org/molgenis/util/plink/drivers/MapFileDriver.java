@@ -1,17 +1,10 @@
 package org.molgenis.util.plink.drivers;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.StringTokenizer;
 
-import org.molgenis.util.TextFileUtils;
-import org.molgenis.util.plink.PlinkFileParser;
 import org.molgenis.util.plink.datatypes.MapEntry;
 
 /**
@@ -20,13 +13,8 @@ import org.molgenis.util.plink.datatypes.MapEntry;
  * chromosome, SNP, cM, base-position. See:
  * http://pngu.mgh.harvard.edu/~purcell/plink/data.shtml#map
  */
-public class MapFileDriver implements PlinkFileParser
+public class MapFileDriver extends IndexedPlinkFileDriver<MapEntry>
 {
-	private BufferedReader reader;
-	private File file;
-	private char separator;
-	private long nrElements;
-
 	/**
 	 * Construct a MapFileDriver on this file
 	 * 
@@ -40,55 +28,14 @@ public class MapFileDriver implements PlinkFileParser
 
 	public MapFileDriver(File mapFile, char separator)
 	{
-		if (mapFile == null) throw new IllegalArgumentException("file is null");
-		this.file = mapFile;
-		this.separator = separator;
-		this.nrElements = -1l;
-	}
-
-	/**
-	 * Get a specific set of MAP file entries
-	 * 
-	 * @param from
-	 *            = inclusive
-	 * @param to
-	 *            = exclusive
-	 * @return
-	 * @throws Exception
-	 */
-	public List<MapEntry> getEntries(final long from, final long to) throws IOException
-	{
-		reset();
-
-		List<MapEntry> entryList = new ArrayList<MapEntry>();
-		String line;
-		for (int i = 0; (line = reader.readLine()) != null && i < to; ++i)
-			if (i >= from) entryList.add(parseEntry(line));
-
-		return entryList;
-	}
-
-	/**
-	 * Get all MAP file entries
-	 * 
-	 * @return
-	 * @throws Exception
-	 */
-	public List<MapEntry> getAllEntries() throws IOException
-	{
-		reset();
-
-		List<MapEntry> entryList = new ArrayList<MapEntry>();
-		String line;
-		while ((line = reader.readLine()) != null)
-			entryList.add(parseEntry(line));
-
-		return entryList;
+		super(mapFile, separator, "chr", "snp", "cm", "bp");
+		setNumericKeyFields("cm", "bp");
 	}
 
-	private MapEntry parseEntry(String line) throws IOException
+	@Override
+	protected MapEntry parseEntry(String line) throws IOException
 	{
-		StringTokenizer strTokenizer = new StringTokenizer(line, this.separator + "");
+		StringTokenizer strTokenizer = new StringTokenizer(line, getSeparator() + "");
 		try
 		{
 			String chromosome = strTokenizer.nextToken();
@@ -111,21 +58,9 @@ public class MapFileDriver implements PlinkFileParser
 		}
 	}
 
-	public long getNrOfElements() throws IOException
-	{
-		if (nrElements == -1) nrElements = TextFileUtils.getNumberOfNonEmptyLines(file, FILE_ENCODING);
-		return nrElements;
-	}
-
 	@Override
-	public void close() throws IOException
-	{
-		if (this.reader != null) this.reader.close();
-	}
-
-	public void reset() throws IOException
+	protected String getGenotypeValue(MapEntry entry, int genotypeIndex)
 	{
-		if (this.reader != null) close();
-		this.reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), FILE_ENCODING));
+		throw new IllegalArgumentException("MAP files do not contain genotypes");
 	}
 }
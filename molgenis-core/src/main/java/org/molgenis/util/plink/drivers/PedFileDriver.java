@@ -1,17 +1,12 @@
 package org.molgenis.util.plink.drivers;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.StringTokenizer;
 
-import org.molgenis.util.TextFileUtils;
-import org.molgenis.util.plink.PlinkFileParser;
 import org.molgenis.util.plink.datatypes.Biallele;
 import org.molgenis.util.plink.datatypes.PedEntry;
 
@@ -24,13 +19,8 @@ import org.molgenis.util.plink.datatypes.PedEntry;
  * this? or just PED? See:
  * http://pngu.mgh.harvard.edu/~purcell/plink/data.shtml#ped
  */
-public class PedFileDriver implements PlinkFileParser
+public class PedFileDriver extends IndexedPlinkFileDriver<PedEntry>
 {
-	private BufferedReader reader;
-	private File file;
-	private char separator;
-	private long nrElements;
-
 	/**
 	 * Construct a PedFileDriver on this file
 	 * 
@@ -44,55 +34,20 @@ public class PedFileDriver implements PlinkFileParser
 
 	public PedFileDriver(File pedFile, char separator)
 	{
-		if (pedFile == null) throw new IllegalArgumentException("file is null");
-		this.file = pedFile;
-		this.separator = separator;
-		this.nrElements = -1l;
-	}
-
-	/**
-	 * Get all PED file entries
-	 * 
-	 * @return
-	 * @throws Exception
-	 */
-	public List<PedEntry> getAllEntries() throws IOException
-	{
-		reset();
-
-		List<PedEntry> entryList = new ArrayList<PedEntry>();
-		String line;
-		while ((line = reader.readLine()) != null)
-			entryList.add(parseEntry(line));
-
-		return entryList;
-	}
-
-	/**
-	 * Get a specific set of PED file entries
-	 * 
-	 * @param from
-	 *            = inclusive
-	 * @param to
-	 *            = exclusive
-	 * @return
-	 * @throws Exception
-	 */
-	public List<PedEntry> getEntries(final long from, final long to) throws IOException
-	{
-		reset();
-
-		List<PedEntry> entryList = new ArrayList<PedEntry>();
-		String line;
-		for (int i = 0; (line = reader.readLine()) != null && i < to; ++i)
-			if (i >= from) entryList.add(parseEntry(line));
-
-		return entryList;
+		super(pedFile, separator, "fam", "ind", "fa", "mo", "sex", "phen");
+		addKeyFieldAlias("FamilyID", "fam");
+		addKeyFieldAlias("IndividualID", "ind");
+		addKeyFieldAlias("FatherID", "fa");
+		addKeyFieldAlias("MotherID", "mo");
+		addKeyFieldAlias("Sex", "sex");
+		addKeyFieldAlias("Phenotype", "phen");
+		setNumericKeyFields("sex", "phen");
 	}
 
-	private PedEntry parseEntry(String line) throws IOException
+	@Override
+	protected PedEntry parseEntry(String line) throws IOException
 	{
-		StringTokenizer strTokenizer = new StringTokenizer(line, separator + "");
+		StringTokenizer strTokenizer = new StringTokenizer(line, getSeparator() + "");
 		try
 		{
 			String family = strTokenizer.nextToken();
@@ -124,21 +79,9 @@ public class PedFileDriver implements PlinkFileParser
 		}
 	}
 
-	public long getNrOfElements() throws IOException
-	{
-		if (nrElements == -1) nrElements = TextFileUtils.getNumberOfNonEmptyLines(file, FILE_ENCODING);
-		return nrElements;
-	}
-
 	@Override
-	public void close() throws IOException
-	{
-		if (this.reader != null) this.reader.close();
-	}
-
-	public void reset() throws IOException
+	protected String getGenotypeValue(PedEntry entry, int genotypeIndex)
 	{
-		if (this.reader != null) close();
-		this.reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), FILE_ENCODING));
+		return entry.getBialleles().get(genotypeIndex).toString();
 	}
 }
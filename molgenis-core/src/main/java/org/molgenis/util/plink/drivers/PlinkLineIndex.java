@@ -0,0 +1,260 @@
+package org.molgenis.util.plink.drivers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+import org.molgenis.util.plink.PlinkFileParser;
+
+/**
+ * Index of the non-empty lines of a Plink text file: the byte offset and
+ * length of each line plus the values of its first (key) fields, so lines can
+ * be read and filtered without parsing the whole file.
+ * <p>
+ * The index is stored next to the file with the extension {@link #EXTENSION}
+ * and rebuilt when the file changes. If it cannot be stored, e.g. because the
+ * directory is read-only, the index is only kept in memory.
+ */
+class PlinkLineIndex
+{
+	private static final Logger logger = Logger.getLogger(PlinkLineIndex.class);
+
+	static final String EXTENSION = ".idx";
+
+	private static final int MAGIC = 0x504c4958;
+	private static final int VERSION = 1;
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final long[] offsets;
+	private final int[] lengths;
+	/** key field values per field per line, null if a line has less fields */
+	private final String[][] keyFields;
+
+	private PlinkLineIndex(long[] offsets, int[] lengths, String[][] keyFields)
+	{
+		this.offsets = offsets;
+		this.lengths = lengths;
+		this.keyFields = keyFields;
+	}
+
+	/**
+	 * Loads the stored index of the file or builds and stores a new one
+	 */
+	public static PlinkLineIndex load(File file, char separator, int nrKeyFields) throws IOException
+	{
+		File indexFile = new File(file.getPath() + EXTENSION);
+		if (indexFile.exists())
+		{
+			try
+			{
+				PlinkLineIndex index = read(indexFile, file, separator, nrKeyFields);
+				if (index != null) return index;
+			}
+			catch (IOException e)
+			{
+				logger.warn("rebuilding invalid index " + indexFile + ": " + e.getMessage());
+			}
+		}
+
+		PlinkLineIndex index = build(file, separator, nrKeyFields);
+		try
+		{
+			index.write(indexFile, file, separator);
+		}
+		catch (IOException e)
+		{
+			logger.info("could not store index " + indexFile + ": " + e.getMessage());
+		}
+		return index;
+	}
+
+	public int size()
+	{
+		return offsets.length;
+	}
+
+	public long getOffset(int line)
+	{
+		return offsets[line];
+	}
+
+	/** length of the line in bytes without line separator */
+	public int getLength(int line)
+	{
+		return lengths[line];
+	}
+
+	public String getKeyField(int line, int field)
+	{
+		return keyFields[field][line];
+	}
+
+	static PlinkLineIndex build(File file, char separator, int nrKeyFields) throws IOException
+	{
+		int capacity = 1024;
+		long[] offsets = new long[capacity];
+		int[] lengths = new int[capacity];
+		String[][] keyFields = new String[nrKeyFields][capacity];
+
+		InputStream is = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+		try
+		{
+			byte[] field = new byte[256];
+			int fieldLength = 0;
+			String[] lineKeyFields = new String[nrKeyFields];
+			int nrFields = 0;
+			int nrLines = 0;
+			long position = 0;
+			long lineStart = 0;
+			boolean carriageReturn = false;
+
+			for (int b = is.read();; b = is.read())
+			{
+				if (b == -1 || b == '\n')
+				{
+					if (nrFields < nrKeyFields && fieldLength > 0) lineKeyFields[nrFields++] = decode(field,
+							fieldLength);
+					// lines without content are skipped
+					int lineLength = (int) (position - lineStart) - (carriageReturn ? 1 : 0);
+					if (lineLength > 0)
+					{
+						if (nrLines == capacity)
+						{
+							capacity *= 2;
+							offsets = Arrays.copyOf(offsets, capacity);
+							lengths = Arrays.copyOf(lengths, capacity);
+							for (int i = 0; i < nrKeyFields; ++i)
+								keyFields[i] = Arrays.copyOf(keyFields[i], capacity);
+						}
+						offsets[nrLines] = lineStart;
+						lengths[nrLines] = lineLength;
+						for (int i = 0; i < nrKeyFields; ++i)
+							keyFields[i][nrLines] = lineKeyFields[i];
+						++nrLines;
+					}
+					if (b == -1) break;
+
+					Arrays.fill(lineKeyFields, null);
+					nrFields = 0;
+					fieldLength = 0;
+					lineStart = position + 1;
+				}
+				else if (nrFields < nrKeyFields)
+				{
+					if (b == separator || b == '\r')
+					{
+						// consecutive separators do not delimit empty fields
+						if (fieldLength > 0) lineKeyFields[nrFields++] = decode(field, fieldLength);
+						fieldLength = 0;
+					}
+					else
+					{
+						if (fieldLength == field.length) field = Arrays.copyOf(field, field.length * 2);
+						field[fieldLength++] = (byte) b;
+					}
+				}
+				carriageReturn = b == '\r';
+				++position;
+			}
+
+			for (int i = 0; i < nrKeyFields; ++i)
+				keyFields[i] = Arrays.copyOf(keyFields[i], nrLines);
+			return new PlinkLineIndex(Arrays.copyOf(offsets, nrLines), Arrays.copyOf(lengths, nrLines), keyFields);
+		}
+		finally
+		{
+			IOUtils.closeQuietly(is);
+		}
+	}
+
+	private static String decode(byte[] bytes, int length)
+	{
+		return new String(bytes, 0, length, PlinkFileParser.FILE_ENCODING);
+	}
+
+	/**
+	 * Reads a stored index, returns null if it was built for another version
+	 * of the file
+	 */
+	private static PlinkLineIndex read(File indexFile, File file, char separator, int nrKeyFields)
+			throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile),
+				BUFFER_SIZE));
+		try
+		{
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+			if (in.readLong() != file.length() || in.readLong() != file.lastModified()) return null;
+			if (in.readChar() != separator || in.readInt() != nrKeyFields) return null;
+
+			int nrLines = in.readInt();
+			long[] offsets = new long[nrLines];
+			int[] lengths = new int[nrLines];
+			String[][] keyFields = new String[nrKeyFields][nrLines];
+			for (int i = 0; i < nrLines; ++i)
+			{
+				offsets[i] = in.readLong();
+				lengths[i] = in.readInt();
+				for (int j = 0; j < nrKeyFields; ++j)
+					keyFields[j][i] = in.readBoolean() ? in.readUTF() : null;
+			}
+			return new PlinkLineIndex(offsets, lengths, keyFields);
+		}
+		finally
+		{
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	private void write(File indexFile, File file, char separator) throws IOException
+	{
+		// write to a temporary file first so a partially written index is
+		// never read
+		File tmpFile = new File(indexFile.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile),
+				BUFFER_SIZE));
+		try
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(file.length());
+			out.writeLong(file.lastModified());
+			out.writeChar(separator);
+			out.writeInt(keyFields.length);
+			out.writeInt(offsets.length);
+			for (int i = 0; i < offsets.length; ++i)
+			{
+				out.writeLong(offsets[i]);
+				out.writeInt(lengths[i]);
+				for (String[] keyField : keyFields)
+				{
+					out.writeBoolean(keyField[i] != null);
+					if (keyField[i] != null) out.writeUTF(keyField[i]);
+				}
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+		if (!tmpFile.renameTo(indexFile))
+		{
+			// renameTo does not replace existing files on all platforms
+			indexFile.delete();
+			if (!tmpFile.renameTo(indexFile))
+			{
+				tmpFile.delete();
+				throw new IOException("could not rename " + tmpFile + " to " + indexFile);
+			}
+		}
+	}
+}
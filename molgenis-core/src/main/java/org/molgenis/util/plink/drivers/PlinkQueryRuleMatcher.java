@@ -0,0 +1,209 @@
+package org.molgenis.util.plink.drivers;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.molgenis.framework.db.QueryRule;
+import org.molgenis.framework.db.QueryRule.Operator;
+
+/**
+ * Evaluates query rules on the fields of a Plink file line. Rules are combined
+ * like the JDBC mappers do: rules are AND-ed, an OR rule separates alternative
+ * groups of rules. Values of numeric fields are compared as numbers if both
+ * sides are numbers, other values as strings so identifiers like '01' and '1'
+ * differ. LIMIT and OFFSET apply to the matching lines.
+ */
+class PlinkQueryRuleMatcher
+{
+	/** Resolves the value of a field of the current line */
+	interface FieldResolver
+	{
+		/**
+		 * @throws IllegalArgumentException
+		 *             if the field does not exist
+		 */
+		String getValue(String field) throws IOException;
+
+		/** whether the values of the field are numbers, e.g. a position */
+		boolean isNumeric(String field);
+
+		/** values of the fields searched by {@link Operator#SEARCH} */
+		Iterable<String> getSearchValues() throws IOException;
+	}
+
+	private final QueryRule[] rules;
+	private final Map<QueryRule, Pattern> likePatterns = new IdentityHashMap<QueryRule, Pattern>();
+	private int limit = Integer.MAX_VALUE;
+	private int offset = 0;
+
+	public PlinkQueryRuleMatcher(List<QueryRule> rules)
+	{
+		this.rules = rules.toArray(new QueryRule[rules.size()]);
+		validate(this.rules, true);
+	}
+
+	public int getLimit()
+	{
+		return limit;
+	}
+
+	public int getOffset()
+	{
+		return offset;
+	}
+
+	public boolean matches(FieldResolver resolver) throws IOException
+	{
+		return matches(rules, resolver);
+	}
+
+	private void validate(QueryRule[] rules, boolean topLevel)
+	{
+		for (QueryRule rule : rules)
+		{
+			switch (rule.getOperator())
+			{
+				case LIMIT:
+				case OFFSET:
+					if (!topLevel) throw new IllegalArgumentException(rule.getOperator() + " cannot be nested");
+					int value = Integer.parseInt(rule.getValue().toString());
+					if (rule.getOperator() == Operator.LIMIT) limit = value;
+					else offset = value;
+					break;
+				case NESTED:
+					validate(rule.getNestedRules(), false);
+					break;
+				case LIKE:
+					likePatterns.put(rule, toPattern(rule.getValue()));
+					break;
+				case EQUALS:
+				case NOT:
+				case IN:
+				case LESS:
+				case LESS_EQUAL:
+				case GREATER:
+				case GREATER_EQUAL:
+				case SEARCH:
+				case AND:
+				case OR:
+					break;
+				default:
+					throw new IllegalArgumentException("unsupported operator " + rule.getOperator().name()
+							+ " in rule " + rule);
+			}
+		}
+	}
+
+	/** like SQL: % is a wildcard, without wildcards the value is a substring */
+	private static Pattern toPattern(Object value)
+	{
+		String like = value != null ? value.toString() : "";
+		if (like.indexOf('%') == -1) like = '%' + like + '%';
+		StringBuilder regex = new StringBuilder();
+		for (String part : like.split("%", -1))
+		{
+			if (regex.length() > 0) regex.append(".*");
+			if (!part.isEmpty()) regex.append(Pattern.quote(part));
+		}
+		return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+	}
+
+	private boolean matches(QueryRule[] rules, FieldResolver resolver) throws IOException
+	{
+		boolean groupMatches = true;
+		for (QueryRule rule : rules)
+		{
+			Operator operator = rule.getOperator();
+			if (operator == Operator.OR)
+			{
+				if (groupMatches) return true;
+				groupMatches = true;
+			}
+			else if (groupMatches && operator != Operator.AND && operator != Operator.LIMIT
+					&& operator != Operator.OFFSET)
+			{
+				groupMatches = matches(rule, resolver);
+			}
+		}
+		return groupMatches;
+	}
+
+	private boolean matches(QueryRule rule, FieldResolver resolver) throws IOException
+	{
+		switch (rule.getOperator())
+		{
+			case NESTED:
+				return matches(rule.getNestedRules(), resolver);
+			case SEARCH:
+				String term = rule.getValue() != null ? rule.getValue().toString().toLowerCase() : "";
+				for (String value : resolver.getSearchValues())
+					if (value != null && value.toLowerCase().contains(term)) return true;
+				return false;
+			default:
+				break;
+		}
+
+		String value = resolver.getValue(rule.getField());
+		Object ruleValue = rule.getValue();
+		boolean numeric = resolver.isNumeric(rule.getField());
+		switch (rule.getOperator())
+		{
+			case EQUALS:
+				return value != null && ruleValue != null && compare(value, ruleValue, numeric) == 0;
+			case NOT:
+				return value == null || ruleValue == null || compare(value, ruleValue, numeric) != 0;
+			case IN:
+				if (value == null || ruleValue == null) return false;
+				Collection<?> values = ruleValue instanceof Object[] ? Arrays.asList((Object[]) ruleValue)
+						: (Collection<?>) ruleValue;
+				for (Object inValue : values)
+					if (inValue != null && compare(value, inValue, numeric) == 0) return true;
+				return false;
+			case LIKE:
+				return value != null && likePatterns.get(rule).matcher(value).matches();
+			case LESS:
+				return value != null && ruleValue != null && compare(value, ruleValue, numeric) < 0;
+			case LESS_EQUAL:
+				return value != null && ruleValue != null && compare(value, ruleValue, numeric) <= 0;
+			case GREATER:
+				return value != null && ruleValue != null && compare(value, ruleValue, numeric) > 0;
+			case GREATER_EQUAL:
+				return value != null && ruleValue != null && compare(value, ruleValue, numeric) >= 0;
+			default:
+				throw new IllegalArgumentException("unsupported operator " + rule.getOperator().name());
+		}
+	}
+
+	private static int compare(String value, Object ruleValue, boolean numeric)
+	{
+		Double number = numeric ? toNumber(value) : null;
+		if (number != null)
+		{
+			Double ruleNumber = ruleValue instanceof Number ? Double.valueOf(((Number) ruleValue).doubleValue())
+					: toNumber(ruleValue.toString());
+			if (ruleNumber != null) return number.compareTo(ruleNumber);
+		}
+		return value.compareTo(ruleValue.toString());
+	}
+
+	private static Double toNumber(String value)
+	{
+		if (value.isEmpty()) return null;
+		char c = value.charAt(0);
+		// avoid exceptions for the common case of non-numeric values
+		if (!Character.isDigit(c) && c != '-' && c != '+' && c != '.') return null;
+		try
+		{
+			return Double.valueOf(value);
+		}
+		catch (NumberFormatException e)
+		{
+			return null;
+		}
+	}
+}
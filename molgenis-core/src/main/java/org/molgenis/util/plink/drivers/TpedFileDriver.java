@@ -1,30 +1,20 @@
 package org.molgenis.util.plink.drivers;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.StringTokenizer;
 
-import org.molgenis.util.TextFileUtils;
-import org.molgenis.util.plink.PlinkFileParser;
 import org.molgenis.util.plink.datatypes.Biallele;
 import org.molgenis.util.plink.datatypes.TpedEntry;
 
 /**
  * Driver to query TPED files.
  */
-public class TpedFileDriver implements PlinkFileParser
+public class TpedFileDriver extends IndexedPlinkFileDriver<TpedEntry>
 {
-	private BufferedReader reader;
-	private File file;
-	private char separator;
-	private long nrElements;
-
 	/**
 	 * Construct a TpedFileDriver on this file
 	 * 
@@ -38,55 +28,14 @@ public class TpedFileDriver implements PlinkFileParser
 
 	public TpedFileDriver(File tpedFile, char separator)
 	{
-		if (tpedFile == null) throw new IllegalArgumentException("file is null");
-		this.file = tpedFile;
-		this.separator = separator;
-		this.nrElements = -1l;
-	}
-
-	/**
-	 * Get a specific set of TPED file entries
-	 * 
-	 * @param from
-	 *            = inclusive
-	 * @param to
-	 *            = exclusive
-	 * @return
-	 * @throws Exception
-	 */
-	public List<TpedEntry> getEntries(final long from, final long to) throws IOException
-	{
-		reset();
-
-		List<TpedEntry> entryList = new ArrayList<TpedEntry>();
-		String line;
-		for (int i = 0; (line = reader.readLine()) != null && i < to; ++i)
-			if (i >= from) entryList.add(parseEntry(line));
-
-		return entryList;
-	}
-
-	/**
-	 * Get all TPED file entries
-	 * 
-	 * @return
-	 * @throws Exception
-	 */
-	public List<TpedEntry> getAllEntries() throws IOException
-	{
-		reset();
-
-		List<TpedEntry> entryList = new ArrayList<TpedEntry>();
-		String line;
-		while ((line = reader.readLine()) != null)
-			entryList.add(parseEntry(line));
-
-		return entryList;
+		super(tpedFile, separator, "chr", "snp", "cm", "bp");
+		setNumericKeyFields("cm", "bp");
 	}
 
-	private TpedEntry parseEntry(String line) throws IOException
+	@Override
+	protected TpedEntry parseEntry(String line) throws IOException
 	{
-		StringTokenizer strTokenizer = new StringTokenizer(line, separator + "");
+		StringTokenizer strTokenizer = new StringTokenizer(line, getSeparator() + "");
 		try
 		{
 			String chromosome = strTokenizer.nextToken();
@@ -116,21 +65,9 @@ public class TpedFileDriver implements PlinkFileParser
 		}
 	}
 
-	public long getNrOfElements() throws IOException
-	{
-		if (nrElements == -1) nrElements = TextFileUtils.getNumberOfNonEmptyLines(file, FILE_ENCODING);
-		return nrElements;
-	}
-
 	@Override
-	public void close() throws IOException
-	{
-		if (this.reader != null) this.reader.close();
-	}
-
-	public void reset() throws IOException
+	protected String getGenotypeValue(TpedEntry entry, int genotypeIndex)
 	{
-		if (this.reader != null) close();
-		this.reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), FILE_ENCODING));
+		return entry.getBialleles().get(genotypeIndex).toString();
 	}
 }
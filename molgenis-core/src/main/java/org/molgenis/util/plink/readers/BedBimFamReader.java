@@ -2,16 +2,19 @@ package org.molgenis.util.plink.readers;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 
+import org.apache.log4j.Logger;
 import org.molgenis.util.plink.datatypes.Biallele;
 import org.molgenis.util.plink.datatypes.BimEntry;
 import org.molgenis.util.plink.datatypes.FamEntry;
 import org.molgenis.util.plink.drivers.BedFileDriver;
+import org.molgenis.util.plink.drivers.BedGenotypeMatrix;
 import org.molgenis.util.plink.drivers.BimFileDriver;
 import org.molgenis.util.plink.drivers.FamFileDriver;
 
@@ -25,6 +28,7 @@ import org.molgenis.util.plink.drivers.FamFileDriver;
  */
 public class BedBimFamReader
 {
+	private static final Logger logger = Logger.getLogger(BedBimFamReader.class);
 
 	private BedFileDriver bedfd;
 	private BimFileDriver bimfd;
@@ -32,11 +36,10 @@ public class BedBimFamReader
 
 	private long nrOfIndividuals;
 	private long nrOfSnps;
-	private long nrOfGenotypes;
-	private int paddingPerSnp;
 	private List<String> individualNames;
 	private List<String> snpNames;
 	private HashMap<String, Biallele> snpCoding;
+	private List<int[]> chromosomeRanges;
 
 	public BedBimFamReader(File bed, File bim, File fam) throws Exception
 	{
@@ -46,8 +49,31 @@ public class BedBimFamReader
 
 		nrOfIndividuals = famfd.getNrOfElements();
 		nrOfSnps = bimfd.getNrOfElements();
-		nrOfGenotypes = nrOfIndividuals * nrOfSnps;
-		paddingPerSnp = (int) ((bedfd.getNrOfElements() - nrOfGenotypes) / nrOfSnps);
+	}
+
+	/**
+	 * Get the genotype matrix of the BED file, sized by the BIM and FAM files
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	public BedGenotypeMatrix getGenotypeMatrix() throws IOException
+	{
+		return bedfd.getGenotypeMatrix((int) nrOfSnps, (int) nrOfIndividuals);
+	}
+
+	/**
+	 * Get the SNP ranges {from (inclusive), to (exclusive)} of consecutive
+	 * SNPs on the same chromosome, e.g. to scan chromosomes in parallel with
+	 * {@link BedGenotypeMatrix#scanParallel(List, BedGenotypeMatrix.SnpVisitor, int)}
+	 * 
+	 * @return
+	 * @throws Exception
+	 */
+	public List<int[]> getChromosomeRanges() throws Exception
+	{
+		if (chromosomeRanges == null) setSnps();
+		return chromosomeRanges;
 	}
 
 	private void setIndividuals() throws Exception
@@ -81,8 +107,18 @@ public class BedBimFamReader
 					"Problem with BIM file: scanned number of elements does not match number of parsed elements");
 		}
 		snpCoding = new HashMap<String, Biallele>();
+		List<int[]> chromosomeRanges = new ArrayList<int[]>();
+		String chromosome = null;
 		for (BimEntry be : bimEntries)
 		{
+			if (!be.getChromosome().equals(chromosome))
+			{
+				chromosome = be.getChromosome();
+				chromosomeRanges.add(new int[]
+				{ snpNames.size(), snpNames.size() });
+			}
+			chromosomeRanges.get(chromosomeRanges.size() - 1)[1]++;
+
 			if (snpCoding.containsKey(be.getSNP()))
 			{
 				throw new Exception("Problem with BIM file: SNP '" + be.getSNP() + "' is not unique!");
@@ -91,6 +127,7 @@ public class BedBimFamReader
 			snpNames.add(be.getSNP());
 		}
 		this.snpNames = snpNames;
+		this.chromosomeRanges = chromosomeRanges;
 	}
 
 	public void extractGenotypes(File writeTo) throws Exception
@@ -108,29 +145,27 @@ public class BedBimFamReader
 		genotypesOut.write("\n");
 
 		// elements: snp name + genotypes
-		int snpCounter = 0;
-		for (int genotypeStart = 0; genotypeStart < nrOfGenotypes; genotypeStart += nrOfIndividuals)
+		BedGenotypeMatrix genotypeMatrix = getGenotypeMatrix();
+		byte[] dosages = new byte[(int) nrOfIndividuals];
+		for (int snp = 0; snp < nrOfSnps; snp++)
 		{
-			System.out.println((int) ((genotypeStart / (double) nrOfGenotypes) * 100) + "% of genotypes done");
+			if (logger.isDebugEnabled()) logger.debug((int) ((snp / (double) nrOfSnps) * 100) + "% of genotypes done");
 
-			String snpName = snpNames.get(snpCounter);
-			String[] allIndividualsForThisSNP = bedfd.getElements(genotypeStart, genotypeStart + nrOfIndividuals,
-					paddingPerSnp, snpCounter);
+			String snpName = snpNames.get(snp);
+			genotypeMatrix.getSnp(snp, dosages);
 			String a1 = Character.toString(snpCoding.get(snpName).getAllele1());
 			String a2 = Character.toString(snpCoding.get(snpName).getAllele2());
-			String hom1 = a1 + a1;
-			String hom2 = a2 + a2;
-			String hetr = a1 + a2;
+			// genotype per dosage, missing last
+			String[] genotypes = new String[]
+			{ a1 + a1, a1 + a2, a2 + a2, "" };
 
 			StringBuilder lineOfGenotypesBuilder = new StringBuilder(snpName);
-			for (String s : allIndividualsForThisSNP)
+			for (byte dosage : dosages)
 			{
-				lineOfGenotypesBuilder.append('\t').append(bedfd.convertGenoCoding(s, hom1, hom2, hetr, ""));
+				lineOfGenotypesBuilder.append('\t').append(genotypes[dosage & 3]);
 			}
 			lineOfGenotypesBuilder.append('\n');
 			genotypesOut.write(lineOfGenotypesBuilder.toString());
-
-			snpCounter++;
 		}
 
 		genotypesOut.close();
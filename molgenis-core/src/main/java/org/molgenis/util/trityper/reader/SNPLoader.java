@@ -2,52 +2,66 @@ package org.molgenis.util.trityper.reader;
 
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.molgenis.util.MappedFile;
 
 /**
- * 
+ * Loads the genotypes and dosages of SNPs from memory mapped genotype and
+ * dosage matrices. Reads do not move a shared file pointer, so a single loader
+ * can be used by multiple threads at once without locking.
+ *
  * @author harm-jan
  */
 public class SNPLoader
 {
 
-	private RandomAccessFile m_genotypehandle;
-	private RandomAccessFile m_dosagehandle;
-	private int m_numIndividuals;
+	private final MappedFile m_genotypefile;
+	private final MappedFile m_dosagefile;
+	/** handles opened by the caller, closed on close() */
+	private final RandomAccessFile m_genotypehandle;
+	private final RandomAccessFile m_dosagehandle;
+	private volatile int m_numIndividuals;
 	private final Boolean[] m_isIncluded, m_isFemale;
 
+	/** number of SNPs to read ahead during sequential scans, 0 is disabled */
+	private volatile int m_readAheadWindow;
+	/** SNP id up to which the matrices have been read ahead */
+	private final AtomicLong m_readAheadEnd = new AtomicLong();
+	private volatile ExecutorService m_readAheadExecutor;
+
 	public SNPLoader(RandomAccessFile genotypehandle, Boolean[] indIsIncluded, Boolean[] isFemale)
+			throws IOException
 	{
-		m_genotypehandle = genotypehandle;
-		m_isIncluded = indIsIncluded;
-		m_isFemale = isFemale;
+		this(genotypehandle, null, indIsIncluded, isFemale);
 	}
 
 	public SNPLoader(RandomAccessFile genotypehandle, RandomAccessFile dosagehandle, Boolean[] indIsIncluded,
-			Boolean[] isFemale)
+			Boolean[] isFemale) throws IOException
 	{
+		m_genotypefile = new MappedFile(genotypehandle.getChannel());
+		m_dosagefile = dosagehandle != null ? new MappedFile(dosagehandle.getChannel()) : null;
 		m_genotypehandle = genotypehandle;
 		m_dosagehandle = dosagehandle;
 		m_isIncluded = indIsIncluded;
 		m_isFemale = isFemale;
 	}
 
-	// private BufferedRandomAccessFile m_genotypehandle;
-	// private BufferedRandomAccessFile m_dosagehandle;
-	// private int m_numIndividuals;
-	// private final Boolean[] m_isIncluded;
-	//
-	// public SNPLoader(BufferedRandomAccessFile genotypehandle, Boolean[]
-	// indIsIncluded) {
-	// m_genotypehandle = genotypehandle;
-	// m_isIncluded = indIsIncluded;
-	// }
-	//
-	// public SNPLoader(BufferedRandomAccessFile genotypehandle,
-	// BufferedRandomAccessFile dosagehandle, Boolean[] indIsIncluded) {
-	// m_genotypehandle = genotypehandle;
-	// m_dosagehandle = dosagehandle;
-	// m_isIncluded = indIsIncluded;
-	// }
+	public SNPLoader(MappedFile genotypefile, MappedFile dosagefile, Boolean[] indIsIncluded, Boolean[] isFemale)
+	{
+		m_genotypefile = genotypefile;
+		m_dosagefile = dosagefile;
+		m_genotypehandle = null;
+		m_dosagehandle = null;
+		m_isIncluded = indIsIncluded;
+		m_isFemale = isFemale;
+	}
 
 	public void loadGenotypes(SNP snp)
 	{
@@ -55,51 +69,53 @@ public class SNPLoader
 		byte[] allele2 = new byte[m_numIndividuals];
 
 		int bytesize = m_numIndividuals * 2;
-
 		long seekLoc = (long) snp.getId() * (long) bytesize;
+		readAhead(snp.getId());
 
-		byte[] alleles = new byte[bytesize];
+		// all allele1 values are followed by all allele2 values
+		m_genotypefile.get(seekLoc, allele1, 0, m_numIndividuals);
+		m_genotypefile.get(seekLoc + m_numIndividuals, allele2, 0, m_numIndividuals);
 
-		try
-		{
-			if (m_genotypehandle.getFilePointer() != seekLoc)
-			{
-				m_genotypehandle.seek(seekLoc);
-			}
+		snp.setAlleles(allele1, allele2, m_isIncluded, m_isFemale);
+	}
 
-			int len = m_genotypehandle.read(alleles, 0, bytesize);
-		}
-		catch (IOException e)
+	/**
+	 * Loads the genotypes of a batch of SNPs. The SNPs are read in file order,
+	 * which is faster than loading them one by one in random order.
+	 *
+	 * @param snpIds
+	 * @return SNPs in the order of the ids, only id and genotypes are set
+	 */
+	public SNP[] loadGenotypes(int[] snpIds)
+	{
+		SNP[] snps = new SNP[snpIds.length];
+		for (int i = 0; i < snpIds.length; i++)
 		{
-
+			snps[i] = new SNP();
+			snps[i].setId(snpIds[i]);
 		}
-		System.arraycopy(alleles, 0, allele1, 0, m_numIndividuals);
-		System.arraycopy(alleles, m_numIndividuals, allele2, 0, m_numIndividuals);
-
-		alleles = null;
-
-		snp.setAlleles(allele1, allele2, m_isIncluded, m_isFemale);
+		loadGenotypes(snps);
+		return snps;
+	}
 
+	/**
+	 * Loads the genotypes of a batch of SNPs in file order
+	 *
+	 * @param snps
+	 */
+	public void loadGenotypes(SNP[] snps)
+	{
+		for (SNP snp : sortById(snps))
+			loadGenotypes(snp);
 	}
 
 	public void loadDosage(SNP snp)
 	{
-		if (m_dosagehandle != null)
+		if (m_dosagefile != null)
 		{
 			byte[] dosageValues = new byte[m_numIndividuals];
-			// if
-			// (loadedSNP.getGcScores()==null||loadedSNP.getThetaValues()==null||loadedSNP.getRValues()==null)
-			// {
 			long seekLoc = (long) snp.getId() * (long) m_numIndividuals * 1;
-			try
-			{
-				m_dosagehandle.seek(seekLoc);
-				int len = m_dosagehandle.read(dosageValues, 0, m_numIndividuals);
-			}
-			catch (IOException e)
-			{
-
-			}
+			m_dosagefile.get(seekLoc, dosageValues, 0, m_numIndividuals);
 			short[] genotypes = snp.getGenotypes();
 
 			boolean takeComplement = false;
@@ -130,6 +146,99 @@ public class SNPLoader
 		}
 	}
 
+	/**
+	 * Loads the dosages of a batch of SNPs of which the genotypes are loaded,
+	 * in file order
+	 *
+	 * @param snps
+	 */
+	public void loadDosage(SNP[] snps)
+	{
+		for (SNP snp : sortById(snps))
+			loadDosage(snp);
+	}
+
+	private static SNP[] sortById(SNP[] snps)
+	{
+		SNP[] sorted = snps.clone();
+		Arrays.sort(sorted, new Comparator<SNP>()
+		{
+			@Override
+			public int compare(SNP snp1, SNP snp2)
+			{
+				return snp1.getId() < snp2.getId() ? -1 : (snp1.getId() == snp2.getId() ? 0 : 1);
+			}
+		});
+		return sorted;
+	}
+
+	/**
+	 * Sets the number of SNPs that are read from disk ahead of a sequential
+	 * scan by a background thread, so the scanning threads do not wait for
+	 * disk reads. Only use for scans in increasing SNP order.
+	 *
+	 * @param nrSNPs
+	 *            number of SNPs, 0 disables reading ahead
+	 */
+	public synchronized void setReadAheadWindow(int nrSNPs)
+	{
+		if (nrSNPs < 0) throw new IllegalArgumentException("read ahead window must be >= 0");
+		m_readAheadWindow = nrSNPs;
+		m_readAheadEnd.set(0);
+		if (nrSNPs > 0 && m_readAheadExecutor == null)
+		{
+			m_readAheadExecutor = Executors.newSingleThreadExecutor(new ThreadFactory()
+			{
+				@Override
+				public Thread newThread(Runnable r)
+				{
+					Thread thread = new Thread(r, "snp-read-ahead");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Schedules reading the next window when a scan enters the last window
+	 * that was read ahead
+	 */
+	private void readAhead(int snpId)
+	{
+		final int window = m_readAheadWindow;
+		if (window == 0) return;
+
+		long end = m_readAheadEnd.get();
+		boolean inWindow = snpId < end && snpId >= end - 2L * window;
+		if (inWindow && snpId + (long) window <= end) return;
+		// restart reading ahead after jumping out of the window
+		final long from = inWindow ? end : snpId;
+		final long to = snpId + 2L * window;
+		if (!m_readAheadEnd.compareAndSet(end, to)) return;
+
+		ExecutorService executor = m_readAheadExecutor;
+		if (executor == null) return;
+		try
+		{
+			executor.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					long bytesize = m_numIndividuals * 2L;
+					m_genotypefile.prefetch(from * bytesize, (to - from) * bytesize);
+					if (m_dosagefile != null) m_dosagefile.prefetch(from * m_numIndividuals, (to - from)
+							* m_numIndividuals);
+				}
+			});
+		}
+		catch (RejectedExecutionException e)
+		{
+			// loader closed
+		}
+	}
+
 	/**
 	 * @return the numIndividuals
 	 */
@@ -149,23 +258,15 @@ public class SNPLoader
 
 	public boolean hasDosageInformation()
 	{
-		return (m_dosagehandle != null);
+		return (m_dosagefile != null);
 	}
 
 	public double getAverageSNPSize(int numSNPs)
 	{
-		long size = 0;
-		try
-		{
-			size += m_genotypehandle.length();
-			if (m_dosagehandle != null)
-			{
-				size += m_dosagehandle.length();
-			}
-		}
-		catch (IOException e)
+		long size = m_genotypefile.length();
+		if (m_dosagefile != null)
 		{
-
+			size += m_dosagefile.length();
 		}
 
 		double avgSNPSize = 0;
@@ -177,12 +278,20 @@ public class SNPLoader
 		return avgSNPSize;
 	}
 
-	public void close() throws IOException
+	public synchronized void close() throws IOException
 	{
+		if (m_readAheadExecutor != null)
+		{
+			m_readAheadExecutor.shutdownNow();
+			m_readAheadExecutor = null;
+		}
 		if (m_dosagehandle != null)
 		{
 			m_dosagehandle.close();
 		}
-		m_genotypehandle.close();
+		if (m_genotypehandle != null)
+		{
+			m_genotypehandle.close();
+		}
 	}
 }
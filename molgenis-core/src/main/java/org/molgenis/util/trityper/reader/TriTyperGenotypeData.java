@@ -1,10 +1,12 @@
 package org.molgenis.util.trityper.reader;
 
+import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.HashMap;
 
+import org.molgenis.util.MappedFile;
+
 /**
  * 
  * @author harmjan
@@ -395,25 +397,14 @@ public class TriTyperGenotypeData
 
 	public SNPLoader createSNPLoader() throws IOException
 	{
-
-		// BufferedRandomAccessFile dosageHandle = null;
-		// BufferedRandomAccessFile genotypeHandle = new
-		// BufferedRandomAccessFile(genotypeFileName, "r",
-		// individuals.length*25);
-		// if(Gpio.exists(dosageFileName)){
-		// System.out.println("Dosage information is available at: "+dosageFileName);
-		// dosageHandle = new BufferedRandomAccessFile(dosageFileName, "r",
-		// individuals.length*25);
-		// }
-
-		RandomAccessFile dosageHandle = null;
-		RandomAccessFile genotypeHandle = new RandomAccessFile(genotypeFileName, "r");
+		MappedFile dosageFile = null;
+		MappedFile genotypeFile = new MappedFile(new File(genotypeFileName));
 		if (Gpio.exists(dosageFileName))
 		{
-			dosageHandle = new RandomAccessFile(dosageFileName, "r");
+			dosageFile = new MappedFile(new File(dosageFileName));
 		}
 
-		SNPLoader s = new SNPLoader(genotypeHandle, dosageHandle, isIncluded, isFemale);
+		SNPLoader s = new SNPLoader(genotypeFile, dosageFile, isIncluded, isFemale);
 		s.setNumIndividuals(individuals.length);
 		return s;
 	}
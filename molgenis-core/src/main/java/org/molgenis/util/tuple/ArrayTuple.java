@@ -0,0 +1,204 @@
+package org.molgenis.util.tuple;
+
+import java.util.Arrays;
+
+/**
+ * Tuple backed by an array of values with column names from a
+ * {@link TupleSchema} that is shared by all tuples of a table, so creating a
+ * row only allocates its values. Column names are case insensitive.
+ * <p>
+ * Setting a column that is not in the schema gives this tuple its own copy of
+ * the schema with the column appended, the shared schema is never modified.
+ * Numeric values are converted to other numeric types without parsing their
+ * string representation.
+ */
+@edu.umd.cs.findbugs.annotations.SuppressWarnings(value = "NP_BOOLEAN_RETURN_NULL", justification = "return true/false/null on purpose")
+public class ArrayTuple extends AbstractTuple implements WritableTuple
+{
+	private static final long serialVersionUID = 1L;
+
+	private TupleSchema schema;
+	private Object[] values;
+
+	/**
+	 * Creates a tuple with null values for all columns of the schema
+	 */
+	public ArrayTuple(TupleSchema schema)
+	{
+		if (schema == null) throw new IllegalArgumentException("schema is null");
+		this.schema = schema;
+		this.values = new Object[schema.getNrCols()];
+	}
+
+	/**
+	 * Creates a tuple that takes ownership of the values array
+	 *
+	 * @param schema
+	 * @param values
+	 *            values in the order of the schema columns
+	 */
+	public ArrayTuple(TupleSchema schema, Object[] values)
+	{
+		if (schema == null) throw new IllegalArgumentException("schema is null");
+		if (values == null) throw new IllegalArgumentException("values is null");
+		if (values.length != schema.getNrCols()) throw new IllegalArgumentException("number of values ["
+				+ values.length + "] does not match number of columns [" + schema.getNrCols() + "]");
+		this.schema = schema;
+		this.values = values;
+	}
+
+	public TupleSchema getSchema()
+	{
+		return schema;
+	}
+
+	@Override
+	public int getNrCols()
+	{
+		return values.length;
+	}
+
+	@Override
+	public boolean hasColNames()
+	{
+		return values.length > 0;
+	}
+
+	@Override
+	public Iterable<String> getColNames()
+	{
+		return schema.getColNames();
+	}
+
+	@Override
+	public Object get(String colName)
+	{
+		int col = schema.getColIndex(colName);
+		return col != -1 ? values[col] : null;
+	}
+
+	@Override
+	public Object get(int col)
+	{
+		return values[col];
+	}
+
+	public void set(int col, Object value)
+	{
+		values[col] = value;
+	}
+
+	@Override
+	public void set(String colName, Object value)
+	{
+		int col = schema.getColIndex(colName);
+		if (col == -1)
+		{
+			col = values.length;
+			schema = schema.withColumn(colName);
+			values = Arrays.copyOf(values, col + 1);
+		}
+		values[col] = value;
+	}
+
+	@Override
+	public void set(Tuple t)
+	{
+		for (String colName : t.getColNames())
+			set(colName, t.get(colName));
+	}
+
+	@Override
+	public Integer getInt(String colName)
+	{
+		Object obj = get(colName);
+		return obj instanceof Integer ? (Integer) obj : toInteger(obj);
+	}
+
+	@Override
+	public Integer getInt(int col)
+	{
+		Object obj = get(col);
+		return obj instanceof Integer ? (Integer) obj : toInteger(obj);
+	}
+
+	@Override
+	public Long getLong(String colName)
+	{
+		Object obj = get(colName);
+		return obj instanceof Long ? (Long) obj : toLong(obj);
+	}
+
+	@Override
+	public Long getLong(int col)
+	{
+		Object obj = get(col);
+		return obj instanceof Long ? (Long) obj : toLong(obj);
+	}
+
+	@Override
+	public Double getDouble(String colName)
+	{
+		Object obj = get(colName);
+		return obj instanceof Double ? (Double) obj : toDouble(obj);
+	}
+
+	@Override
+	public Double getDouble(int col)
+	{
+		Object obj = get(col);
+		return obj instanceof Double ? (Double) obj : toDouble(obj);
+	}
+
+	@Override
+	public Boolean getBoolean(String colName)
+	{
+		Object obj = get(colName);
+		return obj instanceof Boolean ? (Boolean) obj : toBoolean(obj);
+	}
+
+	@Override
+	public Boolean getBoolean(int col)
+	{
+		Object obj = get(col);
+		return obj instanceof Boolean ? (Boolean) obj : toBoolean(obj);
+	}
+
+	private static boolean isIntegral(Object obj)
+	{
+		return obj instanceof Integer || obj instanceof Long || obj instanceof Short || obj instanceof Byte;
+	}
+
+	private static Integer toInteger(Object obj)
+	{
+		if (obj == null) return null;
+		if (isIntegral(obj))
+		{
+			long value = ((Number) obj).longValue();
+			if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) return (int) value;
+		}
+		return Integer.parseInt(obj.toString());
+	}
+
+	private static Long toLong(Object obj)
+	{
+		if (obj == null) return null;
+		if (isIntegral(obj)) return ((Number) obj).longValue();
+		return Long.parseLong(obj.toString());
+	}
+
+	private static Double toDouble(Object obj)
+	{
+		if (obj == null) return null;
+		if (obj instanceof Number) return ((Number) obj).doubleValue();
+		return Double.parseDouble(obj.toString());
+	}
+
+	private static Boolean toBoolean(Object obj)
+	{
+		if (obj == null) return null;
+		if (isIntegral(obj)) return ((Number) obj).longValue() == 1;
+		String str = obj.toString();
+		return str.equalsIgnoreCase("true") || str.equalsIgnoreCase("1");
+	}
+}
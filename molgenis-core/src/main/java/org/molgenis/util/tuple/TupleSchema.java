@@ -0,0 +1,90 @@
+package org.molgenis.util.tuple;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable column names of {@link ArrayTuple}s, shared by all tuples of a
+ * table or query result. Column names are resolved to column indices with
+ * precomputed tables: an exact match is tried first, followed by a case
+ * insensitive match. Column names are unique, so a tuple has as many values as
+ * it has column names.
+ */
+public class TupleSchema implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	private final String[] colNames;
+	private final List<String> colNameList;
+	private final Map<String, Integer> colIndex;
+	private final Map<String, Integer> lowerCaseColIndex;
+
+	public TupleSchema(String... colNames)
+	{
+		if (colNames == null) throw new IllegalArgumentException("column names is null");
+		this.colNames = colNames.clone();
+
+		int capacity = (int) (colNames.length / 0.75) + 1;
+		this.colIndex = new HashMap<String, Integer>(capacity);
+		this.lowerCaseColIndex = new HashMap<String, Integer>(capacity);
+		for (int i = 0; i < colNames.length; ++i)
+		{
+			if (colNames[i] == null) throw new IllegalArgumentException("column name " + i + " is null");
+			if (colIndex.put(colNames[i], i) != null) throw new IllegalArgumentException("duplicate column name ["
+					+ colNames[i] + "]");
+			lowerCaseColIndex.put(colNames[i].toLowerCase(), i);
+		}
+		this.colNameList = Collections.unmodifiableList(Arrays.asList(this.colNames));
+	}
+
+	public TupleSchema(List<String> colNames)
+	{
+		this(colNames.toArray(new String[colNames.size()]));
+	}
+
+	public int getNrCols()
+	{
+		return colNames.length;
+	}
+
+	public String getColName(int col)
+	{
+		return colNames[col];
+	}
+
+	/**
+	 * @return column names in column order
+	 */
+	public List<String> getColNames()
+	{
+		return colNameList;
+	}
+
+	/**
+	 * @param colName
+	 *            case insensitive column name
+	 * @return index of the column or -1 if the schema does not contain the
+	 *         column
+	 */
+	public int getColIndex(String colName)
+	{
+		Integer idx = colIndex.get(colName);
+		if (idx == null) idx = lowerCaseColIndex.get(colName.toLowerCase());
+		return idx != null ? idx : -1;
+	}
+
+	/**
+	 * @return a new schema with the column appended to the columns of this
+	 *         schema
+	 */
+	public TupleSchema withColumn(String colName)
+	{
+		String[] newColNames = Arrays.copyOf(colNames, colNames.length + 1);
+		newColNames[colNames.length] = colName;
+		return new TupleSchema(newColNames);
+	}
+}
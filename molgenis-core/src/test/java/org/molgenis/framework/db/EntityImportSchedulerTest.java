@@ -0,0 +1,170 @@
+package org.molgenis.framework.db;
+
+import static org.mockito.Mockito.mock;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.molgenis.framework.db.Database.DatabaseAction;
+import org.molgenis.io.TupleReader;
+import org.molgenis.io.processor.CellProcessor;
+import org.molgenis.util.tuple.KeyValueTuple;
+import org.molgenis.util.tuple.Tuple;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class EntityImportSchedulerTest
+{
+	private List<String> importOrder;
+	private Map<String, EntityImporter> importers;
+	private Map<String, List<String>> dependencies;
+
+	@BeforeMethod
+	public void setUp()
+	{
+		importOrder = new ArrayList<String>();
+		importers = new LinkedHashMap<String, EntityImporter>();
+		for (final String entityName : Arrays.asList("a", "b", "c", "d"))
+		{
+			importers.put(entityName, new EntityImporter()
+			{
+				@Override
+				public int importEntity(TupleReader tupleReader, Database db, DatabaseAction dbAction)
+						throws IOException, DatabaseException
+				{
+					importOrder.add(entityName);
+					int nr = 0;
+					for (Tuple tuple : tupleReader)
+					{
+						assertEquals(tuple.getInt("row"), Integer.valueOf(nr));
+						++nr;
+					}
+					return nr;
+				}
+			});
+		}
+		dependencies = new HashMap<String, List<String>>();
+		dependencies.put("a", Arrays.asList("c"));
+		dependencies.put("b", Arrays.asList("b"));
+		dependencies.put("c", Arrays.asList("d"));
+		dependencies.put("d", Collections.<String> emptyList());
+	}
+
+	@Test
+	public void schedule()
+	{
+		EntityImportScheduler scheduler = new EntityImportScheduler(importers, dependencies);
+		assertEquals(scheduler.schedule(Arrays.asList("a", "b", "c", "d")), Arrays.asList("b", "d", "c", "a"));
+		assertEquals(scheduler.schedule(Arrays.asList("a", "b", "x")), Arrays.asList("a", "b"));
+	}
+
+	@Test
+	public void schedule_cycle()
+	{
+		dependencies.put("d", Arrays.asList("a"));
+		EntityImportScheduler scheduler = new EntityImportScheduler(importers, dependencies);
+		assertEquals(scheduler.schedule(Arrays.asList("a", "b", "c", "d")), Arrays.asList("b", "a", "d", "c"));
+	}
+
+	@Test
+	public void importEntities() throws IOException, DatabaseException
+	{
+		Map<String, TupleReader> tupleReaders = new HashMap<String, TupleReader>();
+		tupleReaders.put("a", new ListTupleReader(2500));
+		tupleReaders.put("c", new ListTupleReader(10));
+
+		EntityImportScheduler scheduler = new EntityImportScheduler(importers, dependencies);
+		scheduler.setChunkSize(100);
+		EntityImportReport report = new EntityImportReport();
+		scheduler.importEntities(tupleReaders, mock(Database.class), DatabaseAction.ADD, report);
+
+		assertEquals(importOrder, Arrays.asList("c", "a"));
+		assertEquals(report.getNrImported(), 2510);
+		assertEquals(report.getNrImportedPerEntity().get("a"), Integer.valueOf(2500));
+		assertEquals(report.getNrImportedPerEntity().get("c"), Integer.valueOf(10));
+		assertEquals(report.getImportTimes().size(), 2);
+	}
+
+	@Test
+	public void importEntities_parseException() throws DatabaseException
+	{
+		Map<String, TupleReader> tupleReaders = new HashMap<String, TupleReader>();
+		tupleReaders.put("a", new ListTupleReader(250)
+		{
+			@Override
+			public Iterator<Tuple> iterator()
+			{
+				throw new RuntimeException("parse error");
+			}
+		});
+
+		EntityImportScheduler scheduler = new EntityImportScheduler(importers, dependencies);
+		try
+		{
+			scheduler.importEntities(tupleReaders, mock(Database.class), DatabaseAction.ADD,
+					new EntityImportReport());
+			fail();
+		}
+		catch (RuntimeException e)
+		{
+			assertEquals(e.getCause().getMessage(), "parse error");
+		}
+		catch (IOException e)
+		{
+			fail();
+		}
+	}
+
+	private static class ListTupleReader implements TupleReader
+	{
+		private final List<Tuple> tuples;
+
+		public ListTupleReader(int nrTuples)
+		{
+			tuples = new ArrayList<Tuple>(nrTuples);
+			for (int i = 0; i < nrTuples; ++i)
+			{
+				KeyValueTuple tuple = new KeyValueTuple();
+				tuple.set("row", i);
+				tuples.add(tuple);
+			}
+		}
+
+		@Override
+		public Iterator<Tuple> iterator()
+		{
+			return tuples.iterator();
+		}
+
+		@Override
+		public boolean hasColNames()
+		{
+			return true;
+		}
+
+		@Override
+		public Iterator<String> colNamesIterator() throws IOException
+		{
+			return Collections.singletonList("row").iterator();
+		}
+
+		@Override
+		public void addCellProcessor(CellProcessor cellProcessor)
+		{
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package org.molgenis.framework.db;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import org.molgenis.util.Entity;
+import org.testng.annotations.Test;
+
+public class XrefLabelCacheTest
+{
+	private static abstract class Characteristic implements Entity
+	{
+		private static final long serialVersionUID = 1L;
+	}
+
+	private static abstract class ObservableFeature extends Characteristic
+	{
+		private static final long serialVersionUID = 1L;
+	}
+
+	private static abstract class Protocol implements Entity
+	{
+		private static final long serialVersionUID = 1L;
+	}
+
+	@Test
+	public void get()
+	{
+		XrefLabelCache cache = new XrefLabelCache();
+		cache.put(Characteristic.class, "identifier", "height", 1);
+		assertEquals(cache.get(Characteristic.class, "identifier", "height"), 1);
+		assertNull(cache.get(Characteristic.class, "name", "height"));
+		assertNull(cache.get(Protocol.class, "identifier", "height"));
+		assertNull(cache.get(Characteristic.class, "identifier", null));
+	}
+
+	@Test
+	public void put_maxSize()
+	{
+		XrefLabelCache cache = new XrefLabelCache(2);
+		cache.put(Characteristic.class, "identifier", "height", 1);
+		cache.put(Characteristic.class, "identifier", "weight", 2);
+		cache.get(Characteristic.class, "identifier", "height");
+		cache.put(Characteristic.class, "identifier", "age", 3);
+		assertEquals(cache.size(), 2);
+		assertEquals(cache.get(Characteristic.class, "identifier", "height"), 1);
+		assertNull(cache.get(Characteristic.class, "identifier", "weight"));
+	}
+
+	@Test
+	public void invalidate()
+	{
+		XrefLabelCache cache = new XrefLabelCache();
+		cache.put(Characteristic.class, "identifier", "height", 1);
+		cache.put(ObservableFeature.class, "identifier", "weight", 2);
+		cache.put(Protocol.class, "identifier", "measurements", 3);
+		cache.invalidate(ObservableFeature.class);
+		assertNull(cache.get(Characteristic.class, "identifier", "height"));
+		assertNull(cache.get(ObservableFeature.class, "identifier", "weight"));
+		assertEquals(cache.get(Protocol.class, "identifier", "measurements"), 3);
+	}
+
+	@Test
+	public void invalidate_superclass()
+	{
+		XrefLabelCache cache = new XrefLabelCache();
+		cache.put(ObservableFeature.class, "identifier", "weight", 2);
+		cache.put(Protocol.class, "identifier", "measurements", 3);
+		cache.invalidate(Characteristic.class);
+		assertNull(cache.get(ObservableFeature.class, "identifier", "weight"));
+		assertEquals(cache.get(Protocol.class, "identifier", "measurements"), 3);
+	}
+}
@@ -0,0 +1,99 @@
+package org.molgenis.framework.db;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.molgenis.fieldtypes.IntField;
+import org.molgenis.fieldtypes.StringField;
+import org.molgenis.framework.db.QueryRule.Operator;
+import org.testng.annotations.Test;
+
+public class XrefLabelsTest
+{
+	@Test
+	public void key()
+	{
+		assertEquals(XrefLabels.key("a", 1), Arrays.asList("a", "1"));
+		assertFalse(XrefLabels.key("ab", "c").equals(XrefLabels.key("a", "bc")));
+	}
+
+	@Test
+	public void isEmpty()
+	{
+		assertTrue(XrefLabels.isEmpty(XrefLabels.key(null, null)));
+		assertFalse(XrefLabels.isEmpty(XrefLabels.key(null, "b")));
+	}
+
+	@Test
+	public void createInRules()
+	{
+		List<List<String>> keys = Arrays.asList(XrefLabels.key("inv1", "height"), XrefLabels.key("inv1", "weight"),
+				XrefLabels.key("inv2", "height"));
+		QueryRule[] rules = XrefLabels.createInRules(mockMapper(), new String[]
+		{ "investigation_name", "name" }, keys);
+		assertEquals(rules.length, 2);
+		assertEquals(rules[0].getField(), "investigation_name");
+		assertEquals(rules[0].getOperator(), Operator.IN);
+		assertEquals(rules[0].getValue(), Arrays.asList("inv1", "inv2"));
+		assertEquals(rules[1].getField(), "name");
+		assertEquals(rules[1].getValue(), Arrays.asList("height", "weight"));
+	}
+
+	@Test
+	public void createInRules_typedValues()
+	{
+		List<List<String>> keys = Arrays.asList(XrefLabels.key(1, "height"), XrefLabels.key("2", "weight"));
+		QueryRule[] rules = XrefLabels.createInRules(mockMapper(), new String[]
+		{ "code", "name" }, keys);
+		assertEquals(rules[0].getValue(), Arrays.<Object> asList(1, 2));
+		assertEquals(rules[1].getValue(), Arrays.<Object> asList("height", "weight"));
+	}
+
+	@Test
+	public void createInRules_nullValues()
+	{
+		List<List<String>> keys = Arrays.asList(XrefLabels.key("inv1", "height"), XrefLabels.key(null, "weight"),
+				XrefLabels.key(null, "height"));
+		QueryRule[] rules = XrefLabels.createInRules(mockMapper(), new String[]
+		{ "investigation_name", "name" }, keys);
+		assertEquals(rules.length, 2);
+		// investigation_name IN ('inv1') OR investigation_name IS NULL
+		assertEquals(rules[0].getOperator(), Operator.NESTED);
+		QueryRule[] nestedRules = rules[0].getNestedRules();
+		assertEquals(nestedRules.length, 3);
+		assertEquals(nestedRules[0].getOperator(), Operator.IN);
+		assertEquals(nestedRules[0].getValue(), Arrays.asList("inv1"));
+		assertEquals(nestedRules[1].getOperator(), Operator.OR);
+		assertEquals(nestedRules[2].getField(), "investigation_name");
+		assertEquals(nestedRules[2].getOperator(), Operator.EQUALS);
+		assertNull(nestedRules[2].getValue());
+		assertEquals(rules[1].getValue(), Arrays.asList("height", "weight"));
+
+		rules = XrefLabels.createInRules(mockMapper(), new String[]
+		{ "investigation_name", "name" }, Arrays.asList(XrefLabels.key(null, "weight")));
+		assertEquals(rules[0].getOperator(), Operator.EQUALS);
+		assertNull(rules[0].getValue());
+	}
+
+	private static Mapper<?> mockMapper()
+	{
+		Mapper<?> mapper = mock(Mapper.class);
+		when(mapper.getFieldType("investigation_name")).thenReturn(new StringField());
+		when(mapper.getFieldType("name")).thenReturn(new StringField());
+		when(mapper.getFieldType("code")).thenReturn(new IntField());
+		return mapper;
+	}
+
+	@Test
+	public void toStringKey()
+	{
+		assertEquals(XrefLabels.toString(XrefLabels.key("a", null, "c")), "a,null,c");
+	}
+}
@@ -0,0 +1,266 @@
+package org.molgenis.framework.db;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.molgenis.io.TupleWriter;
+import org.molgenis.util.Entity;
+import org.molgenis.util.tuple.KeyValueTuple;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+public class XrefSearchIndexTest
+{
+	private static abstract class OntologyTerm implements Entity
+	{
+		private static final long serialVersionUID = 1L;
+	}
+
+	@AfterMethod
+	public void tearDown()
+	{
+		XrefSearchIndex.clear();
+	}
+
+	private static XrefSearchIndex createIndex()
+	{
+		XrefSearchIndex index = new XrefSearchIndex(OntologyTerm.class, Arrays.asList("name"));
+		index.put(1, "Blood pressure");
+		index.put(2, "Pressure");
+		index.put(3, "pressure ulcer");
+		index.put(4, "Height");
+		index.put(5, "Arterial pressure");
+		return index;
+	}
+
+	@Test
+	public void search()
+	{
+		XrefSearchIndex index = createIndex();
+		assertEquals(index.size(), 5);
+		// exact, prefix and substring matches, each in label order
+		assertEquals(index.search("PRESSURE", 100), Arrays.<Object> asList(2, 3, 5, 1));
+		assertEquals(index.search("pres", 100), Arrays.<Object> asList(2, 3, 5, 1));
+		assertEquals(index.search("height", 100), Arrays.<Object> asList(4));
+		assertEquals(index.search("weight", 100), Collections.emptyList());
+		assertEquals(index.search("", 100), Collections.emptyList());
+	}
+
+	@Test
+	public void search_limit()
+	{
+		XrefSearchIndex index = createIndex();
+		assertEquals(index.search("pressure", 2), Arrays.<Object> asList(2, 3));
+		assertEquals(index.search("ssure", 3), Arrays.<Object> asList(5, 1, 2));
+	}
+
+	@Test
+	public void search_shortTerms()
+	{
+		XrefSearchIndex index = createIndex();
+		assertEquals(index.search("p", 100), Arrays.<Object> asList(2, 3, 5, 1));
+		assertEquals(index.search("he", 100), Arrays.<Object> asList(4));
+		assertEquals(index.search("ul", 100), Arrays.<Object> asList(3));
+	}
+
+	@Test
+	public void search_multipleLabels()
+	{
+		XrefSearchIndex index = new XrefSearchIndex(OntologyTerm.class, Arrays.asList("name", "definition"));
+		index.put(1, "Pulse", "heart rate");
+		index.put(2, "Heart rate", null);
+		index.put(3, "Heart rate", "ambiguous");
+		assertEquals(index.search("heart", 100), Arrays.<Object> asList(2, 3, 1));
+		assertEquals(index.search("rate", 100), Arrays.<Object> asList(2, 3, 1));
+	}
+
+	@Test
+	public void putRemove()
+	{
+		XrefSearchIndex index = createIndex();
+		index.put(4, "Body height");
+		index.remove(2);
+		index.remove(6);
+		assertEquals(index.size(), 4);
+		assertEquals(index.search("pressure", 100), Arrays.<Object> asList(3, 5, 1));
+		assertEquals(index.search("height", 100), Arrays.<Object> asList(4));
+		assertEquals(index.search("p", 100), Arrays.<Object> asList(3, 5, 1));
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void put_wrongNumberOfLabels()
+	{
+		createIndex().put(6, "Weight", "kg");
+	}
+
+	@Test
+	public void getIndex() throws DatabaseException
+	{
+		Database db = mockDatabase(new Object[][]
+		{
+		{ 1, "Blood pressure" },
+		{ 2, "Pressure" } });
+		XrefSearchIndex index = XrefSearchIndex.getIndex(db, OntologyTerm.class, Arrays.asList("name"));
+		assertTrue(index.isLoaded());
+		assertEquals(index.search("pressure", 100), Arrays.<Object> asList(2, 1));
+		assertTrue(index == XrefSearchIndex.getIndex(db, OntologyTerm.class, Arrays.asList("name")));
+		verify(db.getMapperFor(OntologyTerm.class), times(1)).find(any(TupleWriter.class), anyListOf(String.class),
+				any(QueryRule[].class));
+	}
+
+	@Test
+	public void entitiesChanged() throws DatabaseException
+	{
+		Database db = mockDatabase(new Object[][]
+		{
+		{ 1, "Blood pressure" },
+		{ 2, "Pressure" } });
+		XrefSearchIndex index = XrefSearchIndex.getIndex(db, OntologyTerm.class, Arrays.asList("name"));
+
+		XrefSearchIndex.entitiesChanged(Arrays.asList(mockTerm(3, "Pressure ulcer"), mockTerm(1, "Pulse")));
+		assertEquals(index.search("pressure", 100), Arrays.<Object> asList(2, 3));
+		assertEquals(index.search("pulse", 100), Arrays.<Object> asList(1));
+
+		XrefSearchIndex.entitiesRemoved(Arrays.asList(mockTerm(2, "Pressure")));
+		assertEquals(index.search("pressure", 100), Arrays.<Object> asList(3));
+	}
+
+	@Test
+	public void entitiesChanged_committed() throws DatabaseException
+	{
+		Database db = mockDatabase(new Object[][]
+		{
+		{ 1, "Blood pressure" },
+		{ 2, "Pressure" } });
+		XrefSearchIndex index = XrefSearchIndex.getIndex(db, OntologyTerm.class, Arrays.asList("name"));
+		List<TransactionListener> listeners = beginTx(db);
+
+		XrefSearchIndex.entitiesChanged(db, Arrays.asList(mockTerm(3, "Pressure ulcer")));
+		XrefSearchIndex.entitiesRemoved(db, Arrays.asList(mockTerm(2, "Pressure")));
+		// other threads do not see uncommitted changes
+		assertEquals(index.search("pressure", 100), Arrays.<Object> asList(2, 1));
+
+		assertEquals(listeners.size(), 1);
+		listeners.get(0).afterCommit();
+		assertTrue(index.isLoaded());
+		assertEquals(index.search("pressure", 100), Arrays.<Object> asList(3, 1));
+	}
+
+	@Test
+	public void entitiesChanged_rolledBack() throws DatabaseException
+	{
+		Database db = mockDatabase(new Object[][]
+		{
+		{ 1, "Blood pressure" } });
+		XrefSearchIndex index = XrefSearchIndex.getIndex(db, OntologyTerm.class, Arrays.asList("name"));
+		List<TransactionListener> listeners = beginTx(db);
+
+		XrefSearchIndex.entitiesChanged(db, Arrays.asList(mockTerm(1, "Pulse")));
+
+		assertEquals(listeners.size(), 1);
+		listeners.get(0).afterRollback();
+		// the index is not reloaded
+		assertTrue(index.isLoaded());
+		assertEquals(index.search("pressure", 100), Arrays.<Object> asList(1));
+		assertEquals(index.search("pulse", 100), Collections.emptyList());
+	}
+
+	@Test
+	public void invalidateAll() throws DatabaseException
+	{
+		Database db = mockDatabase(new Object[][]
+		{
+		{ 1, "Blood pressure" } });
+		XrefSearchIndex index = XrefSearchIndex.getIndex(db, OntologyTerm.class, Arrays.asList("name"));
+		XrefSearchIndex.invalidateAll();
+		assertFalse(index.isLoaded());
+		XrefSearchIndex.getIndex(db, OntologyTerm.class, Arrays.asList("name"));
+		assertTrue(index.isLoaded());
+		verify(db.getMapperFor(OntologyTerm.class), times(2)).find(any(TupleWriter.class), anyListOf(String.class),
+				any(QueryRule[].class));
+	}
+
+	private static OntologyTerm mockTerm(Object id, String name)
+	{
+		OntologyTerm term = mock(OntologyTerm.class);
+		when(term.getIdValue()).thenReturn(id);
+		when(term.get("name")).thenReturn(name);
+		return term;
+	}
+
+	/**
+	 * Puts the mock database in a transaction
+	 * 
+	 * @return listeners added to the transaction
+	 */
+	private static List<TransactionListener> beginTx(Database db)
+	{
+		final List<TransactionListener> listeners = new ArrayList<TransactionListener>();
+		when(db.inTx()).thenReturn(true);
+		doAnswer(new Answer<Void>()
+		{
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable
+			{
+				listeners.add((TransactionListener) invocation.getArguments()[0]);
+				return null;
+			}
+		}).when(db).addTransactionListener(any(TransactionListener.class));
+		doAnswer(new Answer<TransactionListener>()
+		{
+			@Override
+			public TransactionListener answer(InvocationOnMock invocation) throws Throwable
+			{
+				Class<?> listenerClass = (Class<?>) invocation.getArguments()[0];
+				for (TransactionListener listener : listeners)
+					if (listenerClass.isInstance(listener)) return listener;
+				return null;
+			}
+		}).when(db).getTransactionListener(any(Class.class));
+		return listeners;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Database mockDatabase(final Object[][] rows) throws DatabaseException
+	{
+		OntologyTerm term = mock(OntologyTerm.class);
+		when(term.getIdField()).thenReturn("id");
+		Mapper<OntologyTerm> mapper = mock(Mapper.class);
+		when(mapper.create()).thenReturn(term);
+		doAnswer(new Answer<Void>()
+		{
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable
+			{
+				TupleWriter writer = (TupleWriter) invocation.getArguments()[0];
+				for (Object[] row : rows)
+				{
+					KeyValueTuple tuple = new KeyValueTuple();
+					tuple.set("id", row[0]);
+					tuple.set("name", row[1]);
+					writer.write(tuple);
+				}
+				return null;
+			}
+		}).when(mapper).find(any(TupleWriter.class), anyListOf(String.class), any(QueryRule[].class));
+
+		Database db = mock(Database.class);
+		when(db.getMapperFor(OntologyTerm.class)).thenReturn(mapper);
+		return db;
+	}
+}
@@ -0,0 +1,182 @@
+package org.molgenis.framework.db.jdbc;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.molgenis.framework.db.AbstractMapper;
+import org.molgenis.framework.db.Database;
+import org.molgenis.framework.db.QueryRule;
+import org.molgenis.framework.db.paging.KeysetPagerTest.TestEntity;
+import org.molgenis.io.TupleWriter;
+import org.molgenis.util.tuple.Tuple;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class AbstractJDBCMapperTest
+{
+	private static final int NR_ROWS = 2 * AbstractMapper.BATCH_SIZE + 1;
+
+	private Connection conn;
+	private AbstractJDBCMapper<TestEntity> mapper;
+	/** mref mappings and written rows in order of occurrence */
+	private List<String> events;
+
+	@SuppressWarnings("unchecked")
+	@BeforeMethod
+	public void setUp() throws Exception
+	{
+		Class.forName("org.hsqldb.jdbcDriver");
+		conn = DriverManager.getConnection("jdbc:hsqldb:mem:abstractjdbcmapper", "sa", "");
+		Statement stmt = conn.createStatement();
+		try
+		{
+			stmt.execute("CREATE TABLE entity (id INTEGER, name VARCHAR(255))");
+		}
+		finally
+		{
+			stmt.close();
+		}
+		PreparedStatement pstmt = conn.prepareStatement("INSERT INTO entity (id, name) VALUES (?, ?)");
+		try
+		{
+			for (int i = 0; i < NR_ROWS; ++i)
+			{
+				pstmt.setInt(1, i);
+				pstmt.setString(2, "name" + i);
+				pstmt.executeUpdate();
+			}
+		}
+		finally
+		{
+			pstmt.close();
+		}
+
+		Database db = mock(Database.class);
+		when(db.getConnection()).thenReturn(conn);
+
+		events = new ArrayList<String>();
+		mapper = mock(AbstractJDBCMapper.class, CALLS_REAL_METHODS);
+		doReturn(db).when(mapper).getDatabase();
+		doReturn("SELECT id AS \"id\", name AS \"name\" FROM entity ORDER BY id").when(mapper)
+				.createFindSqlInclRules(any(QueryRule[].class));
+		doAnswer(new Answer<TestEntity>()
+		{
+			@Override
+			public TestEntity answer(InvocationOnMock invocation) throws Throwable
+			{
+				return new TestEntity();
+			}
+		}).when(mapper).create();
+		doAnswer(new Answer<List<TestEntity>>()
+		{
+			@Override
+			public List<TestEntity> answer(InvocationOnMock invocation) throws Throwable
+			{
+				return new ArrayList<TestEntity>((Integer) invocation.getArguments()[0]);
+			}
+		}).when(mapper).createList(anyInt());
+		doAnswer(new Answer<Void>()
+		{
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable
+			{
+				List<?> entities = (List<?>) invocation.getArguments()[0];
+				events.add("mrefs " + entities.size());
+				return null;
+			}
+		}).when(mapper).mapMrefs(any(List.class));
+	}
+
+	@AfterMethod
+	public void tearDown() throws SQLException
+	{
+		Statement stmt = conn.createStatement();
+		try
+		{
+			stmt.execute("DROP TABLE entity");
+		}
+		finally
+		{
+			stmt.close();
+		}
+		conn.close();
+	}
+
+	@Test
+	public void findTupleWriter() throws Exception
+	{
+		TupleWriter writer = mock(TupleWriter.class);
+		List<Iterable<String>> header = captureHeader(writer);
+		doAnswer(new Answer<Void>()
+		{
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable
+			{
+				events.add(((Tuple) invocation.getArguments()[0]).getString("name"));
+				return null;
+			}
+		}).when(writer).write(any(Tuple.class));
+
+		mapper.find(writer, Arrays.asList("name"), new QueryRule[0]);
+
+		assertEquals(header, Arrays.asList(Arrays.asList("name")));
+
+		// mrefs are mapped per chunk, before the rows of that chunk are written
+		List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < NR_ROWS; ++i)
+		{
+			if (i % AbstractMapper.BATCH_SIZE == 0)
+			{
+				expected.add("mrefs " + Math.min(AbstractMapper.BATCH_SIZE, NR_ROWS - i));
+			}
+			expected.add("name" + i);
+		}
+		assertEquals(events, expected);
+	}
+
+	@Test
+	public void findTupleWriter_allFields() throws Exception
+	{
+		TupleWriter writer = mock(TupleWriter.class);
+		List<Iterable<String>> header = captureHeader(writer);
+
+		mapper.find(writer, null, new QueryRule[0]);
+
+		assertEquals(header.size(), 1);
+		assertEquals(header.get(0), Arrays.asList("id", "name"));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<Iterable<String>> captureHeader(TupleWriter writer) throws Exception
+	{
+		final List<Iterable<String>> header = new ArrayList<Iterable<String>>();
+		doAnswer(new Answer<Void>()
+		{
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable
+			{
+				header.add((Iterable<String>) invocation.getArguments()[0]);
+				return null;
+			}
+		}).when(writer).writeColNames(any(Iterable.class));
+		return header;
+	}
+}
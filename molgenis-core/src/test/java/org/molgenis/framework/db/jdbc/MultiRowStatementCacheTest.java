@@ -0,0 +1,92 @@
+package org.molgenis.framework.db.jdbc;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.testng.annotations.Test;
+
+public class MultiRowStatementCacheTest
+{
+	private static class InsertStatementCache extends MultiRowStatementCache
+	{
+		public InsertStatementCache(int nrParamsPerRow)
+		{
+			super(nrParamsPerRow, Statement.NO_GENERATED_KEYS);
+		}
+
+		@Override
+		protected String createSql(int nrRows)
+		{
+			return "INSERT INTO Country (name,continent) VALUES " + values("(?,?)", nrRows);
+		}
+	}
+
+	@Test
+	public void getBucketSize()
+	{
+		MultiRowStatementCache cache = new InsertStatementCache(2);
+		assertEquals(cache.getBucketSize(1), 1);
+		assertEquals(cache.getBucketSize(7), 4);
+		assertEquals(cache.getBucketSize(8), 8);
+		assertEquals(cache.getBucketSize(100000), MultiRowStatementCache.MAX_ROWS);
+	}
+
+	@Test
+	public void getBucketSize_maxParams()
+	{
+		MultiRowStatementCache cache = new InsertStatementCache(1000);
+		assertEquals(cache.getBucketSize(100000), 64);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void getBucketSize_noRows()
+	{
+		new InsertStatementCache(2).getBucketSize(0);
+	}
+
+	@Test
+	public void getStatement() throws SQLException
+	{
+		String sql = "INSERT INTO Country (name,continent) VALUES (?,?),(?,?)";
+		PreparedStatement pstmt = mock(PreparedStatement.class);
+		Connection conn = mock(Connection.class);
+		when(conn.prepareStatement(sql, Statement.NO_GENERATED_KEYS)).thenReturn(pstmt);
+
+		MultiRowStatementCache cache = new InsertStatementCache(2);
+		assertEquals(cache.getStatement(conn, 2), pstmt);
+		assertEquals(cache.getStatement(conn, 2), pstmt);
+		verify(conn, times(1)).prepareStatement(sql, Statement.NO_GENERATED_KEYS);
+		verify(pstmt, times(1)).clearParameters();
+	}
+
+	@Test
+	public void getStatement_otherConnection() throws SQLException
+	{
+		String sql = "INSERT INTO Country (name,continent) VALUES (?,?)";
+		PreparedStatement pstmt0 = mock(PreparedStatement.class);
+		Connection conn0 = mock(Connection.class);
+		when(conn0.prepareStatement(sql, Statement.NO_GENERATED_KEYS)).thenReturn(pstmt0);
+		PreparedStatement pstmt1 = mock(PreparedStatement.class);
+		Connection conn1 = mock(Connection.class);
+		when(conn1.prepareStatement(sql, Statement.NO_GENERATED_KEYS)).thenReturn(pstmt1);
+
+		MultiRowStatementCache cache = new InsertStatementCache(2);
+		assertEquals(cache.getStatement(conn0, 1), pstmt0);
+		assertEquals(cache.getStatement(conn1, 1), pstmt1);
+		verify(pstmt0).close();
+	}
+
+	@Test
+	public void values()
+	{
+		assertEquals(MultiRowStatementCache.values("(?,?)", 3), "(?,?),(?,?),(?,?)");
+	}
+}
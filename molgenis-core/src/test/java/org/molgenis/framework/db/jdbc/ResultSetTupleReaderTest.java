@@ -0,0 +1,138 @@
+package org.molgenis.framework.db.jdbc;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.molgenis.util.tuple.Tuple;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class ResultSetTupleReaderTest
+{
+	private Connection conn;
+	private Statement stmt;
+	private ResultSet rs;
+
+	@BeforeMethod
+	public void setUp() throws SQLException
+	{
+		ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+		when(metaData.getColumnCount()).thenReturn(2);
+		when(metaData.getColumnLabel(1)).thenReturn("Name");
+		when(metaData.getColumnLabel(2)).thenReturn("Continent");
+
+		rs = mock(ResultSet.class);
+		when(rs.getMetaData()).thenReturn(metaData);
+		when(rs.next()).thenReturn(true, true, false);
+		when(rs.getObject(1)).thenReturn("Netherlands", "Belgium");
+		when(rs.getObject(2)).thenReturn("Europe", "Europe");
+
+		stmt = mock(Statement.class);
+		when(stmt.executeQuery("SELECT Name, Continent FROM Country")).thenReturn(rs);
+
+		conn = mock(Connection.class);
+		when(conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)).thenReturn(stmt);
+	}
+
+	@SuppressWarnings("resource")
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void ResultSetTupleReader() throws SQLException
+	{
+		new ResultSetTupleReader(null, "SELECT 1");
+	}
+
+	@Test
+	public void colNamesIterator() throws SQLException, IOException
+	{
+		ResultSetTupleReader reader = new ResultSetTupleReader(conn, "SELECT Name, Continent FROM Country");
+		try
+		{
+			Iterator<String> colNamesIt = reader.colNamesIterator();
+			assertEquals(colNamesIt.next(), "name");
+			assertEquals(colNamesIt.next(), "continent");
+			assertFalse(colNamesIt.hasNext());
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+
+	@Test
+	public void iterator() throws SQLException, IOException
+	{
+		ResultSetTupleReader reader = new ResultSetTupleReader(conn, "SELECT Name, Continent FROM Country", 10);
+		try
+		{
+			verify(stmt).setFetchSize(10);
+
+			Iterator<Tuple> it = reader.iterator();
+			assertTrue(it.hasNext());
+			Tuple tuple0 = it.next();
+			assertEquals(tuple0.getString("name"), "Netherlands");
+			assertEquals(tuple0.getString("NAME"), "Netherlands");
+			assertEquals(tuple0.getString("Continent"), "Europe");
+			assertTrue(it.hasNext());
+			Tuple tuple1 = it.next();
+			assertEquals(tuple1.getString("Name"), "Belgium");
+			assertFalse(it.hasNext());
+
+			// resources are released after the last row
+			verify(rs).close();
+			verify(stmt).close();
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+
+	@Test
+	public void iterator_duplicateLabels() throws SQLException, IOException
+	{
+		ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+		when(metaData.getColumnCount()).thenReturn(3);
+		when(metaData.getColumnLabel(1)).thenReturn("id");
+		when(metaData.getColumnLabel(2)).thenReturn("Name");
+		when(metaData.getColumnLabel(3)).thenReturn("ID");
+		ResultSet joinRs = mock(ResultSet.class);
+		when(joinRs.getMetaData()).thenReturn(metaData);
+		when(joinRs.next()).thenReturn(true, false);
+		when(joinRs.getObject(1)).thenReturn(1);
+		when(joinRs.getObject(2)).thenReturn("Netherlands");
+		when(joinRs.getObject(3)).thenReturn(2);
+		String sql = "SELECT Country.id, Name, Continent.id FROM Country JOIN Continent";
+		when(stmt.executeQuery(sql)).thenReturn(joinRs);
+
+		ResultSetTupleReader reader = new ResultSetTupleReader(conn, sql);
+		try
+		{
+			Iterator<Tuple> it = reader.iterator();
+			Tuple tuple = it.next();
+			// like in a map the last id column wins
+			assertEquals(tuple.getNrCols(), 2);
+			assertEquals(tuple.getColNames(), Arrays.asList("id", "name"));
+			assertEquals(tuple.getInt("id"), Integer.valueOf(2));
+			assertEquals(tuple.get(0), 2);
+			assertEquals(tuple.get(1), "Netherlands");
+			assertFalse(it.hasNext());
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+}
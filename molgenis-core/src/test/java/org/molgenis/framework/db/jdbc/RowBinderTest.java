@@ -0,0 +1,94 @@
+package org.molgenis.framework.db.jdbc;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import org.molgenis.util.Entity;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class RowBinderTest
+{
+	private ResultSetMetaData metaData;
+	private ResultSet rs;
+
+	@BeforeMethod
+	public void setUp() throws SQLException
+	{
+		metaData = mock(ResultSetMetaData.class);
+		when(metaData.getColumnCount()).thenReturn(3);
+		when(metaData.getColumnLabel(1)).thenReturn("id");
+		when(metaData.getColumnLabel(2)).thenReturn("Name");
+		when(metaData.getColumnLabel(3)).thenReturn("Country_name");
+		rs = mock(ResultSet.class);
+	}
+
+	private RowBinder<Entity> createBinder() throws SQLException
+	{
+		return new RowBinder<Entity>(metaData)
+		{
+			@Override
+			public void bind(ResultSet rs, Entity entity) throws SQLException
+			{
+			}
+		};
+	}
+
+	@Test
+	public void ordinal() throws SQLException
+	{
+		RowBinder<Entity> binder = createBinder();
+		assertEquals(binder.ordinal("id"), 1);
+		assertEquals(binder.ordinal("name"), 2);
+		assertEquals(binder.ordinal("Country_name", "name"), 3);
+		assertEquals(binder.ordinal("Country_continent", "NAME"), 2);
+		assertEquals(binder.ordinal("continent"), 0);
+	}
+
+	@Test
+	public void getInt() throws SQLException
+	{
+		when(rs.getInt(1)).thenReturn(3, 0);
+		when(rs.wasNull()).thenReturn(false, true);
+		assertEquals(RowBinder.getInt(rs, 1), Integer.valueOf(3));
+		assertNull(RowBinder.getInt(rs, 1));
+	}
+
+	@Test
+	public void getDouble() throws SQLException
+	{
+		when(rs.getDouble(1)).thenReturn(1.5, 0.0);
+		when(rs.wasNull()).thenReturn(false, true);
+		assertEquals(RowBinder.getDouble(rs, 1), 1.5);
+		assertNull(RowBinder.getDouble(rs, 1));
+	}
+
+	@Test
+	public void getBoolean() throws SQLException
+	{
+		when(rs.getObject(1)).thenReturn(Boolean.TRUE, 1, 0, "true", "0", null);
+		assertTrue(RowBinder.getBoolean(rs, 1));
+		assertTrue(RowBinder.getBoolean(rs, 1));
+		assertFalse(RowBinder.getBoolean(rs, 1));
+		assertTrue(RowBinder.getBoolean(rs, 1));
+		assertFalse(RowBinder.getBoolean(rs, 1));
+		assertNull(RowBinder.getBoolean(rs, 1));
+	}
+
+	@Test
+	public void getList() throws SQLException
+	{
+		when(rs.getString(1)).thenReturn("a,b", null);
+		assertEquals(RowBinder.getList(rs, 1), Arrays.asList("a", "b"));
+		assertNull(RowBinder.getList(rs, 1));
+	}
+}
@@ -0,0 +1,223 @@
+package org.molgenis.framework.db.jdbc;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.molgenis.util.Entity;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class StatementBatcherTest
+{
+	private Connection conn;
+	private Connection otherConn;
+	private List<Entity> entities;
+	private Map<Entity, String> names;
+	private Map<Entity, Integer> keys;
+
+	@BeforeMethod
+	public void setUp() throws Exception
+	{
+		Class.forName("org.hsqldb.jdbcDriver");
+		conn = DriverManager.getConnection("jdbc:hsqldb:mem:statementbatcher", "sa", "");
+		otherConn = DriverManager.getConnection("jdbc:hsqldb:mem:statementbatcher", "sa", "");
+		Statement stmt = conn.createStatement();
+		try
+		{
+			stmt.execute("CREATE TABLE item (id INTEGER IDENTITY, name VARCHAR(255))");
+		}
+		finally
+		{
+			stmt.close();
+		}
+
+		entities = new ArrayList<Entity>();
+		names = new IdentityHashMap<Entity, String>();
+		keys = new IdentityHashMap<Entity, Integer>();
+		for (int i = 0; i < 7; ++i)
+		{
+			Entity entity = mock(Entity.class);
+			entities.add(entity);
+			names.put(entity, "item" + i);
+		}
+	}
+
+	@AfterMethod
+	public void tearDown() throws SQLException
+	{
+		Statement stmt = conn.createStatement();
+		try
+		{
+			stmt.execute("DROP TABLE item");
+		}
+		finally
+		{
+			stmt.close();
+		}
+		otherConn.close();
+		conn.close();
+	}
+
+	@Test
+	public void execute_identity() throws SQLException
+	{
+		PreparedStatement pstmt = conn.prepareStatement("INSERT INTO item (name) VALUES (?)");
+		try
+		{
+			int updatedRows = new TestBatcher(3, StatementBatcher.Keys.IDENTITY)
+			{
+				@Override
+				public void bind(PreparedStatement pstmt, Entity entity) throws SQLException
+				{
+					super.bind(pstmt, entity);
+					// another session adds a row in between, so the keys of
+					// this list are not consecutive
+					if (names.get(entity).equals("item4")) insert(otherConn, "other");
+				}
+			}.execute(conn, pstmt, entities);
+			assertEquals(updatedRows, 7);
+		}
+		finally
+		{
+			pstmt.close();
+		}
+
+		// every entity got the key of its own row
+		for (Entity entity : entities)
+			assertEquals(keys.get(entity), selectKey(names.get(entity)));
+		assertEquals(new HashSet<Integer>(keys.values()).size(), 7);
+	}
+
+	@Test
+	public void execute_batches() throws SQLException
+	{
+		PreparedStatement pstmt = mock(PreparedStatement.class);
+		when(pstmt.executeBatch()).thenReturn(new int[]
+		{ 1, 1, 1 }, new int[]
+		{ 1, Statement.SUCCESS_NO_INFO, 1 }, new int[]
+		{ 1 });
+
+		assertEquals(new TestBatcher(3, StatementBatcher.Keys.NONE).execute(conn, pstmt, entities), 7);
+		verify(pstmt, times(7)).addBatch();
+		verify(pstmt, times(3)).executeBatch();
+		verify(pstmt).setString(1, "item6");
+		assertEquals(keys.size(), 0);
+	}
+
+	@Test
+	public void execute_generatedKeys() throws SQLException
+	{
+		PreparedStatement pstmt = mock(PreparedStatement.class);
+		when(pstmt.executeBatch()).thenReturn(new int[]
+		{ 1, 1, 1 }, new int[]
+		{ 1, 1, 1 }, new int[]
+		{ 1 });
+		ResultSet batch1Keys = mockKeys(10, 11, 12);
+		ResultSet batch2Keys = mockKeys(20, 21, 22);
+		ResultSet batch3Keys = mockKeys(30);
+		when(pstmt.getGeneratedKeys()).thenReturn(batch1Keys, batch2Keys, batch3Keys);
+
+		new TestBatcher(3, StatementBatcher.Keys.GENERATED_KEYS).execute(conn, pstmt, entities);
+		int[] expectedKeys = new int[]
+		{ 10, 11, 12, 20, 21, 22, 30 };
+		for (int i = 0; i < expectedKeys.length; ++i)
+			assertEquals(keys.get(entities.get(i)), Integer.valueOf(expectedKeys[i]));
+		verify(batch3Keys).close();
+	}
+
+	@Test(expectedExceptions = SQLException.class)
+	public void execute_missingGeneratedKeys() throws SQLException
+	{
+		PreparedStatement pstmt = mock(PreparedStatement.class);
+		when(pstmt.executeBatch()).thenReturn(new int[]
+		{ 1, 1, 1 });
+		ResultSet batchKeys = mockKeys(10, 11);
+		when(pstmt.getGeneratedKeys()).thenReturn(batchKeys);
+
+		new TestBatcher(3, StatementBatcher.Keys.GENERATED_KEYS).execute(conn, pstmt, entities.subList(0, 3));
+	}
+
+	private static ResultSet mockKeys(Integer... keys) throws SQLException
+	{
+		ResultSet rs = mock(ResultSet.class);
+		Boolean[] next = new Boolean[keys.length];
+		for (int i = 0; i < keys.length; ++i)
+			next[i] = i + 1 < keys.length;
+		when(rs.next()).thenReturn(keys.length > 0, next);
+		when(rs.getInt(1)).thenReturn(keys[0], Arrays.copyOfRange(keys, 1, keys.length));
+		return rs;
+	}
+
+	private static void insert(Connection conn, String name) throws SQLException
+	{
+		PreparedStatement pstmt = conn.prepareStatement("INSERT INTO item (name) VALUES (?)");
+		try
+		{
+			pstmt.setString(1, name);
+			pstmt.executeUpdate();
+		}
+		finally
+		{
+			pstmt.close();
+		}
+	}
+
+	private Integer selectKey(String name) throws SQLException
+	{
+		PreparedStatement pstmt = conn.prepareStatement("SELECT id FROM item WHERE name = ?");
+		try
+		{
+			pstmt.setString(1, name);
+			ResultSet rs = pstmt.executeQuery();
+			try
+			{
+				return rs.next() ? rs.getInt(1) : null;
+			}
+			finally
+			{
+				rs.close();
+			}
+		}
+		finally
+		{
+			pstmt.close();
+		}
+	}
+
+	private class TestBatcher extends StatementBatcher<Entity>
+	{
+		public TestBatcher(int batchSize, Keys keys)
+		{
+			super(batchSize, keys);
+		}
+
+		@Override
+		public void bind(PreparedStatement pstmt, Entity entity) throws SQLException
+		{
+			pstmt.setString(1, names.get(entity));
+		}
+
+		@Override
+		protected void setKey(Entity entity, int key)
+		{
+			keys.put(entity, key);
+		}
+	}
+}
@@ -0,0 +1,271 @@
+package org.molgenis.framework.db.paging;
+
+import static org.mockito.Matchers.anyVararg;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.molgenis.framework.db.Database;
+import org.molgenis.framework.db.DatabaseException;
+import org.molgenis.framework.db.QueryRule;
+import org.molgenis.framework.db.QueryRule.Operator;
+import org.molgenis.model.MolgenisModelException;
+import org.molgenis.model.elements.Field;
+import org.molgenis.model.elements.Model;
+import org.molgenis.util.AbstractEntity;
+import org.molgenis.util.Entity;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class KeysetPagerTest
+{
+	private Database db;
+	private Field nameField;
+	private List<List<QueryRule>> findRules;
+
+	@BeforeMethod
+	public void setUp() throws DatabaseException, MolgenisModelException
+	{
+		db = mock(Database.class);
+		findRules = new ArrayList<List<QueryRule>>();
+
+		nameField = mock(Field.class);
+		when(nameField.isNillable()).thenReturn(false);
+		org.molgenis.model.elements.Entity entity = mock(org.molgenis.model.elements.Entity.class);
+		when(entity.getAllField("name")).thenReturn(nameField);
+		Model model = mock(Model.class);
+		when(model.getEntity("TestEntity")).thenReturn(entity);
+		when(db.getMetaData()).thenReturn(model);
+
+		when(db.count(eq(TestEntity.class), (QueryRule[]) anyVararg())).thenReturn(25);
+		when(db.find(eq(TestEntity.class), (QueryRule[]) anyVararg())).thenAnswer(new Answer<List<TestEntity>>()
+		{
+			@Override
+			public List<TestEntity> answer(InvocationOnMock invocation) throws Throwable
+			{
+				List<QueryRule> rules = new ArrayList<QueryRule>();
+				Object[] args = invocation.getArguments();
+				for (int i = 1; i < args.length; ++i)
+				{
+					if (args[i] instanceof QueryRule[]) rules.addAll(Arrays.asList((QueryRule[]) args[i]));
+					else
+						rules.add((QueryRule) args[i]);
+				}
+				findRules.add(rules);
+
+				int limit = 10;
+				for (QueryRule rule : rules)
+					if (rule.getOperator() == Operator.LIMIT) limit = (Integer) rule.getValue();
+				List<TestEntity> entities = new ArrayList<TestEntity>();
+				for (int i = 0; i < limit; ++i)
+					entities.add(new TestEntity(i, "name" + i));
+				return entities;
+			}
+		});
+	}
+
+	@Test
+	public void first() throws DatabaseException
+	{
+		KeysetPager<TestEntity> pager = new KeysetPager<TestEntity>(TestEntity.class, "name");
+		assertEquals(pager.getPage(db).size(), 10);
+
+		List<QueryRule> rules = findRules.get(0);
+		assertEquals(rules, Arrays.asList(new QueryRule(Operator.SORTASC, "name"), new QueryRule(Operator.SORTASC,
+				"id"), new QueryRule(Operator.LIMIT, 10)));
+	}
+
+	@Test
+	public void next() throws DatabaseException
+	{
+		KeysetPager<TestEntity> pager = new KeysetPager<TestEntity>(TestEntity.class, "name");
+		pager.first(db);
+		pager.next(db);
+
+		// seek from the last entity of the first page
+		List<QueryRule> rules = findRules.get(1);
+		assertEquals(rules.get(0), new QueryRule(new QueryRule("name", Operator.GREATER, "name9"), new QueryRule(
+				Operator.OR), new QueryRule(new QueryRule("name", Operator.EQUALS, "name9"), new QueryRule("id",
+				Operator.GREATER_EQUAL, 9))));
+		assertTrue(rules.contains(new QueryRule(Operator.SORTASC, "name")));
+		assertTrue(rules.contains(new QueryRule(Operator.OFFSET, 1)));
+	}
+
+	@Test
+	public void next_nillableOrderByField() throws DatabaseException
+	{
+		when(nameField.isNillable()).thenReturn(true);
+		when(db.count(eq(TestEntity.class), (QueryRule[]) anyVararg())).thenReturn(100);
+		KeysetPager<TestEntity> pager = new KeysetPager<TestEntity>(TestEntity.class, "name");
+		pager.first(db);
+		pager.next(db);
+
+		// seek predicates would skip null names, use an offset instead
+		List<QueryRule> rules = findRules.get(1);
+		assertEquals(rules, Arrays.asList(new QueryRule(Operator.SORTASC, "name"), new QueryRule(Operator.SORTASC,
+				"id"), new QueryRule(Operator.LIMIT, 10), new QueryRule(Operator.OFFSET, 10)));
+	}
+
+	@Test
+	public void last() throws DatabaseException
+	{
+		KeysetPager<TestEntity> pager = new KeysetPager<TestEntity>(TestEntity.class, "name");
+		List<TestEntity> page = pager.last(db);
+
+		// seek backward from the last entity and restore the order
+		assertEquals(page.size(), 5);
+		assertEquals(page.get(0).get("id"), 4);
+		List<QueryRule> rules = findRules.get(0);
+		assertTrue(rules.contains(new QueryRule(Operator.SORTDESC, "name")));
+		assertTrue(rules.contains(new QueryRule(Operator.LIMIT, 5)));
+		for (QueryRule rule : rules)
+			assertFalse(rule.getOperator() == Operator.OFFSET);
+	}
+
+	@Test
+	public void getCount_cached() throws DatabaseException
+	{
+		KeysetPager<TestEntity> pager = new KeysetPager<TestEntity>(TestEntity.class, "name");
+		assertEquals(pager.getCount(db), 25);
+		pager.next(db);
+		assertEquals(pager.getCount(db), 25);
+		verify(db, times(1)).count(eq(TestEntity.class), (QueryRule[]) anyVararg());
+
+		pager.invalidate();
+		pager.getCount(db);
+		verify(db, times(2)).count(eq(TestEntity.class), (QueryRule[]) anyVararg());
+
+		pager.addFilter(new QueryRule("name", Operator.EQUALS, "name0"));
+		pager.getCount(db);
+		verify(db, times(3)).count(eq(TestEntity.class), (QueryRule[]) anyVararg());
+	}
+
+	@Test
+	public void getPage_countChanged() throws DatabaseException
+	{
+		when(db.count(eq(TestEntity.class), (QueryRule[]) anyVararg())).thenReturn(100);
+		KeysetPager<TestEntity> pager = new KeysetPager<TestEntity>(TestEntity.class, "name");
+		pager.first(db);
+
+		// entities were added by others, the bookmarks no longer match their
+		// offsets
+		when(db.count(eq(TestEntity.class), (QueryRule[]) anyVararg())).thenReturn(101);
+		pager.invalidateCount();
+		pager.next(db);
+
+		List<QueryRule> rules = findRules.get(1);
+		assertEquals(rules, Arrays.asList(new QueryRule(Operator.SORTASC, "name"), new QueryRule(Operator.SORTASC,
+				"id"), new QueryRule(Operator.LIMIT, 10), new QueryRule(Operator.OFFSET, 10)));
+	}
+
+	@Test
+	public void getPage_filterChanged() throws DatabaseException
+	{
+		KeysetPager<TestEntity> pager = new KeysetPager<TestEntity>(TestEntity.class, "name");
+		pager.getPage(db);
+		pager.getPage(db);
+		assertEquals(findRules.size(), 1);
+
+		pager.addFilter(new QueryRule("name", Operator.EQUALS, "name0"));
+		pager.getPage(db);
+		assertEquals(findRules.size(), 2);
+		assertEquals(findRules.get(1).get(0), new QueryRule("name", Operator.EQUALS, "name0"));
+	}
+
+	public static class TestEntity extends AbstractEntity
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final Map<String, Object> map = new HashMap<String, Object>();
+
+		public TestEntity()
+		{
+		}
+
+		public TestEntity(Integer id, String name)
+		{
+			map.put("id", id);
+			map.put("name", name);
+		}
+
+		@Override
+		public void set(org.molgenis.util.tuple.Tuple values, boolean strict) throws Exception
+		{
+			for (String colName : values.getColNames())
+				map.put(colName, values.get(colName));
+		}
+
+		@Override
+		public Object get(String columnName)
+		{
+			return map.get(columnName);
+		}
+
+		@Override
+		public String getIdField()
+		{
+			return "id";
+		}
+
+		@Override
+		public Object getIdValue()
+		{
+			return map.get("id");
+		}
+
+		@Override
+		public List<String> getLabelFields()
+		{
+			return Arrays.asList("name");
+		}
+
+		@Override
+		public Vector<String> getFields()
+		{
+			return new Vector<String>(Arrays.asList("id", "name"));
+		}
+
+		@Override
+		public Vector<String> getFields(boolean skipAutoIds)
+		{
+			return getFields();
+		}
+
+		@Override
+		public String getFields(String sep)
+		{
+			return "id" + sep + "name";
+		}
+
+		@Override
+		public void validate() throws Exception
+		{
+		}
+
+		@Override
+		public Entity create(org.molgenis.util.tuple.Tuple tuple) throws Exception
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public String getXrefIdFieldName(String fieldName)
+		{
+			return null;
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package org.molgenis.framework.server;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.molgenis.framework.server.AccessLog.LatencyHistogram;
+import org.testng.annotations.Test;
+
+public class AccessLogTest
+{
+	@Test
+	public void log()
+	{
+		AccessLog accessLog = new AccessLog(2);
+		try
+		{
+			accessLog.log("/api/R", "/api/R/source.R", "localhost", null, 0, 3, null);
+			accessLog.log("/api/R", "/api/R/source.R", "localhost", "admin", 0, 5, null);
+			accessLog.log("/xref", "/xref/find", "localhost", null, 0, 1, new IOException("failed"));
+			assertEquals(accessLog.getHistograms().keySet().toString(), "[/api/R, /xref]");
+			assertEquals(accessLog.getHistogram("/api/R").getCount(), 2);
+			assertEquals(accessLog.getHistogram("/xref").getCount(), 1);
+			assertEquals(accessLog.getNrDropped(), 0);
+		}
+		finally
+		{
+			accessLog.close();
+		}
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void AccessLog_negativeSampleRate()
+	{
+		new AccessLog(-1);
+	}
+
+	@Test
+	public void getBucket()
+	{
+		assertEquals(LatencyHistogram.getBucket(0), 0);
+		assertEquals(LatencyHistogram.getBucket(1), 1);
+		assertEquals(LatencyHistogram.getBucket(2), 2);
+		assertEquals(LatencyHistogram.getBucket(3), 2);
+		assertEquals(LatencyHistogram.getBucket(4), 3);
+		assertEquals(LatencyHistogram.getBucket(Long.MAX_VALUE), LatencyHistogram.NR_BUCKETS - 1);
+	}
+
+	@Test
+	public void latencyHistogram()
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(histogram.getPercentile(50), 0);
+		for (int i = 0; i < 90; ++i)
+			histogram.record(2);
+		for (int i = 0; i < 10; ++i)
+			histogram.record(100);
+		assertEquals(histogram.getCount(), 100);
+		assertEquals(histogram.getMax(), 100);
+		assertEquals(histogram.getMean(), 11.8, 1e-9);
+		assertEquals(histogram.getPercentile(50), 3);
+		assertEquals(histogram.getPercentile(90), 3);
+		assertEquals(histogram.getPercentile(95), 100);
+		assertEquals(histogram.getPercentile(100), 100);
+	}
+}
@@ -0,0 +1,55 @@
+package org.molgenis.framework.server;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+public class ServiceRouterTest
+{
+	private static ServiceRouter<String> createRouter()
+	{
+		Map<String, String> services = new LinkedHashMap<String, String>();
+		services.put("/", "file");
+		services.put("/api/R", "r");
+		services.put("/api/REST", "rest");
+		services.put("/molgenis.do", "gui");
+		return new ServiceRouter<String>(services);
+	}
+
+	@Test
+	public void route()
+	{
+		ServiceRouter<String> router = createRouter();
+		assertEquals(router.route("/api/R/source.R").getService(), "r");
+		assertEquals(router.route("/api/R/source.R").getServicePath(), "/api/R");
+		assertEquals(router.route("/api/REST/json").getService(), "rest");
+		assertEquals(router.route("/api/R").getService(), "r");
+		assertEquals(router.route("/molgenis.do").getService(), "gui");
+	}
+
+	@Test
+	public void route_fallback()
+	{
+		ServiceRouter<String> router = createRouter();
+		assertEquals(router.route("/api/Rx").getService(), "r");
+		assertEquals(router.route("/api").getService(), "file");
+		assertEquals(router.route("/css/main.css").getServicePath(), "/");
+		assertEquals(router.route("/").getService(), "file");
+	}
+
+	@Test
+	public void route_noMatch()
+	{
+		Map<String, String> services = Collections.singletonMap("/xref", "xref");
+		ServiceRouter<String> router = new ServiceRouter<String>(services);
+		assertNull(router.route("/tmpfile"));
+		assertNull(router.route("/xre"));
+		assertNull(router.route(""));
+		assertEquals(router.route("/xref/find").getService(), "xref");
+	}
+}
@@ -0,0 +1,63 @@
+package org.molgenis.framework.tupletable.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.Test;
+
+public class CsvRowIndexTest
+{
+	private static final Charset CHARSET_UTF8 = Charset.forName("UTF-8");
+
+	@Test
+	public void create() throws IOException
+	{
+		String csv = "col1,col2\nr0,r0\nr1,\"r\n1\"\r\nr2,r2\n\nr4,\"\\\"\"\nr5,r5";
+		CsvRowIndex index = CsvRowIndex.create(new ByteArrayInputStream(csv.getBytes(CHARSET_UTF8)), 2);
+		assertEquals(index.getRowCount(), 6);
+		assertEquals(index.getHeaderEnd(), csv.indexOf("r0"));
+		assertEquals(index.getIndexedRow(3), 2);
+		assertEquals(index.getOffset(3), csv.indexOf("r2"));
+		assertEquals(index.getOffset(5), csv.indexOf("r4"));
+	}
+
+	@Test
+	public void create_headerOnly() throws IOException
+	{
+		String csv = "col1,col2";
+		CsvRowIndex index = CsvRowIndex.create(new ByteArrayInputStream(csv.getBytes(CHARSET_UTF8)), 2);
+		assertEquals(index.getRowCount(), 0);
+		assertEquals(index.getHeaderEnd(), csv.length());
+		assertEquals(index.getOffset(0), csv.length());
+	}
+
+	@Test
+	public void get() throws IOException
+	{
+		File file = File.createTempFile("CsvRowIndexTest", null);
+		try
+		{
+			FileUtils.write(file, "col1\nr0\nr1\n", CHARSET_UTF8);
+			assertNull(CsvRowIndex.load(file));
+			assertEquals(CsvRowIndex.get(file).getRowCount(), 2);
+			assertNotNull(CsvRowIndex.load(file));
+
+			// index is out of date after the file changed
+			FileUtils.write(file, "col1\nr0\nr1\nr2\n", CHARSET_UTF8);
+			assertNull(CsvRowIndex.load(file));
+			assertEquals(CsvRowIndex.get(file).getRowCount(), 3);
+		}
+		finally
+		{
+			file.delete();
+			CsvRowIndex.getIndexFile(file).delete();
+		}
+	}
+}
@@ -40,6 +40,7 @@ public class CsvTableTest
 		finally
 		{
 			file.delete();
+			CsvRowIndex.getIndexFile(file).delete();
 		}
 	}
 
@@ -100,10 +101,46 @@ public class CsvTableTest
 		finally
 		{
 			file.delete();
+			CsvRowIndex.getIndexFile(file).delete();
 		}
 
 	}
 
+	@Test
+	public void testLimitOffset_File_largeOffset() throws Exception
+	{
+		File file = File.createTempFile("CsvTableFile_file", null);
+		try
+		{
+			StringBuilder csvBuilder = new StringBuilder("id,name\r\n");
+			for (int i = 0; i < 1000; ++i)
+				csvBuilder.append(i).append(",\"name\n").append(i).append("\"\r\n");
+			FileUtils.write(file, csvBuilder.toString(), Charset.forName("UTF-8"));
+
+			TupleTable table = new CsvTable(file);
+			assertEquals(table.getCount(), 1000);
+			table.setLimitOffset(10, 555);
+			List<Tuple> rows = table.getRows();
+			assertEquals(rows.size(), 10);
+			assertEquals(rows.get(0).getString("id"), "555");
+			assertEquals(rows.get(9).getString("name"), "name\n564");
+			table.close();
+
+			// read the persisted index
+			table = new CsvTable(file);
+			table.setLimitOffset(10, 995);
+			rows = table.getRows();
+			assertEquals(rows.size(), 5);
+			assertEquals(rows.get(0).getString("id"), "995");
+			table.close();
+		}
+		finally
+		{
+			file.delete();
+			CsvRowIndex.getIndexFile(file).delete();
+		}
+	}
+
 	@Test
 	public void testColLimit() throws Exception
 	{
@@ -3,6 +3,7 @@ package org.molgenis.framework.tupletable.impl;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.io.IOException;
 import java.sql.SQLException;
 import java.util.Arrays;
 
@@ -12,6 +13,7 @@ import org.molgenis.framework.db.QueryRule;
 import org.molgenis.framework.db.QueryRule.Operator;
 import org.molgenis.framework.tupletable.TableException;
 import org.molgenis.framework.tupletable.TupleTable;
+import org.molgenis.io.TupleReader;
 import org.molgenis.util.tuple.Tuple;
 import org.testng.Assert;
 import org.testng.annotations.Test;
@@ -19,17 +21,23 @@ import org.testng.annotations.Test;
 public class JdbcTableTest
 {
 	@Test
-	public void testJDBCTable() throws SQLException, DatabaseException, TableException
+	public void testJDBCTable() throws SQLException, DatabaseException, TableException, IOException
 	{
 		Tuple tuple0 = mock(Tuple.class);
 		when(tuple0.getColNames()).thenReturn(Arrays.asList("Name", "Continent")).getMock();
 		when(tuple0.getString("Name")).thenReturn("Netherlands");
 
+		TupleReader reader = mock(TupleReader.class);
+		when(reader.colNamesIterator()).thenReturn(Arrays.asList("Name", "Continent").iterator());
+		when(reader.iterator()).thenReturn(Arrays.asList(tuple0).iterator());
+
 		Database db = mock(Database.class);
 		String query = "SELECT Name, Continent FROM Country";
 		QueryRule queryRule = new QueryRule("Code", Operator.EQUALS, "NLD");
-		when(db.sql(query, queryRule)).thenReturn(Arrays.asList(tuple0));
-		when(db.sql("SELECT COUNT(*) FROM Country", queryRule)).thenReturn(Arrays.asList(tuple0));
+		when(db.sqlReader("SELECT * FROM (SELECT Name, Continent FROM Country) tupletable WHERE 1 = 0")).thenReturn(
+				reader);
+		when(db.sqlReader("SELECT * FROM (SELECT Name, Continent FROM Country) tupletable", queryRule)).thenReturn(
+				reader);
 
 		TupleTable jdbcTable = new JdbcTable(db, query, Arrays.asList(queryRule));
 		try
@@ -52,4 +60,51 @@ public class JdbcTableTest
 			jdbcTable.close();
 		}
 	}
+
+	@Test
+	public void getCount() throws DatabaseException, TableException
+	{
+		Tuple countTuple = mock(Tuple.class);
+		when(countTuple.getInt(1)).thenReturn(3);
+
+		Database db = mock(Database.class);
+		QueryRule queryRule = new QueryRule("Code", Operator.EQUALS, "NLD");
+		when(db.sql("SELECT COUNT(*) FROM (SELECT Name, Continent FROM Country) tupletable", queryRule))
+				.thenReturn(Arrays.asList(countTuple));
+
+		TupleTable jdbcTable = new JdbcTable(db, "SELECT Name, Continent FROM Country;", Arrays.asList(queryRule,
+				new QueryRule(Operator.SORTASC, "Name")));
+		Assert.assertEquals(jdbcTable.getCount(), 3);
+	}
+
+	@Test
+	public void iterator_window() throws DatabaseException, TableException, IOException
+	{
+		TupleReader columnReader = mock(TupleReader.class);
+		when(columnReader.colNamesIterator()).thenReturn(Arrays.asList("Name", "Continent").iterator());
+		TupleReader rowReader = mock(TupleReader.class);
+		when(rowReader.iterator()).thenReturn(Arrays.<Tuple> asList().iterator());
+
+		Database db = mock(Database.class);
+		String query = "SELECT Name, Continent FROM Country";
+		QueryRule sortRule = new QueryRule(Operator.SORTDESC, "Continent");
+		when(db.sqlReader("SELECT * FROM (SELECT Name, Continent FROM Country) tupletable WHERE 1 = 0")).thenReturn(
+				columnReader);
+		when(
+				db.sqlReader("SELECT Continent FROM (SELECT Name, Continent FROM Country) tupletable", sortRule,
+						new QueryRule(Operator.LIMIT, 10), new QueryRule(Operator.OFFSET, 20))).thenReturn(rowReader);
+
+		TupleTable jdbcTable = new JdbcTable(db, query, Arrays.asList(sortRule));
+		try
+		{
+			jdbcTable.setLimitOffset(10, 20);
+			jdbcTable.setColLimit(1);
+			jdbcTable.setColOffset(1);
+			Assert.assertFalse(jdbcTable.iterator().hasNext());
+		}
+		finally
+		{
+			jdbcTable.close();
+		}
+	}
 }
@@ -50,7 +50,7 @@ public class ExcelExporterTest
 		when(tableModel.iterator()).thenReturn(Arrays.<Tuple> asList(row1, row2).iterator());
 
 		ExcelExporter excelExporter = new ExcelExporter(tableModel);
-		File xlsFile = File.createTempFile("table", ".xls");
+		File xlsFile = File.createTempFile("table", ".xlsx");
 		try
 		{
 			excelExporter.export(new FileOutputStream(xlsFile));
@@ -110,7 +110,7 @@ public class ExcelExporterTest
 		when(tableModel.iterator()).thenReturn(Arrays.<Tuple> asList(row1, row2).iterator());
 
 		ExcelExporter excelExporter = new ExcelExporter(tableModel);
-		File xlsFile = File.createTempFile("table", ".xls");
+		File xlsFile = File.createTempFile("table", ".xlsx");
 		try
 		{
 			excelExporter.export(new FileOutputStream(xlsFile));
@@ -0,0 +1,143 @@
+package org.molgenis.framework.ui;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.molgenis.framework.ui.html.WidgetFactory;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import freemarker.template.ObjectWrapper;
+import freemarker.template.TemplateException;
+
+public class FreemarkerEngineTest
+{
+	private static final String TEMPLATE = "templates/org/molgenis/framework/ui/FreemarkerEngineTest.ftl";
+
+	private FreemarkerEngine engine;
+
+	@BeforeMethod
+	public void setUp()
+	{
+		engine = new FreemarkerEngine(10, 60, null);
+	}
+
+	@Test
+	public void process() throws IOException, TemplateException
+	{
+		StringWriter writer = new StringWriter();
+		engine.process(TEMPLATE, createArgs(), writer);
+		assertEquals(writer.toString(), "Hello world!");
+	}
+
+	@Test
+	public void processRelativeToContextClass() throws IOException, TemplateException
+	{
+		StringWriter writer = new StringWriter();
+		engine.process("FreemarkerEngineTestRelative.ftl", createArgs(), writer, WidgetFactory.class);
+		assertEquals(writer.toString(), "Bye world!");
+	}
+
+	@Test(expectedExceptions = FileNotFoundException.class)
+	public void processUnknownTemplate() throws IOException, TemplateException
+	{
+		engine.process("FreemarkerEngineTestRelative.ftl", createArgs(), new StringWriter());
+	}
+
+	@Test
+	public void processClassTemplate() throws IOException, TemplateException
+	{
+		// the plugin template shadows the MOLGENIS template with the same name
+		StringWriter writer = new StringWriter();
+		engine.processClassTemplate("FreemarkerEngineTestShadowed.ftl", createArgs(), writer,
+				ObjectWrapper.DEFAULT_WRAPPER, WidgetFactory.class);
+		assertEquals(writer.toString(), "plugin world with helper");
+
+		// views look up templates relative to the model last
+		writer = new StringWriter();
+		engine.process("FreemarkerEngineTestShadowed.ftl", createArgs(), writer, WidgetFactory.class);
+		assertEquals(writer.toString(), "shared world");
+	}
+
+	@Test
+	public void processTemplateDir() throws IOException, TemplateException
+	{
+		File templateDir = createTempDir();
+		try
+		{
+			FileUtils.writeStringToFile(new File(templateDir, "FreemarkerEngineTestShadowed.ftl"), "dir ${name}");
+			StringWriter writer = new StringWriter();
+			new FreemarkerEngine(10, 60, templateDir).process("FreemarkerEngineTestShadowed.ftl", createArgs(), writer);
+			assertEquals(writer.toString(), "dir world");
+		}
+		finally
+		{
+			FileUtils.deleteDirectory(templateDir);
+		}
+	}
+
+	@Test(expectedExceptions = FileNotFoundException.class)
+	public void processFileOutsideTemplateDir() throws IOException, TemplateException
+	{
+		File templateDir = createTempDir();
+		try
+		{
+			File file = new File(templateDir, "FreemarkerEngineTestFile.ftl");
+			FileUtils.writeStringToFile(file, "file ${name}");
+			engine.process(file.getAbsolutePath(), createArgs(), new StringWriter());
+		}
+		finally
+		{
+			FileUtils.deleteDirectory(templateDir);
+		}
+	}
+
+	@Test
+	public void getTemplateCached() throws IOException
+	{
+		assertSame(engine.getTemplate(TEMPLATE), engine.getTemplate(TEMPLATE));
+	}
+
+	@Test
+	public void resolveTemplateName() throws IOException
+	{
+		assertEquals(engine.resolveTemplateName(TEMPLATE, WidgetFactory.class), TEMPLATE);
+		assertEquals(engine.resolveTemplateName("FreemarkerEngineTestRelative.ftl", FreemarkerEngine.class,
+				WidgetFactory.class), "org/molgenis/framework/ui/html/FreemarkerEngineTestRelative.ftl");
+		assertEquals(engine.resolveTemplateName("ApplicationView.ftl", WidgetFactory.class), "ApplicationView.ftl");
+	}
+
+	@Test
+	public void precompile()
+	{
+		List<String> templateNames = engine.precompile(getClass().getClassLoader());
+		assertTrue(templateNames.contains(TEMPLATE));
+		assertTrue(templateNames.contains("ApplicationView.ftl"));
+		assertTrue(templateNames.contains("org/molgenis/framework/ui/html/FreemarkerEngineTestRelative.ftl"));
+		for (String templateName : templateNames)
+			assertFalse(templateName.startsWith("org/molgenis/generators/"), templateName);
+	}
+
+	private static File createTempDir() throws IOException
+	{
+		File dir = File.createTempFile("freemarker", null);
+		if (!dir.delete() || !dir.mkdir()) throw new IOException("failed to create " + dir);
+		return dir;
+	}
+
+	private Map<String, Object> createArgs()
+	{
+		return Collections.<String, Object> singletonMap("name", "world");
+	}
+}
@@ -0,0 +1,206 @@
+package org.molgenis.generators;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.molgenis.MolgenisOptions;
+import org.molgenis.model.MolgenisModelParser;
+import org.molgenis.model.MolgenisModelValidator;
+import org.molgenis.model.elements.Model;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+
+public class GeneratorFingerprintsTest
+{
+	private static final String MODEL_XML = "<molgenis name=\"org.molgenis\">\n" + "	<module name=\"model\">\n"
+			+ "		<entity name=\"Characteristic\">\n"
+			+ "			<field name=\"id\" type=\"autoid\" />\n"
+			+ "			<field name=\"identifier\" type=\"string\" />\n" + "		</entity>\n"
+			+ "		<entity name=\"Feature\" extends=\"Characteristic\">\n"
+			+ "			<field name=\"dataType\" type=\"string\" />\n" + "		</entity>\n"
+			+ "		<entity name=\"Category\">\n" + "			<field name=\"id\" type=\"autoid\" />\n"
+			+ "			<field name=\"feature\" type=\"xref\" xref_entity=\"Feature\" />\n" + "%s		</entity>\n"
+			+ "		<entity name=\"Unrelated\">\n" + "			<field name=\"id\" type=\"autoid\" />\n"
+			+ "		</entity>\n" + "	</module>\n" + "</molgenis>";
+
+	private File dir;
+	private Generator generator;
+
+	@BeforeMethod
+	public void setUp() throws IOException
+	{
+		dir = File.createTempFile("fingerprints", null);
+		if (!dir.delete() || !dir.mkdir()) throw new IOException("could not create " + dir);
+		generator = new TestGenerator();
+	}
+
+	@AfterMethod
+	public void tearDown() throws IOException
+	{
+		FileUtils.deleteDirectory(dir);
+	}
+
+	@Test
+	public void getEntityFingerprintSameModel() throws Exception
+	{
+		GeneratorFingerprints fingerprints1 = createFingerprints(createModel(""));
+		GeneratorFingerprints fingerprints2 = createFingerprints(createModel(""));
+		for (String entityName : new String[]
+		{ "Characteristic", "Feature", "Category", "Unrelated" })
+		{
+			assertEquals(fingerprints1.getEntityFingerprint(createModel("").getEntity(entityName)),
+					fingerprints2.getEntityFingerprint(createModel("").getEntity(entityName)));
+		}
+	}
+
+	@Test
+	public void getEntityFingerprintChangedField() throws Exception
+	{
+		Model model = createModel("");
+		Model changedModel = createModel("			<field name=\"description\" type=\"text\" />\n");
+		GeneratorFingerprints fingerprints = createFingerprints(model);
+		GeneratorFingerprints changedFingerprints = createFingerprints(changedModel);
+
+		// Feature is referred to by Category, Characteristic is its superclass
+		for (String entityName : new String[]
+		{ "Characteristic", "Feature", "Category" })
+		{
+			assertNotEquals(fingerprints.getEntityFingerprint(model.getEntity(entityName)),
+					changedFingerprints.getEntityFingerprint(changedModel.getEntity(entityName)));
+		}
+		assertEquals(fingerprints.getEntityFingerprint(model.getEntity("Unrelated")),
+				changedFingerprints.getEntityFingerprint(changedModel.getEntity("Unrelated")));
+	}
+
+	@Test
+	public void isUpToDate() throws Exception
+	{
+		File target = new File(dir, "Target.java");
+
+		GeneratorFingerprints fingerprints = createFingerprints(createModel(""));
+		assertFalse(fingerprints.isUpToDate(generator, target, "0123"));
+		FileUtils.writeStringToFile(target, "generated");
+		fingerprints.save();
+
+		fingerprints = createFingerprints(createModel(""));
+		assertTrue(fingerprints.isUpToDate(generator, target, "0123"));
+		assertFalse(fingerprints.isUpToDate(generator, target, "4567"));
+	}
+
+	@Test
+	public void saveRemovesStaleFiles() throws Exception
+	{
+		File staleTarget = new File(dir, "Stale.java");
+		File otherTarget = new File(dir, "Other.java");
+		FileUtils.writeStringToFile(staleTarget, "generated");
+		FileUtils.writeStringToFile(otherTarget, "generated");
+
+		GeneratorFingerprints fingerprints = createFingerprints(createModel(""));
+		fingerprints.attach(generator);
+		fingerprints.isUpToDate(generator, staleTarget, "0123");
+		fingerprints.isUpToDate(new Generator()
+		{
+			@Override
+			public void generate(Model model, MolgenisOptions options)
+			{
+			}
+
+			@Override
+			public String getDescription()
+			{
+				return "other generator";
+			}
+		}, otherTarget, "0123");
+		fingerprints.save();
+
+		// only the file of the generator that ran is removed
+		fingerprints = createFingerprints(createModel(""));
+		fingerprints.attach(generator);
+		fingerprints.save();
+		assertFalse(staleTarget.exists());
+		assertTrue(otherTarget.exists());
+	}
+
+	@Test
+	public void applyTemplateIgnoresDates() throws Exception
+	{
+		File target = new File(dir, "Target.java");
+		FileUtils.writeStringToFile(target, "/* generated on January 1, 2000, 12:00:00 */\nclass Target\n", "UTF-8");
+		Template template = new Template("Target.java.ftl", new StringReader("/* generated on ${datetime} */\n"
+				+ "class ${name}\n"), new Configuration());
+		Map<String, Object> templateArgs = generator.createTemplateArguments(new MolgenisOptions());
+		templateArgs.put("name", "Target");
+
+		// only the date differs: keep the file when generating incrementally
+		createFingerprints(createModel("")).attach(generator);
+		assertFalse(generator.applyTemplate(template, templateArgs, target));
+		assertTrue(FileUtils.readFileToString(target, "UTF-8").contains("January 1, 2000"));
+
+		templateArgs.put("name", "ChangedTarget");
+		assertTrue(generator.applyTemplate(template, templateArgs, target));
+
+		generator.setFingerprints(null);
+		FileUtils.writeStringToFile(target, "/* generated on January 1, 2000, 12:00:00 */\nclass Target\n", "UTF-8");
+		templateArgs.put("name", "Target");
+		assertTrue(generator.applyTemplate(template, templateArgs, target));
+	}
+
+	@Test
+	public void applyTemplateComparesOtherDates() throws Exception
+	{
+		File target = new File(dir, "Target.java");
+		FileUtils.writeStringToFile(target, "/* generated on January 1, 2000 */\nclass Target // since March 3, 2010\n",
+				"UTF-8");
+		Template template = new Template("Target.java.ftl", new StringReader("/* generated on ${date} */\n"
+				+ "class Target // since ${since}\n"), new Configuration());
+		Map<String, Object> templateArgs = generator.createTemplateArguments(new MolgenisOptions());
+		createFingerprints(createModel("")).attach(generator);
+
+		templateArgs.put("since", "March 3, 2010");
+		assertFalse(generator.applyTemplate(template, templateArgs, target));
+
+		// a date that is not the generation date changed
+		templateArgs.put("since", "March 4, 2010");
+		assertTrue(generator.applyTemplate(template, templateArgs, target));
+		assertTrue(FileUtils.readFileToString(target, "UTF-8").contains("March 4, 2010"));
+	}
+
+	private GeneratorFingerprints createFingerprints(Model model) throws Exception
+	{
+		return new GeneratorFingerprints(model, new MolgenisOptions(), new File(dir,
+				GeneratorFingerprints.FILE_NAME));
+	}
+
+	private static Model createModel(String extraCategoryFields) throws Exception
+	{
+		Model model = MolgenisModelParser.parseDbSchema(String.format(MODEL_XML, extraCategoryFields));
+		MolgenisModelValidator.validate(model, new MolgenisOptions());
+		return model;
+	}
+
+	private static class TestGenerator extends Generator
+	{
+		@Override
+		public void generate(Model model, MolgenisOptions options)
+		{
+		}
+
+		@Override
+		public String getDescription()
+		{
+			return "test generator";
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package org.molgenis.generators;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.molgenis.MolgenisOptions;
+import org.molgenis.model.elements.Model;
+import org.testng.annotations.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+
+public class GeneratorTest
+{
+	@Test
+	public void applyTemplate() throws IOException, TemplateException
+	{
+		Generator generator = new Generator()
+		{
+			@Override
+			public void generate(Model model, MolgenisOptions options)
+			{
+			}
+
+			@Override
+			public String getDescription()
+			{
+				return "test generator";
+			}
+		};
+		Template template = new Template("test", new StringReader("Hello ${name}!"), new Configuration());
+		File target = File.createTempFile("GeneratorTest", ".java");
+		try
+		{
+			assertTrue(generator.applyTemplate(template, createArgs("world"), target));
+			assertEquals(FileUtils.readFileToString(target, "UTF-8"), "Hello world!");
+
+			// unchanged content is not written again
+			assertFalse(generator.applyTemplate(template, createArgs("world"), target));
+
+			assertTrue(generator.applyTemplate(template, createArgs("everyone"), target));
+			assertEquals(FileUtils.readFileToString(target, "UTF-8"), "Hello everyone!");
+		}
+		finally
+		{
+			target.delete();
+		}
+	}
+
+	private static Map<String, Object> createArgs(String name)
+	{
+		return Collections.<String, Object> singletonMap("name", name);
+	}
+}
@@ -13,6 +13,10 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.Iterator;
 
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.molgenis.io.excel.ExcelWriter.FileFormat;
 import org.molgenis.io.processor.CellProcessor;
 import org.molgenis.util.tuple.KeyValueTuple;
 import org.molgenis.util.tuple.Tuple;
@@ -120,4 +124,75 @@ public class ExcelSheetWriterTest
 			excelReader.close();
 		}
 	}
+
+	@Test
+	public void writeXlsx() throws IOException
+	{
+		int nrRows = ExcelWriter.ROW_ACCESS_WINDOW_SIZE * 3;
+		ByteArrayOutputStream xlsxBos = new ByteArrayOutputStream();
+		ExcelWriter xlsxWriter = new ExcelWriter(xlsxBos, FileFormat.XLSX);
+		try
+		{
+			ExcelSheetWriter sheetWriter = (ExcelSheetWriter) xlsxWriter.createTupleWriter("sheet");
+			sheetWriter.writeColNames(Arrays.asList("col1", "col2"));
+			for (int i = 0; i < nrRows; ++i)
+			{
+				KeyValueTuple row = new KeyValueTuple();
+				row.set("col1", "val" + i);
+				row.set("col2", i);
+				sheetWriter.write(row);
+			}
+		}
+		finally
+		{
+			xlsxWriter.close();
+		}
+
+		ExcelReader excelReader = new ExcelReader(new ByteArrayInputStream(xlsxBos.toByteArray()), true);
+		try
+		{
+			int i = 0;
+			for (Tuple tuple : excelReader.getSheet("sheet"))
+			{
+				assertEquals(tuple.getString("col1"), "val" + i);
+				assertEquals(tuple.getInt("col2"), Integer.valueOf(i));
+				++i;
+			}
+			assertEquals(i, nrRows);
+		}
+		finally
+		{
+			excelReader.close();
+		}
+	}
+
+	@Test
+	public void writeContinuesOnNextSheet() throws IOException
+	{
+		Workbook workbook = new HSSFWorkbook();
+		ExcelSheetWriter sheetWriter = new ExcelSheetWriter(workbook, "abcdefghijklmnopqrstuvwxyz01234", 3, null);
+		sheetWriter.writeColNames(Arrays.asList("col1"));
+		for (int i = 0; i < 5; ++i)
+		{
+			KeyValueTuple row = new KeyValueTuple();
+			row.set("col1", "val" + i);
+			sheetWriter.write(row);
+		}
+
+		assertEquals(workbook.getNumberOfSheets(), 3);
+		Sheet sheet1 = workbook.getSheetAt(0);
+		assertEquals(sheet1.getSheetName(), "abcdefghijklmnopqrstuvwxyz01234");
+		assertEquals(sheet1.getLastRowNum(), 2);
+		assertEquals(sheet1.getRow(0).getCell(0).getStringCellValue(), "col1");
+		assertEquals(sheet1.getRow(2).getCell(0).getStringCellValue(), "val1");
+		Sheet sheet2 = workbook.getSheetAt(1);
+		assertEquals(sheet2.getSheetName(), "abcdefghijklmnopqrstuvwxyz0 (2)");
+		assertEquals(sheet2.getLastRowNum(), 2);
+		assertEquals(sheet2.getRow(0).getCell(0).getStringCellValue(), "col1");
+		assertEquals(sheet2.getRow(1).getCell(0).getStringCellValue(), "val2");
+		Sheet sheet3 = workbook.getSheetAt(2);
+		assertEquals(sheet3.getSheetName(), "abcdefghijklmnopqrstuvwxyz0 (3)");
+		assertEquals(sheet3.getLastRowNum(), 1);
+		assertEquals(sheet3.getRow(1).getCell(0).getStringCellValue(), "val4");
+	}
 }
@@ -0,0 +1,267 @@
+package org.molgenis.io.excel;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.molgenis.io.TupleReader;
+import org.molgenis.io.processor.CellProcessor;
+import org.molgenis.util.tuple.Tuple;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class XlsxReaderTest
+{
+	private static File XLSX_FILE;
+
+	private XlsxReader xlsxReader;
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws IOException
+	{
+		XSSFWorkbook workbook = new XSSFWorkbook();
+		Sheet sheet = workbook.createSheet("test");
+		Row header = sheet.createRow(0);
+		header.createCell(0).setCellValue("col1");
+		header.createCell(1).setCellValue("col2");
+		header.createCell(2).setCellValue("col3");
+		Row row1 = sheet.createRow(1);
+		row1.createCell(0).setCellValue("val1");
+		row1.createCell(1).setCellValue(2.0);
+		row1.createCell(2).setCellValue(true);
+		Row row2 = sheet.createRow(2);
+		row2.createCell(0).setCellValue(2.5);
+		// missing second cell
+		Cell formulaCell = row2.createCell(2);
+		formulaCell.setCellFormula("1+2");
+		workbook.getCreationHelper().createFormulaEvaluator().evaluateFormulaCell(formulaCell);
+		Row row3 = sheet.createRow(3);
+		CellStyle dateStyle = workbook.createCellStyle();
+		dateStyle.setDataFormat(workbook.getCreationHelper().createDataFormat().getFormat("yyyy-mm-dd"));
+		Cell dateCell = row3.createCell(1);
+		dateCell.setCellValue(new Date(0));
+		dateCell.setCellStyle(dateStyle);
+
+		workbook.createSheet("Blad2").createRow(0).createCell(0).setCellValue("col1");
+
+		XLSX_FILE = File.createTempFile("test", ".xlsx");
+		FileOutputStream fos = new FileOutputStream(XLSX_FILE);
+		try
+		{
+			workbook.write(fos);
+		}
+		finally
+		{
+			fos.close();
+		}
+	}
+
+	@AfterClass
+	public static void tearDownAfterClass()
+	{
+		XLSX_FILE.delete();
+	}
+
+	@BeforeMethod
+	public void setUp() throws IOException
+	{
+		xlsxReader = new XlsxReader(XLSX_FILE);
+	}
+
+	@AfterMethod
+	public void tearDown() throws IOException
+	{
+		xlsxReader.close();
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void XlsxReader() throws IOException
+	{
+		new XlsxReader(null);
+	}
+
+	@Test
+	public void getTableNames() throws IOException
+	{
+		List<String> tableNames = new ArrayList<String>();
+		for (String tableName : xlsxReader.getTableNames())
+			tableNames.add(tableName);
+		assertEquals(tableNames, Arrays.asList("test", "Blad2"));
+		assertNull(xlsxReader.getTupleReader("doesnotexist"));
+	}
+
+	@Test
+	public void colNamesIterator() throws IOException
+	{
+		Iterator<String> it = xlsxReader.getSheet("test").colNamesIterator();
+		assertEquals(it.next(), "col1");
+		assertEquals(it.next(), "col2");
+		assertEquals(it.next(), "col3");
+		assertFalse(it.hasNext());
+	}
+
+	@Test
+	public void iterator() throws IOException
+	{
+		TupleReader sheetReader = xlsxReader.getTupleReader("test");
+		try
+		{
+			Iterator<Tuple> it = sheetReader.iterator();
+			Tuple row1 = it.next();
+			assertEquals(row1.getString("col1"), "val1");
+			assertEquals(row1.getString("col2"), "2");
+			assertEquals(row1.getString("col3"), "true");
+			Tuple row2 = it.next();
+			assertEquals(row2.getString("col1"), "2.5");
+			assertNull(row2.getString("col2"));
+			assertEquals(row2.getString("col3"), "3");
+			Tuple row3 = it.next();
+			assertNull(row3.getString("col1"));
+			assertEquals(row3.getString("col2"), new Date(0).toString());
+			assertNull(row3.getString("col3"));
+			assertFalse(it.hasNext());
+		}
+		finally
+		{
+			sheetReader.close();
+		}
+	}
+
+	@Test
+	public void iterator_sameAsExcelReader() throws IOException
+	{
+		ExcelReader excelReader = new ExcelReader(XLSX_FILE);
+		try
+		{
+			Iterator<Tuple> it = xlsxReader.getSheet("test").iterator();
+			for (Tuple tuple : excelReader.getSheet("test"))
+			{
+				assertTrue(it.hasNext());
+				Tuple xlsxTuple = it.next();
+				for (String colName : tuple.getColNames())
+					assertEquals(xlsxTuple.getString(colName), tuple.getString(colName));
+			}
+			assertFalse(it.hasNext());
+		}
+		finally
+		{
+			excelReader.close();
+		}
+	}
+
+	@Test
+	public void addCellProcessor() throws IOException
+	{
+		CellProcessor headerProcessor = when(mock(CellProcessor.class).processHeader()).thenReturn(true).getMock();
+		CellProcessor dataProcessor = when(mock(CellProcessor.class).processData()).thenReturn(true).getMock();
+		xlsxReader.addCellProcessor(headerProcessor);
+		xlsxReader.addCellProcessor(dataProcessor);
+		for (TupleReader sheetReader : xlsxReader)
+			for (@SuppressWarnings("unused")
+			Tuple tuple : sheetReader)
+			{
+			}
+		verify(headerProcessor).process("col2");
+		verify(dataProcessor).process("val1");
+	}
+
+	@Test
+	public void iterator_externalEntityNotResolved() throws IOException
+	{
+		File secretFile = File.createTempFile("secret", ".txt");
+		File xlsxFile = File.createTempFile("xxe", ".xlsx");
+		try
+		{
+			FileUtils.writeStringToFile(secretFile, "secret");
+			String sheetXml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+					+ "<!DOCTYPE worksheet [<!ENTITY xxe SYSTEM \"" + secretFile.toURI() + "\">]>"
+					+ "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>"
+					+ "<row r=\"1\"><c r=\"A1\" t=\"inlineStr\"><is><t>col1</t></is></c></row>"
+					+ "<row r=\"2\"><c r=\"A2\" t=\"inlineStr\"><is><t>value&xxe;</t></is></c></row>"
+					+ "</sheetData></worksheet>";
+			replaceZipEntry(XLSX_FILE, xlsxFile, "xl/worksheets/sheet1.xml", sheetXml);
+
+			XlsxReader reader = new XlsxReader(xlsxFile);
+			try
+			{
+				String value;
+				try
+				{
+					value = reader.getSheet("test").iterator().next().getString("col1");
+				}
+				catch (RuntimeException e)
+				{
+					// rejecting the sheet is fine as well
+					value = null;
+				}
+				assertTrue(value == null || !value.contains("secret"));
+			}
+			finally
+			{
+				reader.close();
+			}
+		}
+		finally
+		{
+			secretFile.delete();
+			xlsxFile.delete();
+		}
+	}
+
+	private static void replaceZipEntry(File in, File out, String entryName, String content) throws IOException
+	{
+		ZipInputStream zis = new ZipInputStream(new FileInputStream(in));
+		ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(out));
+		try
+		{
+			for (ZipEntry entry = zis.getNextEntry(); entry != null; entry = zis.getNextEntry())
+			{
+				zos.putNextEntry(new ZipEntry(entry.getName()));
+				if (entry.getName().equals(entryName)) zos.write(content.getBytes("UTF-8"));
+				else
+					IOUtils.copy(zis, zos);
+				zos.closeEntry();
+			}
+		}
+		finally
+		{
+			zis.close();
+			zos.close();
+		}
+	}
+
+	@Test
+	public void toColumnIndex()
+	{
+		assertEquals(XlsxSheetReader.toColumnIndex("A1"), 0);
+		assertEquals(XlsxSheetReader.toColumnIndex("Z10"), 25);
+		assertEquals(XlsxSheetReader.toColumnIndex("AB12"), 27);
+	}
+}
@@ -0,0 +1,48 @@
+package org.molgenis.io.vcf;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.testng.annotations.Test;
+
+public class BgzfInputStreamTest
+{
+	@Test
+	public void isBgzf() throws IOException
+	{
+		assertTrue(BgzfInputStream.isBgzf(new File(getClass().getResource("/test.vcf.gz").getFile())));
+		assertFalse(BgzfInputStream.isBgzf(new File(getClass().getResource("/test.vcf").getFile())));
+	}
+
+	@Test
+	public void seek() throws IOException
+	{
+		BgzfInputStream in = new BgzfInputStream(new File(getClass().getResource("/test.vcf.gz").getFile()));
+		try
+		{
+			assertEquals(in.readLine(), "##fileformat=VCFv4.1");
+			long virtualOffset = in.getVirtualOffset();
+			String line = in.readLine();
+			assertEquals(line, "##fileDate=2012/11/05");
+
+			// skip to the last line
+			String lastLine = null;
+			for (String next = in.readLine(); next != null; next = in.readLine())
+				lastLine = next;
+			assertTrue(lastLine.startsWith("1\t7569187\t"));
+			assertNull(in.readLine());
+
+			in.seek(virtualOffset);
+			assertEquals(in.readLine(), line);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+}
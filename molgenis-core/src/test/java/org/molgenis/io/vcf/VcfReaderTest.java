@@ -9,6 +9,9 @@ import static org.testng.Assert.assertTrue;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
@@ -170,4 +173,79 @@ public class VcfReaderTest
 		assertEquals(alt.getId(), "DEL");
 		assertEquals(alt.getDescription(), "Deletion");
 	}
+
+	@Test
+	public void testBgzfFile() throws IOException
+	{
+		File file = new File(getClass().getResource("/test.vcf.gz").getFile());
+		VcfReader bgzfReader = new VcfReader(file, 2);
+		try
+		{
+			assertTrue(bgzfReader.isIndexed());
+			assertEquals(bgzfReader.getInfos().size(), 20);
+
+			List<String> positions = new ArrayList<String>();
+			for (Iterator<VcfRecord> it = bgzfReader.recordIterator(); it.hasNext();)
+				positions.add(it.next().getPos().toString());
+			assertEquals(positions, Arrays.asList("565286", "2243618", "3171929", "3172062", "3172273", "6097450",
+					"7569187"));
+		}
+		finally
+		{
+			bgzfReader.close();
+		}
+	}
+
+	@Test
+	public void testGzipStream() throws IOException
+	{
+		InputStream in = new FileInputStream(new File(getClass().getResource("/test.vcf.gz").getFile()));
+		VcfReader gzipReader = new VcfReader(in);
+		try
+		{
+			assertEquals(gzipReader.getSampleNames().size(), 1);
+			int count = 0;
+			for (Iterator<VcfRecord> it = gzipReader.recordIterator(); it.hasNext(); it.next())
+				count++;
+			assertEquals(count, 7);
+		}
+		finally
+		{
+			gzipReader.close();
+		}
+	}
+
+	@Test
+	public void testQuery() throws IOException
+	{
+		File file = new File(getClass().getResource("/test.vcf.gz").getFile());
+		VcfReader bgzfReader = new VcfReader(file);
+		try
+		{
+			Iterator<VcfRecord> it = bgzfReader.query("1", 3172000, 3172273);
+			VcfRecord record = it.next();
+			assertEquals(record.getPos(), Integer.valueOf(3172062));
+			assertEquals(record.getId().get(0), "rs4648465");
+			assertEquals(it.next().getPos(), Integer.valueOf(3172273));
+			assertFalse(it.hasNext());
+
+			it = bgzfReader.query("1", 2243618, 2243618);
+			assertEquals(it.next().getPos(), Integer.valueOf(2243618));
+			assertFalse(it.hasNext());
+			assertFalse(bgzfReader.query("1", 2243619, 2243620).hasNext());
+
+			assertFalse(bgzfReader.query("1", 1, 1000).hasNext());
+			assertFalse(bgzfReader.query("2", 1, 10000000).hasNext());
+		}
+		finally
+		{
+			bgzfReader.close();
+		}
+	}
+
+	@Test(expectedExceptions = IllegalStateException.class)
+	public void testQuery_notIndexed() throws IOException
+	{
+		reader.query("1", 1, 1000);
+	}
 }
@@ -13,6 +13,8 @@ import org.molgenis.framework.db.ExampleData;
 import org.molgenis.framework.db.Mapper;
 import org.molgenis.framework.db.Query;
 import org.molgenis.framework.db.QueryRule;
+import org.molgenis.framework.db.TransactionListener;
+import org.molgenis.framework.db.XrefLabelCache;
 import org.molgenis.framework.security.Login;
 import org.molgenis.io.TupleReader;
 import org.molgenis.io.TupleWriter;
@@ -310,6 +312,30 @@ public class MockDatabase implements Database
 		return null;
 	}
 
+	@Override
+	public TupleReader sqlReader(String query, QueryRule... queryRules) throws DatabaseException
+	{
+		return null;
+	}
+
+	@Override
+	public void addTransactionListener(TransactionListener listener)
+	{
+		listener.afterCommit();
+	}
+
+	@Override
+	public <T extends TransactionListener> T getTransactionListener(Class<T> listenerClass)
+	{
+		return null;
+	}
+
+	@Override
+	public XrefLabelCache getXrefLabelCache()
+	{
+		return new XrefLabelCache();
+	}
+
 	@Override
 	public <E extends Entity> String createFindSql(Class<E> entityClass, QueryRule... rules) throws DatabaseException
 	{
@@ -0,0 +1,161 @@
+package org.molgenis.util.plink.drivers;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.molgenis.util.MappedFile;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class BedGenotypeMatrixTest extends AbstractResourceTest
+{
+	private static final byte[] SNP0 =
+	{ 0, 1, 2, 1, 2, 2 };
+	private static final byte[] SNP1 =
+	{ 1, 1, 0, 2, 1, 2 };
+
+	private BedGenotypeMatrix genotypeMatrix;
+	private File individualMajorFile;
+
+	@BeforeClass
+	public void setUp() throws IOException
+	{
+		genotypeMatrix = new BedGenotypeMatrix(getTestResource("/test.bed"), 2, 6);
+
+		// same genotypes with a missing genotype for individual 5 and SNP 1,
+		// one byte per individual
+		individualMajorFile = File.createTempFile("individual-major", ".bed");
+		FileOutputStream fos = new FileOutputStream(individualMajorFile);
+		try
+		{
+			fos.write(new byte[]
+			{ 108, 27, 0, 0x08, 0x0a, 0x03, 0x0e, 0x0b, 0x07 });
+		}
+		finally
+		{
+			fos.close();
+		}
+	}
+
+	@AfterClass
+	public void tearDown()
+	{
+		individualMajorFile.delete();
+	}
+
+	@Test
+	public void BedGenotypeMatrix()
+	{
+		assertTrue(genotypeMatrix.isSnpMajor());
+		assertEquals(genotypeMatrix.getNrOfSnps(), 2);
+		assertEquals(genotypeMatrix.getNrOfIndividuals(), 6);
+	}
+
+	@Test(expectedExceptions = IOException.class)
+	public void BedGenotypeMatrix_wrongDimensions() throws IOException
+	{
+		new BedGenotypeMatrix(getTestResource("/test.bed"), 3, 6);
+	}
+
+	@Test
+	public void getSnp()
+	{
+		assertEquals(genotypeMatrix.getSnp(0), SNP0);
+		assertEquals(genotypeMatrix.getSnp(1), SNP1);
+	}
+
+	@Test
+	public void getIndividual()
+	{
+		assertEquals(genotypeMatrix.getIndividual(0), new byte[]
+		{ 0, 1 });
+		assertEquals(genotypeMatrix.getIndividual(5), new byte[]
+		{ 2, 2 });
+	}
+
+	@Test
+	public void getDosage()
+	{
+		assertEquals(genotypeMatrix.getDosage(0, 3), BedGenotypeMatrix.HET);
+		assertEquals(genotypeMatrix.getDosage(1, 2), BedGenotypeMatrix.HOM1);
+		assertEquals(genotypeMatrix.getDosage(1, 5), BedGenotypeMatrix.HOM2);
+	}
+
+	@Test(expectedExceptions = IndexOutOfBoundsException.class)
+	public void getDosage_outOfBounds()
+	{
+		genotypeMatrix.getDosage(0, 6);
+	}
+
+	@Test
+	public void getSnps()
+	{
+		byte[] dosages = genotypeMatrix.getSnps(0, 2, new byte[12]);
+		assertEquals(Arrays.copyOfRange(dosages, 0, 6), SNP0);
+		assertEquals(Arrays.copyOfRange(dosages, 6, 12), SNP1);
+	}
+
+	@Test
+	public void slice()
+	{
+		ByteBuffer[] slice = genotypeMatrix.slice(1, 2);
+		assertEquals(slice.length, 1);
+		assertEquals(slice[0].remaining(), 2);
+		assertEquals(slice[0].get(0), (byte) 0xca);
+		assertEquals(slice[0].get(1), (byte) 0x0e);
+		assertTrue(slice[0].isReadOnly());
+	}
+
+	@Test
+	public void scanParallel()
+	{
+		final Map<Integer, byte[]> snps = new ConcurrentHashMap<Integer, byte[]>();
+		genotypeMatrix.scanParallel(Arrays.asList(new int[]
+		{ 0, 1 }, new int[]
+		{ 1, 2 }), new BedGenotypeMatrix.SnpVisitor()
+		{
+			@Override
+			public void visit(int snp, byte[] dosages)
+			{
+				snps.put(snp, dosages.clone());
+			}
+		}, 2);
+		assertEquals(snps.size(), 2);
+		assertEquals(snps.get(0), SNP0);
+		assertEquals(snps.get(1), SNP1);
+	}
+
+	@Test
+	public void individualMajor() throws IOException
+	{
+		BedGenotypeMatrix individualMajor = new BedGenotypeMatrix(individualMajorFile, 2, 6);
+		assertFalse(individualMajor.isSnpMajor());
+		assertEquals(individualMajor.getSnp(0), SNP0);
+		assertEquals(individualMajor.getSnp(1), new byte[]
+		{ 1, 1, 0, 2, 1, BedGenotypeMatrix.MISSING });
+		assertEquals(individualMajor.getIndividual(3), new byte[]
+		{ 1, 2 });
+		assertEquals(individualMajor.getSnps(0, 1, new byte[6]), SNP0);
+	}
+
+	@Test
+	public void mappedFile_regions() throws IOException
+	{
+		// map the file in regions of two bytes
+		BedGenotypeMatrix regionMatrix = new BedGenotypeMatrix(new MappedFile(getTestResource("/test.bed"), 2), 2,
+				6);
+		assertEquals(regionMatrix.getSnp(0), SNP0);
+		assertEquals(regionMatrix.getSnp(1), SNP1);
+		assertEquals(regionMatrix.slice(0, 2).length, 3);
+	}
+}
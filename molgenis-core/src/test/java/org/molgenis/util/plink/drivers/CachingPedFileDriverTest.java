@@ -0,0 +1,47 @@
+package org.molgenis.util.plink.drivers;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.molgenis.framework.db.QueryRule;
+import org.molgenis.framework.db.QueryRule.Operator;
+import org.molgenis.util.plink.datatypes.PedEntry;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class CachingPedFileDriverTest extends AbstractResourceTest
+{
+	private CachingPedFileDriver pedfd;
+
+	@BeforeClass
+	public void setup() throws Exception
+	{
+		pedfd = new CachingPedFileDriver(getTestResource("/test.ped"));
+	}
+
+	@Test
+	public void setFilters() throws Exception
+	{
+		assertEquals(6, pedfd.getNrOfElements());
+
+		pedfd.setFilters(Arrays.asList(new QueryRule("snp1", Operator.NOT, "A A"), new QueryRule("Sex",
+				Operator.EQUALS, "1")), Arrays.asList("snp1", "snp2"));
+		assertEquals(5, pedfd.getNrOfElements());
+		assertEquals(5, pedfd.getAllEntries().size());
+
+		List<PedEntry> entries = pedfd.getEntries(1, 3);
+		assertEquals(2, entries.size());
+		assertEquals("3", entries.get(0).getFamily());
+		assertEquals("4", entries.get(1).getFamily());
+	}
+
+	@AfterClass
+	public void close() throws IOException
+	{
+		pedfd.close();
+	}
+}
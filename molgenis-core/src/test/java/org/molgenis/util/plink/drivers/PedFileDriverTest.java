@@ -3,7 +3,13 @@ package org.molgenis.util.plink.drivers;
 import static org.testng.AssertJUnit.assertEquals;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
+import org.molgenis.framework.db.QueryRule;
+import org.molgenis.framework.db.QueryRule.Operator;
+import org.molgenis.util.plink.datatypes.PedEntry;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
@@ -63,6 +69,68 @@ public class PedFileDriverTest extends AbstractResourceTest
 		assertEquals('T', pedfd.getEntries(3, 6).get(1).getBialleles().get(1).getAllele2());
 	}
 
+	@Test
+	public void PED_getEntries_rules() throws Exception
+	{
+		List<String> snpNames = Arrays.asList("snp1", "snp2");
+
+		List<PedEntry> entries = pedfd.getEntries(Arrays.asList(new QueryRule("phen", Operator.GREATER, 1)), snpNames);
+		assertEquals(3, entries.size());
+		assertEquals("4", entries.get(0).getFamily());
+
+		// legacy field names and genotype fields
+		entries = pedfd.getEntries(
+				Arrays.asList(new QueryRule("Phenotype", Operator.EQUALS, "2.0"), new QueryRule("snp1",
+						Operator.EQUALS, "C C")), snpNames);
+		assertEquals(2, entries.size());
+		assertEquals("5", entries.get(0).getFamily());
+		assertEquals("6", entries.get(1).getFamily());
+
+		entries = pedfd.getEntries(Arrays.asList(new QueryRule("fam", Operator.EQUALS, "1"), new QueryRule(
+				Operator.OR), new QueryRule("snp2", Operator.LIKE, "T%")), snpNames);
+		assertEquals(4, entries.size());
+		assertEquals("1", entries.get(0).getFamily());
+		assertEquals("2", entries.get(1).getFamily());
+		assertEquals("4", entries.get(2).getFamily());
+		assertEquals("6", entries.get(3).getFamily());
+
+		assertEquals(
+				Arrays.asList(3, 4),
+				pedfd.findLines(
+						Arrays.asList(new QueryRule("fam", Operator.IN, Arrays.asList("2", "4", "5", "6")),
+								new QueryRule(Operator.OFFSET, 1), new QueryRule(Operator.LIMIT, 2)), snpNames));
+	}
+
+	@Test
+	public void PED_getEntries_rulesNumericFields() throws Exception
+	{
+		List<String> snpNames = Arrays.asList("snp1", "snp2");
+
+		// identifiers are compared as strings
+		assertEquals(0, pedfd.getEntries(Arrays.asList(new QueryRule("fam", Operator.EQUALS, "01")), snpNames).size());
+		assertEquals(0, pedfd.getEntries(Arrays.asList(new QueryRule("fam", Operator.EQUALS, "1.0")), snpNames).size());
+		assertEquals(1, pedfd.getEntries(Arrays.asList(new QueryRule("fam", Operator.EQUALS, 1)), snpNames).size());
+
+		// sex and phenotype are compared as numbers
+		assertEquals(6, pedfd.getEntries(Arrays.asList(new QueryRule("sex", Operator.EQUALS, "1.0")), snpNames).size());
+		assertEquals(3, pedfd.getEntries(Arrays.asList(new QueryRule("phen", Operator.EQUALS, 2)), snpNames).size());
+	}
+
+	@Test
+	public void PED_getEntries_lines() throws Exception
+	{
+		List<PedEntry> entries = pedfd.getEntries(Arrays.asList(4, 1));
+		assertEquals("5", entries.get(0).getFamily());
+		assertEquals("2", entries.get(1).getFamily());
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void PED_getEntries_unknownField() throws Exception
+	{
+		pedfd.getEntries(Arrays.asList(new QueryRule("snp3", Operator.EQUALS, "A A")),
+				Collections.singletonList("snp1"));
+	}
+
 	@AfterClass
 	public void close() throws IOException
 	{
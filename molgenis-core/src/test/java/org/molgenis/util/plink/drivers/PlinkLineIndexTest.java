@@ -0,0 +1,70 @@
+package org.molgenis.util.plink.drivers;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.molgenis.util.plink.PlinkFileParser;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class PlinkLineIndexTest
+{
+	private File file;
+	private File indexFile;
+
+	@BeforeMethod
+	public void setUp() throws IOException
+	{
+		file = File.createTempFile("test", ".map");
+		indexFile = new File(file.getPath() + PlinkLineIndex.EXTENSION);
+		FileUtils.writeStringToFile(file, "1 snp1  0.0 1\r\n\n2 snp2 0.0 2\n3 snp3", PlinkFileParser.FILE_ENCODING
+				.name());
+	}
+
+	@AfterMethod
+	public void tearDown()
+	{
+		file.delete();
+		indexFile.delete();
+	}
+
+	@Test
+	public void load() throws IOException
+	{
+		PlinkLineIndex index = PlinkLineIndex.load(file, ' ', 3);
+		assertEquals(index.size(), 3);
+		assertEquals(index.getOffset(0), 0);
+		assertEquals(index.getLength(0), 13);
+		assertEquals(index.getKeyField(0, 1), "snp1");
+		assertEquals(index.getKeyField(0, 2), "0.0");
+		assertEquals(index.getOffset(1), 16);
+		assertEquals(index.getKeyField(1, 0), "2");
+		assertEquals(index.getOffset(2), 29);
+		assertEquals(index.getLength(2), 6);
+		assertEquals(index.getKeyField(2, 1), "snp3");
+		assertNull(index.getKeyField(2, 2));
+		assertTrue(indexFile.exists());
+
+		// stored index
+		PlinkLineIndex storedIndex = PlinkLineIndex.load(file, ' ', 3);
+		assertEquals(storedIndex.size(), 3);
+		assertEquals(storedIndex.getOffset(2), 29);
+		assertEquals(storedIndex.getKeyField(1, 1), "snp2");
+		assertNull(storedIndex.getKeyField(2, 2));
+	}
+
+	@Test
+	public void load_fileChanged() throws IOException
+	{
+		PlinkLineIndex.load(file, ' ', 3);
+		FileUtils.writeStringToFile(file, "1 snp1 0.0 1\n", PlinkFileParser.FILE_ENCODING.name());
+		file.setLastModified(file.lastModified() + 1000);
+		assertEquals(PlinkLineIndex.load(file, ' ', 3).size(), 1);
+	}
+}
@@ -3,8 +3,11 @@ package org.molgenis.util.plink.drivers;
 import static org.testng.AssertJUnit.assertEquals;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 
+import org.molgenis.framework.db.QueryRule;
+import org.molgenis.framework.db.QueryRule.Operator;
 import org.molgenis.util.plink.datatypes.Biallele;
 import org.molgenis.util.plink.datatypes.TpedEntry;
 import org.testng.annotations.AfterClass;
@@ -53,4 +56,14 @@ public class TpedFileDriverTest extends AbstractResourceTest
 	{
 		tpedfd.close();
 	}
+
+	@Test
+	public void TPED_getEntries_rules() throws Exception
+	{
+		List<TpedEntry> entries = tpedfd.getEntries(
+				Arrays.asList(new QueryRule("bp", Operator.GREATER_EQUAL, 5000700L), new QueryRule("ind4",
+						Operator.EQUALS, "T T")), Arrays.asList("ind1", "ind2", "ind3", "ind4", "ind5", "ind6"));
+		assertEquals(1, entries.size());
+		assertEquals("snp2", entries.get(0).getSNP());
+	}
 }
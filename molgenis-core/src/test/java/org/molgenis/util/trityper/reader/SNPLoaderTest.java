@@ -0,0 +1,155 @@
+package org.molgenis.util.trityper.reader;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.FileUtils;
+import org.molgenis.util.MappedFile;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class SNPLoaderTest
+{
+	private static final int NR_SNPS = 100;
+	private static final int NR_INDIVIDUALS = 3;
+	private static final byte A = 'A';
+	private static final byte C = 'C';
+
+	private File genotypeFile;
+	private File dosageFile;
+	private SNPLoader snpLoader;
+
+	@BeforeClass
+	public void setUp() throws IOException
+	{
+		// allele1 of all individuals followed by allele2 of all individuals
+		byte[] genotypes = new byte[NR_SNPS * NR_INDIVIDUALS * 2];
+		byte[] dosages = new byte[NR_SNPS * NR_INDIVIDUALS];
+		for (int snp = 0; snp < NR_SNPS; ++snp)
+		{
+			int offset = snp * NR_INDIVIDUALS * 2;
+			byte[] snpGenotypes = getAlleles(snp);
+			System.arraycopy(snpGenotypes, 0, genotypes, offset, snpGenotypes.length);
+			for (int ind = 0; ind < NR_INDIVIDUALS; ++ind)
+				dosages[snp * NR_INDIVIDUALS + ind] = (byte) (ind * 100 + Byte.MIN_VALUE);
+		}
+		genotypeFile = File.createTempFile("GenotypeMatrix", ".dat");
+		FileUtils.writeByteArrayToFile(genotypeFile, genotypes);
+		dosageFile = File.createTempFile("ImputedDosageMatrix", ".dat");
+		FileUtils.writeByteArrayToFile(dosageFile, dosages);
+
+		Boolean[] included = new Boolean[]
+		{ true, true, true };
+		snpLoader = new SNPLoader(new MappedFile(genotypeFile), new MappedFile(dosageFile), included, included);
+		snpLoader.setNumIndividuals(NR_INDIVIDUALS);
+	}
+
+	@AfterClass
+	public void tearDown() throws IOException
+	{
+		snpLoader.close();
+		genotypeFile.delete();
+		dosageFile.delete();
+	}
+
+	/** AA AA CC for even SNPs, AC CA CC for odd SNPs */
+	private static byte[] getAlleles(int snp)
+	{
+		return new byte[]
+		{ A, snp % 2 == 0 ? A : C, C, snp % 2 == 0 ? A : C, A, C };
+	}
+
+	@Test
+	public void loadGenotypes()
+	{
+		SNP snp = new SNP();
+		snp.setId(1);
+		snpLoader.loadGenotypes(snp);
+		assertEquals(snp.getAllele1(), new byte[]
+		{ A, C, C });
+		assertEquals(snp.getAllele2(), new byte[]
+		{ C, A, C });
+	}
+
+	@Test
+	public void loadGenotypesBatch()
+	{
+		SNP[] snps = snpLoader.loadGenotypes(new int[]
+		{ 3, 0, 2 });
+		assertEquals(snps.length, 3);
+		assertEquals(snps[0].getId(), 3);
+		assertEquals(snps[0].getAllele1(), new byte[]
+		{ A, C, C });
+		assertEquals(snps[1].getId(), 0);
+		assertEquals(snps[1].getAllele1(), new byte[]
+		{ A, A, C });
+		assertEquals(snps[1].getGenotypes(), new short[]
+		{ 0, 0, 2 });
+	}
+
+	@Test
+	public void loadDosage()
+	{
+		SNP snp = new SNP();
+		snp.setId(0);
+		snpLoader.loadGenotypes(snp);
+		snpLoader.loadDosage(snp);
+		assertTrue(snpLoader.hasDosageInformation());
+		assertEquals(snp.getDosageValues(), new double[]
+		{ 0, 1, 2 });
+	}
+
+	@Test
+	public void loadGenotypesConcurrently() throws Exception
+	{
+		snpLoader.setReadAheadWindow(10);
+		try
+		{
+			ExecutorService executorService = Executors.newFixedThreadPool(4);
+			try
+			{
+				List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+				for (int t = 0; t < 4; ++t)
+				{
+					futures.add(executorService.submit(new Callable<Boolean>()
+					{
+						@Override
+						public Boolean call()
+						{
+							for (int id = 0; id < NR_SNPS; ++id)
+							{
+								SNP snp = new SNP();
+								snp.setId(id);
+								snpLoader.loadGenotypes(snp);
+								byte[] alleles = getAlleles(id);
+								assertEquals(snp.getAllele1()[1], alleles[1]);
+								assertEquals(snp.getAllele2()[0], alleles[3]);
+							}
+							return true;
+						}
+					}));
+				}
+				for (Future<Boolean> future : futures)
+					assertTrue(future.get());
+			}
+			finally
+			{
+				executorService.shutdown();
+			}
+		}
+		finally
+		{
+			snpLoader.setReadAheadWindow(0);
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package org.molgenis.util.tuple;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class ArrayTupleTest
+{
+	private TupleSchema schema;
+	private ArrayTuple tuple;
+
+	@BeforeMethod
+	public void setUp()
+	{
+		schema = new TupleSchema("col1", "Col2", "col3");
+		tuple = new ArrayTuple(schema, new Object[]
+		{ "val1", 2L, null });
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void ArrayTuple()
+	{
+		new ArrayTuple(schema, new Object[2]);
+	}
+
+	@Test
+	public void get()
+	{
+		assertEquals(tuple.get("col1"), "val1");
+		assertEquals(tuple.get("COL1"), "val1");
+		assertEquals(tuple.get("col2"), 2L);
+		assertNull(tuple.get("col3"));
+		assertNull(tuple.get("col4"));
+		assertEquals(tuple.get(0), "val1");
+		assertEquals(tuple.getNrCols(), 3);
+	}
+
+	@Test
+	public void getColNames()
+	{
+		assertEquals(tuple.getColNames(), Arrays.asList("col1", "Col2", "col3"));
+		assertTrue(tuple.hasColNames());
+	}
+
+	@Test
+	public void set()
+	{
+		tuple.set("col3", "val3");
+		tuple.set(0, "val0");
+		assertEquals(tuple.get("col3"), "val3");
+		assertEquals(tuple.get("col1"), "val0");
+	}
+
+	@Test
+	public void set_newColumn()
+	{
+		ArrayTuple otherTuple = new ArrayTuple(schema);
+		tuple.set("col4", "val4");
+		assertEquals(tuple.get("col4"), "val4");
+		assertEquals(tuple.getNrCols(), 4);
+		// shared schema is not modified
+		assertEquals(schema.getNrCols(), 3);
+		assertNull(otherTuple.get("col4"));
+		assertEquals(otherTuple.getNrCols(), 3);
+	}
+
+	@Test
+	public void getTyped()
+	{
+		ArrayTuple typedTuple = new ArrayTuple(new TupleSchema("int", "long", "decimal", "bool", "str"),
+				new Object[]
+				{ 1, 5000000000L, new BigDecimal("1.5"), 1, "true" });
+		assertEquals(typedTuple.getInt("int"), Integer.valueOf(1));
+		assertEquals(typedTuple.getLong("int"), Long.valueOf(1));
+		assertEquals(typedTuple.getDouble("int"), 1.0);
+		assertEquals(typedTuple.getLong("long"), Long.valueOf(5000000000L));
+		assertEquals(typedTuple.getDouble("decimal"), 1.5);
+		assertTrue(typedTuple.getBoolean("bool"));
+		assertTrue(typedTuple.getBoolean("str"));
+		assertEquals(tuple.getInt("col2"), Integer.valueOf(2));
+		assertNull(tuple.getInt("col3"));
+	}
+
+	@Test(expectedExceptions = NumberFormatException.class)
+	public void getInt_overflow()
+	{
+		new ArrayTuple(new TupleSchema("long"), new Object[]
+		{ 5000000000L }).getInt(0);
+	}
+
+	@Test
+	public void schema_caseInsensitiveDuplicateColNames()
+	{
+		TupleSchema duplicateSchema = new TupleSchema("id", "name", "ID");
+		assertEquals(duplicateSchema.getColNames(), Arrays.asList("id", "name", "ID"));
+		assertEquals(duplicateSchema.getColIndex("id"), 0);
+		assertEquals(duplicateSchema.getColIndex("ID"), 2);
+		assertEquals(duplicateSchema.getColIndex("Id"), 2);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void schema_duplicateColNames()
+	{
+		new TupleSchema("id", "name", "id");
+	}
+}
@@ -0,0 +1 @@
+shared ${name}
\ No newline at end of file
@@ -0,0 +1 @@
+Bye ${name}!
\ No newline at end of file
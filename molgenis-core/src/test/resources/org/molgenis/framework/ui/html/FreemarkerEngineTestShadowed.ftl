@@ -0,0 +1 @@
+plugin ${name}<#if molgenis_footer??> with helper</#if>
\ No newline at end of file
@@ -0,0 +1,98 @@
+package org.molgenis.omx.dataset;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.molgenis.framework.db.Database;
+import org.molgenis.framework.db.TransactionListener;
+import org.molgenis.omx.observ.Category;
+import org.molgenis.omx.observ.DataSet;
+import org.molgenis.omx.observ.ObservableFeature;
+import org.molgenis.omx.observ.Protocol;
+import org.molgenis.omx.observ.target.OntologyTerm;
+import org.molgenis.util.Entity;
+
+/**
+ * Version of the data set catalogues: the data sets with their protocol trees,
+ * features, categories and units. The version changes on each write to one of
+ * these entities, so views of the catalogues can be cached until the version
+ * changes. Writes are registered by the mapper decorators, the version changes
+ * when they are committed.
+ */
+public final class CatalogueVersion
+{
+	@SuppressWarnings("unchecked")
+	private static final Class<? extends Entity>[] CATALOGUE_CLASSES = new Class[]
+	{ DataSet.class, Protocol.class, ObservableFeature.class, Category.class, OntologyTerm.class };
+
+	private static final AtomicLong version = new AtomicLong();
+
+	/** changes the version once per transaction that wrote to the catalogues */
+	private static final TransactionListener CHANGE_ON_COMMIT = new TransactionListener()
+	{
+		@Override
+		public void afterCommit()
+		{
+			version.incrementAndGet();
+		}
+
+		@Override
+		public void afterRollback()
+		{
+			// the catalogues did not change
+		}
+	};
+
+	private CatalogueVersion()
+	{
+	}
+
+	public static long get()
+	{
+		return version.get();
+	}
+
+	/**
+	 * Changes the version if the entities are part of the catalogues. Views
+	 * loaded before the changes were committed would be cached under the new
+	 * version, so use {@link #entitiesWritten(Database, Class)} for writes
+	 * that might not be committed yet.
+	 *
+	 * @param entityClass
+	 *            class of the committed entities
+	 */
+	public static void entitiesWritten(Class<? extends Entity> entityClass)
+	{
+		if (isCatalogueEntity(entityClass)) version.incrementAndGet();
+	}
+
+	/**
+	 * Changes the version when the current transaction of the database commits
+	 * if the entities are part of the catalogues, or right away outside a
+	 * transaction
+	 *
+	 * @param db
+	 *            database the entities were written to
+	 * @param entityClass
+	 *            class of the written entities
+	 */
+	public static void entitiesWritten(Database db, Class<? extends Entity> entityClass)
+	{
+		if (isCatalogueEntity(entityClass)) db.addTransactionListener(CHANGE_ON_COMMIT);
+	}
+
+	/**
+	 * @return whether the entities are or might be (e.g. Characteristics) part
+	 *         of the catalogues
+	 */
+	public static boolean isCatalogueEntity(Class<? extends Entity> entityClass)
+	{
+		for (Class<? extends Entity> catalogueClass : CATALOGUE_CLASSES)
+		{
+			if (catalogueClass.isAssignableFrom(entityClass) || entityClass.isAssignableFrom(catalogueClass))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,328 @@
+package org.molgenis.omx.dataset;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+import org.molgenis.framework.db.Database;
+import org.molgenis.framework.db.DatabaseException;
+import org.molgenis.framework.db.jdbc.JDBCDatabase;
+import org.molgenis.omx.observ.ObservationSet;
+import org.molgenis.omx.observ.ObservedValue;
+import org.molgenis.util.tuple.Tuple;
+
+/**
+ * Loads rows into a DataSet: every row becomes an ObservationSet with one
+ * ObservedValue per feature.
+ * <p>
+ * Rows are added in blocks. The ObservationSets of a block are added in one
+ * batch, which reserves a block of ids (the generated keys), after which the
+ * ObservedValues of the block are added in batches as well. All rows are
+ * loaded in one transaction. On MySQL servers that allow 'LOAD DATA LOCAL' the
+ * ObservedValues are streamed to a temporary file instead, which is loaded in
+ * one statement after the last block.
+ */
+public class DataSetBulkLoader
+{
+	private static final Logger logger = Logger.getLogger(DataSetBulkLoader.class);
+
+	/** maximum number of rows per block */
+	public static final int DEFAULT_BLOCK_SIZE = 1000;
+	/** maximum number of values per block, limits the memory usage of wide rows */
+	private static final int MAX_VALUES_PER_BLOCK = 100000;
+
+	private static final Charset CHARSET_UTF8 = Charset.forName("UTF-8");
+
+	/** Receives the number of loaded rows after every block */
+	public interface ProgressListener
+	{
+		public void progress(int nrRows);
+	}
+
+	private final Database db;
+	private int blockSize = DEFAULT_BLOCK_SIZE;
+	private boolean nativeBulkLoad = true;
+	private ProgressListener progressListener;
+
+	public DataSetBulkLoader(Database db)
+	{
+		if (db == null) throw new IllegalArgumentException("db is null");
+		this.db = db;
+	}
+
+	public int getBlockSize()
+	{
+		return blockSize;
+	}
+
+	public void setBlockSize(int blockSize)
+	{
+		if (blockSize < 1) throw new IllegalArgumentException("blockSize must be > 0");
+		this.blockSize = blockSize;
+	}
+
+	public boolean isNativeBulkLoad()
+	{
+		return nativeBulkLoad;
+	}
+
+	/**
+	 * Whether to use the bulk load statement of the database if available
+	 * (default: true)
+	 */
+	public void setNativeBulkLoad(boolean nativeBulkLoad)
+	{
+		this.nativeBulkLoad = nativeBulkLoad;
+	}
+
+	public void setProgressListener(ProgressListener progressListener)
+	{
+		this.progressListener = progressListener;
+	}
+
+	/**
+	 * Adds the rows to a DataSet in one transaction (or in the current
+	 * transaction, if any)
+	 *
+	 * @param dataSetId
+	 *            id of the DataSet
+	 * @param featureIds
+	 *            feature identifier (column name) to ObservableFeature id
+	 * @param rows
+	 *            rows, each row becomes an ObservationSet
+	 * @return number of added ObservationSets
+	 * @throws DatabaseException
+	 */
+	public int load(Integer dataSetId, Map<String, Integer> featureIds, Iterable<Tuple> rows)
+			throws DatabaseException
+	{
+		if (dataSetId == null) throw new IllegalArgumentException("dataSetId is null");
+
+		int rowsPerBlock = Math.max(1, Math.min(blockSize, MAX_VALUES_PER_BLOCK / Math.max(1, featureIds.size())));
+		long start = System.currentTimeMillis();
+		int nrRows = 0;
+		boolean doTx = !db.inTx();
+		ValueFile valueFile = null;
+		try
+		{
+			if (doTx) db.beginTx();
+			if (nativeBulkLoad && isLoadDataSupported()) valueFile = new ValueFile();
+
+			List<Tuple> block = new ArrayList<Tuple>(rowsPerBlock);
+			for (Tuple row : rows)
+			{
+				block.add(row);
+				if (block.size() == rowsPerBlock)
+				{
+					nrRows += loadBlock(dataSetId, featureIds, block, valueFile);
+					block.clear();
+					fireProgress(nrRows);
+				}
+			}
+			if (!block.isEmpty())
+			{
+				nrRows += loadBlock(dataSetId, featureIds, block, valueFile);
+				fireProgress(nrRows);
+			}
+			if (valueFile != null) valueFile.load();
+
+			if (doTx) db.commitTx();
+		}
+		catch (DatabaseException e)
+		{
+			if (doTx) db.rollbackTx();
+			throw e;
+		}
+		catch (Exception e)
+		{
+			if (doTx) db.rollbackTx();
+			throw new DatabaseException(e);
+		}
+		finally
+		{
+			if (valueFile != null) valueFile.delete();
+		}
+
+		logger.info("loaded " + nrRows + " rows into dataset " + dataSetId + " in "
+				+ (System.currentTimeMillis() - start) + "ms");
+		return nrRows;
+	}
+
+	private int loadBlock(Integer dataSetId, Map<String, Integer> featureIds, List<Tuple> block, ValueFile valueFile)
+			throws DatabaseException, IOException
+	{
+		// reserve the ids of the block
+		List<ObservationSet> observationSets = new ArrayList<ObservationSet>(block.size());
+		for (int i = 0; i < block.size(); ++i)
+		{
+			ObservationSet observationSet = new ObservationSet();
+			observationSet.setPartOfDataSet(dataSetId);
+			observationSets.add(observationSet);
+		}
+		db.add(observationSets);
+
+		if (valueFile != null)
+		{
+			for (int i = 0; i < block.size(); ++i)
+			{
+				Integer observationSetId = observationSets.get(i).getId();
+				Tuple row = block.get(i);
+				for (Map.Entry<String, Integer> entry : featureIds.entrySet())
+					valueFile.write(observationSetId, entry.getValue(), row.getString(entry.getKey()));
+			}
+		}
+		else
+		{
+			List<ObservedValue> observedValues = new ArrayList<ObservedValue>(block.size() * featureIds.size());
+			for (int i = 0; i < block.size(); ++i)
+			{
+				Integer observationSetId = observationSets.get(i).getId();
+				Tuple row = block.get(i);
+				for (Map.Entry<String, Integer> entry : featureIds.entrySet())
+				{
+					ObservedValue observedValue = new ObservedValue();
+					observedValue.setObservationSet(observationSetId);
+					observedValue.setFeature(entry.getValue());
+					observedValue.setValue(row.getString(entry.getKey()));
+					observedValues.add(observedValue);
+				}
+			}
+			db.add(observedValues);
+		}
+		return block.size();
+	}
+
+	private void fireProgress(int nrRows)
+	{
+		logger.debug("loaded " + nrRows + " rows");
+		if (progressListener != null) progressListener.progress(nrRows);
+	}
+
+	/** whether the database is a MySQL database that allows LOAD DATA LOCAL */
+	private boolean isLoadDataSupported() throws DatabaseException
+	{
+		Connection conn = db.getConnection();
+		if (conn == null) return false;
+		Statement stmt = null;
+		try
+		{
+			if (!conn.getMetaData().getDatabaseProductName().toLowerCase().contains("mysql")) return false;
+
+			stmt = conn.createStatement();
+			ResultSet rs = stmt.executeQuery("SHOW VARIABLES LIKE 'local_infile'");
+			boolean localInfile = rs.next() && "ON".equalsIgnoreCase(rs.getString(2));
+			rs.close();
+			return localInfile;
+		}
+		catch (SQLException e)
+		{
+			logger.warn("failed to determine whether LOAD DATA is supported: " + e.getMessage());
+			return false;
+		}
+		finally
+		{
+			JDBCDatabase.closeStatement(stmt);
+		}
+	}
+
+	/** ObservedValues streamed to a tab separated file for LOAD DATA */
+	private class ValueFile
+	{
+		private final File file;
+		private Writer writer;
+		private int nrValues;
+
+		public ValueFile() throws IOException
+		{
+			file = File.createTempFile("observedvalue", ".txt");
+			writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), CHARSET_UTF8));
+		}
+
+		public void write(Integer observationSetId, Integer featureId, String value) throws IOException
+		{
+			writer.write(observationSetId.toString());
+			writer.write('\t');
+			writer.write(featureId.toString());
+			writer.write('\t');
+			if (value == null) writer.write("\\N");
+			else
+			{
+				for (int i = 0; i < value.length(); ++i)
+				{
+					char c = value.charAt(i);
+					switch (c)
+					{
+						case '\\':
+							writer.write("\\\\");
+							break;
+						case '\t':
+							writer.write("\\t");
+							break;
+						case '\n':
+							writer.write("\\n");
+							break;
+						case '\r':
+							writer.write("\\r");
+							break;
+						default:
+							writer.write(c);
+							break;
+					}
+				}
+			}
+			writer.write('\n');
+			++nrValues;
+		}
+
+		public void load() throws IOException, DatabaseException
+		{
+			writer.close();
+			writer = null;
+			if (nrValues == 0) return;
+
+			String path = file.getAbsolutePath().replace('\\', '/').replace("'", "\\'");
+			String sql = "LOAD DATA LOCAL INFILE '" + path + "' INTO TABLE ObservedValue CHARACTER SET utf8"
+					+ " FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\' LINES TERMINATED BY '\\n'"
+					+ " (ObservationSet, Feature, Value)";
+
+			long start = System.currentTimeMillis();
+			Statement stmt = null;
+			try
+			{
+				stmt = db.getConnection().createStatement();
+				int nrLoaded = stmt.executeUpdate(sql);
+				if (nrLoaded != nrValues) throw new DatabaseException("LOAD DATA loaded " + nrLoaded + " of "
+						+ nrValues + " values");
+			}
+			catch (SQLException e)
+			{
+				throw new DatabaseException(e);
+			}
+			finally
+			{
+				JDBCDatabase.closeStatement(stmt);
+			}
+			logger.debug("loaded " + nrValues + " values with LOAD DATA in " + (System.currentTimeMillis() - start)
+					+ "ms");
+		}
+
+		public void delete()
+		{
+			IOUtils.closeQuietly(writer);
+			if (!file.delete()) logger.warn("failed to delete " + file);
+		}
+	}
+}
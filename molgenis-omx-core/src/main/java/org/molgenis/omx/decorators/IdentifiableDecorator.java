@@ -3,6 +3,7 @@ package org.molgenis.omx.decorators;
 import java.util.List;
 
 import org.molgenis.omx.core.Identifiable;
+import org.molgenis.omx.dataset.CatalogueVersion;
 import org.molgenis.framework.db.DatabaseException;
 import org.molgenis.framework.db.Mapper;
 import org.molgenis.framework.db.MapperDecorator;
@@ -17,12 +18,33 @@ public class IdentifiableDecorator<E extends Identifiable> extends MapperDecorat
 	@Override
 	public int add(List<E> entities) throws DatabaseException
 	{
-		return super.add(entities);
+		int count = super.add(entities);
+		entitiesWritten(entities);
+		return count;
 	}
 
 	@Override
 	public int update(List<E> entities) throws DatabaseException
 	{
-		return super.update(entities);
+		int count = super.update(entities);
+		entitiesWritten(entities);
+		return count;
+	}
+
+	@Override
+	public int remove(List<E> entities) throws DatabaseException
+	{
+		int count = super.remove(entities);
+		entitiesWritten(entities);
+		return count;
+	}
+
+	/**
+	 * Invalidates cached views of the data set catalogues once the changes are
+	 * committed
+	 */
+	private void entitiesWritten(List<E> entities)
+	{
+		if (!entities.isEmpty()) CatalogueVersion.entitiesWritten(getDatabase(), entities.get(0).getClass());
 	}
 }
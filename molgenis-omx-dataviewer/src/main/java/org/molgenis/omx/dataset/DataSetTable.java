@@ -1,18 +1,19 @@
 package org.molgenis.omx.dataset;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.NoSuchElementException;
 
 import org.apache.commons.lang.NotImplementedException;
 import org.apache.log4j.Logger;
 import org.molgenis.framework.db.Database;
 import org.molgenis.framework.db.DatabaseException;
-import org.molgenis.framework.db.Query;
 import org.molgenis.framework.db.QueryRule;
 import org.molgenis.framework.db.QueryRule.Operator;
 import org.molgenis.framework.tupletable.AbstractFilterableTupleTable;
@@ -25,16 +26,20 @@ import org.molgenis.omx.observ.ObservableFeature;
 import org.molgenis.omx.observ.ObservationSet;
 import org.molgenis.omx.observ.ObservedValue;
 import org.molgenis.omx.observ.Protocol;
-import org.molgenis.util.tuple.KeyValueTuple;
+import org.molgenis.util.tuple.ArrayTuple;
 import org.molgenis.util.tuple.Tuple;
-import org.molgenis.util.tuple.WritableTuple;
-
-import com.google.common.base.Function;
-import com.google.common.collect.Collections2;
+import org.molgenis.util.tuple.TupleSchema;
 
 /**
  * DataSetTable
  * 
+ * Rows are pivoted from the ObservedValues of a page of ObservationSets: one
+ * query selects the ObservationSets of the page, one query per
+ * {@link #PIVOT_CHUNK_SIZE} ObservationSets selects their values. Filters and
+ * sorting on feature values are executed by the database by joining the
+ * ObservedValues of the filtered or sorted features. The iterator streams the
+ * rows in chunks, so large downloads don't need to fit in memory.
+ * 
  * If this table is too slow consider creating database an index on the
  * ObservedValue table : One on the fields Feature-Value and one on
  * ObservationSet-Feature-Value
@@ -43,9 +48,17 @@ import com.google.common.collect.Collections2;
 public class DataSetTable extends AbstractFilterableTupleTable implements DatabaseTupleTable
 {
 	private static Logger logger = Logger.getLogger(DataSetTable.class);
+
+	/** maximum number of ObservationSets pivoted in one query */
+	static final int PIVOT_CHUNK_SIZE = 1000;
+	/** value of a feature without ObservedValue while pivoting */
+	private static final Object ABSENT = new Object();
+
 	private DataSet dataSet;
 	private Database db;
 	private List<Field> columns;
+	/** feature identifier to feature id of the columns */
+	private Map<String, Integer> featureIds;
 
 	public DataSetTable(DataSet set, Database db) throws TableException
 	{
@@ -68,6 +81,17 @@ public class DataSetTable extends AbstractFilterableTupleTable implements Databa
 		this.db = db;
 	}
 
+	/**
+	 * Discards the columns and feature ids, they are reloaded on next use so
+	 * features added to the data set or its protocol become visible
+	 */
+	@Override
+	public void invalidate()
+	{
+		columns = null;
+		featureIds = null;
+	}
+
 	public DataSet getDataSet()
 	{
 		return dataSet;
@@ -98,6 +122,7 @@ public class DataSetTable extends AbstractFilterableTupleTable implements Databa
 				List<Integer> featureIds = getFeatureIds(protocols);
 				List<ObservableFeature> features = db.find(ObservableFeature.class, new QueryRule(ObservableFeature.ID,
 						Operator.IN, featureIds));
+				this.featureIds = new HashMap<String, Integer>();
 				if (features != null && !features.isEmpty())
 				{
 					columns = new ArrayList<Field>(features.size());
@@ -106,6 +131,7 @@ public class DataSetTable extends AbstractFilterableTupleTable implements Databa
 						Field field = new Field(feature.getIdentifier());
 						field.setLabel(feature.getName());
 						columns.add(field);
+						this.featureIds.put(feature.getIdentifier(), feature.getId());
 					}
 				}
 				else
@@ -117,16 +143,18 @@ public class DataSetTable extends AbstractFilterableTupleTable implements Databa
 			{
 				// determine columns from ObservationSets
 				// TODO do not use hardcoded SQL query
-				String sql = "SELECT DISTINCT Characteristic.identifier as name, Characteristic.name as label FROM Characteristic, ObservedValue, ObservationSet WHERE ObservationSet.partOfDataSet="
+				String sql = "SELECT DISTINCT Characteristic.id as id, Characteristic.identifier as name, Characteristic.name as label FROM Characteristic, ObservedValue, ObservationSet WHERE ObservationSet.partOfDataSet="
 						+ dataSet.getId()
 						+ " AND ObservedValue.ObservationSet=ObservationSet.id AND Characteristic.id = ObservedValue.feature";
 
 				columns = new ArrayList<Field>();
+				featureIds = new HashMap<String, Integer>();
 				for (Tuple t : getDb().sql(sql))
 				{
 					Field f = new Field(t.getString("name"));
 					f.setLabel(t.getString("label"));
 					columns.add(f);
+					featureIds.put(t.getString("name"), t.getInt("id"));
 				}
 			}
 		}
@@ -163,12 +191,16 @@ public class DataSetTable extends AbstractFilterableTupleTable implements Databa
 		}
 	}
 
+	/**
+	 * Streams the rows of the current page, see {@link #getLimit()} and
+	 * {@link #getOffset()}, in chunks of {@link #PIVOT_CHUNK_SIZE} rows
+	 */
 	@Override
 	public Iterator<Tuple> iterator()
 	{
 		try
 		{
-			return getRows().iterator();
+			return new PivotIterator(getColumns(), getLimit(), getOffset());
 		}
 		catch (TableException e)
 		{
@@ -183,62 +215,15 @@ public class DataSetTable extends AbstractFilterableTupleTable implements Databa
 		try
 		{
 			List<Tuple> result = new ArrayList<Tuple>();
-
-			Query<ObservationSet> query = createQuery();
-
-			if (query == null)
-			{
-				return new ArrayList<Tuple>();
-			}
-
-			// Limit the nr of rows
-			if (getLimit() > 0)
-			{
-				query.limit(getLimit());
-			}
-
-			if (getOffset() > 0)
-			{
-				query.offset(getOffset());
-			}
-
-			for (ObservationSet os : query.find())
-			{
-
-				WritableTuple tuple = new KeyValueTuple();
-
-				Query<ObservedValue> queryObservedValue = getDb().query(ObservedValue.class);
-
-				List<Field> columns = getColumns();
-
-				// Only retrieve the visible columns
-				Collection<String> fieldNames = Collections2.transform(columns, new Function<Field, String>()
-				{
-					@Override
-					public String apply(final Field field)
-					{
-						return field.getName();
-					}
-				});
-
-				for (ObservedValue v : queryObservedValue.eq(ObservedValue.OBSERVATIONSET, os.getId())
-						.in(ObservedValue.FEATURE_IDENTIFIER, new ArrayList<String>(fieldNames)).find())
-				{
-					tuple.set(v.getFeature_Identifier(), v.getValue());
-				}
-
+			for (Tuple tuple : this)
 				result.add(tuple);
-			}
-
 			return result;
-
 		}
-		catch (Exception e)
+		catch (RuntimeException e)
 		{
 			logger.error("Exception getRows", e);
 			throw new TableException(e);
 		}
-
 	}
 
 	@Override
@@ -246,8 +231,19 @@ public class DataSetTable extends AbstractFilterableTupleTable implements Databa
 	{
 		try
 		{
-			Query<ObservationSet> query = createQuery();
-			return query == null ? 0 : query.count();
+			if (!hasFilters())
+			{
+				return getDb().count(ObservationSet.class,
+						new QueryRule(ObservationSet.PARTOFDATASET, Operator.EQUALS, dataSet.getId()));
+			}
+
+			List<QueryRule> rules = new ArrayList<QueryRule>();
+			String fromSql = createFromSql(rules, false);
+			if (fromSql == null) return 0;
+
+			List<Tuple> result = getDb().sql("SELECT COUNT(*) AS count" + fromSql,
+					rules.toArray(new QueryRule[rules.size()]));
+			return result.isEmpty() ? 0 : result.get(0).getInt("count");
 		}
 		catch (DatabaseException e)
 		{
@@ -257,132 +253,275 @@ public class DataSetTable extends AbstractFilterableTupleTable implements Databa
 
 	}
 
+	/**
+	 * Adds the rows of a table to the data set in one transaction, see
+	 * {@link DataSetBulkLoader}
+	 */
 	public void add(TupleTable table) throws TableException
 	{
-		try
+		// validate features
+		Map<String, Integer> featureMap = new LinkedHashMap<String, Integer>();
+		for (Field f : table.getAllColumns())
 		{
-			getDb().beginTx();
-
-			// validate features
-			Map<String, Integer> featureMap = new TreeMap<String, Integer>();
-			for (Field f : table.getAllColumns())
+			try
 			{
-				try
+				List<ObservableFeature> feature = getDb().query(ObservableFeature.class)
+						.eq(ObservableFeature.IDENTIFIER, f.getName()).find();
+				if (feature.size() != 1)
 				{
-					List<ObservableFeature> feature = getDb().query(ObservableFeature.class)
-							.eq(ObservableFeature.IDENTIFIER, f.getName()).find();
-					if (feature.size() != 1)
-					{
-						throw new TableException("add failed: " + f.getName() + " not known ObservableFeature");
-					}
-					else
-					{
-						featureMap.put(f.getName(), feature.get(0).getId());
-					}
+					throw new TableException("add failed: " + f.getName() + " not known ObservableFeature");
 				}
-				catch (DatabaseException e)
+				else
 				{
-					throw new TableException(e);
+					featureMap.put(f.getName(), feature.get(0).getId());
 				}
 			}
-
-			// load values
-			for (Tuple t : table)
+			catch (DatabaseException e)
 			{
-				ObservationSet es = new ObservationSet();
-				es.setPartOfDataSet(dataSet.getId());
-				getDb().add(es);
-
-				List<ObservedValue> values = new ArrayList<ObservedValue>();
-				for (String name : t.getColNames())
-				{
-					ObservedValue v = new ObservedValue();
-					v.setObservationSet(es.getId());
-					v.setFeature(featureMap.get(name));
-					v.setValue(t.getString(name));
-					values.add(v);
-				}
-				getDb().add(values);
+				throw new TableException(e);
 			}
+		}
 
-			getDb().commitTx();
-
+		// load values
+		try
+		{
+			new DataSetBulkLoader(getDb()).load(dataSet.getId(), featureMap, table);
 		}
-		catch (Exception e)
+		catch (DatabaseException e)
 		{
-			try
-			{
-				getDb().rollbackTx();
-			}
-			catch (DatabaseException e1)
-			{
-				;
-			}
 			throw new TableException(e);
 		}
 	}
 
-	// Creates the query based on the provided filters
-	// Returns null if we already now there wil be no results
-	private Query<ObservationSet> createQuery() throws TableException, DatabaseException
+	/** whether rows are filtered or sorted on feature values */
+	private boolean hasFilters()
 	{
+		return !getFilters().isEmpty();
+	}
 
-		Query<ObservationSet> query;
-
-		if (getFilters().isEmpty())
+	/**
+	 * Returns the ids of the ObservationSets of a page, ordered by the sort
+	 * rule and id
+	 */
+	private List<Integer> findObservationSetIds(int limit, int offset) throws TableException, DatabaseException
+	{
+		List<Integer> observationSetIds = new ArrayList<Integer>();
+		if (!hasFilters())
 		{
-			query = getDb().query(ObservationSet.class).eq(ObservationSet.PARTOFDATASET, dataSet.getId());
+			List<QueryRule> rules = new ArrayList<QueryRule>();
+			rules.add(new QueryRule(ObservationSet.PARTOFDATASET, Operator.EQUALS, dataSet.getId()));
+			rules.add(new QueryRule(Operator.SORTASC, ObservationSet.ID));
+			rules.add(new QueryRule(Operator.LIMIT, limit));
+			if (offset > 0) rules.add(new QueryRule(Operator.OFFSET, offset));
+
+			for (ObservationSet observationSet : getDb().find(ObservationSet.class,
+					rules.toArray(new QueryRule[rules.size()])))
+				observationSetIds.add(observationSet.getId());
 		}
 		else
 		{
-			// For now only single simple queries are supported
-			List<QueryRule> queryRules = new ArrayList<QueryRule>();
+			List<QueryRule> rules = new ArrayList<QueryRule>();
+			String fromSql = createFromSql(rules, true);
+			if (fromSql == null) return observationSetIds;
+
+			rules.add(new QueryRule(Operator.SORTASC, "ObservationSet.id"));
+			rules.add(new QueryRule(Operator.LIMIT, limit));
+			if (offset > 0) rules.add(new QueryRule(Operator.OFFSET, offset));
+
+			for (Tuple tuple : getDb().sql("SELECT ObservationSet.id AS id" + fromSql,
+					rules.toArray(new QueryRule[rules.size()])))
+				observationSetIds.add(tuple.getInt("id"));
+		}
+		return observationSetIds;
+	}
+
+	/**
+	 * Creates the FROM clause that joins the ObservedValues of the filtered and
+	 * sorted features to the ObservationSets of the data set and adds the
+	 * rules for the WHERE and ORDER BY clauses.
+	 * 
+	 * @return from clause or null if we already know there will be no results
+	 */
+	private String createFromSql(List<QueryRule> rules, boolean withSort) throws TableException
+	{
+		getAllColumns(); // load feature ids
 
-			for (QueryRule filter : getFilters())
+		StringBuilder fromBuilder = new StringBuilder(" FROM ObservationSet");
+		List<QueryRule> sortRules = new ArrayList<QueryRule>();
+		int i = 0;
+		for (QueryRule filter : getFilters())
+		{
+			Operator operator = filter.getOperator();
+			boolean isSortRule = operator == Operator.SORTASC || operator == Operator.SORTDESC;
+			if (isSortRule && !withSort) continue;
+			if (!isSortRule && (operator != Operator.EQUALS) && (operator != Operator.LIKE))
 			{
-				if ((filter.getOperator() != Operator.EQUALS) && (filter.getOperator() != Operator.LIKE))
-				{
-					// value is always a String so LESS etc. can't be
-					// supported, NOT queries are not supported yet
-					throw new NotImplementedException("Operator [" + filter.getOperator()
-							+ "] not yet implemented, only EQUALS and LIKE are supported.");
+				// value is always a String so LESS etc. can't be
+				// supported, NOT queries are not supported yet
+				throw new NotImplementedException("Operator [" + operator
+						+ "] not yet implemented, only EQUALS and LIKE are supported.");
+			}
 
-				}
+			String featureIdentifier = isSortRule ? filter.getValue().toString() : filter.getField();
+			Integer featureId = featureIds.get(featureIdentifier);
+			if (featureId == null)
+			{
+				// unknown features have no values
+				if (isSortRule) continue;
+				return null;
+			}
 
+			String alias = "v" + i++;
+			fromBuilder.append(" LEFT JOIN ObservedValue AS ").append(alias).append(" ON ").append(alias)
+					.append(".ObservationSet = ObservationSet.id AND ").append(alias).append(".Feature = ")
+					.append(featureId);
+
+			if (isSortRule)
+			{
+				sortRules.add(new QueryRule(operator, alias + ".Value"));
+			}
+			else
+			{
 				// Null values come to us as String 'null'
-				if ((filter.getValue() != null) && (filter.getValue() instanceof String)
-						&& ((String) filter.getValue()).equalsIgnoreCase("null"))
+				Object value = filter.getValue();
+				if ((value instanceof String) && ((String) value).equalsIgnoreCase("null")) value = null;
+				rules.add(new QueryRule(alias + ".Value", operator, value));
+			}
+		}
+		rules.add(new QueryRule("ObservationSet.partOfDataSet", Operator.EQUALS, dataSet.getId()));
+		rules.addAll(sortRules);
+		return fromBuilder.toString();
+	}
+
+	/**
+	 * Pivots the ObservedValues of the ObservationSets into rows
+	 * 
+	 * @return rows in the order of the ObservationSet ids
+	 */
+	private List<Tuple> pivot(List<Integer> observationSetIds, List<Field> columns) throws TableException,
+			DatabaseException
+	{
+		// Only retrieve the visible columns
+		getAllColumns(); // load feature ids
+		List<Integer> columnFeatureIds = new ArrayList<Integer>(columns.size());
+		List<String> colNames = new ArrayList<String>(columns.size());
+		for (Field column : columns)
+		{
+			Integer featureId = featureIds.get(column.getName());
+			if (featureId != null)
+			{
+				columnFeatureIds.add(featureId);
+				colNames.add(column.getName());
+			}
+		}
+
+		// all rows of the page share the column names
+		TupleSchema schema = new TupleSchema(colNames);
+		Map<Integer, Object[]> rows = new LinkedHashMap<Integer, Object[]>();
+		for (Integer observationSetId : observationSetIds)
+		{
+			Object[] values = new Object[colNames.size()];
+			Arrays.fill(values, ABSENT);
+			rows.put(observationSetId, values);
+		}
+
+		if (!rows.isEmpty() && !columnFeatureIds.isEmpty())
+		{
+			for (int i = 0; i < observationSetIds.size(); i += PIVOT_CHUNK_SIZE)
+			{
+				List<Integer> chunk = observationSetIds.subList(i,
+						Math.min(i + PIVOT_CHUNK_SIZE, observationSetIds.size()));
+				for (ObservedValue v : getDb().find(ObservedValue.class,
+						new QueryRule(ObservedValue.OBSERVATIONSET, Operator.IN, new ArrayList<Integer>(chunk)),
+						new QueryRule(ObservedValue.FEATURE, Operator.IN, columnFeatureIds)))
 				{
-					filter.setValue(null);
+					int col = schema.getColIndex(v.getFeature_Identifier());
+					if (col != -1) rows.get(v.getObservationSet_Id())[col] = v.getValue();
 				}
-
-				queryRules.add(new QueryRule(ObservedValue.FEATURE_IDENTIFIER, Operator.EQUALS, filter.getField()));
-				queryRules.add(new QueryRule(ObservedValue.VALUE, filter.getOperator(), filter.getValue()));
 			}
+		}
 
-			List<ObservedValue> observedValues = getDb().find(ObservedValue.class,
-					queryRules.toArray(new QueryRule[queryRules.size()]));
+		List<Tuple> tuples = new ArrayList<Tuple>(rows.size());
+		for (Object[] values : rows.values())
+			tuples.add(toTuple(schema, values));
+		return tuples;
+	}
 
-			// No results
-			if (observedValues.isEmpty())
+	/**
+	 * @return row with the values of the features that have a value, features
+	 *         without value are not part of the row
+	 */
+	private static Tuple toTuple(TupleSchema schema, Object[] values)
+	{
+		int nrValues = 0;
+		for (Object value : values)
+			if (value != ABSENT) ++nrValues;
+		if (nrValues == values.length) return new ArrayTuple(schema, values);
+
+		String[] colNames = new String[nrValues];
+		Object[] rowValues = new Object[nrValues];
+		for (int i = 0, j = 0; i < values.length; ++i)
+		{
+			if (values[i] != ABSENT)
 			{
-				return null;
+				colNames[j] = schema.getColName(i);
+				rowValues[j++] = values[i];
 			}
+		}
+		return new ArrayTuple(new TupleSchema(colNames), rowValues);
+	}
+
+	/** pivots the rows of a page chunk by chunk */
+	private class PivotIterator implements Iterator<Tuple>
+	{
+		private final List<Field> columns;
+		private int remaining;
+		private int offset;
+		private Iterator<Tuple> chunkIterator = Collections.<Tuple> emptyList().iterator();
 
-			List<Integer> observationSetIds = new ArrayList<Integer>();
-			for (ObservedValue observedValue : observedValues)
+		public PivotIterator(List<Field> columns, int limit, int offset)
+		{
+			this.columns = columns;
+			this.remaining = limit > 0 ? limit : Integer.MAX_VALUE;
+			this.offset = offset;
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			if (!chunkIterator.hasNext() && remaining > 0)
 			{
-				if (!observationSetIds.contains(observedValue.getObservationSet_Id()))
+				try
+				{
+					int chunkSize = Math.min(remaining, PIVOT_CHUNK_SIZE);
+					List<Integer> observationSetIds = findObservationSetIds(chunkSize, offset);
+					offset += observationSetIds.size();
+					remaining = observationSetIds.size() < chunkSize ? 0 : remaining - chunkSize;
+					chunkIterator = pivot(observationSetIds, columns).iterator();
+				}
+				catch (TableException e)
 				{
-					observationSetIds.add(observedValue.getObservationSet_Id());
+					throw new RuntimeException(e);
+				}
+				catch (DatabaseException e)
+				{
+					throw new RuntimeException(e);
 				}
 			}
-
-			query = getDb().query(ObservationSet.class).eq(ObservationSet.PARTOFDATASET, dataSet.getId())
-					.in(ObservationSet.ID, observationSetIds);
+			return chunkIterator.hasNext();
 		}
 
-		return query;
+		@Override
+		public Tuple next()
+		{
+			if (!hasNext()) throw new NoSuchElementException();
+			return chunkIterator.next();
+		}
 
+		@Override
+		public void remove()
+		{
+			throw new UnsupportedOperationException();
+		}
 	}
 }
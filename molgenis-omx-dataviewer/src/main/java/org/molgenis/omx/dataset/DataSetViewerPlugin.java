@@ -99,9 +99,9 @@ public class DataSetViewerPlugin extends EasyPluginController<DataSetViewerPlugi
 		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
 
 		HttpServletResponse response = request.getResponse();
-		response.setContentType("application/ms-excel");
+		response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
 		response.addHeader("Content-Disposition",
-				"attachment; filename=" + tableView.getName() + "_" + dateFormat.format(new Date()) + ".xls");
+				"attachment; filename=" + tableView.getName() + "_" + dateFormat.format(new Date()) + ".xlsx");
 		new ExcelExporter(tupleTable).export(response.getOutputStream());
 	}
 
@@ -1,9 +1,14 @@
 package org.molgenis.omx.dataset;
 
+import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -12,17 +17,25 @@ import org.apache.log4j.BasicConfigurator;
 import org.apache.log4j.Logger;
 import org.molgenis.framework.db.Database;
 import org.molgenis.framework.db.DatabaseException;
+import org.molgenis.framework.db.Query;
 import org.molgenis.framework.db.QueryRule;
 import org.molgenis.framework.db.QueryRule.Operator;
 import org.molgenis.framework.tupletable.TableException;
 import org.molgenis.framework.tupletable.TupleTable;
 import org.molgenis.framework.tupletable.impl.CsvTable;
+import org.molgenis.framework.tupletable.impl.MemoryTable;
 import org.molgenis.model.elements.Field;
 import org.molgenis.omx.observ.DataSet;
 import org.molgenis.omx.observ.ObservableFeature;
+import org.molgenis.omx.observ.ObservationSet;
+import org.molgenis.omx.observ.ObservedValue;
 import org.molgenis.omx.observ.Protocol;
 import org.molgenis.omx.observ.target.Individual;
+import org.molgenis.util.tuple.KeyValueTuple;
 import org.molgenis.util.tuple.Tuple;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
@@ -72,4 +85,190 @@ public class DataSetTableTest
 		assertEquals("name12", cols.get(2).getLabel());
 		assertEquals(3, cols.size());
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void invalidate() throws TableException, DatabaseException
+	{
+		Database db = mockDatabase();
+		DataSetTable table = new DataSetTable(mockDataSet(), db);
+		assertEquals(table.getAllColumns().size(), 2);
+
+		// a feature was added to the protocol
+		ObservableFeature f12 = mock(ObservableFeature.class);
+		when(f12.getId()).thenReturn(12);
+		when(f12.getIdentifier()).thenReturn("12");
+		Protocol protocol = db.find(Protocol.class, new QueryRule(Protocol.ID, Operator.EQUALS, 1)).get(0);
+		when(protocol.getFeatures_Id()).thenReturn(Arrays.asList(10, 11, 12));
+		List<ObservableFeature> features = new ArrayList<ObservableFeature>(db.find(ObservableFeature.class,
+				new QueryRule(ObservableFeature.ID, Operator.IN, Arrays.asList(10, 11))));
+		features.add(f12);
+		when(
+				db.find(ObservableFeature.class,
+						new QueryRule(ObservableFeature.ID, Operator.IN, Arrays.asList(10, 11, 12)))).thenReturn(
+				features);
+
+		assertEquals(table.getAllColumns().size(), 2);
+		table.invalidate();
+		assertEquals(table.getAllColumns().size(), 3);
+		assertEquals(table.getAllColumns().get(2).getName(), "12");
+	}
+
+	@Test
+	public void getRows() throws TableException, DatabaseException
+	{
+		Database db = mockDatabase();
+		ObservationSet os0 = when(mock(ObservationSet.class).getId()).thenReturn(100).getMock();
+		ObservationSet os1 = when(mock(ObservationSet.class).getId()).thenReturn(101).getMock();
+		when(
+				db.find(ObservationSet.class, new QueryRule(ObservationSet.PARTOFDATASET, Operator.EQUALS, 5),
+						new QueryRule(Operator.SORTASC, ObservationSet.ID), new QueryRule(Operator.LIMIT,
+								DataSetTable.PIVOT_CHUNK_SIZE))).thenReturn(Arrays.asList(os0, os1));
+		List<ObservedValue> values = Arrays.asList(mockValue(101, "11", "d"), mockValue(100, "10", "a"),
+				mockValue(100, "11", "b"), mockValue(101, "10", "c"));
+		when(
+				db.find(ObservedValue.class, new QueryRule(ObservedValue.OBSERVATIONSET, Operator.IN, Arrays.asList(
+						100, 101)), new QueryRule(ObservedValue.FEATURE, Operator.IN, Arrays.asList(10, 11))))
+				.thenReturn(values);
+
+		List<Tuple> rows = new DataSetTable(mockDataSet(), db).getRows();
+		assertEquals(rows.size(), 2);
+		assertEquals(rows.get(0).getString("10"), "a");
+		assertEquals(rows.get(0).getString("11"), "b");
+		assertEquals(rows.get(1).getString("10"), "c");
+		assertEquals(rows.get(1).getString("11"), "d");
+	}
+
+	@Test
+	public void getRows_missingValues() throws TableException, DatabaseException
+	{
+		Database db = mockDatabase();
+		ObservationSet os0 = when(mock(ObservationSet.class).getId()).thenReturn(100).getMock();
+		ObservationSet os1 = when(mock(ObservationSet.class).getId()).thenReturn(101).getMock();
+		when(
+				db.find(ObservationSet.class, new QueryRule(ObservationSet.PARTOFDATASET, Operator.EQUALS, 5),
+						new QueryRule(Operator.SORTASC, ObservationSet.ID), new QueryRule(Operator.LIMIT,
+								DataSetTable.PIVOT_CHUNK_SIZE))).thenReturn(Arrays.asList(os0, os1));
+		List<ObservedValue> values = Arrays.asList(mockValue(100, "10", "a"), mockValue(100, "11", "b"),
+				mockValue(101, "10", "c"));
+		when(
+				db.find(ObservedValue.class, new QueryRule(ObservedValue.OBSERVATIONSET, Operator.IN, Arrays.asList(
+						100, 101)), new QueryRule(ObservedValue.FEATURE, Operator.IN, Arrays.asList(10, 11))))
+				.thenReturn(values);
+
+		List<Tuple> rows = new DataSetTable(mockDataSet(), db).getRows();
+		assertEquals(rows.get(0).getColNames(), Arrays.asList("10", "11"));
+		// features without value are not part of the row
+		assertEquals(rows.get(1).getNrCols(), 1);
+		assertEquals(rows.get(1).getColNames(), Arrays.asList("10"));
+		assertEquals(rows.get(1).getString("10"), "c");
+		assertNull(rows.get(1).get("11"));
+	}
+
+	@Test
+	public void getCount_filter() throws TableException, DatabaseException
+	{
+		Database db = mockDatabase();
+		KeyValueTuple count = new KeyValueTuple();
+		count.set("count", 3);
+		when(
+				db.sql("SELECT COUNT(*) AS count FROM ObservationSet LEFT JOIN ObservedValue AS v0 ON v0.ObservationSet = ObservationSet.id AND v0.Feature = 11",
+						new QueryRule("v0.Value", Operator.EQUALS, "b"), new QueryRule("ObservationSet.partOfDataSet",
+								Operator.EQUALS, 5))).thenReturn(Collections.<Tuple> singletonList(count));
+
+		DataSetTable table = new DataSetTable(mockDataSet(), db);
+		table.setFilters(Arrays.asList(new QueryRule("11", Operator.EQUALS, "b"), new QueryRule(Operator.SORTASC,
+				"10")));
+		assertEquals(table.getCount(), 3);
+	}
+
+	@Test
+	public void getRows_filterUnknownFeature() throws TableException, DatabaseException
+	{
+		DataSetTable table = new DataSetTable(mockDataSet(), mockDatabase());
+		table.setFilters(Arrays.asList(new QueryRule("unknown", Operator.EQUALS, "b")));
+		assertEquals(table.getCount(), 0);
+		assertEquals(table.getRows().size(), 0);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void add() throws TableException, DatabaseException
+	{
+		Database db = mockDatabase();
+		Query<ObservableFeature> query = mock(Query.class);
+		when(db.query(ObservableFeature.class)).thenReturn(query);
+		when(query.eq(ObservableFeature.IDENTIFIER, "10")).thenReturn(query);
+		ObservableFeature f10 = when(mock(ObservableFeature.class).getId()).thenReturn(10).getMock();
+		when(query.find()).thenReturn(Collections.singletonList(f10));
+		when(db.add(anyListOf(ObservationSet.class))).thenAnswer(new Answer<Integer>()
+		{
+			@Override
+			public Integer answer(InvocationOnMock invocation) throws Throwable
+			{
+				// generated keys
+				List<?> entities = (List<?>) invocation.getArguments()[0];
+				for (int i = 0; i < entities.size(); ++i)
+					if (entities.get(i) instanceof ObservationSet) ((ObservationSet) entities.get(i)).setId(100 + i);
+				return entities.size();
+			}
+		});
+
+		List<Tuple> rows = new ArrayList<Tuple>();
+		for (String value : new String[]
+		{ "a", "b", "c" })
+		{
+			KeyValueTuple row = new KeyValueTuple();
+			row.set("10", value);
+			rows.add(row);
+		}
+		new DataSetTable(mockDataSet(), db).add(new MemoryTable(rows));
+
+		// one batch of ObservationSets, one batch of ObservedValues
+		ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+		verify(db, times(2)).add(captor.capture());
+		List<ObservedValue> values = captor.getAllValues().get(1);
+		assertEquals(values.size(), 3);
+		assertEquals(values.get(2).getObservationSet_Id(), Integer.valueOf(102));
+		assertEquals(values.get(2).getFeature_Id(), Integer.valueOf(10));
+		assertEquals(values.get(2).getValue(), "c");
+		verify(db).beginTx();
+		verify(db).commitTx();
+	}
+
+	private DataSet mockDataSet()
+	{
+		DataSet dataSet = mock(DataSet.class);
+		when(dataSet.getId()).thenReturn(5);
+		when(dataSet.getProtocolUsed_Id()).thenReturn(1);
+		return dataSet;
+	}
+
+	private Database mockDatabase() throws DatabaseException
+	{
+		Protocol protocol = mock(Protocol.class);
+		when(protocol.getFeatures_Id()).thenReturn(Arrays.asList(10, 11));
+
+		ObservableFeature f10 = mock(ObservableFeature.class);
+		when(f10.getId()).thenReturn(10);
+		when(f10.getIdentifier()).thenReturn("10");
+		ObservableFeature f11 = mock(ObservableFeature.class);
+		when(f11.getId()).thenReturn(11);
+		when(f11.getIdentifier()).thenReturn("11");
+
+		Database db = mock(Database.class);
+		when(db.find(Protocol.class, new QueryRule(Protocol.ID, Operator.EQUALS, 1))).thenReturn(
+				Collections.singletonList(protocol));
+		when(db.find(ObservableFeature.class, new QueryRule(ObservableFeature.ID, Operator.IN, Arrays.asList(10, 11))))
+				.thenReturn(Arrays.asList(f10, f11));
+		return db;
+	}
+
+	private ObservedValue mockValue(Integer observationSetId, String featureIdentifier, String value)
+	{
+		ObservedValue observedValue = mock(ObservedValue.class);
+		when(observedValue.getObservationSet_Id()).thenReturn(observationSetId);
+		when(observedValue.getFeature_Identifier()).thenReturn(featureIdentifier);
+		when(observedValue.getValue()).thenReturn(value);
+		return observedValue;
+	}
+}
@@ -2,7 +2,6 @@ package org.molgenis.omx.dataset;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -18,9 +17,6 @@ import org.molgenis.io.TableReaderFactory;
 import org.molgenis.io.TupleReader;
 import org.molgenis.omx.observ.DataSet;
 import org.molgenis.omx.observ.ObservableFeature;
-import org.molgenis.omx.observ.ObservationSet;
-import org.molgenis.omx.observ.ObservedValue;
-import org.molgenis.util.tuple.Tuple;
 
 public class DataSetImporter
 {
@@ -54,7 +50,7 @@ public class DataSetImporter
 		}
 	}
 
-	private void importSheet(TupleReader sheetReader, String sheetName) throws DatabaseException, IOException
+	private void importSheet(TupleReader sheetReader, final String sheetName) throws DatabaseException, IOException
 	{
 		String identifier = sheetName.substring(DATASET_SHEET_PREFIX.length());
 
@@ -76,55 +72,24 @@ public class DataSetImporter
 		if (!colIt.hasNext()) throw new IOException("sheet '" + sheetName + "' contains no columns");
 
 		// create observation feature map
-		Map<String, ObservableFeature> featureMap = new LinkedHashMap<String, ObservableFeature>();
+		Map<String, Integer> featureMap = new LinkedHashMap<String, Integer>();
 		while (colIt.hasNext())
 		{
 			String observableFeatureIdentifier = colIt.next();
 			ObservableFeature observableFeature = findObservableFeature(observableFeatureIdentifier);
-			featureMap.put(observableFeatureIdentifier, observableFeature);
+			featureMap.put(observableFeatureIdentifier, observableFeature.getId());
 		}
 
-		boolean doTx = !db.inTx();
-		try
+		DataSetBulkLoader bulkLoader = new DataSetBulkLoader(db);
+		bulkLoader.setProgressListener(new DataSetBulkLoader.ProgressListener()
 		{
-			if (doTx) db.beginTx();
-
-			for (Tuple row : sheetReader)
+			@Override
+			public void progress(int nrRows)
 			{
-				ArrayList<ObservedValue> obsValueList = new ArrayList<ObservedValue>();
-
-				// create observation set
-				ObservationSet observationSet = new ObservationSet();
-				observationSet.setPartOfDataSet(dataSet);
-				db.add(observationSet);
-
-				for (Map.Entry<String, ObservableFeature> entry : featureMap.entrySet())
-				{
-					// create observed value
-					String value = row.getString(entry.getKey());
-					ObservedValue observedValue = new ObservedValue();
-					observedValue.setFeature(entry.getValue());
-					observedValue.setValue(value);
-					observedValue.setObservationSet(observationSet);
-
-					// add to db
-					obsValueList.add(observedValue);
-				}
-				db.add(obsValueList);
+				LOG.info("imported " + nrRows + " rows of sheet " + sheetName);
 			}
-
-			if (doTx) db.commitTx();
-		}
-		catch (DatabaseException e)
-		{
-			if (doTx) db.rollbackTx();
-			throw e;
-		}
-		catch (Exception e)
-		{
-			if (doTx) db.rollbackTx();
-			throw new IOException(e);
-		}
+		});
+		bulkLoader.load(dataSet.getId(), featureMap, sheetReader);
 	}
 
 	private ObservableFeature findObservableFeature(String observableFeatureIdentifier) throws DatabaseException,
@@ -1,9 +1,13 @@
 package org.molgenis.omx.plugins;
 
+import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.math.BigInteger;
 import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -11,20 +15,30 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.molgenis.framework.db.Database;
 import org.molgenis.framework.db.DatabaseException;
 import org.molgenis.framework.db.QueryRule;
 import org.molgenis.framework.db.QueryRule.Operator;
+import org.molgenis.framework.security.Login;
+import org.molgenis.framework.security.SimpleLogin;
 import org.molgenis.framework.server.MolgenisRequest;
 import org.molgenis.framework.ui.PluginModel;
 import org.molgenis.framework.ui.ScreenController;
 import org.molgenis.io.TupleWriter;
 import org.molgenis.io.excel.ExcelWriter;
 import org.molgenis.omx.EMeasureFeatureWriter;
+import org.molgenis.omx.dataset.CatalogueVersion;
 import org.molgenis.omx.dataset.DataSetViewerPlugin;
 import org.molgenis.omx.observ.Category;
 import org.molgenis.omx.observ.DataSet;
@@ -42,8 +56,20 @@ import com.google.gson.Gson;
 public class ProtocolViewerController extends PluginModel<Entity>
 {
 	private static final long serialVersionUID = -6143910771849972946L;
+	/** classes of the entities in the JSON serialized catalogue */
+	@SuppressWarnings("unchecked")
+	private static final Class<? extends Entity>[] CATALOGUE_CLASSES = new Class[]
+	{ DataSet.class, Protocol.class, ObservableFeature.class, Category.class, OntologyTerm.class };
+	/**
+	 * JSON serialized catalogue per data set and read permissions on the
+	 * catalogue classes, shared by all users with the same permissions
+	 */
+	private static final Map<String, CachedJson> dataSetJsonCache = new ConcurrentHashMap<String, CachedJson>();
+
 	/** Protocol viewer model */
 	private ProtocolViewer protocolViewer;
+	/** catalogue version of the data sets in the model */
+	private long dataSetsVersion;
 
 	public ProtocolViewerController(String name, ScreenController<?> parent)
 	{
@@ -91,8 +117,9 @@ public class ProtocolViewerController extends PluginModel<Entity>
 		if (request.getAction().equals("download_json_getdataset"))
 		{
 			Integer dataSetId = request.getInt("datasetid");
-			List<DataSet> dataSets = db.find(DataSet.class, new QueryRule(DataSet.ID, Operator.EQUALS, dataSetId));
-			if (dataSets != null && !dataSets.isEmpty()) src = toJSDataSet(db, dataSets.get(0));
+			CachedJson dataSetJson = getDataSetJson(db, dataSetId);
+			if (dataSetJson != null) writeCachedJson(request, dataSetJson, out);
+			return Show.SHOW_MAIN;
 		}
 		else if (request.getAction().equals("download_json_getfeature"))
 		{
@@ -242,6 +269,10 @@ public class ProtocolViewerController extends PluginModel<Entity>
 	@Override
 	public void reload(Database db)
 	{
+		// data sets did not change since the last reload
+		long catalogueVersion = CatalogueVersion.get();
+		if (this.protocolViewer != null && this.dataSetsVersion == catalogueVersion) return;
+
 		List<DataSet> dataSets;
 		try
 		{
@@ -267,6 +298,81 @@ public class ProtocolViewerController extends PluginModel<Entity>
 			jsDataSets = Collections.emptyList();
 		}
 		this.protocolViewer.setDataSets(jsDataSets);
+		this.dataSetsVersion = catalogueVersion;
+	}
+
+	/**
+	 * Returns the JSON serialized catalogue of a data set, the catalogue is
+	 * cached until a data set, protocol, feature, category or unit changes.
+	 * The catalogue entities have no row level security, so users that may
+	 * read the same catalogue classes share the cached catalogue. The data set
+	 * is always retrieved to check whether the user may read it.
+	 *
+	 * @return catalogue or null if the data set does not exist or the user may
+	 *         not read it
+	 */
+	private CachedJson getDataSetJson(Database db, Integer dataSetId) throws DatabaseException
+	{
+		if (dataSetId == null) return null;
+
+		// get the version before loading, so changes during loading are not
+		// cached
+		long catalogueVersion = CatalogueVersion.get();
+		List<DataSet> dataSets = db.find(DataSet.class, new QueryRule(DataSet.ID, Operator.EQUALS, dataSetId));
+		if (dataSets == null || dataSets.isEmpty()) return null;
+
+		String cacheKey = dataSetId + ":" + getReadPermissions(db);
+		CachedJson dataSetJson = dataSetJsonCache.get(cacheKey);
+		if (dataSetJson != null && dataSetJson.getVersion() == catalogueVersion) return dataSetJson;
+
+		String json = new Gson().toJson(toJSDataSet(db, dataSets.get(0)));
+		dataSetJson = new CachedJson(catalogueVersion, json.getBytes(Charset.forName("UTF-8")));
+		dataSetJsonCache.put(cacheKey, dataSetJson);
+		return dataSetJson;
+	}
+
+	/**
+	 * Returns which catalogue classes the user may read, e.g. '11011'
+	 */
+	private static String getReadPermissions(Database db) throws DatabaseException
+	{
+		Login login = db.getLogin();
+		StringBuilder strBuilder = new StringBuilder(CATALOGUE_CLASSES.length);
+		for (Class<? extends Entity> entityClass : CATALOGUE_CLASSES)
+		{
+			// same as the mapper security decorators
+			boolean canRead = login == null || login instanceof SimpleLogin || login.canRead(entityClass);
+			strBuilder.append(canRead ? '1' : '0');
+		}
+		return strBuilder.toString();
+	}
+
+	/**
+	 * Writes the JSON unless the client has the same version (ETag)
+	 */
+	private void writeCachedJson(MolgenisRequest request, CachedJson json, OutputStream out) throws IOException
+	{
+		HttpServletResponse response = request.getResponse();
+		if (response != null)
+		{
+			// clients have to check whether their version is up to date
+			response.setHeader("Cache-Control", "no-cache");
+			response.setHeader("ETag", json.getETag());
+			HttpServletRequest httpRequest = request.getRequest();
+			if (httpRequest != null && json.getETag().equals(httpRequest.getHeader("If-None-Match")))
+			{
+				response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+				return;
+			}
+		}
+		try
+		{
+			out.write(json.getBytes());
+		}
+		finally
+		{
+			out.close();
+		}
 	}
 
 	private List<Category> findCategories(Database db, ObservableFeature feature) throws DatabaseException
@@ -277,15 +383,6 @@ public class ProtocolViewerController extends PluginModel<Entity>
 		return categories;
 	}
 
-	private List<Protocol> findSubProtocols(Database db, Protocol protocol) throws DatabaseException
-	{
-		List<Integer> subProtocolIds = protocol.getSubprotocols_Id();
-		if (subProtocolIds == null || subProtocolIds.isEmpty()) return Collections.emptyList();
-
-		List<Protocol> protocols = db.find(Protocol.class, new QueryRule(Protocol.ID, Operator.IN, subProtocolIds));
-		return protocols;
-	}
-
 	private List<ObservableFeature> findFeatures(Database db, List<Integer> featureIds) throws DatabaseException
 	{
 		if (featureIds == null || featureIds.isEmpty()) return null;
@@ -313,19 +410,66 @@ public class ProtocolViewerController extends PluginModel<Entity>
 		return new JSDataSet(dataSet, jsProtocol);
 	}
 
-	private JSProtocol toJSProtocol(Database db, Protocol protocol) throws DatabaseException
+	/**
+	 * Loads the protocol tree breadth-first: the sub protocols and features of
+	 * all protocols at the same depth are retrieved with one query per entity
+	 * type.
+	 */
+	private JSProtocol toJSProtocol(Database db, Protocol rootProtocol) throws DatabaseException
+	{
+		Map<Integer, Protocol> protocols = new HashMap<Integer, Protocol>();
+		Map<Integer, JSFeature> jsFeatures = new HashMap<Integer, JSFeature>();
+		protocols.put(rootProtocol.getId(), rootProtocol);
+
+		List<Protocol> level = Collections.singletonList(rootProtocol);
+		while (!level.isEmpty())
+		{
+			// sorted, so the queries do not depend on the order of the results
+			Set<Integer> featureIds = new TreeSet<Integer>();
+			Set<Integer> subProtocolIds = new TreeSet<Integer>();
+			for (Protocol protocol : level)
+			{
+				if (protocol.getFeatures_Id() != null)
+				{
+					for (Integer featureId : protocol.getFeatures_Id())
+						if (!jsFeatures.containsKey(featureId)) featureIds.add(featureId);
+				}
+				if (protocol.getSubprotocols_Id() != null)
+				{
+					// skip protocols that were loaded at a lower depth
+					for (Integer subProtocolId : protocol.getSubprotocols_Id())
+						if (!protocols.containsKey(subProtocolId)) subProtocolIds.add(subProtocolId);
+				}
+			}
+			jsFeatures.putAll(toJSFeatures(db, new ArrayList<Integer>(featureIds)));
+
+			if (subProtocolIds.isEmpty()) break;
+			level = db.find(Protocol.class, new QueryRule(Protocol.ID, Operator.IN, new ArrayList<Integer>(
+					subProtocolIds)));
+			for (Protocol protocol : level)
+				protocols.put(protocol.getId(), protocol);
+		}
+
+		return toJSProtocol(rootProtocol, protocols, jsFeatures, new HashSet<Integer>());
+	}
+
+	private JSProtocol toJSProtocol(Protocol protocol, Map<Integer, Protocol> protocols,
+			Map<Integer, JSFeature> jsFeatures, Set<Integer> parentProtocolIds)
 	{
 		// get features
-		List<JSFeature> jsFeatures = null;
-		List<ObservableFeature> features = findFeatures(db, protocol.getFeatures_Id());
-		if (features != null && !features.isEmpty())
+		List<JSFeature> protocolJsFeatures = null;
+		List<Integer> featureIds = protocol.getFeatures_Id();
+		if (featureIds != null && !featureIds.isEmpty())
 		{
-			jsFeatures = new ArrayList<JSFeature>(features.size());
-			for (ObservableFeature feature : features)
-				jsFeatures.add(toJSFeature(db, feature));
+			protocolJsFeatures = new ArrayList<JSFeature>(featureIds.size());
+			for (Integer featureId : featureIds)
+			{
+				JSFeature jsFeature = jsFeatures.get(featureId);
+				if (jsFeature != null) protocolJsFeatures.add(jsFeature);
+			}
 
 			// sort alphabetically by name
-			Collections.sort(jsFeatures, new Comparator<JSFeature>()
+			Collections.sort(protocolJsFeatures, new Comparator<JSFeature>()
 			{
 				@Override
 				public int compare(JSFeature o1, JSFeature o2)
@@ -334,15 +478,22 @@ public class ProtocolViewerController extends PluginModel<Entity>
 				}
 			});
 		}
+		if (protocolJsFeatures != null && protocolJsFeatures.isEmpty()) protocolJsFeatures = null;
 
-		// get sub protocols (recursive)
+		// get sub protocols (recursive), a protocol cannot contain itself
 		List<JSProtocol> jsSubProtocols = null;
-		List<Protocol> subProtocols = findSubProtocols(db, protocol);
-		if (subProtocols != null && !subProtocols.isEmpty())
+		List<Integer> subProtocolIds = protocol.getSubprotocols_Id();
+		if (subProtocolIds != null && !subProtocolIds.isEmpty())
 		{
-			jsSubProtocols = new ArrayList<JSProtocol>(subProtocols.size());
-			for (Protocol subProtocol : subProtocols)
-				jsSubProtocols.add(toJSProtocol(db, subProtocol));
+			parentProtocolIds.add(protocol.getId());
+			jsSubProtocols = new ArrayList<JSProtocol>(subProtocolIds.size());
+			for (Integer subProtocolId : subProtocolIds)
+			{
+				Protocol subProtocol = protocols.get(subProtocolId);
+				if (subProtocol != null && !parentProtocolIds.contains(subProtocolId)) jsSubProtocols
+						.add(toJSProtocol(subProtocol, protocols, jsFeatures, parentProtocolIds));
+			}
+			parentProtocolIds.remove(protocol.getId());
 
 			// sort alphabetically by name
 			Collections.sort(jsSubProtocols, new Comparator<JSProtocol>()
@@ -354,8 +505,56 @@ public class ProtocolViewerController extends PluginModel<Entity>
 				}
 			});
 		}
+		if (jsSubProtocols != null && jsSubProtocols.isEmpty()) jsSubProtocols = null;
 
-		return new JSProtocol(protocol, jsFeatures, jsSubProtocols);
+		return new JSProtocol(protocol, protocolJsFeatures, jsSubProtocols);
+	}
+
+	/**
+	 * Loads features with their categories and units, with one query per
+	 * entity type
+	 */
+	private Map<Integer, JSFeature> toJSFeatures(Database db, List<Integer> featureIds) throws DatabaseException
+	{
+		if (featureIds.isEmpty()) return Collections.emptyMap();
+
+		List<ObservableFeature> features = findFeatures(db, featureIds);
+
+		// categories per feature
+		Map<Integer, List<JSCategory>> jsCategories = new HashMap<Integer, List<JSCategory>>();
+		for (Category category : db.find(Category.class, new QueryRule(Category.OBSERVABLEFEATURE, Operator.IN,
+				featureIds)))
+		{
+			List<JSCategory> featureJsCategories = jsCategories.get(category.getObservableFeature_Id());
+			if (featureJsCategories == null)
+			{
+				featureJsCategories = new ArrayList<JSCategory>();
+				jsCategories.put(category.getObservableFeature_Id(), featureJsCategories);
+			}
+			featureJsCategories.add(new JSCategory(category));
+		}
+
+		// units
+		Set<Integer> unitIds = new TreeSet<Integer>();
+		for (ObservableFeature feature : features)
+			if (feature.getUnit_Id() != null) unitIds.add(feature.getUnit_Id());
+		Map<Integer, JSOntologyTerm> jsUnits = new HashMap<Integer, JSOntologyTerm>();
+		if (!unitIds.isEmpty())
+		{
+			for (OntologyTerm ontologyTerm : db.find(OntologyTerm.class, new QueryRule(OntologyTerm.ID, Operator.IN,
+					new ArrayList<Integer>(unitIds))))
+				jsUnits.put(ontologyTerm.getId(), new JSOntologyTerm(ontologyTerm));
+		}
+
+		Map<Integer, JSFeature> jsFeatures = new HashMap<Integer, JSFeature>();
+		for (ObservableFeature feature : features)
+		{
+			List<JSCategory> featureJsCategories = jsCategories.get(feature.getId());
+			if (featureJsCategories != null) sortCategories(featureJsCategories);
+			jsFeatures.put(feature.getId(), new JSFeature(feature, featureJsCategories, jsUnits.get(feature
+					.getUnit_Id())));
+		}
+		return jsFeatures;
 	}
 
 	private JSFeature toJSFeature(Database db, ObservableFeature feature) throws DatabaseException
@@ -368,22 +567,66 @@ public class ProtocolViewerController extends PluginModel<Entity>
 			jsCategories = new ArrayList<JSCategory>(categories.size());
 			for (Category category : categories)
 				jsCategories.add(new JSCategory(category));
-
-			// sort alphabetically by name
-			Collections.sort(jsCategories, new Comparator<JSCategory>()
-			{
-				@Override
-				public int compare(JSCategory o1, JSCategory o2)
-				{
-					return o1.getCode().compareTo(o2.getCode());
-				}
-			});
+			sortCategories(jsCategories);
 		}
 
 		OntologyTerm ontologyTerm = findOntologyTerm(db, feature);
 		return new JSFeature(feature, jsCategories, ontologyTerm != null ? new JSOntologyTerm(ontologyTerm) : null);
 	}
 
+	private static void sortCategories(List<JSCategory> jsCategories)
+	{
+		// sort alphabetically by code
+		Collections.sort(jsCategories, new Comparator<JSCategory>()
+		{
+			@Override
+			public int compare(JSCategory o1, JSCategory o2)
+			{
+				return o1.getCode().compareTo(o2.getCode());
+			}
+		});
+	}
+
+	/**
+	 * JSON serialized object with an entity tag, the hash of the JSON
+	 */
+	private static class CachedJson
+	{
+		private final long version;
+		private final byte[] bytes;
+		private final String eTag;
+
+		public CachedJson(long version, byte[] bytes)
+		{
+			this.version = version;
+			this.bytes = bytes;
+			try
+			{
+				byte[] digest = MessageDigest.getInstance("MD5").digest(bytes);
+				this.eTag = '"' + new BigInteger(1, digest).toString(16) + '"';
+			}
+			catch (NoSuchAlgorithmException e)
+			{
+				throw new RuntimeException(e);
+			}
+		}
+
+		public long getVersion()
+		{
+			return version;
+		}
+
+		public byte[] getBytes()
+		{
+			return bytes;
+		}
+
+		public String getETag()
+		{
+			return eTag;
+		}
+	}
+
 	public static class JSDataSet
 	{
 		private final int id;
@@ -1,30 +1,51 @@
 package org.molgenis.omx.plugins;
 
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.molgenis.util.DetectOS.getLineSeparator;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
 
 import java.io.ByteArrayOutputStream;
 import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.Collections;
 
+import javax.servlet.http.HttpServletResponse;
+
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
 import org.molgenis.framework.db.Database;
+import org.molgenis.framework.db.Mapper;
 import org.molgenis.framework.db.QueryRule;
 import org.molgenis.framework.db.QueryRule.Operator;
+import org.molgenis.framework.db.TransactionListener;
+import org.molgenis.framework.security.Login;
 import org.molgenis.framework.server.MolgenisRequest;
 import org.molgenis.framework.ui.ScreenController;
+import org.molgenis.omx.dataset.CatalogueVersion;
+import org.molgenis.omx.decorators.IdentifiableDecorator;
 import org.molgenis.omx.observ.Category;
 import org.molgenis.omx.observ.DataSet;
 import org.molgenis.omx.observ.ObservableFeature;
 import org.molgenis.omx.observ.Protocol;
+import org.molgenis.omx.observ.target.OntologyTerm;
+import org.molgenis.util.Entity;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
+import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 public class ProtocolViewerControllerTest
 {
+	@BeforeMethod
+	public void setUp()
+	{
+		// catalogues are cached between requests until they change
+		CatalogueVersion.entitiesWritten(DataSet.class);
+	}
 
 	@Test
 	public void handleRequest_getDataset_protocol() throws Exception
@@ -79,6 +100,246 @@ public class ProtocolViewerControllerTest
 		}
 	}
 
+	@Test
+	public void handleRequest_getDataset_protocolTree() throws Exception
+	{
+		// mock db
+		Database db = mock(Database.class);
+
+		DataSet dataSet = new DataSet();
+		dataSet.setId(1);
+		dataSet.setName("dataset");
+		dataSet.setProtocolUsed(2);
+
+		Protocol protocol = new Protocol();
+		protocol.setId(2);
+		protocol.setName("protocol");
+		protocol.setSubprotocols_Id(Arrays.asList(5, 6));
+
+		Protocol subProtocol1 = new Protocol();
+		subProtocol1.setId(5);
+		subProtocol1.setName("subprotocol1");
+		subProtocol1.setFeatures_Id(Arrays.asList(3));
+
+		Protocol subProtocol2 = new Protocol();
+		subProtocol2.setId(6);
+		subProtocol2.setName("subprotocol2");
+		subProtocol2.setFeatures_Id(Arrays.asList(4));
+		// cycle
+		subProtocol2.setSubprotocols_Id(Arrays.asList(2));
+
+		ObservableFeature feature1 = new ObservableFeature();
+		feature1.setId(3);
+		feature1.setName("feature1");
+		feature1.setUnit(7);
+
+		ObservableFeature feature2 = new ObservableFeature();
+		feature2.setId(4);
+		feature2.setName("feature2");
+
+		Category category = new Category();
+		category.setId(8);
+		category.setValueCode("code");
+		category.setName("label");
+		category.setObservableFeature(4);
+
+		OntologyTerm unit = new OntologyTerm();
+		unit.setId(7);
+		unit.setName("cm");
+
+		when(db.find(DataSet.class, new QueryRule(DataSet.ID, Operator.EQUALS, 1))).thenReturn(
+				Collections.singletonList(dataSet));
+		when(db.find(Protocol.class, new QueryRule(Protocol.ID, Operator.EQUALS, 2))).thenReturn(
+				Collections.singletonList(protocol));
+		when(db.find(Protocol.class, new QueryRule(Protocol.ID, Operator.IN, Arrays.asList(5, 6)))).thenReturn(
+				Arrays.asList(subProtocol2, subProtocol1));
+		when(db.find(ObservableFeature.class, new QueryRule(ObservableFeature.ID, Operator.IN, Arrays.asList(3, 4))))
+				.thenReturn(Arrays.asList(feature1, feature2));
+		when(db.find(Category.class, new QueryRule(Category.OBSERVABLEFEATURE, Operator.IN, Arrays.asList(3, 4))))
+				.thenReturn(Arrays.asList(category));
+		when(db.find(OntologyTerm.class, new QueryRule(OntologyTerm.ID, Operator.IN, Arrays.asList(7)))).thenReturn(
+				Arrays.asList(unit));
+
+		ProtocolViewerController controller = new ProtocolViewerController("test", mock(ScreenController.class));
+
+		// mock request
+		MockHttpServletRequest httpServletRequest = new MockHttpServletRequest("GET", null);
+		httpServletRequest.setParameter("datasetid", "1");
+		httpServletRequest.setParameter("__action", "download_json_getdataset");
+
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try
+		{
+			controller.handleRequest(db, new MolgenisRequest(httpServletRequest), bos);
+			String output = new String(bos.toByteArray(), Charset.forName("UTF-8"));
+
+			String expected = "{\"id\":1,\"name\":\"dataset\",\"protocol\":{\"id\":2,\"name\":\"protocol\",\"subProtocols\":[{\"id\":5,\"name\":\"subprotocol1\",\"features\":[{\"id\":3,\"name\":\"feature1\",\"dataType\":\"string\",\"unit\":{\"id\":7,\"name\":\"cm\"}}]},{\"id\":6,\"name\":\"subprotocol2\",\"features\":[{\"id\":4,\"name\":\"feature2\",\"dataType\":\"string\",\"categories\":[{\"id\":8,\"name\":\"label\",\"code\":\"code\"}]}]}]}}";
+			assertEquals(output, expected);
+		}
+		finally
+		{
+			bos.close();
+		}
+	}
+
+	@Test
+	public void handleRequest_getDataset_cached() throws Exception
+	{
+		// mock db
+		Database db = mock(Database.class);
+
+		DataSet dataSet = new DataSet();
+		dataSet.setId(1);
+		dataSet.setName("dataset");
+		dataSet.setProtocolUsed(2);
+
+		when(db.find(DataSet.class, new QueryRule(DataSet.ID, Operator.EQUALS, 1))).thenReturn(
+				Collections.singletonList(dataSet));
+		when(db.find(Protocol.class, new QueryRule(Protocol.ID, Operator.EQUALS, 2))).thenReturn(
+				Collections.<Protocol> emptyList());
+
+		ProtocolViewerController controller = new ProtocolViewerController("test", mock(ScreenController.class));
+
+		// first request
+		MockHttpServletRequest httpRequest = new MockHttpServletRequest("GET", null);
+		httpRequest.setParameter("datasetid", "1");
+		httpRequest.setParameter("__action", "download_json_getdataset");
+		MockHttpServletResponse httpResponse = new MockHttpServletResponse();
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		controller.handleRequest(db, new MolgenisRequest(httpRequest, httpResponse), bos);
+		assertEquals(new String(bos.toByteArray(), Charset.forName("UTF-8")), "{\"id\":1,\"name\":\"dataset\"}");
+		String eTag = (String) httpResponse.getHeader("ETag");
+		assertNotNull(eTag);
+
+		// second request with same version
+		httpRequest = new MockHttpServletRequest("GET", null);
+		httpRequest.setParameter("datasetid", "1");
+		httpRequest.setParameter("__action", "download_json_getdataset");
+		httpRequest.addHeader("If-None-Match", eTag);
+		httpResponse = new MockHttpServletResponse();
+		bos = new ByteArrayOutputStream();
+		controller.handleRequest(db, new MolgenisRequest(httpRequest, httpResponse), bos);
+		assertEquals(httpResponse.getStatus(), HttpServletResponse.SC_NOT_MODIFIED);
+		assertEquals(bos.size(), 0);
+
+		// data set is retrieved to check permissions, the catalogue was only
+		// built once
+		verify(db, times(2)).find(DataSet.class, new QueryRule(DataSet.ID, Operator.EQUALS, 1));
+		verify(db, times(1)).find(Protocol.class, new QueryRule(Protocol.ID, Operator.EQUALS, 2));
+	}
+
+	@Test
+	public void handleRequest_getDataset_readPermissions() throws Exception
+	{
+		DataSet dataSet = new DataSet();
+		dataSet.setId(1);
+		dataSet.setName("dataset");
+		dataSet.setProtocolUsed(2);
+
+		Protocol protocol = new Protocol();
+		protocol.setId(2);
+		protocol.setName("protocol");
+		protocol.setFeatures_Id(Arrays.asList(3));
+
+		ObservableFeature feature = new ObservableFeature();
+		feature.setId(3);
+		feature.setName("feature");
+
+		// user that may read the whole catalogue
+		Database db = mock(Database.class);
+		Login login = mock(Login.class);
+		when(login.canRead(Mockito.<Class<? extends Entity>> any())).thenReturn(true);
+		when(db.getLogin()).thenReturn(login);
+		when(db.find(DataSet.class, new QueryRule(DataSet.ID, Operator.EQUALS, 1))).thenReturn(
+				Collections.singletonList(dataSet));
+		when(db.find(Protocol.class, new QueryRule(Protocol.ID, Operator.EQUALS, 2))).thenReturn(
+				Collections.singletonList(protocol));
+		when(db.find(ObservableFeature.class, new QueryRule(ObservableFeature.ID, Operator.IN, Arrays.asList(3))))
+				.thenReturn(Arrays.asList(feature));
+
+		ProtocolViewerController controller = new ProtocolViewerController("test", mock(ScreenController.class));
+		assertEquals(getDataSetJson(controller, db),
+				"{\"id\":1,\"name\":\"dataset\",\"protocol\":{\"id\":2,\"name\":\"protocol\",\"features\":"
+						+ "[{\"id\":3,\"name\":\"feature\",\"dataType\":\"string\"}]}}");
+
+		// user without read permission on data sets, the security decorator
+		// finds nothing
+		Database noReadDb = mock(Database.class);
+		Login noReadLogin = mock(Login.class);
+		when(noReadDb.getLogin()).thenReturn(noReadLogin);
+		when(noReadDb.find(DataSet.class, new QueryRule(DataSet.ID, Operator.EQUALS, 1))).thenReturn(
+				Collections.<DataSet> emptyList());
+		assertEquals(getDataSetJson(controller, noReadDb), "");
+
+		// user without read permission on features gets a catalogue without
+		// features
+		Database noFeaturesDb = mock(Database.class);
+		Login noFeaturesLogin = mock(Login.class);
+		when(noFeaturesLogin.canRead(Mockito.<Class<? extends Entity>> any())).thenReturn(true);
+		when(noFeaturesLogin.canRead(ObservableFeature.class)).thenReturn(false);
+		when(noFeaturesDb.getLogin()).thenReturn(noFeaturesLogin);
+		when(noFeaturesDb.find(DataSet.class, new QueryRule(DataSet.ID, Operator.EQUALS, 1))).thenReturn(
+				Collections.singletonList(dataSet));
+		when(noFeaturesDb.find(Protocol.class, new QueryRule(Protocol.ID, Operator.EQUALS, 2))).thenReturn(
+				Collections.singletonList(protocol));
+		when(
+				noFeaturesDb.find(ObservableFeature.class, new QueryRule(ObservableFeature.ID, Operator.IN, Arrays
+						.asList(3)))).thenReturn(Collections.<ObservableFeature> emptyList());
+		assertEquals(getDataSetJson(controller, noFeaturesDb),
+				"{\"id\":1,\"name\":\"dataset\",\"protocol\":{\"id\":2,\"name\":\"protocol\"}}");
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void handleRequest_getDataset_changedInTransaction() throws Exception
+	{
+		// mock db with the committed data set
+		Database db = mock(Database.class);
+
+		DataSet dataSet = new DataSet();
+		dataSet.setId(1);
+		dataSet.setName("dataset");
+
+		when(db.find(DataSet.class, new QueryRule(DataSet.ID, Operator.EQUALS, 1))).thenReturn(
+				Collections.singletonList(dataSet));
+
+		ProtocolViewerController controller = new ProtocolViewerController("test", mock(ScreenController.class));
+		assertEquals(getDataSetJson(controller, db), "{\"id\":1,\"name\":\"dataset\"}");
+
+		// rename the data set in a transaction of another database
+		Database txDb = mock(Database.class);
+		when(txDb.inTx()).thenReturn(true);
+		Mapper<DataSet> mapper = mock(Mapper.class);
+		when(mapper.getDatabase()).thenReturn(txDb);
+
+		DataSet renamedDataSet = new DataSet();
+		renamedDataSet.setId(1);
+		renamedDataSet.setName("renamed");
+		new IdentifiableDecorator<DataSet>(mapper).update(Arrays.asList(renamedDataSet));
+
+		// request before commit still gets the committed data set
+		assertEquals(getDataSetJson(controller, db), "{\"id\":1,\"name\":\"dataset\"}");
+
+		// commit
+		ArgumentCaptor<TransactionListener> listener = ArgumentCaptor.forClass(TransactionListener.class);
+		verify(txDb).addTransactionListener(listener.capture());
+		when(db.find(DataSet.class, new QueryRule(DataSet.ID, Operator.EQUALS, 1))).thenReturn(
+				Collections.singletonList(renamedDataSet));
+		listener.getValue().afterCommit();
+
+		assertEquals(getDataSetJson(controller, db), "{\"id\":1,\"name\":\"renamed\"}");
+	}
+
+	private static String getDataSetJson(ProtocolViewerController controller, Database db) throws Exception
+	{
+		MockHttpServletRequest httpRequest = new MockHttpServletRequest("GET", null);
+		httpRequest.setParameter("datasetid", "1");
+		httpRequest.setParameter("__action", "download_json_getdataset");
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		controller.handleRequest(db, new MolgenisRequest(httpRequest, new MockHttpServletResponse()), bos);
+		return new String(bos.toByteArray(), Charset.forName("UTF-8"));
+	}
+
 	@Test
 	public void handleRequest_getDataset_noProtocol() throws Exception
 	{